@@ -20,6 +20,8 @@
 
 package io.github.ammar257ammar.psnpbind.core;
 
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -37,9 +39,18 @@ public class CliOptions {
 	@Option(names = {"-h", "-?", "--help" }, usageHelp = true, description = "Display a help message")
 	boolean help = false;
 
-	@Option(names = {"-op", "--operation"}, description = "select an operation to perform: init, pocket-snps-mapping-and-foldx-prep, foldx-report, prepare-ligands-folders, ligands-tanimoto-dataset, prepare-vina-folders-config, generate-dockings-results, build-database", required = true)
+	@Option(names = {"-op", "--operation"}, description = "select an operation to perform: init, pocket-snps-mapping-and-foldx-prep, foldx-report, prepare-ligands-folders, build-chembl-index, similar-ligands-search, ligands-tanimoto-dataset, ligands-similarity-matrix, prepare-vina-folders-config, detect-equivalent-pockets, run-dockings, generate-dockings-results, build-pose-store, featurize-interactions, build-database", required = true)
 	String operation = "";
 
+	@Option(names = {"-fp", "--fingerprint-encoding"}, description = "select the ligand fingerprint encoding of the featurize operation: columns (one column per bit), hex, base64, sparse (set bits indices, none if no bit is set) or binary (a separate memory-mappable file)")
+	String fingerprintEncoding = "columns";
+
+	@Option(names = {"-of", "--output-format"}, description = "select the format of the featurize, featurize-interactions and generate-dockings-results tables (docking-results-all.tsv is always written as well): tsv, npy (a float32 matrix of the numeric columns) or npz (one typed array per column)")
+	String outputFormat = "tsv";
+
+	@Option(names = {"-ld", "--ligand-descriptors"}, description = "select the ligand descriptor families of the featurize operation as a comma-separated list of families (lipinski, apol, small-rings, polar-surface, moment-of-inertia, atom-counts, xlogp, vertex-adjacency, basic-groups, surface-area, alogp, jplogp, bcut, whim, elements, carbon-types, fingerprint) and presets (all, 2d, 3d, cheap, no-expensive, screening), default is the LIGAND_DESCRIPTORS config value or all")
+	String ligandDescriptors = null;
+
 	CliOptions(String[] args) {
 		try {
 			CliOptions cliOptions = CommandLine.populateCommand(this, args);
@@ -49,10 +60,32 @@ public class CliOptions {
 				System.exit(0);
 			}
 			
+			checkValue("--fingerprint-encoding", fingerprintEncoding, FingerprintEncoding.class);
+			checkValue("--output-format", outputFormat, OutputFormat.class);
+			
 		} catch (CommandLine.ParameterException pe) {
 			System.out.println(pe.getMessage());
 			new CommandLine(this).usage(System.out);
 			System.exit(64);
 		}
 	}
+
+	/**
+	 * A method to check that the value of an option is one of the (case-insensitive) names of an enum
+	 * @param option the option name
+	 * @param value the option value
+	 * @param values the enum of the accepted values
+	 * @throws CommandLine.ParameterException if the value is not accepted
+	 */
+	private <E extends Enum<E>> void checkValue(String option, String value, Class<E> values) {
+
+		for (E e : values.getEnumConstants()) {
+			if(e.name().equalsIgnoreCase(value.trim())) {
+				return;
+			}
+		}
+
+		throw new CommandLine.ParameterException(new CommandLine(this),
+				"Invalid value for option '" + option + "': " + value);
+	}
 }
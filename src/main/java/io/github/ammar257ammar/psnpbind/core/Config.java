@@ -74,4 +74,19 @@ public class Config {
 		return properties.getProperty(key);
 	}
 
+	/**
+	 * Get the number of worker threads of the parallel pipeline stages (THREADS key),
+	 * a missing, empty or non-positive value means one thread per available processor
+	 * 
+	 * @return the number of threads
+	 */
+	public static int getThreads() {
+
+		String value = properties.getProperty("THREADS");
+
+		int threads = value == null || value.trim().isEmpty() ? 0 : Integer.parseInt(value.trim());
+
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
 }
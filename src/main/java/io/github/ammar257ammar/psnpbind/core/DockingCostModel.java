@@ -0,0 +1,311 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.qsar.descriptors.molecular.RotatableBondsCountDescriptor;
+import org.openscience.cdk.qsar.result.IntegerResult;
+
+import io.github.ammar257ammar.psnpbind.core.DockingScheduler.DockingJob;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+
+/**
+ * A class to estimate the runtime of a docking job from the ligand rotatable bonds and heavy atoms and from the
+ * volume of the Vina grid box (the size written to the variant config file from Vina.calculateVinaGridEnhanced).
+ *
+ * The model is log-linear, log(seconds) = b0 + b1 * rotatable bonds + b2 * heavy atoms + b3 * log(grid volume),
+ * fitted by least squares on the observed docking durations. The fit is a ridge regression towards prior
+ * coefficients, so the estimates are usable for ordering before the first docking is observed and follow
+ * the observed durations as they accumulate.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class DockingCostModel {
+
+	public static final int ROTATABLE_BONDS = 0;
+	public static final int HEAVY_ATOMS = 1;
+	public static final int GRID_VOLUME = 2;
+
+	private static final double[] PRIOR = { -2.0, 0.15, 0.02, 0.5 };
+	private static final double PRIOR_WEIGHT = 1.0;
+
+	private final double[][] xtx = new double[PRIOR.length][PRIOR.length];
+	private final double[] xty = new double[PRIOR.length];
+
+	private double[] coefficients = PRIOR.clone();
+	private boolean fitted = true;
+	private int samples = 0;
+
+	private final Map<Path, double[]> ligandFeatures = new ConcurrentHashMap<Path, double[]>();
+	private final Map<Path, Double> gridVolumes = new ConcurrentHashMap<Path, Double>();
+
+	private DockingCostModel() {
+	}
+
+	/**
+	 * Create a cost model with the prior coefficients
+	 * @return a new cost model
+	 */
+	public static DockingCostModel create() {
+		return new DockingCostModel();
+	}
+
+	/**
+	 * A method to get the features of a docking job, the ligand and grid features are cached by file
+	 * @param job the docking job
+	 * @return the rotatable bonds, heavy atoms and grid volume of the job
+	 * @throws IOException in case of error in reading the ligand or config file
+	 */
+	public double[] getFeatures(DockingJob job) throws IOException {
+
+		double[] ligand = ligandFeatures.get(job.getLigandFile());
+
+		if(ligand == null) {
+			ligand = getLigandFeatures(job.getLigandFile());
+			ligandFeatures.put(job.getLigandFile(), ligand);
+		}
+
+		Double volume = gridVolumes.get(job.getConfig());
+
+		if(volume == null) {
+			volume = getGridVolume(job.getConfig());
+			gridVolumes.put(job.getConfig(), volume);
+		}
+
+		return new double[] { ligand[0], ligand[1], volume };
+	}
+
+	/**
+	 * A method to count the rotatable bonds and heavy atoms of a docking ligand
+	 * @param ligandFile the ligand .pdbqt file (the torsions and atoms are read from the file) or .mol2 file
+	 * @return the rotatable bonds and the heavy atoms count
+	 * @throws IOException in case of error in reading the file
+	 */
+	public static double[] getLigandFeatures(Path ligandFile) throws IOException {
+
+		if(ligandFile.getFileName().toString().endsWith(".pdbqt")) {
+
+			int torsions = 0;
+			int heavyAtoms = 0;
+
+			try (BufferedReader reader = Files.newBufferedReader(ligandFile, StandardCharsets.ISO_8859_1)) {
+
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+
+					if(line.startsWith("TORSDOF")) {
+						torsions = Integer.parseInt(line.substring(7).trim());
+					}else if(line.startsWith("ATOM") || line.startsWith("HETATM")) {
+
+						String type = line.length() > 77 ? line.substring(77).trim() : "";
+
+						if(!type.equals("H") && !type.equals("HD") && !type.equals("HS")) {
+							heavyAtoms++;
+						}
+					}
+				}
+			}
+			return new double[] { torsions, heavyAtoms };
+		}
+
+		IAtomContainer ac;
+
+		try {
+			ac = LigandTools.readMol2andAddHydrogens(ligandFile.toFile(), false);
+		} catch (ClassNotFoundException | CDKException e) {
+			throw new IOException("The ligand " + ligandFile + " cannot be read", e);
+		}
+
+		if(ac == null) {
+			throw new IOException("The ligand " + ligandFile + " cannot be read");
+		}
+
+		int heavyAtoms = 0;
+
+		for (IAtom atom : ac.atoms()) {
+			if(!"H".equals(atom.getSymbol())) {
+				heavyAtoms++;
+			}
+		}
+
+		int rotatableBonds = ((IntegerResult) new RotatableBondsCountDescriptor().calculate(ac).getValue()).intValue();
+
+		return new double[] { rotatableBonds, heavyAtoms };
+	}
+
+	/**
+	 * A method to get the grid box volume of a Vina config file
+	 * @param config the config file path
+	 * @return the product of the size_x, size_y and size_z values in cubic Angstrom
+	 * @throws IOException in case of error in reading the file or if a size is missing
+	 */
+	public static double getGridVolume(Path config) throws IOException {
+
+		double volume = 1.0;
+		int sizes = 0;
+
+		for (String line : Files.readAllLines(config, StandardCharsets.UTF_8)) {
+
+			String[] parts = line.split("=");
+
+			if(parts.length == 2 && parts[0].trim().matches("size_[xyz]")) {
+				volume *= Double.parseDouble(parts[1].trim());
+				sizes++;
+			}
+		}
+
+		if(sizes != 3) {
+			throw new IOException("The config file " + config + " has no grid size");
+		}
+		return volume;
+	}
+
+	/**
+	 * A method to add the observed duration of a docking to the model
+	 * @param features the rotatable bonds, heavy atoms and grid volume of the docking
+	 * @param seconds the docking duration in seconds
+	 */
+	public synchronized void observe(double[] features, double seconds) {
+
+		double[] x = getRow(features);
+		double y = Math.log(Math.max(seconds, 0.001));
+
+		for (int i = 0; i < x.length; i++) {
+			for (int j = 0; j < x.length; j++) {
+				xtx[i][j] += x[i] * x[j];
+			}
+			xty[i] += x[i] * y;
+		}
+
+		samples++;
+		fitted = false;
+	}
+
+	/**
+	 * A method to estimate the duration of a docking
+	 * @param features the rotatable bonds, heavy atoms and grid volume of the docking
+	 * @return the estimated duration in seconds
+	 */
+	public synchronized double estimate(double[] features) {
+
+		double[] x = getRow(features);
+		double[] b = getCoefficients();
+
+		double log = 0.0;
+
+		for (int i = 0; i < x.length; i++) {
+			log += b[i] * x[i];
+		}
+		return Math.exp(log);
+	}
+
+	/**
+	 * Get the fitted coefficients of the model (intercept, rotatable bonds, heavy atoms, log grid volume)
+	 * @return a copy of the coefficients
+	 */
+	public synchronized double[] getCoefficients() {
+
+		if(!fitted) {
+			coefficients = fit();
+			fitted = true;
+		}
+		return coefficients.clone();
+	}
+
+	/**
+	 * Get the number of observed dockings
+	 * @return the number of observations
+	 */
+	public synchronized int getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Solve (X'X + wI) b = X'y + w prior by Gaussian elimination with partial pivoting
+	 */
+	private double[] fit() {
+
+		int n = PRIOR.length;
+
+		double[][] a = new double[n][n + 1];
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				a[i][j] = xtx[i][j] + (i == j ? PRIOR_WEIGHT : 0.0);
+			}
+			a[i][n] = xty[i] + PRIOR_WEIGHT * PRIOR[i];
+		}
+
+		for (int col = 0; col < n; col++) {
+
+			int pivot = col;
+
+			for (int row = col + 1; row < n; row++) {
+				if(Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+					pivot = row;
+				}
+			}
+
+			double[] tmp = a[col];
+			a[col] = a[pivot];
+			a[pivot] = tmp;
+
+			for (int row = col + 1; row < n; row++) {
+
+				double factor = a[row][col] / a[col][col];
+
+				for (int k = col; k <= n; k++) {
+					a[row][k] -= factor * a[col][k];
+				}
+			}
+		}
+
+		double[] b = new double[n];
+
+		for (int row = n - 1; row >= 0; row--) {
+
+			double sum = a[row][n];
+
+			for (int k = row + 1; k < n; k++) {
+				sum -= a[row][k] * b[k];
+			}
+			b[row] = sum / a[row][row];
+		}
+		return b;
+	}
+
+	private static double[] getRow(double[] features) {
+		return new double[] { 1.0, features[ROTATABLE_BONDS], features[HEAVY_ATOMS],
+				Math.log(Math.max(features[GRID_VOLUME], 1.0)) };
+	}
+}
@@ -0,0 +1,1152 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class to run the AutoDock Vina dockings of a docking folder prepared by the prepare-vina-folders-config operation.
+ *
+ * A docking job is a (variant, ligand) pair of an entry whose ligand docking folder has no _min_docking.pdbqt yet,
+ * so the jobs left by an interrupted run are found again by the next run. Each job runs the docking executable
+ * (the DOCKING_EXECUTABLE config value, vina by default) with the Vina command line options:
+ *
+ * <pre>
+ * [executable] --receptor [variant]_final.pdbqt --ligand [ligand]_min.pdbqt --config [variant]_config.txt
+ *              --seed [seed] --cpu [cpu] --out [ligand]_min_docking.pdbqt.part --log [ligand]_min_log.txt
+ * </pre>
+ *
+ * The receptor and ligand .pdbqt files are used when they exist, otherwise the prepared _final.pdb and _min.mol2
+ * files are passed (for a wrapper script which converts them). The poses are written to a .part file which is
+ * renamed when the job succeeds, so a killed job never leaves a docking which looks complete.
+ *
+ * The number of concurrent jobs is the number of cores divided by the cpu given to each job. A free slot starts
+ * the pending job with the longest runtime estimated by the DockingCostModel, which is calibrated on the journaled
+ * durations and recalibrated as the dockings complete, so the long dockings do not end up alone at the end of the
+ * run. Every job start and end is appended to a journal (the DOCKING_JOURNAL_PATH config value, or
+ * docking-journal.tsv in the docking folder), a failed job is retried with an exponential backoff and a job which
+ * failed maxAttempts times (in this run or a previous one) is given up until its journal lines are removed.
+ *
+ * The variants flagged by the PocketEquivalenceDetector are docked normally, or reuse the wild-type docking of
+ * the ligand, or are docked with a lower exhaustiveness (the DOCKING_EQUIVALENT_VARIANTS config value: none, reuse
+ * or reduce). Reused dockings are done after the other dockings, so the wild-type dockings they copy are done.
+ * A reused docking has a [ligand]_min_reused.txt flag holding the wild-type variant, so the reports can tell
+ * the copied affinities from the docked ones. The flag is removed when the ligand is docked again.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class DockingScheduler {
+
+	public static final String POSES_SUFFIX = "_min_docking.pdbqt";
+	public static final String LOG_SUFFIX = "_min_log.txt";
+	public static final String REUSED_SUFFIX = "_min_reused.txt";
+
+	private static final int PROGRESS_INTERVAL = 100;
+
+	private static final Comparator<DockingJob> LONGEST_FIRST = Comparator.comparingDouble((DockingJob job) -> -job.cost)
+			.thenComparing(DockingJob::getKey);
+
+	/**
+	 * The states of a docking job written to the journal, DONE_REDUCED is a docking of an equivalent variant done
+	 * with the reduced exhaustiveness, its duration is not used to calibrate the cost model
+	 */
+	public enum JobState
+	{
+		STARTED, DONE, DONE_REDUCED, FAILED, REUSED
+	}
+
+	/**
+	 * The handling of the variants flagged by the PocketEquivalenceDetector as having the wild-type pocket
+	 */
+	public enum EquivalentVariants
+	{
+		/** dock the equivalent variants like the other variants */
+		NONE,
+		/** copy the wild-type poses and log of the ligand, or dock if the wild-type docking is missing */
+		REUSE,
+		/** dock the equivalent variants with a lower exhaustiveness */
+		REDUCE;
+
+		/**
+		 * Get the handling from its name
+		 * @param name the name (none, reuse or reduce), case insensitive
+		 * @return the handling
+		 */
+		public static EquivalentVariants fromName(String name) {
+			return EquivalentVariants.valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	private String executable = getProperty("DOCKING_EXECUTABLE", "vina");
+	private String journalPath = Config.getProperty("DOCKING_JOURNAL_PATH");
+
+	private int cores = Config.getThreads();
+	private int cpuPerJob = Integer.parseInt(getProperty("DOCKING_CPU_PER_JOB", "12"));
+	private int maxAttempts = Integer.parseInt(getProperty("DOCKING_MAX_ATTEMPTS", "3"));
+
+	private long backoffMillis = 30000;
+	private long maxBackoffMillis = 600000;
+	private long timeoutMinutes = 0;
+
+	private DockingCostModel costModel = DockingCostModel.create();
+
+	private EquivalentVariants equivalentVariants = EquivalentVariants.fromName(getProperty("DOCKING_EQUIVALENT_VARIANTS", "none"));
+	private int reducedExhaustiveness = Integer.parseInt(getProperty("DOCKING_EQUIVALENT_EXHAUSTIVENESS", "4"));
+
+	private DockingScheduler() {
+	}
+
+	/**
+	 * Create a scheduler configured with the DOCKING_* config values
+	 * @return a new scheduler
+	 */
+	public static DockingScheduler create() {
+		return new DockingScheduler();
+	}
+
+	/**
+	 * Set the docking executable
+	 * @param executable the path or name of the executable, it gets the Vina command line options
+	 * @return the scheduler
+	 */
+	public DockingScheduler executable(String executable) {
+		this.executable = executable;
+		return this;
+	}
+
+	/**
+	 * Set the job journal file
+	 * @param journalPath the journal path, if null or empty docking-journal.tsv in the docking folder is used
+	 * @return the scheduler
+	 */
+	public DockingScheduler journal(String journalPath) {
+		this.journalPath = journalPath;
+		return this;
+	}
+
+	/**
+	 * Set the number of cores the dockings can use
+	 * @param cores the number of cores
+	 * @return the scheduler
+	 */
+	public DockingScheduler cores(int cores) {
+		this.cores = cores;
+		return this;
+	}
+
+	/**
+	 * Set the number of cpus given to each docking (the Vina --cpu option)
+	 * @param cpuPerJob the cpus of a job, it is limited to the number of cores
+	 * @return the scheduler
+	 */
+	public DockingScheduler cpuPerJob(int cpuPerJob) {
+		this.cpuPerJob = cpuPerJob;
+		return this;
+	}
+
+	/**
+	 * Set the number of times a job is run before it is given up
+	 * @param maxAttempts the maximum number of failed attempts of a job
+	 * @return the scheduler
+	 */
+	public DockingScheduler maxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * Set the delay before a failed job is retried, the delay is doubled after each failure
+	 * @param backoffMillis the delay before the first retry in milliseconds
+	 * @param maxBackoffMillis the maximum delay in milliseconds
+	 * @return the scheduler
+	 */
+	public DockingScheduler backoff(long backoffMillis, long maxBackoffMillis) {
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		return this;
+	}
+
+	/**
+	 * Set the time after which a running docking is killed and counted as failed
+	 * @param timeoutMinutes the timeout in minutes, 0 for no timeout
+	 * @return the scheduler
+	 */
+	public DockingScheduler timeout(long timeoutMinutes) {
+		this.timeoutMinutes = timeoutMinutes;
+		return this;
+	}
+
+	/**
+	 * Set the cost model used to start the longest dockings first, it is calibrated with the journaled and
+	 * completed dockings of each run
+	 * @param costModel the cost model
+	 * @return the scheduler
+	 */
+	public DockingScheduler costModel(DockingCostModel costModel) {
+		this.costModel = costModel;
+		return this;
+	}
+
+	/**
+	 * Set how the variants whose pocket is equivalent to the wild-type pocket are docked
+	 * @param equivalentVariants the handling of the equivalent variants
+	 * @return the scheduler
+	 */
+	public DockingScheduler equivalentVariants(EquivalentVariants equivalentVariants) {
+		this.equivalentVariants = equivalentVariants;
+		return this;
+	}
+
+	/**
+	 * Set the exhaustiveness of the dockings of the equivalent variants when they are docked with EquivalentVariants.REDUCE
+	 * @param reducedExhaustiveness the Vina exhaustiveness
+	 * @return the scheduler
+	 */
+	public DockingScheduler reducedExhaustiveness(int reducedExhaustiveness) {
+		this.reducedExhaustiveness = reducedExhaustiveness;
+		return this;
+	}
+
+	/**
+	 * Get the cost model of the scheduler
+	 * @return the cost model
+	 */
+	public DockingCostModel getCostModel() {
+		return costModel;
+	}
+
+	/**
+	 * Get the number of cpus given to each docking
+	 * @return the cpus of a job
+	 */
+	public int getCpuPerJob() {
+		return Math.max(1, Math.min(this.cpuPerJob, this.cores));
+	}
+
+	/**
+	 * Get the number of dockings run at the same time
+	 * @return the number of concurrent jobs
+	 */
+	public int getConcurrentJobs() {
+		return Math.max(1, this.cores / getCpuPerJob());
+	}
+
+	/**
+	 * A method to find the pending docking jobs of a docking folder, the variants without config file are skipped
+	 * @param vinaPath the AutoDock Vina docking folder
+	 * @return the jobs whose ligand docking folder has no docking poses, sorted by entry, variant and ligand
+	 */
+	public List<DockingJob> discoverJobs(String vinaPath) {
+
+		List<DockingJob> jobs = new ArrayList<DockingJob>();
+
+		for (String pdb : VinaPreparationEngine.listEntries(vinaPath)) {
+
+			Path proteins = Paths.get(vinaPath, pdb, "proteins");
+
+			for (String variant : VinaPreparationEngine.listEntries(proteins.toString())) {
+
+				Path variantFolder = proteins.resolve(variant);
+
+				if(!Files.exists(variantFolder.resolve(variant + "_config.txt"))) {
+					System.out.println(variant + " has no config file, its dockings are skipped");
+					continue;
+				}
+
+				for (String ligand : VinaPreparationEngine.listEntries(variantFolder.resolve("vina").toString())) {
+
+					DockingJob job = new DockingJob(Paths.get(vinaPath), pdb, variant, ligand);
+
+					if(!Files.exists(job.getPoses())) {
+						jobs.add(job);
+					}
+				}
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * A method to run all the pending docking jobs of a docking folder and wait until they are done or given up
+	 * @param vinaPath the AutoDock Vina docking folder
+	 * @return the metrics of the run
+	 * @throws IOException in case of error in IO operations
+	 */
+	public Metrics run(String vinaPath) throws IOException {
+		return run(vinaPath, discoverJobs(vinaPath));
+	}
+
+	/**
+	 * A method to run a list of docking jobs and wait until they are done or given up, the longest jobs
+	 * estimated by the cost model are started first
+	 * @param vinaPath the AutoDock Vina docking folder
+	 * @param jobs the jobs to run
+	 * @return the metrics of the run
+	 * @throws IOException in case of error in IO operations
+	 */
+	public Metrics run(String vinaPath, List<DockingJob> jobs) throws IOException {
+
+		String journalFile = this.journalPath == null || this.journalPath.trim().isEmpty()
+				? Paths.get(vinaPath, "docking-journal.tsv").toString() : this.journalPath.trim();
+
+		Metrics metrics = new Metrics();
+
+		try (Journal journal = Journal.open(journalFile)) {
+
+			calibrate(vinaPath, journal.getDurations());
+
+			List<DockingJob> runnable = new ArrayList<DockingJob>();
+
+			for (DockingJob job : jobs) {
+
+				job.failures.set(journal.getFailures(job.getKey()));
+
+				if(job.failures.get() >= this.maxAttempts) {
+					metrics.gaveUp.incrementAndGet();
+				}else {
+					runnable.add(job);
+				}
+			}
+
+			System.out.println(jobs.size() + " pending dockings, " + metrics.gaveUp.get() + " given up after "
+					+ this.maxAttempts + " failed attempts (see " + journalFile + "), running " + getConcurrentJobs()
+					+ " dockings at a time with " + getCpuPerJob() + " cpus each");
+
+			List<DockingJob> reusable = findEquivalentVariants(runnable);
+
+			runnable.removeAll(reusable);
+
+			new Dispatcher(journal, metrics, runnable).run();
+
+			if(!reusable.isEmpty()) {
+				new Dispatcher(journal, metrics, reuseWildTypeDockings(reusable, journal, metrics)).run();
+			}
+		}
+
+		System.out.println("Dockings finished: " + metrics);
+
+		return metrics;
+	}
+
+	/**
+	 * Mark the jobs of the variants flagged as equivalent to the wild-type
+	 * @return the jobs to reuse the wild-type dockings for, empty unless the equivalent variants are reused
+	 */
+	private List<DockingJob> findEquivalentVariants(List<DockingJob> jobs) throws IOException {
+
+		List<DockingJob> reusable = new ArrayList<DockingJob>();
+
+		if(this.equivalentVariants == EquivalentVariants.NONE) {
+			return reusable;
+		}
+
+		Map<String, String> wildTypes = new HashMap<String, String>();
+
+		for (DockingJob job : jobs) {
+
+			String key = job.getPdb() + "/" + job.getVariant();
+
+			if(!wildTypes.containsKey(key)) {
+				wildTypes.put(key, PocketEquivalenceDetector.getEquivalentWildType(job.getVariantFolder(), job.getVariant()));
+			}
+
+			job.equivalentWildType = wildTypes.get(key);
+
+			if(job.equivalentWildType != null && this.equivalentVariants == EquivalentVariants.REUSE) {
+				reusable.add(job);
+			}
+		}
+
+		long equivalent = jobs.stream().filter(job -> job.equivalentWildType != null).count();
+
+		if(equivalent > 0) {
+			System.out.println(equivalent + " dockings of variants with the wild-type pocket, "
+					+ (this.equivalentVariants == EquivalentVariants.REUSE ? "reusing the wild-type dockings"
+							: "docked with exhaustiveness " + this.reducedExhaustiveness));
+		}
+		return reusable;
+	}
+
+	/**
+	 * Copy the wild-type poses and log to the jobs of the equivalent variants
+	 * @return the jobs whose wild-type docking is missing, they are docked
+	 */
+	private List<DockingJob> reuseWildTypeDockings(List<DockingJob> jobs, Journal journal, Metrics metrics) throws IOException {
+
+		List<DockingJob> missing = new ArrayList<DockingJob>();
+
+		for (DockingJob job : jobs) {
+
+			DockingJob wildType = new DockingJob(job.vinaPath, job.getPdb(), job.equivalentWildType, job.getLigand());
+
+			if(!Files.exists(wildType.getPoses())) {
+				job.equivalentWildType = null;
+				missing.add(job);
+				continue;
+			}
+
+			Path partialPoses = job.getPoses().resolveSibling(job.getPoses().getFileName() + ".part");
+
+			// the flag is written first, a reused docking never looks like a docked one
+			Files.write(job.getReusedFlag(), Arrays.asList(job.equivalentWildType), StandardCharsets.UTF_8);
+
+			if(Files.exists(wildType.getLog())) {
+				Files.copy(wildType.getLog(), job.getLog(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			Files.copy(wildType.getPoses(), partialPoses, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(partialPoses, job.getPoses(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			journal.append(job, JobState.REUSED, job.failures.get() + 1, 0, 0);
+
+			metrics.reused.incrementAndGet();
+		}
+
+		if(!missing.isEmpty()) {
+			System.out.println(missing.size() + " dockings of equivalent variants have no wild-type docking to reuse, they are docked");
+		}
+		return missing;
+	}
+
+	/**
+	 * Add the journaled durations of the completed dockings to the cost model
+	 */
+	private void calibrate(String vinaPath, Map<String, Long> durations) {
+
+		int observed = 0;
+
+		for (Map.Entry<String, Long> duration : durations.entrySet()) {
+
+			String[] key = duration.getKey().split("/");
+
+			if(key.length != 3) {
+				continue;
+			}
+
+			try {
+				this.costModel.observe(this.costModel.getFeatures(new DockingJob(Paths.get(vinaPath), key[0], key[1], key[2])),
+						duration.getValue() / 1000.0);
+				observed++;
+			} catch (IOException | RuntimeException e) {
+				// the docking folder of a journaled job can be gone or changed, its duration is not used
+			}
+		}
+
+		if(observed > 0) {
+			System.out.println("Docking cost model calibrated on " + observed + " journaled dockings");
+		}
+	}
+
+	/**
+	 * The dispatch of the jobs of a run, a free slot takes the pending job with the longest estimated runtime
+	 */
+	private class Dispatcher {
+
+		private final Journal journal;
+		private final Metrics metrics;
+
+		private final PriorityQueue<DockingJob> pending = new PriorityQueue<DockingJob>(LONGEST_FIRST);
+
+		private final CountDownLatch remaining;
+		private final ScheduledThreadPoolExecutor executor;
+
+		private int freeSlots = getConcurrentJobs();
+
+		Dispatcher(Journal journal, Metrics metrics, List<DockingJob> jobs) {
+
+			this.journal = journal;
+			this.metrics = metrics;
+			this.remaining = new CountDownLatch(jobs.size());
+
+			// one more thread than slots so that the retry timers do not wait for a running docking
+			this.executor = new ScheduledThreadPoolExecutor(getConcurrentJobs() + 1);
+
+			for (DockingJob job : jobs) {
+				estimate(job);
+				this.pending.add(job);
+			}
+		}
+
+		void run() throws IOException {
+
+			try {
+
+				synchronized (this) {
+					dispatch();
+				}
+
+				this.remaining.await();
+
+			} catch (InterruptedException e) {
+
+				Thread.currentThread().interrupt();
+				throw new IOException("The dockings were interrupted", e);
+
+			} finally {
+				this.executor.shutdownNow();
+			}
+		}
+
+		private void estimate(DockingJob job) {
+
+			try {
+
+				if(job.features == null) {
+					job.features = costModel.getFeatures(job);
+				}
+				job.cost = costModel.estimate(job.features);
+
+			} catch (IOException | RuntimeException e) {
+				System.out.println(job.getKey() + " has no cost estimate: " + e);
+				job.cost = 0.0;
+			}
+		}
+
+		/**
+		 * Start pending jobs on the free slots, called with the dispatcher lock held
+		 */
+		private void dispatch() {
+
+			while (this.freeSlots > 0 && !this.pending.isEmpty()) {
+
+				DockingJob job = this.pending.poll();
+
+				this.freeSlots--;
+				this.executor.execute(() -> runJob(job));
+			}
+		}
+
+		private synchronized void release() {
+			this.freeSlots++;
+			dispatch();
+		}
+
+		private synchronized void retry(DockingJob job) {
+			this.pending.add(job);
+			dispatch();
+		}
+
+		/**
+		 * Re-estimate the pending jobs with the recalibrated cost model
+		 */
+		private synchronized void reorder() {
+
+			List<DockingJob> jobs = new ArrayList<DockingJob>(this.pending);
+
+			this.pending.clear();
+
+			for (DockingJob job : jobs) {
+				estimate(job);
+			}
+			this.pending.addAll(jobs);
+		}
+
+		/**
+		 * Run one attempt of a job and schedule its retry if it failed, the slot of the job is always released
+		 * and the job counted down unless it is retried, so an unexpected error cannot block the run
+		 */
+		private void runJob(DockingJob job) {
+
+			int attempt = job.failures.get() + 1;
+
+			long start = System.nanoTime();
+
+			boolean finished = true;
+			boolean interrupted = false;
+
+			this.metrics.running.incrementAndGet();
+
+			try {
+
+				int exitCode;
+
+				try {
+					this.journal.append(job, JobState.STARTED, attempt, 0, 0);
+					exitCode = runDocking(job);
+				} catch (IOException | RuntimeException e) {
+					System.out.println(job.getKey() + " cannot be run: " + e);
+					exitCode = -1;
+				} finally {
+					this.metrics.running.decrementAndGet();
+				}
+
+				long millis = (System.nanoTime() - start) / 1000000;
+
+				if(exitCode == 0) {
+					completed(job, attempt, millis);
+				}else {
+					finished = failed(job, attempt, exitCode, millis);
+				}
+
+			} catch (InterruptedException e) {
+
+				Thread.currentThread().interrupt();
+				interrupted = true;
+
+			} catch (RuntimeException e) {
+
+				System.out.println("The docking of " + job.getKey() + " ended with an error: " + e);
+
+			} finally {
+
+				if(!interrupted) {
+
+					if(finished) {
+						this.remaining.countDown();
+					}
+					release();
+				}
+			}
+		}
+
+		/**
+		 * Journal a completed job and recalibrate the cost model
+		 */
+		private void completed(DockingJob job, int attempt, long millis) {
+
+			boolean reduced = isReduced(job);
+
+			appendToJournal(job, reduced ? JobState.DONE_REDUCED : JobState.DONE, attempt, 0, millis);
+
+			this.metrics.jobMillis.addAndGet(millis);
+
+			// the dockings run with a lower exhaustiveness would bias the cost model
+			if(job.features != null && !reduced) {
+				costModel.observe(job.features, millis / 1000.0);
+			}
+
+			long completed = this.metrics.completed.incrementAndGet();
+
+			if(completed % PROGRESS_INTERVAL == 0) {
+				System.out.println(this.metrics);
+			}
+
+			// recalibrate often at the start of a run and then with the progress reports
+			if(completed % PROGRESS_INTERVAL == 0 || Long.bitCount(completed) == 1) {
+				reorder();
+			}
+		}
+
+		/**
+		 * Journal a failed attempt and schedule the retry of the job
+		 * @return true if the job is given up, false if it is retried
+		 */
+		private boolean failed(DockingJob job, int attempt, int exitCode, long millis) {
+
+			appendToJournal(job, JobState.FAILED, attempt, exitCode, millis);
+
+			this.metrics.failedAttempts.incrementAndGet();
+
+			int failures = job.failures.incrementAndGet();
+
+			if(failures >= maxAttempts) {
+
+				System.out.println(job.getKey() + " given up after " + failures + " failed attempts (exit code " + exitCode + ")");
+
+				this.metrics.gaveUp.incrementAndGet();
+				return true;
+			}
+
+			long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(failures - 1, 20));
+
+			this.metrics.retries.incrementAndGet();
+
+			this.executor.schedule(() -> retry(job), delay, TimeUnit.MILLISECONDS);
+
+			return false;
+		}
+
+		private void appendToJournal(DockingJob job, JobState state, int attempt, int exitCode, long millis) {
+
+			try {
+				this.journal.append(job, state, attempt, exitCode, millis);
+			} catch (IOException e) {
+				System.out.println("The docking journal cannot be written: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Check if a job is docked with the reduced exhaustiveness
+	 */
+	private boolean isReduced(DockingJob job) {
+		return job.equivalentWildType != null && this.equivalentVariants == EquivalentVariants.REDUCE;
+	}
+
+	/**
+	 * Run the docking executable of a job and move its poses to their final name if it succeeded
+	 * @return the exit code of the executable, or -1 if it timed out or did not write the poses
+	 */
+	private int runDocking(DockingJob job) throws IOException, InterruptedException {
+
+		Path poses = job.getPoses();
+		Path partialPoses = poses.resolveSibling(poses.getFileName() + ".part");
+
+		Files.deleteIfExists(partialPoses);
+		Files.deleteIfExists(job.getReusedFlag());
+
+		List<String> command = new ArrayList<String>(Arrays.asList(this.executable,
+				"--receptor", job.getReceptor().toString(),
+				"--ligand", job.getLigandFile().toString(),
+				"--config", job.getConfig().toString()));
+
+		String seed = job.getSeed();
+
+		if(seed != null) {
+			command.addAll(Arrays.asList("--seed", seed));
+		}
+
+		if(isReduced(job)) {
+			command.addAll(Arrays.asList("--exhaustiveness", String.valueOf(this.reducedExhaustiveness)));
+		}
+
+		command.addAll(Arrays.asList("--cpu", String.valueOf(getCpuPerJob()),
+				"--out", partialPoses.toString(),
+				"--log", job.getLog().toString()));
+
+		File output = job.getFolder().resolve(job.getLigand() + "_min_vina.out").toFile();
+
+		Process process = new ProcessBuilder(command)
+				.directory(job.getFolder().toFile())
+				.redirectErrorStream(true)
+				.redirectOutput(Redirect.appendTo(output))
+				.start();
+
+		try {
+
+			if(this.timeoutMinutes > 0 && !process.waitFor(this.timeoutMinutes, TimeUnit.MINUTES)) {
+				System.out.println(job.getKey() + " timed out after " + this.timeoutMinutes + " minutes");
+				return -1;
+			}
+
+			int exitCode = process.waitFor();
+
+			if(exitCode != 0) {
+				return exitCode;
+			}
+
+			if(!Files.exists(partialPoses)) {
+				System.out.println(job.getKey() + " exited without writing " + partialPoses.getFileName());
+				return -1;
+			}
+
+			Files.move(partialPoses, poses, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			return 0;
+
+		} finally {
+
+			if(process.isAlive()) {
+				process.destroyForcibly();
+			}
+		}
+	}
+
+	private static String getProperty(String key, String defaultValue) {
+
+		String value = Config.getProperty(key);
+
+		return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+	}
+
+	/**
+	 * A docking of one ligand in one protein variant
+	 */
+	public static class DockingJob {
+
+		private final Path vinaPath;
+		private final String pdb;
+		private final String variant;
+		private final String ligand;
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		private volatile double[] features;
+		private volatile double cost;
+
+		private String equivalentWildType;
+
+		/**
+		 * Create a docking job
+		 * @param vinaPath the AutoDock Vina docking folder
+		 * @param pdb the PdbBind entry
+		 * @param variant the protein variant (wild-type or mutation) folder name
+		 * @param ligand the ligand docking folder name
+		 */
+		public DockingJob(Path vinaPath, String pdb, String variant, String ligand) {
+			this.vinaPath = vinaPath;
+			this.pdb = pdb;
+			this.variant = variant;
+			this.ligand = ligand;
+		}
+
+		/**
+		 * Get the job key used in the journal
+		 * @return the key pdb/variant/ligand
+		 */
+		public String getKey() {
+			return pdb + "/" + variant + "/" + ligand;
+		}
+
+		public String getPdb() {
+			return pdb;
+		}
+
+		public String getVariant() {
+			return variant;
+		}
+
+		public String getLigand() {
+			return ligand;
+		}
+
+		/**
+		 * Get the ligand docking folder of the job
+		 * @return the folder path
+		 */
+		public Path getFolder() {
+			return getVariantFolder().resolve("vina").resolve(ligand);
+		}
+
+		/**
+		 * Get the docking poses file, the job is done when it exists
+		 * @return the poses file path
+		 */
+		public Path getPoses() {
+			return getFolder().resolve(ligand + POSES_SUFFIX);
+		}
+
+		/**
+		 * Get the docking log file
+		 * @return the log file path
+		 */
+		public Path getLog() {
+			return getFolder().resolve(ligand + LOG_SUFFIX);
+		}
+
+		/**
+		 * Get the flag of a docking copied from the wild-type variant
+		 * @return the flag file path, the file holds the wild-type variant name
+		 */
+		public Path getReusedFlag() {
+			return getFolder().resolve(ligand + REUSED_SUFFIX);
+		}
+
+		/**
+		 * Get the Vina config file of the variant
+		 * @return the config file path
+		 */
+		public Path getConfig() {
+			return getVariantFolder().resolve(variant + "_config.txt");
+		}
+
+		/**
+		 * Get the receptor file, the .pdbqt file if it exists or the minimized .pdb file
+		 * @return the receptor file path
+		 */
+		public Path getReceptor() {
+
+			Path pdbqt = getVariantFolder().resolve(variant + "_final.pdbqt");
+
+			return Files.exists(pdbqt) ? pdbqt : getVariantFolder().resolve(variant + "_final.pdb");
+		}
+
+		/**
+		 * Get the ligand file, the .pdbqt file if it exists or the minimized .mol2 file
+		 * @return the ligand file path
+		 */
+		public Path getLigandFile() {
+
+			Path ligands = this.vinaPath.resolve(pdb).resolve("ligands");
+			Path pdbqt = ligands.resolve(ligand + "_min.pdbqt");
+
+			return Files.exists(pdbqt) ? pdbqt : ligands.resolve(ligand + "_min.mol2");
+		}
+
+		/**
+		 * Get the docking seed of the variant
+		 * @return the content of the seed file, or null if the variant has no seed file
+		 * @throws IOException in case of error in IO operations
+		 */
+		public String getSeed() throws IOException {
+
+			Path seed = getVariantFolder().resolve(variant + "_seed.txt");
+
+			if(!Files.exists(seed)) {
+				return null;
+			}
+			return new String(Files.readAllBytes(seed), StandardCharsets.UTF_8).trim();
+		}
+
+		/**
+		 * Get the variant folder of the job
+		 * @return the folder path
+		 */
+		public Path getVariantFolder() {
+			return this.vinaPath.resolve(pdb).resolve("proteins").resolve(variant);
+		}
+	}
+
+	/**
+	 * The throughput metrics of a scheduler run
+	 */
+	public static class Metrics {
+
+		private final long start = System.nanoTime();
+
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong failedAttempts = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLong gaveUp = new AtomicLong();
+		private final AtomicLong reused = new AtomicLong();
+		private final AtomicLong jobMillis = new AtomicLong();
+		private final AtomicInteger running = new AtomicInteger();
+
+		/**
+		 * Get the number of dockings done
+		 * @return the number of completed jobs
+		 */
+		public long getCompleted() {
+			return completed.get();
+		}
+
+		/**
+		 * Get the number of failed docking attempts
+		 * @return the number of failed attempts
+		 */
+		public long getFailedAttempts() {
+			return failedAttempts.get();
+		}
+
+		/**
+		 * Get the number of retried dockings
+		 * @return the number of retries
+		 */
+		public long getRetries() {
+			return retries.get();
+		}
+
+		/**
+		 * Get the number of dockings given up
+		 * @return the number of jobs which failed the maximum number of attempts
+		 */
+		public long getGaveUp() {
+			return gaveUp.get();
+		}
+
+		/**
+		 * Get the number of dockings of equivalent variants which reused the wild-type docking
+		 * @return the number of reused dockings
+		 */
+		public long getReused() {
+			return reused.get();
+		}
+
+		/**
+		 * Get the number of dockings running now
+		 * @return the number of running jobs
+		 */
+		public int getRunning() {
+			return running.get();
+		}
+
+		/**
+		 * Get the average duration of the completed dockings
+		 * @return the average duration in seconds
+		 */
+		public double getAverageJobSeconds() {
+
+			long count = completed.get();
+
+			return count == 0 ? 0.0 : jobMillis.get() / 1000.0 / count;
+		}
+
+		/**
+		 * Get the number of dockings completed per hour since the start of the run
+		 * @return the throughput in jobs per hour
+		 */
+		public double getJobsPerHour() {
+
+			double hours = (System.nanoTime() - start) / 3.6e12;
+
+			return hours <= 0 ? 0.0 : completed.get() / hours;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d done, %d reused, %d running, %d failed attempts, %d retries, %d given up, %.1f jobs/hour, %.1f s/job",
+					getCompleted(), getReused(), getRunning(), getFailedAttempts(), getRetries(), getGaveUp(), getJobsPerHour(),
+					getAverageJobSeconds());
+		}
+	}
+
+	/**
+	 * The append-only journal of job states, one TSV line per event
+	 * (time in milliseconds, job key, state, attempt, exit code, duration in milliseconds). A line which cannot be
+	 * parsed, or the last line without line break left by a crash while appending, is ignored when the journal is read
+	 */
+	private static class Journal implements Closeable {
+
+		private final BufferedWriter writer;
+
+		private final Map<String, Integer> failures = new HashMap<String, Integer>();
+		private final Map<String, Long> durations = new HashMap<String, Long>();
+
+		private boolean lineBreakNeeded = false;
+
+		private Journal(BufferedWriter writer) {
+			this.writer = writer;
+		}
+
+		static Journal open(String path) throws IOException {
+
+			Path file = Paths.get(path);
+
+			Map<String, Integer> failures = new HashMap<String, Integer>();
+			Map<String, Long> durations = new HashMap<String, Long>();
+
+			boolean lineBreakNeeded = false;
+
+			if(Files.exists(file)) {
+
+				String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+				String[] lines = content.split("\n", -1);
+
+				// the text after the last line break is empty, or a line cut by a crash while appending
+				lineBreakNeeded = !lines[lines.length - 1].isEmpty();
+
+				int skipped = lineBreakNeeded ? 1 : 0;
+
+				for (int i = 0; i < lines.length - 1; i++) {
+
+					String[] cells = lines[i].split("\t", -1);
+
+					long duration = cells.length == 6 ? parseDuration(cells) : -1;
+
+					if(duration < 0) {
+
+						if(!lines[i].trim().isEmpty()) {
+							skipped++;
+						}
+						continue;
+					}
+
+					if(JobState.FAILED.name().equals(cells[2])) {
+						failures.merge(cells[1], 1, Integer::sum);
+					}else if(JobState.DONE.name().equals(cells[2])) {
+						failures.remove(cells[1]);
+						durations.put(cells[1], duration);
+					}else if(JobState.DONE_REDUCED.name().equals(cells[2])) {
+						failures.remove(cells[1]);
+						durations.remove(cells[1]);
+					}
+				}
+
+				if(skipped > 0) {
+					System.out.println(path + ": " + skipped + " incomplete or invalid journal lines are ignored");
+				}
+
+			}else if(file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+
+			Journal journal = new Journal(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND));
+
+			journal.failures.putAll(failures);
+			journal.durations.putAll(durations);
+			journal.lineBreakNeeded = lineBreakNeeded;
+
+			return journal;
+		}
+
+		/**
+		 * Check the numbers of a journal line and get its duration, -1 if the line is invalid
+		 */
+		private static long parseDuration(String[] cells) {
+
+			try {
+
+				Long.parseLong(cells[0]);
+				Integer.parseInt(cells[3]);
+				Integer.parseInt(cells[4]);
+
+				return Long.parseLong(cells[5]);
+
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		int getFailures(String key) {
+			return failures.getOrDefault(key, 0);
+		}
+
+		/**
+		 * Get the durations of the last DONE line of each job, the jobs last done with the reduced exhaustiveness are left out
+		 */
+		Map<String, Long> getDurations() {
+			return durations;
+		}
+
+		synchronized void append(DockingJob job, JobState state, int attempt, int exitCode, long millis) throws IOException {
+
+			// end the line cut by a crash so it is not merged with the first record, the extra cell keeps it invalid
+			if(this.lineBreakNeeded) {
+				this.writer.write("\tINCOMPLETE\n");
+				this.lineBreakNeeded = false;
+			}
+
+			this.writer.write(System.currentTimeMillis() + "\t" + job.getKey() + "\t" + state + "\t" + attempt + "\t"
+					+ exitCode + "\t" + millis + "\n");
+			this.writer.flush();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			this.writer.close();
+		}
+	}
+}
@@ -6,9 +6,14 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.biojava.nbio.aaproperties.profeat.convertor.Convert2Charge;
@@ -20,49 +25,32 @@ import org.biojava.nbio.aaproperties.profeat.convertor.Convert2SecondaryStructur
 import org.biojava.nbio.aaproperties.profeat.convertor.Convert2SolventAccessibility;
 import org.biojava.nbio.structure.StructureException;
 import org.biojava.nbio.structure.secstruc.SecStrucState;
-import org.openscience.cdk.DefaultChemObjectBuilder;
-import org.openscience.cdk.config.Elements;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.fingerprint.CircularFingerprinter;
-import org.openscience.cdk.geometry.surface.NumericalSurface;
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.qsar.descriptors.molecular.ALOGPDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.APolDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.AromaticAtomsCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.AromaticBondsCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.AtomCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.BCUTDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.BasicGroupCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.CarbonTypesDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.FractionalPSADescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.HBondAcceptorCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.HBondDonorCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.JPlogPDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.MomentOfInertiaDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.RotatableBondsCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.RuleOfFiveDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.SmallRingDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.TPSADescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.VABCDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.VAdjMaDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.WHIMDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.WeightDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.XLogPDescriptor;
-import org.openscience.cdk.qsar.result.DoubleArrayResult;
-import org.openscience.cdk.qsar.result.DoubleResult;
-import org.openscience.cdk.qsar.result.IntegerArrayResult;
 
 import com.univocity.parsers.tsv.TsvParser;
 import com.univocity.parsers.tsv.TsvParserSettings;
 
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.DescriptorFamily;
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.Input;
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.LigandDescriptors;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.model.PreparedLigand;
 import io.github.ammar257ammar.psnpbind.core.utils.AAprops;
-import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetWriter;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandDescriptorCache;
 import io.github.ammar257ammar.psnpbind.core.utils.PdbTools;
 
 
 public class Featurizer {
 
+	static final String[] WHIM_WEIGHTS = { "unity", "mass", "volume", "eneg", "polar" };
+
+	static final String[] RULE_OF_FIVE_LABELS = { "V0", "V1", "V2", "V3", "V4", "V5" };
+
+	public static final int LIGANDS_BATCH_SIZE = 256;
+
 	public static double r(double value) {
 
 		return (double) Math.round(value * Math.pow(10, 4)) / Math.pow(10, 4);
@@ -434,339 +422,345 @@ public class Featurizer {
 		return header;
 	}
 
-	public static List<String[]> getLigandsFeatures(String ligandsPath, String filePath, String singlePDB)
-			throws IOException, StructureException, ClassNotFoundException, CDKException, CloneNotSupportedException {
-
-		TsvParserSettings settings = new TsvParserSettings();
-		settings.getFormat().setLineSeparator("\n");
-
-		TsvParser parser = new TsvParser(settings);
-
-		List<String[]> rows = parser.parseAll(new FileReader(filePath));
-
-		List<String[]> annotatedLigands = new ArrayList<String[]>(rows.size());
+	/**
+	 * Create an empty feature matrix with the schema of the ligand features table
+	 * @return a FeatureMatrix with the ligand identification and descriptor columns
+	 */
+	public static FeatureMatrix createLigandFeatureMatrix() {
+		return createLigandFeatureMatrix(EnumSet.allOf(DescriptorFamily.class));
+	}
 
-		List<String> header = new ArrayList<String>();
+	/**
+	 * Create an empty feature matrix with the schema of the ligand features table restricted to some descriptor families
+	 * @param families the descriptor families to include (in the order of the DescriptorFamily constants)
+	 * @return a FeatureMatrix with the ligand identification columns and the columns of the selected families
+	 */
+	public static FeatureMatrix createLigandFeatureMatrix(Set<DescriptorFamily> families) {
 
-		header.add("pdb");
-		header.add("ligand_file");
-		header.add("chembl_id");
-		header.add("tanimoto_index");
-
-		header.add("WeightDescriptor");
-		header.add("RuleOfFiveDescriptor");
-		header.add("RotatableBondsCountDescriptor");
-		header.add("HBondDonorCountDescriptor");
-		header.add("HBondAcceptorCountDescriptor");
-		header.add("APolDescriptor");
-
-		for (int i = 1; i <= 9; i++) {
-			header.add("SmallRingDescriptor" + i);
-		}
+		FeatureMatrix matrix = FeatureMatrix.create();
 
-		header.add("VABCDescriptor");
-		header.add("TPSADescriptor");
-		header.add("FractionalPSADescriptor");
+		matrix.addColumn("pdb", ColumnType.STRING);
+		matrix.addColumn("ligand_file", ColumnType.STRING);
+		matrix.addColumn("chembl_id", ColumnType.STRING);
+		matrix.addColumn("tanimoto_index", ColumnType.STRING);
 
-		for (int i = 1; i <= 7; i++) {
-			header.add("MomentOfInertiaDescriptor" + i);
+		for (DescriptorFamily family : DescriptorFamily.values()) {
+			if (families.contains(family)) {
+				family.addColumns(matrix);
+			}
 		}
 
-		header.add("AromaticAtomsCountDescriptor");
-		header.add("AromaticBondsCountDescriptor");
-		header.add("AtomCountDescriptor");
-		header.add("XLogPDescriptor");
-		header.add("VAdjMaDescriptor");
-		header.add("BasicGroupCountDescriptor");
-		header.add("TotalSurfaceArea");
-
-		header.add("AlogPDescriptor1");
-		header.add("AlogPDescriptor2");
-		header.add("AlogPDescriptor3");
-
-		header.add("JPlogPDescriptor");
+		return matrix;
+	}
 
-		for (int i = 1; i <= 6; i++) {
-			header.add("BCUTDescriptor" + i);
-		}
+	/**
+	 * A method to compute the features of the ligands of one or all PDBbind entries
+	 * @param ligandsPath the path of the ligands folder
+	 * @param filePath the path of the ligands TSV file (pdb, ligand, tanimoto, ...)
+	 * @param singlePDB the PDB ID of the entry to featurize or "all"
+	 * @return a feature matrix with one row per ligand
+	 * @throws IOException in case of error in IO operations
+	 * @throws StructureException in case of error in reading the structure
+	 * @throws ClassNotFoundException in case of error in instantiating a descriptor
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws CloneNotSupportedException in case of error in cloning a molecule
+	 */
+	public static FeatureMatrix getLigandsFeatures(String ligandsPath, String filePath, String singlePDB)
+			throws IOException, StructureException, ClassNotFoundException, CDKException, CloneNotSupportedException {
+		return featurizeLigands(ligandsPath, filePath, singlePDB, EnumSet.allOf(DescriptorFamily.class), null);
+	}
 
-		String[] weights = { "unity", "mass", "volume", "eneg", "polar" };
+	/**
+	 * A method to compute selected descriptor families of the ligands of one or all PDBbind entries
+	 * @param ligandsPath the path of the ligands folder
+	 * @param filePath the path of the ligands TSV file (pdb, ligand, tanimoto, ...)
+	 * @param singlePDB the PDB ID of the entry to featurize or "all"
+	 * @param families the descriptor families to compute (see DescriptorFamily.parseSelection)
+	 * @return a feature matrix with one row per ligand
+	 * @throws IOException in case of error in IO operations
+	 * @throws StructureException in case of error in reading the structure
+	 * @throws ClassNotFoundException in case of error in instantiating a descriptor
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws CloneNotSupportedException in case of error in cloning a molecule
+	 */
+	public static FeatureMatrix getLigandsFeatures(String ligandsPath, String filePath, String singlePDB,
+			Set<DescriptorFamily> families)
+			throws IOException, StructureException, ClassNotFoundException, CDKException, CloneNotSupportedException {
+		return featurizeLigands(ligandsPath, filePath, singlePDB, families, null);
+	}
 
-		for (String weight : weights) {
-			for (int i = 1; i <= 17; i++) {
-				header.add("WHIMDescriptor" + "_" + weight + i);
-			}
-		}
+	/**
+	 * A method to compute the features of the ligands of one or all PDBbind entries and stream them to a
+	 * DatasetWriter in batches of LIGANDS_BATCH_SIZE rows, so the features of all ligands are never held in memory
+	 * @param ligandsPath the path of the ligands folder
+	 * @param filePath the path of the ligands TSV file (pdb, ligand, tanimoto, ...)
+	 * @param singlePDB the PDB ID of the entry to featurize or "all"
+	 * @param writer the writer of the ligands features table (it is not closed by this method)
+	 * @return the number of rows written
+	 * @throws IOException in case of error in IO operations
+	 * @throws StructureException in case of error in reading the structure
+	 * @throws ClassNotFoundException in case of error in instantiating a descriptor
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws CloneNotSupportedException in case of error in cloning a molecule
+	 */
+	public static long writeLigandsFeatures(String ligandsPath, String filePath, String singlePDB, DatasetWriter writer)
+			throws IOException, StructureException, ClassNotFoundException, CDKException, CloneNotSupportedException {
+		return writeLigandsFeatures(ligandsPath, filePath, singlePDB, EnumSet.allOf(DescriptorFamily.class), writer);
+	}
 
-		header.add("AtomCountDescriptorN");
-		header.add("AtomCountDescriptorO");
-		header.add("Electronegativity");
+	/**
+	 * A method to compute selected descriptor families of the ligands of one or all PDBbind entries and stream them
+	 * to a DatasetWriter in batches of LIGANDS_BATCH_SIZE rows
+	 * @param ligandsPath the path of the ligands folder
+	 * @param filePath the path of the ligands TSV file (pdb, ligand, tanimoto, ...)
+	 * @param singlePDB the PDB ID of the entry to featurize or "all"
+	 * @param families the descriptor families to compute (see DescriptorFamily.parseSelection)
+	 * @param writer the writer of the ligands features table (it is not closed by this method)
+	 * @return the number of rows written
+	 * @throws IOException in case of error in IO operations
+	 * @throws StructureException in case of error in reading the structure
+	 * @throws ClassNotFoundException in case of error in instantiating a descriptor
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws CloneNotSupportedException in case of error in cloning a molecule
+	 */
+	public static long writeLigandsFeatures(String ligandsPath, String filePath, String singlePDB,
+			Set<DescriptorFamily> families, DatasetWriter writer)
+			throws IOException, StructureException, ClassNotFoundException, CDKException, CloneNotSupportedException {
 
-		for (int i = 1; i <= 9; i++) {
-			header.add("CarbonTypesDescriptor" + i);
-		}
+		featurizeLigands(ligandsPath, filePath, singlePDB, families, writer);
 
-		for (int i = 1; i <= 1024; i++) {
-			header.add("CircularFingerprinter" + i);
-		}
+		return writer.getRowCount();
+	}
 
-		List<String> annotatedLigand = null;
+	private static FeatureMatrix featurizeLigands(String ligandsPath, String filePath, String singlePDB,
+			Set<DescriptorFamily> families, DatasetWriter writer)
+			throws IOException, StructureException, ClassNotFoundException, CDKException, CloneNotSupportedException {
 
-		for (String[] row : rows) {
+		TsvParserSettings settings = new TsvParserSettings();
+		settings.getFormat().setLineSeparator("\n");
 
-			if (singlePDB.equals("all") || (!singlePDB.equals("all") && singlePDB.equals(row[0]))) {
+		TsvParser parser = new TsvParser(settings);
 
-				annotatedLigand = new ArrayList<String>();
-				Collections.addAll(annotatedLigand, row);
+		List<String[]> rows = parser.parseAll(new FileReader(filePath));
 
-				File ligandFile = new File(
-						Config.getProperty("LIGANDS_PATH") + row[0] + "/splitted/" + row[1] + "_min.mol2");
+		List<String[]> selectedRows = rows.stream()
+				.filter(row -> singlePDB.equals("all") || singlePDB.equals(row[0]))
+				.collect(Collectors.toList());
 
-				File ligandSmilesFile = new File(
-						Config.getProperty("LIGANDS_PATH") + row[0] + "/splitted-smi/" + row[1] + ".smi");
+		FeatureMatrix annotatedLigands = Featurizer.createLigandFeatureMatrix(families);
 
-				if (ligandFile.exists() && ligandSmilesFile.exists()) {
+		ForkJoinPool pool = new ForkJoinPool(Config.getThreads());
 
-					if (ligandFile.length() == 0) {
+		try {
 
-						for (int i = 4; i < header.size(); i++) {
-							annotatedLigand.add("");
-						}
-						annotatedLigands.add(annotatedLigand.toArray(new String[annotatedLigand.size()]));
+			for (int start = 0; start < selectedRows.size(); start += LIGANDS_BATCH_SIZE) {
 
-						continue;
-					}
+				List<String[]> batchRows = selectedRows.subList(start, Math.min(start + LIGANDS_BATCH_SIZE, selectedRows.size()));
 
-					IAtomContainer ac = LigandTools.readSmilesFileandAddHydrogens(ligandSmilesFile, true);
-					IAtomContainer acCleaned = LigandTools.readMol2andAddHydrogens(ligandFile, false);
+				// the descriptors are computed in parallel and appended in the order of the ligands file
+				List<LigandDescriptors> batchDescriptors = calculateLigandDescriptors(pool, batchRows, families);
 
-					if (ac == null || acCleaned == null) {
+				for (int i = 0; i < batchRows.size(); i++) {
 
-						System.out.println(row[0] + " - " + row[1] + " ERROR reading file!!");
+					String[] row = batchRows.get(i);
 
-						for (int i = 4; i < header.size(); i++) {
-							annotatedLigand.add("");
-						}
-						annotatedLigands.add(annotatedLigand.toArray(new String[annotatedLigand.size()]));
+					annotatedLigands.appendRow();
 
-						continue;
+					for (int c = 0; c < 4; c++) {
+						annotatedLigands.add(c < row.length ? row[c] : null);
 					}
 
-					annotatedLigand = Featurizer.getLigandFeatures(ligandFile, ligandSmilesFile, annotatedLigand);
-
-				} else {
-
-					for (int i = 4; i < header.size(); i++) {
-						annotatedLigand.add("");
+					if (batchDescriptors.get(i) != null) {
+						batchDescriptors.get(i).appendTo(annotatedLigands);
+					} else {
+						annotatedLigands.addEmptyToEnd();
 					}
-					annotatedLigands.add(annotatedLigand.toArray(new String[annotatedLigand.size()]));
-
-					continue;
 				}
 
-				if (annotatedLigand != null)
-					annotatedLigands.add(annotatedLigand.toArray(new String[annotatedLigand.size()]));
+				if (writer != null) {
+					writer.writeBatch(annotatedLigands);
+					annotatedLigands.clear();
+				}
+			}
 
-			} // if all pdbs
+		} finally {
+			pool.shutdown();
 		}
 
-		annotatedLigands.add(0, header.toArray(new String[header.size()]));
-
 		return annotatedLigands;
 	}
 
-	public static List<String> getLigandFeatures(File ligandFile, File ligandSmilesFile, List<String> annotatedLigand)
-			throws CDKException, ClassNotFoundException, IOException {
-
-		// RULES OF FIVE
-		// Molecular Weight, it is affected with adding hydrogens
-		WeightDescriptor descW = new WeightDescriptor();
-		RuleOfFiveDescriptor descRof = new RuleOfFiveDescriptor(); // not affected
-		RotatableBondsCountDescriptor descRot = new RotatableBondsCountDescriptor();// not affected
-		HBondDonorCountDescriptor descHD = new HBondDonorCountDescriptor();// not affected
-		HBondAcceptorCountDescriptor descHA = new HBondAcceptorCountDescriptor();// not affected
+	private static List<LigandDescriptors> calculateLigandDescriptors(ForkJoinPool pool, List<String[]> rows,
+			Set<DescriptorFamily> families) throws IOException, ClassNotFoundException, CDKException {
 
-		// Sum of atomic polarizability (including implcit hydrogens) so it is affected
-		// with adding hydrogens
-		APolDescriptor descApol = new APolDescriptor();
-
-		/*
-		 * Small ring count descriptor
-		 * 
-		 * IntegerArrayResult
-		 * 
-		 * result.add(nSmallRings); result.add(nAromRings); result.add(nRingBlocks);
-		 * result.add(nAromBlocks); result.add(nRings3); result.add(nRings4);
-		 * result.add(nRings5); result.add(nRings6); result.add(nRings7);
-		 * result.add(nRings8); result.add(nRings9);
-		 */
-		SmallRingDescriptor descSR = new SmallRingDescriptor();
-
-		// Volume descriptor
-		VABCDescriptor descVol = new VABCDescriptor(); // not affected
-
-		// total polar surface area
-		TPSADescriptor descTpsa = new TPSADescriptor(); // not affected
-
-		// Polar surface adjusted by molecular weight
-		FractionalPSADescriptor descFpsa = new FractionalPSADescriptor(); // not affected
-
-		// Gyration radius descriptor, needs 3D
-		MomentOfInertiaDescriptor descRoJ = new MomentOfInertiaDescriptor();
+		try {
 
-		// Atom counts descriptor
-		AromaticAtomsCountDescriptor descArCount = new AromaticAtomsCountDescriptor(); // not affected
-		AromaticBondsCountDescriptor descArBoCount = new AromaticBondsCountDescriptor(); // not affected
-		AtomCountDescriptor descAtCount = new AtomCountDescriptor();
+			return pool.submit(() -> rows.parallelStream().map(row -> {
 
-		// XlogP
-		XLogPDescriptor descXlogp = new XLogPDescriptor();
-		ALOGPDescriptor descAlogp = new ALOGPDescriptor();
-		JPlogPDescriptor descJPlogp = new JPlogPDescriptor();
+				File ligandFile = new File(Config.getProperty("LIGANDS_PATH") + row[0] + "/splitted/" + row[1] + "_min.mol2");
+				File ligandSmilesFile = new File(Config.getProperty("LIGANDS_PATH") + row[0] + "/splitted-smi/" + row[1] + ".smi");
 
-		// Vertex adjacency information
-		VAdjMaDescriptor descVadj = new VAdjMaDescriptor(); // not affected
+				try {
+					return calculateLigandDescriptors(ligandFile, ligandSmilesFile, families);
+				} catch (IOException | ClassNotFoundException | CDKException e) {
+					throw new LigandTaskException(e);
+				}
 
-		// Basic group count
-		BasicGroupCountDescriptor descBG = new BasicGroupCountDescriptor();// not affected
-		descBG.initialise(DefaultChemObjectBuilder.getInstance());// not affected
+			}).collect(Collectors.toList())).get();
 
-		BCUTDescriptor descBcut = new BCUTDescriptor();
-		CarbonTypesDescriptor descCTD = new CarbonTypesDescriptor();
+		} catch (InterruptedException e) {
 
-		WHIMDescriptor descWhim = new WHIMDescriptor();
+			Thread.currentThread().interrupt();
+			throw new IOException("Ligands featurization was interrupted", e);
 
-		// MCFP fingerprint
-		CircularFingerprinter circularFingerprinter = new CircularFingerprinter(CircularFingerprinter.CLASS_ECFP4,
-				1024); // not
-						// affected
+		} catch (ExecutionException e) {
 
-		// circularFingerprinter.setPerceiveStereo(true);
+			Throwable cause = e.getCause() instanceof LigandTaskException ? e.getCause().getCause() : e.getCause();
 
-		// -------------------------------------------------------
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof ClassNotFoundException) {
+				throw (ClassNotFoundException) cause;
+			} else if (cause instanceof CDKException) {
+				throw (CDKException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
 
-		if (ligandFile.exists() && ligandSmilesFile.exists()) {
+	/**
+	 * An unchecked wrapper of the exceptions thrown by the ligand featurization tasks
+	 */
+	private static class LigandTaskException extends RuntimeException {
 
-			if (ligandFile.length() == 0 || ligandSmilesFile.length() == 0)
-				return null;
+		private static final long serialVersionUID = 1L;
 
-			IAtomContainer ac = LigandTools.readSmilesFileandAddHydrogens(ligandSmilesFile, true);
+		LigandTaskException(Exception cause) {
+			super(cause);
+		}
+	}
 
-			// read mol2 without adding hydrogen, boolean parameter is false
-			IAtomContainer acCleaned = LigandTools.readMol2andAddHydrogens(ligandFile, false);
+	/**
+	 * A method to compute the descriptors and the fingerprint of a ligand and add them to the current row
+	 * of a ligand feature matrix (the row identification columns should be already filled)
+	 * @param ligandFile the minimized ligand mol2 file
+	 * @param ligandSmilesFile the ligand SMILES file
+	 * @param annotatedLigand the feature matrix created by createLigandFeatureMatrix()
+	 * @return true if the features were computed, false if the ligand files are missing or cannot be parsed
+	 * @throws CDKException thrown exception
+	 * @throws ClassNotFoundException thrown exception
+	 * @throws IOException thrown exception
+	 */
+	public static boolean getLigandFeatures(File ligandFile, File ligandSmilesFile, FeatureMatrix annotatedLigand)
+			throws CDKException, ClassNotFoundException, IOException {
 
-			if (ac == null || acCleaned == null)
-				return null;
+		LigandDescriptors descriptors = calculateLigandDescriptors(ligandFile, ligandSmilesFile);
 
-			annotatedLigand.add(String.valueOf(r(((DoubleResult) descW.calculate(ac).getValue()).doubleValue())));
-			annotatedLigand.add("V" + descRof.calculate(ac).getValue().toString());
-			annotatedLigand.add(descRot.calculate(ac).getValue().toString());
-			annotatedLigand.add(descHD.calculate(ac).getValue().toString());
-			annotatedLigand.add(descHA.calculate(ac).getValue().toString());
-			annotatedLigand.add(String.valueOf(r(((DoubleResult) descApol.calculate(ac).getValue()).doubleValue())));
+		if (descriptors == null) {
+			return false;
+		}
 
-			IntegerArrayResult iarSR = (IntegerArrayResult) descSR.calculate(ac).getValue();
+		descriptors.appendTo(annotatedLigand);
 
-			for (int i = 0; i < 9; i++) {
-				annotatedLigand.add(String.valueOf(iarSR.get(i)));
-			}
+		return true;
+	}
 
-			annotatedLigand.add(String.valueOf(r(((DoubleResult) descVol.calculate(ac).getValue()).doubleValue())));
-			annotatedLigand.add(descTpsa.calculate(ac).getValue().toString());
-			annotatedLigand.add(String.valueOf(r(((DoubleResult) descFpsa.calculate(ac).getValue()).doubleValue())));
+	/**
+	 * A method to compute the descriptors and the fingerprint of a ligand with the descriptor engine
+	 * of the current thread
+	 * @param ligandFile the minimized ligand mol2 file
+	 * @param ligandSmilesFile the ligand SMILES file
+	 * @return the ligand descriptors or null if the ligand files are missing or cannot be parsed
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws ClassNotFoundException in case of error in reading the molecule
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static LigandDescriptors calculateLigandDescriptors(File ligandFile, File ligandSmilesFile)
+			throws CDKException, ClassNotFoundException, IOException {
+		return calculateLigandDescriptors(ligandFile, ligandSmilesFile, EnumSet.allOf(DescriptorFamily.class));
+	}
 
-			DoubleArrayResult darRoJ = (DoubleArrayResult) descRoJ.calculate(acCleaned).getValue();
+	/**
+	 * A method to compute selected descriptor families of a ligand with the descriptor engine of the current thread.
+	 * The mol2 file is only required when a family computed from the 3D structure is selected.
+	 * @param ligandFile the minimized ligand mol2 file
+	 * @param ligandSmilesFile the ligand SMILES file
+	 * @param families the descriptor families to compute
+	 * @return the ligand descriptors or null if the ligand files are missing or cannot be parsed
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws ClassNotFoundException in case of error in reading the molecule
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static LigandDescriptors calculateLigandDescriptors(File ligandFile, File ligandSmilesFile,
+			Set<DescriptorFamily> families) throws CDKException, ClassNotFoundException, IOException {
+
+		boolean needs3D = DescriptorFamily.needs3D(families);
+
+		if (needs3D && (!ligandFile.exists() || ligandFile.length() == 0)) {
+			return null;
+		}
 
-			for (int i = 0; i < 7; i++) {
-				annotatedLigand.add(String.valueOf(r(darRoJ.get(i))));
-			}
+		PreparedLigand ligand = PreparedLigand.fromFiles(ligandSmilesFile, needs3D ? ligandFile : null);
 
-			annotatedLigand.add(descArCount.calculate(ac).getValue().toString());
-			annotatedLigand.add(descArBoCount.calculate(ac).getValue().toString());
-			descAtCount.setParameters(new Object[] { "*" });
-			annotatedLigand.add(descAtCount.calculate(ac).getValue().toString());
-			annotatedLigand.add(descXlogp.calculate(ac).getValue().toString());
-			annotatedLigand.add(String.valueOf(r(((DoubleResult) descVadj.calculate(ac).getValue()).doubleValue())));
-			annotatedLigand.add(descBG.calculate(ac).getValue().toString());
-			annotatedLigand.add(String.valueOf(r(new NumericalSurface(acCleaned).getTotalSurfaceArea())));
+		if (ligand == null) {
+			return null;
+		}
 
-			DoubleArrayResult darAlogp = (DoubleArrayResult) descAlogp.calculate(ac).getValue();
+		return calculateLigandDescriptors(ligand, families);
+	}
 
-			annotatedLigand.add(String.valueOf(r(darAlogp.get(0))));
-			annotatedLigand.add(String.valueOf(r(darAlogp.get(1))));
-			annotatedLigand.add(String.valueOf(r(darAlogp.get(2))));
+	/**
+	 * A method to compute selected descriptor families of a prepared ligand with the descriptor engine of the current
+	 * thread. Each family is looked up in the ligand descriptor cache first (keyed by the canonical SMILES, and the mol2
+	 * content hash for the families computed from the 3D structure), so a ligand shared by several PDB entries
+	 * or featurized by an earlier run is computed only once. The families computed from the SMILES run first and
+	 * the mol2 file is parsed only when a selected 3D family is missing from the cache.
+	 * @param ligand the prepared ligand
+	 * @param families the descriptor families to compute
+	 * @return the ligand descriptors or null if a 3D family is needed and the mol2 file cannot be parsed
+	 * @throws CDKException in case of error in computing a descriptor
+	 * @throws ClassNotFoundException in case of error in reading the molecule
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static LigandDescriptors calculateLigandDescriptors(PreparedLigand ligand, Set<DescriptorFamily> families)
+			throws CDKException, ClassNotFoundException, IOException {
 
-			annotatedLigand.add(String.valueOf(r(((DoubleResult) descJPlogp.calculate(ac).getValue()).doubleValue())));
+		LigandDescriptorCache cache = LigandDescriptorCache.openDefault();
+		LigandDescriptorEngine engine = LigandDescriptorEngine.get();
+		LigandDescriptors descriptors = new LigandDescriptors();
 
-			try {
+		for (Input input : Input.values()) {
 
-				DoubleArrayResult darBcut = (DoubleArrayResult) descBcut.calculate(ac).getValue();
+			for (DescriptorFamily family : DescriptorFamily.values()) {
 
-				for (int i = 0; i < 6; i++) {
-					annotatedLigand.add(String.valueOf(r(darBcut.get(i))));
-				}
-				
-			}catch(ArrayIndexOutOfBoundsException ex) {
-				
-				for (int i = 0; i < 6; i++) {
-					annotatedLigand.add(String.valueOf(r(Double.NaN)));
+				if (family.getInput() != input || !families.contains(family)) {
+					continue;
 				}
-			}
-
-			String[] weights = { "unity", "mass", "volume", "eneg", "polar" };
-
-			DoubleArrayResult darWhim = null;
-
-			for (String weight : weights) {
 
-				descWhim.setParameters(new Object[] { weight });
+				String key = LigandDescriptorEngine.getCacheKey(family, ligand.getCanonicalSmiles(),
+						input == Input.MOL2_3D ? ligand.getMol2Hash() : null);
 
-				darWhim = (DoubleArrayResult) descWhim.calculate(acCleaned).getValue();
+				byte[] cached = cache.get(key);
 
-				for (int i = 0; i < 17; i++) {
-					annotatedLigand.add(String.valueOf(r(darWhim.get(i))));
+				if (cached != null) {
+					descriptors.decode(family, cached);
+					continue;
 				}
-			}
-
-			descAtCount.setParameters(new Object[] { "N" });
-			annotatedLigand.add(descAtCount.calculate(ac).getValue().toString());
 
-			descAtCount.setParameters(new Object[] { "O" });
-			annotatedLigand.add(descAtCount.calculate(ac).getValue().toString());
-
-			double totalE = 0.0;
-
-			for (IAtom atA : ac.atoms()) {
-				Elements e = Elements.ofString(atA.getSymbol());
-				totalE += e.electronegativity();
-			}
+				IAtomContainer molecule = input == Input.MOL2_3D ? ligand.getMolecule3D() : ligand.getMolecule2D();
 
-			annotatedLigand.add(String.valueOf(totalE));
-
-			IntegerArrayResult iarCTD = (IntegerArrayResult) descCTD.calculate(ac).getValue();
-
-			for (int i = 0; i < 9; i++) {
-				annotatedLigand.add(String.valueOf(iarCTD.get(i)));
-			}
-
-			int[] fparr = circularFingerprinter.getBitFingerprint(ac).getSetbits();
-
-			int[] fp = new int[1024];
-
-			for (int i = 0; i < fparr.length; i++) {
-				fp[fparr[i]] = 1;
-			}
+				if (molecule == null) {
+					return null;
+				}
 
-			for (int i = 0; i < 1024; i++) {
-				annotatedLigand.add(String.valueOf(fp[i]));
+				engine.calculate(family, molecule, descriptors);
+				cache.put(key, descriptors.encode(family));
 			}
-
-		} else {
-			return null;
 		}
 
-		return annotatedLigand;
-
+		return descriptors;
 	}
 
 	public static List<String[]> getPocketsFeatures(String singlePDB) throws IOException, StructureException {
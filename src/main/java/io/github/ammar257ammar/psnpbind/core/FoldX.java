@@ -30,9 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.io.FileUtils;
-
 import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.FileStore;
 
 /**
  * A class that prepare mutation files for FoldX and generate reports after introducing mutation
@@ -68,6 +67,8 @@ public class FoldX {
 		
 		int count = 1;
 		
+		FileStore store = FileStore.open(Config.getProperty("FILE_STORE_PATH"));
+		
 		for (Entry<String, List<String[]>> entry : mutationMap.entrySet()){	
 			
 			File molFolder = new File(inputPath+entry.getKey());
@@ -85,7 +86,8 @@ public class FoldX {
 
 					if(src.exists()) {
 						
-						FileUtils.copyFile(src, dst);	
+						// FoldX works in this folder, the protein is a writable copy and not a link to the read-only stored object
+						store.stageCopy(src, dst);
 						new File(outputPath+molFolder.getName()+"/input").mkdir();
 						new File(outputPath+molFolder.getName()+"/output").mkdir();
 
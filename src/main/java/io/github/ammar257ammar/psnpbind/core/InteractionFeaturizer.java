@@ -0,0 +1,882 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.model.PocketResidue;
+import io.github.ammar257ammar.psnpbind.core.utils.ContactGrid;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetWriter;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbTools;
+import io.github.ammar257ammar.psnpbind.core.utils.PoseStore;
+import io.github.ammar257ammar.psnpbind.core.utils.PoseStore.Pose;
+
+/**
+ * A class to compute the protein-ligand interaction fingerprints of the docked poses: the number of hydrogen bond,
+ * hydrophobic, ionic and pi-stacking contacts of each pose with each pocket residue.
+ *
+ * The pocket atoms of a variant (the residues of the entry pocket residue keys in the minimized structure) are
+ * typed from their residue and atom names and put in a ContactGrid once, and all the poses of all the ligands
+ * docked in the variant (read from a PoseStore) are queried against it. The ligands of an entry are processed in
+ * parallel on a bounded ForkJoinPool and the rows of their poses are written in order as soon as they are
+ * computed, so only the poses of a few ligands per thread are kept in memory. The ligand atoms are typed from
+ * their AutoDock types and bonds (found from the distances in the first pose of the docking, Vina keeps the atom
+ * order in all the poses):
+ *
+ * - hydrogen bond: a donor (N or O with a polar hydrogen) and an acceptor within 3.5 Angstrom
+ * - hydrophobic: two carbons not bonded to N or O (or a halogen, or a Met/Cys sulfur) within 4.0 Angstrom
+ * - ionic: a cation (ammonium, amidinium, guanidinium, Lys, Arg, His) and an anion (carboxylate, phosphate,
+ *   sulfonate, Asp, Glu) within 4.0 Angstrom
+ * - pi-stacking: two aromatic ring centroids within 5.5 Angstrom (the ring angles are not checked)
+ *
+ * The fingerprints of an entry are written to outputPath/[PDB]/interactions-[PDB] in the format set with format()
+ * (the -of option of the featurize-interactions operation, tsv by default) with the pdb, variant, ligand, mode
+ * and affinity of each pose followed by one column per pocket residue and interaction (e.g. res123_hbond),
+ * so they can be joined with the Featurizer outputs.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class InteractionFeaturizer {
+
+	public static final String[] INTERACTIONS = { "hbond", "hydrophobic", "ionic", "pi_stacking" };
+
+	public static final double HBOND_DISTANCE = 3.5;
+	public static final double CONTACT_DISTANCE = 4.0;
+	public static final double PI_STACKING_DISTANCE = 5.5;
+
+	static final int DONOR = 1;
+	static final int ACCEPTOR = 2;
+	static final int HYDROPHOBIC = 4;
+	static final int POSITIVE = 8;
+	static final int NEGATIVE = 16;
+
+	private static final Set<String> HYDROPHOBIC_RESIDUES = new HashSet<String>(
+			Arrays.asList("ALA", "VAL", "LEU", "ILE", "MET", "PHE", "TRP", "PRO", "TYR", "CYS"));
+
+	private static final Map<String, String[][]> RESIDUE_RINGS = new HashMap<String, String[][]>();
+
+	private static final Map<String, String> RESIDUE_NAMES = new HashMap<String, String>();
+
+	private static final Set<String> AROMATIC_TYPES = new HashSet<String>(Arrays.asList("A", "NA", "N", "OA", "SA", "S", "NS", "OS"));
+
+	static {
+		String[] benzene = { "CG", "CD1", "CD2", "CE1", "CE2", "CZ" };
+
+		RESIDUE_RINGS.put("PHE", new String[][] { benzene });
+		RESIDUE_RINGS.put("TYR", new String[][] { benzene });
+		RESIDUE_RINGS.put("TRP", new String[][] { { "CD2", "CE2", "CE3", "CZ2", "CZ3", "CH2" }, { "CG", "CD1", "NE1", "CE2", "CD2" } });
+		RESIDUE_RINGS.put("HIS", new String[][] { { "CG", "ND1", "CD2", "CE1", "NE2" } });
+
+		for (String name : new String[] { "HID", "HIE", "HIP", "HSD", "HSE", "HSP", "HISA", "HISB", "HISH", "HISD", "HISE" }) {
+			RESIDUE_NAMES.put(name, "HIS");
+		}
+
+		RESIDUE_NAMES.put("CYX", "CYS");
+		RESIDUE_NAMES.put("CYM", "CYS");
+		RESIDUE_NAMES.put("LYN", "LYS");
+		RESIDUE_NAMES.put("ASH", "ASP");
+		RESIDUE_NAMES.put("GLH", "GLU");
+	}
+
+	private int threads = Config.getThreads();
+	private OutputFormat format = OutputFormat.TSV;
+
+	private InteractionFeaturizer() {
+	}
+
+	/**
+	 * Create a featurizer using Config.getThreads() threads and writing TSV files
+	 * @return a new featurizer
+	 */
+	public static InteractionFeaturizer create() {
+		return new InteractionFeaturizer();
+	}
+
+	/**
+	 * Set the number of variants processed in parallel
+	 * @param threads the pool size
+	 * @return the featurizer
+	 */
+	public InteractionFeaturizer threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Set the format of the interaction fingerprints files
+	 * @param format the output format
+	 * @return the featurizer
+	 */
+	public InteractionFeaturizer format(OutputFormat format) {
+		this.format = format;
+		return this;
+	}
+
+	/**
+	 * A method to compute the interaction fingerprints of all the poses of a pose store
+	 * @param vinaPath the AutoDock Vina docking folder (for the minimized variant structures)
+	 * @param poseStorePath the pose store built from the docking folder
+	 * @param outputPath the output folder
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void featurize(String vinaPath, String poseStorePath, String outputPath) throws IOException {
+
+		long start = System.nanoTime();
+		long rows = 0;
+
+		try (PoseStore store = PoseStore.open(poseStorePath)) {
+
+			for (String pdb : VinaPreparationEngine.listEntries(vinaPath)) {
+				rows += featurizeEntry(vinaPath, store, pdb, Vina.getPocketResidueKeys(pdb),
+						Paths.get(outputPath, pdb, "interactions-" + pdb).toString());
+			}
+		}
+
+		System.out.println(rows + " pose interaction fingerprints written in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	/**
+	 * A method to compute the interaction fingerprints of the poses of an entry
+	 * @param vinaPath the AutoDock Vina docking folder (for the minimized variant structures)
+	 * @param store the pose store
+	 * @param pdb the PdbBind entry
+	 * @param pocketResidueKeys the pocket residue keys of the entry as given by Vina.getPocketResidueKeys
+	 * @param outputPath the output file path (the extension is replaced by the format extension)
+	 * @return the number of poses written, no file is written if the entry has no poses
+	 * @throws IOException in case of error in IO operations
+	 */
+	public long featurizeEntry(String vinaPath, PoseStore store, String pdb, Set<String> pocketResidueKeys, String outputPath)
+			throws IOException {
+
+		List<String> residueKeys = new ArrayList<String>(pocketResidueKeys);
+
+		Path proteins = Paths.get(vinaPath, pdb, "proteins");
+
+		List<String> variants = VinaPreparationEngine.listEntries(proteins.toString()).stream()
+				.filter(variant -> !store.getLigands(pdb, variant).isEmpty()).collect(Collectors.toList());
+
+		if(variants.isEmpty()) {
+			return 0;
+		}
+
+		FeatureMatrix batch = FeatureMatrix.create()
+				.addColumn("pdb", ColumnType.STRING)
+				.addColumn("variant", ColumnType.STRING)
+				.addColumn("ligand", ColumnType.STRING)
+				.addColumn("mode", ColumnType.INT)
+				.addColumn("affinity", ColumnType.DOUBLE);
+
+		for (String key : residueKeys) {
+			for (String interaction : INTERACTIONS) {
+				batch.addColumn("res" + key + "_" + interaction, ColumnType.INT);
+			}
+		}
+
+		Path output = Paths.get(outputPath);
+
+		if(output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+		try (DatasetWriter writer = DataHandler.createDatasetWriter(outputPath, this.format, FingerprintEncoding.COLUMNS)) {
+
+			// the ligands being computed, in the order their rows are written
+			Deque<ForkJoinTask<List<PoseContacts>>> pending = new ArrayDeque<ForkJoinTask<List<PoseContacts>>>();
+
+			for (String variant : variants) {
+
+				Receptor receptor = Receptor.read(proteins.resolve(variant).resolve(variant + "_final.pdb").toString(), residueKeys);
+
+				for (String ligandName : store.getLigands(pdb, variant)) {
+
+					pending.add(pool.submit(() -> computeContacts(store, pdb, variant, ligandName, receptor)));
+
+					if(pending.size() > 2 * this.threads) {
+						writeRows(pdb, await(pending.poll()), batch, writer);
+					}
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				writeRows(pdb, await(pending.poll()), batch, writer);
+			}
+
+			writer.writeBatch(batch);
+
+			return writer.getRowCount();
+
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Compute the contacts of the poses of a ligand docked in a variant
+	 * @return the contacts of each pose, in the order of the poses
+	 */
+	private static List<PoseContacts> computeContacts(PoseStore store, String pdb, String variant, String ligandName,
+			Receptor receptor) throws IOException {
+
+		List<Pose> poses = store.getPoses(pdb, variant, ligandName);
+
+		List<PoseContacts> contacts = new ArrayList<PoseContacts>(poses.size());
+
+		if(poses.isEmpty()) {
+			return contacts;
+		}
+
+		Ligand ligand = Ligand.of(poses.get(0));
+
+		for (Pose pose : poses) {
+			contacts.add(new PoseContacts(variant, ligandName, pose.getMode(), pose.getAffinity(),
+					receptor.countContacts(pose, ligand)));
+		}
+		return contacts;
+	}
+
+	/**
+	 * Wait for the contacts of a ligand
+	 * @return the contacts of each pose of the ligand
+	 */
+	private static List<PoseContacts> await(ForkJoinTask<List<PoseContacts>> task) throws IOException {
+
+		try {
+
+			return task.get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Interaction featurization was interrupted", e);
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Add the rows of the poses of a ligand to the batch and write the batch when it is full
+	 */
+	private static void writeRows(String pdb, List<PoseContacts> contacts, FeatureMatrix batch, DatasetWriter writer)
+			throws IOException {
+
+		for (PoseContacts pose : contacts) {
+
+			batch.appendRow().add(pdb).add(pose.variant).add(pose.ligand).add(pose.mode);
+
+			if(Float.isNaN(pose.affinity)) {
+				batch.addEmpty();
+			}else {
+				batch.add((double) pose.affinity);
+			}
+
+			for (int count : pose.counts) {
+				batch.add(count);
+			}
+
+			if(batch.getRowCount() == DataHandler.DATASET_BATCH_SIZE) {
+				writer.writeBatch(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * A method to get the interaction types of a protein atom
+	 * @param residueName the residue name (protonation state names such as HIE or CYX are read as the standard residue)
+	 * @param atomName the atom name
+	 * @return the DONOR, ACCEPTOR, HYDROPHOBIC, POSITIVE and NEGATIVE flags of the atom
+	 */
+	static int getProteinAtomFlags(String residueName, String atomName) {
+
+		String residue = RESIDUE_NAMES.getOrDefault(residueName, residueName);
+
+		switch (atomName) {
+		case "N":
+			return residue.equals("PRO") ? 0 : DONOR;
+		case "O":
+		case "OXT":
+		case "OC1":
+		case "OC2":
+			return ACCEPTOR;
+		case "CA":
+		case "C":
+			return 0;
+		default:
+			break;
+		}
+
+		switch (residue + ":" + atomName) {
+		case "SER:OG":
+		case "THR:OG1":
+		case "TYR:OH":
+			return DONOR | ACCEPTOR;
+		case "ASN:OD1":
+		case "GLN:OE1":
+			return ACCEPTOR;
+		case "ASN:ND2":
+		case "GLN:NE2":
+		case "TRP:NE1":
+			return DONOR;
+		case "HIS:ND1":
+		case "HIS:NE2":
+			return DONOR | ACCEPTOR | POSITIVE;
+		case "LYS:NZ":
+		case "ARG:NE":
+		case "ARG:NH1":
+		case "ARG:NH2":
+			return DONOR | POSITIVE;
+		case "ASP:OD1":
+		case "ASP:OD2":
+		case "GLU:OE1":
+		case "GLU:OE2":
+			return ACCEPTOR | NEGATIVE;
+		case "MET:SD":
+		case "CYS:SG":
+			return HYDROPHOBIC;
+		default:
+			break;
+		}
+
+		return HYDROPHOBIC_RESIDUES.contains(residue) && atomName.startsWith("C") ? HYDROPHOBIC : 0;
+	}
+
+	private static boolean isHydrogenName(String atomName) {
+		return atomName.startsWith("H") || (atomName.length() > 1 && Character.isDigit(atomName.charAt(0)) && atomName.charAt(1) == 'H');
+	}
+
+	/**
+	 * The typed pocket atoms of a variant structure in a ContactGrid, with the centroids of the aromatic rings
+	 */
+	public static class Receptor {
+
+		private final int residueCount;
+		private final float[] coordinates;
+		private final int[] residues;
+		private final int[] flags;
+		private final ContactGrid grid;
+
+		private final float[] ringCentroids;
+		private final int[] ringResidues;
+
+		private Receptor(int residueCount, float[] coordinates, int[] residues, int[] flags, float[] ringCentroids, int[] ringResidues) {
+			this.residueCount = residueCount;
+			this.coordinates = coordinates;
+			this.residues = residues;
+			this.flags = flags;
+			this.grid = ContactGrid.build(coordinates, CONTACT_DISTANCE);
+			this.ringCentroids = ringCentroids;
+			this.ringResidues = ringResidues;
+		}
+
+		/**
+		 * A method to read and type the pocket atoms of a minimized structure
+		 * @param path the PDB file path
+		 * @param residueKeys the pocket residue keys, in the order of the fingerprint columns
+		 * @return a Receptor
+		 * @throws IOException in case of error in reading the file
+		 */
+		public static Receptor read(String path, List<String> residueKeys) throws IOException {
+
+			Map<String, PocketResidue> pocket = PdbTools.getAtomsOfResidues(path, new LinkedHashSet<String>(residueKeys));
+
+			List<float[]> atoms = new ArrayList<float[]>();
+			List<int[]> atomTypes = new ArrayList<int[]>();
+
+			List<float[]> centroids = new ArrayList<float[]>();
+			List<Integer> centroidResidues = new ArrayList<Integer>();
+
+			for (int r = 0; r < residueKeys.size(); r++) {
+
+				PocketResidue residue = pocket.get(residueKeys.get(r));
+
+				if(residue == null) {
+					continue;
+				}
+
+				for (Map.Entry<String, double[]> atom : residue.getAtoms().entrySet()) {
+
+					int atomFlags = isHydrogenName(atom.getKey()) ? 0 : getProteinAtomFlags(residue.getName(), atom.getKey());
+
+					if(atomFlags != 0) {
+
+						double[] c = atom.getValue();
+
+						atoms.add(new float[] { (float) c[0], (float) c[1], (float) c[2] });
+						atomTypes.add(new int[] { r, atomFlags });
+					}
+				}
+
+				String[][] rings = RESIDUE_RINGS.get(RESIDUE_NAMES.getOrDefault(residue.getName(), residue.getName()));
+
+				if(rings == null) {
+					continue;
+				}
+
+				for (String[] ring : rings) {
+
+					float[] centroid = new float[3];
+					boolean complete = true;
+
+					for (String name : ring) {
+
+						double[] c = residue.getAtoms().get(name);
+
+						if(c == null) {
+							complete = false;
+							break;
+						}
+
+						for (int k = 0; k < 3; k++) {
+							centroid[k] += c[k] / ring.length;
+						}
+					}
+
+					if(complete) {
+						centroids.add(centroid);
+						centroidResidues.add(r);
+					}
+				}
+			}
+
+			float[] coordinates = new float[3 * atoms.size()];
+			int[] residues = new int[atoms.size()];
+			int[] flags = new int[atoms.size()];
+
+			for (int i = 0; i < atoms.size(); i++) {
+				System.arraycopy(atoms.get(i), 0, coordinates, 3 * i, 3);
+				residues[i] = atomTypes.get(i)[0];
+				flags[i] = atomTypes.get(i)[1];
+			}
+
+			float[] ringCentroids = new float[3 * centroids.size()];
+			int[] ringResidues = new int[centroids.size()];
+
+			for (int i = 0; i < centroids.size(); i++) {
+				System.arraycopy(centroids.get(i), 0, ringCentroids, 3 * i, 3);
+				ringResidues[i] = centroidResidues.get(i);
+			}
+
+			return new Receptor(residueKeys.size(), coordinates, residues, flags, ringCentroids, ringResidues);
+		}
+
+		/**
+		 * A method to count the contacts of a pose with the pocket residues
+		 * @param pose the docked pose
+		 * @param ligand the ligand typing of the docking
+		 * @return the counts of each pocket residue and interaction (residue index * 4 + interaction index)
+		 */
+		public int[] countContacts(Pose pose, Ligand ligand) {
+
+			int[] counts = new int[this.residueCount * INTERACTIONS.length];
+
+			double hbondSquared = HBOND_DISTANCE * HBOND_DISTANCE;
+
+			for (int a = 0; a < pose.getAtomCount(); a++) {
+
+				int ligandFlags = ligand.flags[a];
+
+				if(ligandFlags == 0) {
+					continue;
+				}
+
+				this.grid.query(pose.getX(a), pose.getY(a), pose.getZ(a), CONTACT_DISTANCE, (atom, distanceSquared) -> {
+
+					int proteinFlags = this.flags[atom];
+					int base = this.residues[atom] * INTERACTIONS.length;
+
+					if(distanceSquared <= hbondSquared && (((ligandFlags & DONOR) != 0 && (proteinFlags & ACCEPTOR) != 0)
+							|| ((ligandFlags & ACCEPTOR) != 0 && (proteinFlags & DONOR) != 0))) {
+						counts[base]++;
+					}
+
+					if((ligandFlags & HYDROPHOBIC) != 0 && (proteinFlags & HYDROPHOBIC) != 0) {
+						counts[base + 1]++;
+					}
+
+					if(((ligandFlags & POSITIVE) != 0 && (proteinFlags & NEGATIVE) != 0)
+							|| ((ligandFlags & NEGATIVE) != 0 && (proteinFlags & POSITIVE) != 0)) {
+						counts[base + 2]++;
+					}
+				});
+			}
+
+			double piSquared = PI_STACKING_DISTANCE * PI_STACKING_DISTANCE;
+
+			for (int[] ring : ligand.rings) {
+
+				double x = 0.0, y = 0.0, z = 0.0;
+
+				for (int atom : ring) {
+					x += pose.getX(atom) / ring.length;
+					y += pose.getY(atom) / ring.length;
+					z += pose.getZ(atom) / ring.length;
+				}
+
+				for (int r = 0; r < this.ringResidues.length; r++) {
+
+					double dx = this.ringCentroids[3 * r] - x;
+					double dy = this.ringCentroids[3 * r + 1] - y;
+					double dz = this.ringCentroids[3 * r + 2] - z;
+
+					if(dx * dx + dy * dy + dz * dz <= piSquared) {
+						counts[this.ringResidues[r] * INTERACTIONS.length + 3]++;
+					}
+				}
+			}
+			return counts;
+		}
+
+		/**
+		 * Get the number of typed pocket atoms
+		 * @return the number of atoms in the contact grid
+		 */
+		public int getAtomCount() {
+			return this.coordinates.length / 3;
+		}
+	}
+
+	/**
+	 * The atom typing and aromatic rings of a docked ligand, found once per docking
+	 */
+	public static class Ligand {
+
+		private final int[] flags;
+		private final int[][] rings;
+
+		private Ligand(int[] flags, int[][] rings) {
+			this.flags = flags;
+			this.rings = rings;
+		}
+
+		/**
+		 * A method to type the atoms of a docked ligand from a pose
+		 * @param pose a pose of the docking
+		 * @return a Ligand
+		 */
+		public static Ligand of(Pose pose) {
+
+			int n = pose.getAtomCount();
+
+			String[] types = new String[n];
+			String[] elements = new String[n];
+
+			for (int i = 0; i < n; i++) {
+				types[i] = pose.getType(i);
+				elements[i] = getElement(types[i]);
+			}
+
+			List<List<Integer>> neighbours = new ArrayList<List<Integer>>();
+
+			for (int i = 0; i < n; i++) {
+				neighbours.add(new ArrayList<Integer>(4));
+			}
+
+			for (int i = 0; i < n; i++) {
+				for (int j = i + 1; j < n; j++) {
+
+					boolean hi = elements[i].equals("H");
+					boolean hj = elements[j].equals("H");
+
+					if(hi && hj) {
+						continue;
+					}
+
+					double cutoff = hi || hj ? 1.15 : (isLarge(elements[i]) || isLarge(elements[j]) ? 2.0 : 1.75);
+
+					double dx = pose.getX(i) - pose.getX(j);
+					double dy = pose.getY(i) - pose.getY(j);
+					double dz = pose.getZ(i) - pose.getZ(j);
+
+					if(dx * dx + dy * dy + dz * dz <= cutoff * cutoff) {
+						neighbours.get(i).add(j);
+						neighbours.get(j).add(i);
+					}
+				}
+			}
+
+			int[] flags = new int[n];
+
+			for (int i = 0; i < n; i++) {
+
+				String element = elements[i];
+
+				if(element.equals("H")) {
+					continue;
+				}
+
+				int hydrogens = count(neighbours.get(i), elements, "H");
+				int polarNeighbours = count(neighbours.get(i), elements, "N") + count(neighbours.get(i), elements, "O");
+
+				if(types[i].equals("NA") || types[i].equals("NS") || types[i].equals("OA") || types[i].equals("OS") || types[i].equals("SA")) {
+					flags[i] |= ACCEPTOR;
+				}
+
+				if((element.equals("N") || element.equals("O")) && hydrogens > 0) {
+					flags[i] |= DONOR;
+				}
+
+				if((element.equals("C") && polarNeighbours == 0) || element.equals("Cl") || element.equals("Br") || element.equals("I")) {
+					flags[i] |= HYDROPHOBIC;
+				}
+
+				if(element.equals("N") && neighbours.get(i).size() == 4) {
+					flags[i] |= POSITIVE;
+				}
+
+				if(element.equals("O") && hydrogens == 0 && neighbours.get(i).size() == 1) {
+
+					int center = neighbours.get(i).get(0);
+					int terminalOxygens = 0;
+
+					for (int k : neighbours.get(center)) {
+						if(elements[k].equals("O") && neighbours.get(k).size() == 1) {
+							terminalOxygens++;
+						}
+					}
+
+					if((elements[center].equals("C") && terminalOxygens == 2)
+							|| ((elements[center].equals("P") || elements[center].equals("S")) && terminalOxygens >= 3)) {
+						flags[i] |= NEGATIVE;
+					}
+				}
+			}
+
+			// amidinium and guanidinium: a carbon with three neighbours, at least two of them nitrogens with polar hydrogens
+			for (int i = 0; i < n; i++) {
+
+				if(!elements[i].equals("C") || neighbours.get(i).size() != 3) {
+					continue;
+				}
+
+				List<Integer> charged = new ArrayList<Integer>();
+
+				for (int k : neighbours.get(i)) {
+					if(elements[k].equals("N") && count(neighbours.get(k), elements, "H") > 0) {
+						charged.add(k);
+					}
+				}
+
+				if(charged.size() >= 2) {
+					for (int k : charged) {
+						flags[k] |= POSITIVE;
+					}
+				}
+			}
+
+			return new Ligand(flags, findAromaticRings(types, elements, neighbours));
+		}
+
+		/**
+		 * Get the interaction types of an atom
+		 * @param atom the atom index in the poses
+		 * @return the DONOR, ACCEPTOR, HYDROPHOBIC, POSITIVE and NEGATIVE flags of the atom
+		 */
+		public int getFlags(int atom) {
+			return flags[atom];
+		}
+
+		/**
+		 * Get the aromatic rings
+		 * @return the atom indices of each 5 or 6 membered aromatic ring
+		 */
+		public int[][] getRings() {
+			return rings;
+		}
+
+		/**
+		 * Find the 5 and 6 membered rings made of aromatic AutoDock types with at least one aromatic carbon
+		 */
+		private static int[][] findAromaticRings(String[] types, String[] elements, List<List<Integer>> neighbours) {
+
+			Map<String, int[]> rings = new HashMap<String, int[]>();
+
+			int[] path = new int[6];
+
+			for (int start = 0; start < types.length; start++) {
+				if(AROMATIC_TYPES.contains(types[start])) {
+					path[0] = start;
+					findRings(start, 1, path, types, neighbours, rings);
+				}
+			}
+
+			List<int[]> aromatic = new ArrayList<int[]>();
+
+			for (int[] ring : rings.values()) {
+				if(Arrays.stream(ring).anyMatch(atom -> types[atom].equals("A"))) {
+					aromatic.add(ring);
+				}
+			}
+
+			aromatic.sort((a, b) -> Arrays.toString(a).compareTo(Arrays.toString(b)));
+
+			return aromatic.toArray(new int[aromatic.size()][]);
+		}
+
+		/**
+		 * Extend a path of ring atoms with atoms of a higher index than the start atom and keep the closed paths of 5 and 6 atoms
+		 */
+		private static void findRings(int start, int length, int[] path, String[] types, List<List<Integer>> neighbours,
+				Map<String, int[]> rings) {
+
+			int last = path[length - 1];
+
+			for (int next : neighbours.get(last)) {
+
+				if(next == start && length >= 5) {
+
+					int[] ring = Arrays.copyOf(path, length);
+					int[] sorted = ring.clone();
+
+					Arrays.sort(sorted);
+					rings.putIfAbsent(Arrays.toString(sorted), ring);
+
+					continue;
+				}
+
+				if(next <= start || length == path.length || !AROMATIC_TYPES.contains(types[next]) || contains(path, length, next)) {
+					continue;
+				}
+
+				path[length] = next;
+				findRings(start, length + 1, path, types, neighbours, rings);
+			}
+		}
+
+		private static boolean contains(int[] path, int length, int atom) {
+
+			for (int i = 0; i < length; i++) {
+				if(path[i] == atom) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static int count(List<Integer> atoms, String[] elements, String element) {
+
+			int count = 0;
+
+			for (int atom : atoms) {
+				if(elements[atom].equals(element)) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		private static boolean isLarge(String element) {
+			return element.equals("S") || element.equals("P") || element.equals("Cl") || element.equals("Br") || element.equals("I")
+					|| element.equals("Se") || element.equals("Si");
+		}
+
+		/**
+		 * Get the element of an AutoDock atom type
+		 */
+		private static String getElement(String type) {
+
+			switch (type) {
+			case "A":
+			case "C":
+			case "CG0":
+			case "CG1":
+			case "CG2":
+			case "CG3":
+				return "C";
+			case "N":
+			case "NA":
+			case "NS":
+				return "N";
+			case "OA":
+			case "OS":
+				return "O";
+			case "S":
+			case "SA":
+				return "S";
+			case "H":
+			case "HD":
+			case "HS":
+				return "H";
+			case "CL":
+				return "Cl";
+			case "BR":
+				return "Br";
+			default:
+				return type;
+			}
+		}
+	}
+
+	/**
+	 * The contact counts of one pose
+	 */
+	private static class PoseContacts {
+
+		private final String variant;
+		private final String ligand;
+		private final int mode;
+		private final float affinity;
+		private final int[] counts;
+
+		PoseContacts(String variant, String ligand, int mode, float affinity, int[] counts) {
+			this.variant = variant;
+			this.ligand = ligand;
+			this.mode = mode;
+			this.affinity = affinity;
+			this.counts = counts;
+		}
+	}
+
+}
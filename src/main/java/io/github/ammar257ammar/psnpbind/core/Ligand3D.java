@@ -21,29 +21,45 @@
 package io.github.ammar257ammar.psnpbind.core;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
-import org.jooq.lambda.Seq;
-import org.jooq.lambda.tuple.Tuple2;
-import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.SDFWriter;
 import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.layout.StructureDiagramGenerator;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
-import com.google.common.io.Files;
 import com.univocity.parsers.tsv.TsvParser;
 import com.univocity.parsers.tsv.TsvParserSettings;
 
 import io.github.ammar257ammar.psnpbind.core.model.PdbBindDataset;
 import io.github.ammar257ammar.psnpbind.core.model.PdbBindDataset.PdbbindAttribute;
+import io.github.ammar257ammar.psnpbind.core.model.SimilarLigandsDataset;
+import io.github.ammar257ammar.psnpbind.core.model.SimilarityMatrix;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetJoin;
+import io.github.ammar257ammar.psnpbind.core.utils.FileStore;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex.FingerprintType;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex.Hit;
+import io.github.ammar257ammar.psnpbind.core.utils.SdfPropertyScanner;
+import io.github.ammar257ammar.psnpbind.core.utils.TanimotoMatrixEngine;
 
 
 /**
@@ -76,6 +92,8 @@ public class Ligand3D {
 
 		List<String[]> pdbbindDataset = pdbbindData.getData();
 
+		FileStore store = FileStore.open(Config.getProperty("FILE_STORE_PATH"));
+
 		for (File molFolder : mols) {
 			if (molFolder.isDirectory()) {
 
@@ -94,7 +112,7 @@ public class Ligand3D {
 									pdbEntriesPath + "/" + ligandArr[0] + "/" + ligandArr[0] + "_ligand.sdf");
 							File ligandDest = new File(output + "/" + row[0] + "/" + ligandArr[0] + "_ligand.sdf");
 
-							Files.copy(ligandSrc, ligandDest);
+							store.stage(ligandSrc, ligandDest);
 
 							System.out.println("File copied: " + ligandArr[0]);
 
@@ -106,7 +124,126 @@ public class Ligand3D {
 	}
 	
 	/**
-	 * A method to extract ChEMBL IDs from the similar ligands SDF files selected with OpenBabel
+	 * A method to select the ChEMBL ligands similar to the PDBbind ligands with a fingerprint index (see FingerprintIndex)
+	 * instead of OpenBabel. The hits of each ligand file (*_ligand.sdf) of the PDB folders are written in the layout of
+	 * the OpenBabel runs: results (SDF files with the chembl_id property), results-smi (SMILES and ChEMBL ID) and logs
+	 * (Tanimoto similarities). The ligands are searched in parallel.
+	 * @param ligandsPath the ligands folder path (as prepared by prepareLigandsFolder)
+	 * @param indexPath the ChEMBL fingerprint index file path
+	 * @param threshold the minimum Tanimoto similarity of the selected ligands
+	 * @param maxHits the maximum number of selected ligands per PDBbind ligand, 0 or less for no limit
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void searchSimilarLigands(String ligandsPath, String indexPath, double threshold, int maxHits)
+			throws IOException {
+
+		FingerprintIndex index = FingerprintIndex.open(indexPath);
+
+		List<File> queries = Arrays.stream(new File(ligandsPath).listFiles())
+				.filter(File::isDirectory)
+				.flatMap(molFolder -> Arrays.stream(molFolder.listFiles((dir, name) -> name.endsWith("_ligand.sdf"))))
+				.collect(Collectors.toList());
+
+		ForkJoinPool pool = new ForkJoinPool(Config.getThreads());
+
+		try {
+
+			pool.submit(() -> queries.parallelStream().forEach(query -> {
+				try {
+					Ligand3D.searchSimilarLigands(index, query, threshold, maxHits);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			})).get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Similar ligands search was interrupted", e);
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void searchSimilarLigands(FingerprintIndex index, File query, double threshold, int maxHits)
+			throws IOException {
+
+		String name = query.getName().substring(0, query.getName().lastIndexOf("."));
+
+		List<Hit> hits;
+
+		try (IteratingSDFReader reader = new IteratingSDFReader(new FileReader(query), SilentChemObjectBuilder.getInstance())) {
+
+			if (!reader.hasNext()) {
+				System.out.println("No ligand in: " + query.getAbsolutePath());
+				return;
+			}
+
+			hits = index.search(reader.next(), threshold, maxHits);
+
+		} catch (CDKException e) {
+			System.out.println("Similarity search failed for: " + query.getAbsolutePath());
+			return;
+		}
+
+		File molFolder = query.getParentFile();
+
+		new File(molFolder, "results").mkdir();
+		new File(molFolder, "results-smi").mkdir();
+		new File(molFolder, "logs").mkdir();
+
+		try (SDFWriter sdfWriter = new SDFWriter(new FileWriter(new File(molFolder, "results/" + name + ".sdf")));
+				BufferedWriter smiWriter = new BufferedWriter(new FileWriter(new File(molFolder, "results-smi/" + name + ".smi")));
+				BufferedWriter logWriter = new BufferedWriter(new FileWriter(new File(molFolder, "logs/" + name + ".log")))) {
+
+			logWriter.write(">" + name + "\n");
+
+			StructureDiagramGenerator sdg = new StructureDiagramGenerator();
+
+			for (Hit hit : hits) {
+
+				IAtomContainer ac = FingerprintIndex.parseSmiles(hit.getSmiles());
+
+				if (ac != null) {
+
+					try {
+						sdg.generateCoordinates(ac);
+					} catch (CDKException e) {
+						System.out.println("2D coordinates generation failed for: " + hit.getId());
+					}
+
+					ac.setTitle(hit.getId());
+					ac.setProperty("chembl_id", hit.getId());
+
+					sdfWriter.write(ac);
+				}
+
+				smiWriter.write(hit.getSmiles() + "\t" + hit.getId() + "\n");
+				logWriter.write(">" + hit.getId() + "\tTanimoto from " + name + " = "
+						+ Math.round(hit.getSimilarity() * 1e6) / 1e6 + "\n");
+			}
+
+		} catch (CDKException e) {
+			throw new IOException("Writing the similar ligands of " + query.getAbsolutePath() + " failed", e);
+		}
+
+		System.out.println("Similar ligands selected: " + name + " (" + hits.size() + ")");
+	}
+
+	/**
+	 * A method to extract ChEMBL IDs from the similar ligands SDF files selected with OpenBabel.
+	 * Only the chembl_id data items are read (the molecules are not parsed) and the PDB folders are scanned in parallel,
+	 * the rows are returned in the order of the folders and files.
 	 * @param ligandsPath the OpenBabel-selected ligands folder path
 	 * @throws IOException in case of error in IO operations
 	 * @throws FileNotFoundException in case file not found
@@ -114,43 +251,52 @@ public class Ligand3D {
 	 */
 	public static List<String[]> getLigandIDsFromFiles(String ligandsPath) throws FileNotFoundException, IOException {
 
-		List<String[]> ligandsDataset = new ArrayList<String[]>();
-
 		File casf = new File(ligandsPath);
 		File[] mols = casf.listFiles();
 
-		for (File molFolder : mols) {
-			if (molFolder.isDirectory()) {
+		SdfPropertyScanner scanner = SdfPropertyScanner.create("chembl_id");
 
-				File splitted = new File(molFolder.getAbsolutePath() + "/results");
+		try {
 
-				if (splitted.exists()) {
+			return Arrays.stream(mols).parallel()
+					.filter(File::isDirectory)
+					.map(molFolder -> {
+						try {
+							return getLigandIDsFromFolder(molFolder, scanner);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})
+					.flatMap(List::stream)
+					.collect(Collectors.toList());
 
-					File[] similarLigands = splitted.listFiles();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
 
-					for (File similarLigand : similarLigands) {
+	private static List<String[]> getLigandIDsFromFolder(File molFolder, SdfPropertyScanner scanner) throws IOException {
 
-						int index = 1;
+		List<String[]> ligandsDataset = new ArrayList<String[]>();
 
-						try (IteratingSDFReader reader = new IteratingSDFReader(new FileInputStream(similarLigand),
-								DefaultChemObjectBuilder.getInstance())) {
+		File splitted = new File(molFolder.getAbsolutePath() + "/results");
 
-							while (reader.hasNext()) {
+		if (splitted.exists()) {
 
-								IAtomContainer ac = (IAtomContainer) reader.next();
+			File[] similarLigands = splitted.listFiles();
 
-								for (Map.Entry<Object, Object> entry : ac.getProperties().entrySet()) {
-									if (entry.getKey().equals("chembl_id")) {
-										ligandsDataset.add(
-												new String[] { 
-													molFolder.getName(),
-													similarLigand.getName().substring(0,similarLigand.getName().lastIndexOf(".")) + "_" + index++,
-													entry.getValue().toString() });
-									}
-								}
+			for (File similarLigand : similarLigands) {
 
-							}
-						}
+				int index = 1;
+
+				for (String[] values : scanner.scan(similarLigand)) {
+
+					if (values[0] != null) {
+						ligandsDataset.add(
+								new String[] { 
+									molFolder.getName(),
+									similarLigand.getName().substring(0,similarLigand.getName().lastIndexOf(".")) + "_" + index++,
+									values[0] });
 					}
 				}
 			}
@@ -243,196 +389,288 @@ public class Ligand3D {
 	public static List<String[]> combineIDsAndTanimotoOfLigands(String ligandsPath, String idsFile, boolean keepall)
 			throws FileNotFoundException, IOException {
 
-		List<String[]> ligandsDataset = new ArrayList<String[]>();
-
-		List<String[]> logsDataset = new ArrayList<String[]>();
+		LigandLogs logs = Ligand3D.harvestLigandLogs(ligandsPath, false);
 
-		File casf = new File(ligandsPath);
-		File[] mols = casf.listFiles();
+		List<String[]> ligandsDataset = Ligand3D.joinTanimoto(Ligand3D.parseTsvFile(idsFile), logs.tanimoto);
 
-		for (File molFolder : mols) {
-			if (molFolder.isDirectory()) {
+		return Ligand3D.getLigandsIDsFiltered(ligandsDataset, keepall);
+	}
+	
+	/**
+	 * A method to combine ligands information with Tanimoto similarity and SMILES
+	 * @param ligandsPath the OpenBabel-selected ligands folder path
+	 * @param idsFile ligands IDs file
+     * @param keepall if true, duplicates will not be removed
+	 * @throws IOException in case of error in IO operations
+	 * @throws FileNotFoundException in case file not found
+	 * @return a list of string arrays holding the filtered ligands names, IDs, Tanimoto similarity and SMILES
+	 */
+	public static List<String[]> combineIDsAndTanimotoAndSmilesOfLigands(String ligandsPath, String idsFile,
+			boolean keepall) throws FileNotFoundException, IOException {
 
-				File logsFolder = new File(molFolder.getAbsolutePath() + "/logs");
+		return Ligand3D.combineIDsWithLogsOfLigands(ligandsPath, Ligand3D.parseTsvFile(idsFile), keepall)
+				.getTanimotoAndSmilesData();
+	}
 
-				if (logsFolder.exists()) {
+	/**
+	 * A method to build both the Tanimoto and the Tanimoto and SMILES ligands tables in one pass.
+	 * Each log and SMILES file is read once (the PDB folders are read in parallel) and the duplicates are removed once,
+	 * the SMILES table is the filtered Tanimoto table joined with the SMILES.
+	 * @param ligandsPath the OpenBabel-selected ligands folder path
+	 * @param ids the filtered ligands names and IDs (as returned by getLigandsIDsFiltered)
+	 * @param keepall if true, duplicates will not be removed
+	 * @throws IOException in case of error in IO operations
+	 * @return a SimilarLigandsDataset holding both tables
+	 */
+	public static SimilarLigandsDataset combineIDsWithLogsOfLigands(String ligandsPath, List<String[]> ids,
+			boolean keepall) throws IOException {
 
-					File[] logs = logsFolder.listFiles();
+		LigandLogs logs = Ligand3D.harvestLigandLogs(ligandsPath, true);
 
-					for (File log : logs) {
+		List<String[]> ligandsDataset = Ligand3D.joinTanimoto(ids, logs.tanimoto);
 
-						try (BufferedReader reader = new BufferedReader(new FileReader(log))) {
-							String line;
-							boolean moleculeDefined = false;
-							String molecule = "";
+		ligandsDataset = Ligand3D.getLigandsIDsFiltered(ligandsDataset, keepall);
 
-							while ((line = reader.readLine()) != null) {
+		// join on the molecule folder and the ChEMBL ID, only the first SMILES of a ligand is kept
+		// if duplicates are removed, ligands without a SMILES get an empty one
+		DatasetJoin smilesJoin = DatasetJoin.create(logs.smiles, 0, 2);
 
-								if (line.startsWith(">")) {
+		List<String[]> ligandsDatasetFinal = new ArrayList<String[]>();
 
-									if (!moleculeDefined) {
-										molecule = line.substring(1, 5);
-										moleculeDefined = true;
-									} else {
+		for (String[] ligand : ligandsDataset) {
 
-										logsDataset.add(new String[] { molFolder.getName(), molecule,
-												line.substring(1, line.indexOf("Tanimoto")).trim(),
-												line.substring(line.lastIndexOf("=") + 1, line.length()).trim() });
-									}
-								}
-							}
-						} // try
+			List<String[]> smiles = smilesJoin.get(ligand, 0, 2);
 
-					} // for logs
-				} // if log exists
+			if (smiles.isEmpty()) {
+				ligandsDatasetFinal.add(new String[] { ligand[0], ligand[1], ligand[2], ligand[3], null });
 			}
-		} // for molecules in /pdb
-
-		TsvParserSettings settings = new TsvParserSettings();
-		settings.getFormat().setLineSeparator("\n");
 
-		TsvParser parser = new TsvParser(settings);
+			for (String[] smile : smiles) {
 
-		List<String[]> rows = parser.parseAll(new File(idsFile));
+				ligandsDatasetFinal.add(new String[] { ligand[0], ligand[1], ligand[2], ligand[3], smile[3] });
 
-		Seq<String[]> seqLogs = Seq.seq(logsDataset);
-
-		Seq<String[]> seqIds = Seq.seq(rows);
-
-		List<Tuple2<String[], String[]>> joinDataset = seqIds
-				.leftOuterJoin(seqLogs, (t, u) -> t[0].equals(u[0]) && t[2].equals(u[2])).collect(Collectors.toList());
-
-		for (Tuple2<String[], String[]> tuple : joinDataset) {
-			ligandsDataset.add(new String[] { tuple.v1[0], tuple.v1[1], tuple.v1[2], tuple.v2[3] });
+				if (!keepall) {
+					break;
+				}
+			}
 		}
 
-		ligandsDataset = Ligand3D.getLigandsIDsFiltered(ligandsDataset, keepall);
-
-		return ligandsDataset;
-
+		return new SimilarLigandsDataset(ligandsDataset, ligandsDatasetFinal);
 	}
-	
+
 	/**
-	 * A method to combine ligands information with Tanimoto similarity and SMILES
-	 * @param ligandsPath the OpenBabel-selected ligands folder path
-	 * @param idsFile ligands IDs file
-     * @param keepall if true, duplicates will not be removed
+	 * A method to compute the pairwise Tanimoto similarity matrix of the selected ligands of each PDB folder
+	 * (ECFP4 fingerprints of 1024 bits calculated from the SMILES). For each PDB, the sparse matrix is written to
+	 * [PDB]_similarity.bin (see SimilarityMatrix) and its rows (ligand name and ChEMBL ID) to [PDB]_similarity_rows.tsv,
+	 * ligands without a valid SMILES are left out. The PDB folders and the tiles of each matrix are computed in parallel.
+	 * @param smilesDatasetPath the ligands Tanimoto and SMILES dataset (chembl_ligands_filtered_combined_tanimoto_smiles.tsv)
+	 * @param outputPath the output folder path
+	 * @param threshold the minimum similarity of the stored values, 0 to keep all the non-zero similarities
 	 * @throws IOException in case of error in IO operations
-	 * @throws FileNotFoundException in case file not found
-	 * @return a list of string arrays holding the filtered ligands names, IDs, Tanimoto similarity and SMILES 
 	 */
-	public static List<String[]> combineIDsAndTanimotoAndSmilesOfLigands(String ligandsPath, String idsFile, boolean keepall)
-			throws FileNotFoundException, IOException {
+	public static void writeSimilarityMatrices(String smilesDatasetPath, String outputPath, double threshold)
+			throws IOException {
 
-		List<String[]> ligandsDataset = new ArrayList<String[]>();
-		List<String[]> ligandsDatasetFinal = new ArrayList<String[]>();
+		Map<String, List<String[]>> ligandsByPdb = Ligand3D.parseTsvFile(smilesDatasetPath).stream()
+				.filter(row -> row.length > 4 && row[4] != null)
+				.collect(Collectors.groupingBy(row -> row[0], LinkedHashMap::new, Collectors.toList()));
 
-		List<String[]> logsDataset = new ArrayList<String[]>();
+		new File(outputPath).mkdirs();
 
-		List<String[]> smilesDataset = new ArrayList<String[]>();
+		TanimotoMatrixEngine engine = TanimotoMatrixEngine.create().threshold(threshold);
 
-		
-		File casf = new File(ligandsPath);
-		File[] mols = casf.listFiles();
+		ForkJoinPool pool = new ForkJoinPool(Config.getThreads());
 
-		for (File molFolder : mols) {
-			if (molFolder.isDirectory()) {
+		try {
 
-				File logsFolder = new File(molFolder.getAbsolutePath() + "/logs");
+			pool.submit(() -> ligandsByPdb.entrySet().parallelStream().forEach(entry -> {
+				try {
+					Ligand3D.writeSimilarityMatrix(engine, entry.getKey(), entry.getValue(), outputPath);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			})).get();
 
-				if (logsFolder.exists()) {
+		} catch (InterruptedException e) {
 
-					File[] logs = logsFolder.listFiles();
+			Thread.currentThread().interrupt();
+			throw new IOException("Similarity matrices computation was interrupted", e);
 
-					for (File log : logs) {
+		} catch (ExecutionException e) {
 
-						try (BufferedReader reader = new BufferedReader(new FileReader(log))) {
-							String line;
-							boolean moleculeDefined = false;
-							String molecule = "";
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
 
-							while ((line = reader.readLine()) != null) {
+		} finally {
+			pool.shutdown();
+		}
+	}
 
-								if (line.startsWith(">")) {
+	private static void writeSimilarityMatrix(TanimotoMatrixEngine engine, String pdb, List<String[]> ligands,
+			String outputPath) throws IOException {
 
-									if (!moleculeDefined) {
-										molecule = line.substring(1, 5);
-										moleculeDefined = true;
-									} else {
+		int words = (FingerprintIndex.DEFAULT_BITS + 63) >>> 6;
 
-										logsDataset.add(new String[] { molFolder.getName(), molecule,
-												line.substring(1, line.indexOf("Tanimoto")).trim(),
-												line.substring(line.lastIndexOf("=") + 1, line.length()).trim() });
-									}
-								}
-							}
-						} // try
+		List<long[]> fingerprints = ligands.parallelStream().map(row -> {
+
+			IAtomContainer ac = FingerprintIndex.parseSmiles(row[4]);
+
+			try {
+				return ac == null ? null : FingerprintType.ECFP4.calculate(ac, FingerprintIndex.DEFAULT_BITS);
+			} catch (CDKException e) {
+				return null;
+			}
+		}).collect(Collectors.toList());
 
-					} // for logs
-				} // if log exists
-				
-				
-				File smiFolder = new File(molFolder.getAbsolutePath() + "/results-smi");
+		List<String[]> matrixRows = new ArrayList<String[]>();
+		long[] matrixWords = new long[ligands.size() * words];
 
-				if (smiFolder.exists()) {
+		for (int i = 0; i < ligands.size(); i++) {
 
-					File[] smiles = smiFolder.listFiles();
+			if (fingerprints.get(i) != null) {
 
-					for (File smile : smiles) {
+				System.arraycopy(fingerprints.get(i), 0, matrixWords, matrixRows.size() * words, words);
+				matrixRows.add(new String[] { ligands.get(i)[1], ligands.get(i)[2] });
+			}
+		}
 
-						try (BufferedReader reader = new BufferedReader(new FileReader(smile))) {
-							String line;
+		SimilarityMatrix matrix = engine.compute(Arrays.copyOf(matrixWords, matrixRows.size() * words), words);
 
-							while ((line = reader.readLine()) != null) {
+		matrix.write(outputPath + "/" + pdb + "_similarity.bin");
 
-								if (line.split("\t").length == 2) {
+		DataHandler.writeDatasetToTSV(matrixRows, outputPath + "/" + pdb + "_similarity_rows.tsv",
+				new String[] { "ligand", "chembl_id" });
 
-									smilesDataset.add(new String[] { molFolder.getName(), smile.getName().substring(0,4),
-												line.split("\t")[1].trim(),
-												line.split("\t")[0].trim() });
-								}
-							}
-						}
-					} // for smiles
-				} // if smile exists
-			} // if (molFolder.isDirectory())
-		} // for molecules in /pdb
+		System.out.println("Similarity matrix computed: " + pdb + " (" + matrixRows.size() + " ligands, "
+				+ matrix.getValuesCount() + " values)");
+	}
+
+	private static List<String[]> parseTsvFile(String path) {
 
 		TsvParserSettings settings = new TsvParserSettings();
 		settings.getFormat().setLineSeparator("\n");
 
 		TsvParser parser = new TsvParser(settings);
 
-		List<String[]> rows = parser.parseAll(new File(idsFile));
+		return parser.parseAll(new File(path));
+	}
 
-		Seq<String[]> seqLogs = Seq.seq(logsDataset);
+	private static List<String[]> joinTanimoto(List<String[]> ids, List<String[]> tanimoto) {
 
-		Seq<String[]> seqSmiles = Seq.seq(smilesDataset);
+		// join on the molecule folder and the ChEMBL ID, ligands without a log line get an empty Tanimoto
+		return DatasetJoin.create(tanimoto, 0, 2)
+				.leftJoin(ids, (t, u) -> new String[] { t[0], t[1], t[2], u == null ? null : u[3] }, 0, 2)
+				.collect(Collectors.toList());
+	}
 
-		Seq<String[]> seqIds = Seq.seq(rows);
+	/**
+	 * The rows read from the OpenBabel logs (PDB folder, molecule, ChEMBL ID, Tanimoto similarity)
+	 * and SMILES files (PDB folder, molecule, ChEMBL ID, SMILES)
+	 */
+	private static class LigandLogs {
 
-		List<Tuple2<String[], String[]>> joinDataset = seqIds
-				.leftOuterJoin(seqLogs, (t, u) -> t[0].equals(u[0]) && t[2].equals(u[2])).collect(Collectors.toList());
+		private final List<String[]> tanimoto = new ArrayList<String[]>();
+		private final List<String[]> smiles = new ArrayList<String[]>();
+	}
 
-		for (Tuple2<String[], String[]> tuple : joinDataset) {
-			ligandsDataset.add(new String[] { tuple.v1[0], tuple.v1[1], tuple.v1[2], tuple.v2[3] });
-		}
+	private static LigandLogs harvestLigandLogs(String ligandsPath, boolean readSmiles) throws IOException {
+
+		File casf = new File(ligandsPath);
+		File[] mols = casf.listFiles();
 
-		// A second join
-		Seq<String[]> seqligands = Seq.seq(ligandsDataset);
+		List<LigandLogs> folders;
 
-		List<Tuple2<String[], String[]>> joinDataset2 = seqligands
-				.leftOuterJoin(seqSmiles, (t, u) -> t[0].equals(u[0]) && t[2].equals(u[2])).collect(Collectors.toList());
+		try {
 
-		for (Tuple2<String[], String[]> tuple : joinDataset2) {
-			ligandsDatasetFinal.add(new String[] { tuple.v1[0], tuple.v1[1], tuple.v1[2], tuple.v1[3], tuple.v2[3] });
+			folders = Arrays.stream(mols).parallel()
+					.filter(File::isDirectory)
+					.map(molFolder -> {
+						try {
+							return harvestLigandLogsFromFolder(molFolder, readSmiles);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})
+					.collect(Collectors.toList());
+
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		LigandLogs logs = new LigandLogs();
+
+		for (LigandLogs folder : folders) {
+			logs.tanimoto.addAll(folder.tanimoto);
+			logs.smiles.addAll(folder.smiles);
 		}
-		
-		
-		ligandsDatasetFinal = Ligand3D.getLigandsIDsFiltered(ligandsDatasetFinal, keepall);
+		return logs;
+	}
+
+	private static LigandLogs harvestLigandLogsFromFolder(File molFolder, boolean readSmiles) throws IOException {
+
+		LigandLogs logs = new LigandLogs();
+
+		File logsFolder = new File(molFolder.getAbsolutePath() + "/logs");
+
+		if (logsFolder.exists()) {
 
-		return ligandsDatasetFinal;
+			File[] logFiles = logsFolder.listFiles();
+
+			for (File log : logFiles) {
+
+				try (BufferedReader reader = new BufferedReader(new FileReader(log))) {
+					String line;
+					boolean moleculeDefined = false;
+					String molecule = "";
+
+					while ((line = reader.readLine()) != null) {
+
+						if (line.startsWith(">")) {
+
+							if (!moleculeDefined) {
+								molecule = line.substring(1, 5);
+								moleculeDefined = true;
+							} else {
+
+								logs.tanimoto.add(new String[] { molFolder.getName(), molecule,
+										line.substring(1, line.indexOf("Tanimoto")).trim(),
+										line.substring(line.lastIndexOf("=") + 1, line.length()).trim() });
+							}
+						}
+					}
+				}
+			} // for logs
+		} // if log exists
+
+		File smiFolder = new File(molFolder.getAbsolutePath() + "/results-smi");
+
+		if (readSmiles && smiFolder.exists()) {
+
+			File[] smiles = smiFolder.listFiles();
+
+			for (File smile : smiles) {
+
+				try (BufferedReader reader = new BufferedReader(new FileReader(smile))) {
+					String line;
+
+					while ((line = reader.readLine()) != null) {
+
+						String[] lineArr = line.split("\t");
+
+						if (lineArr.length == 2) {
+							logs.smiles.add(new String[] { molFolder.getName(), smile.getName().substring(0, 4),
+									lineArr[1].trim(), lineArr[0].trim() });
+						}
+					}
+				}
+			} // for smiles
+		} // if smile exists
 
+		return logs;
 	}
 
 }
@@ -0,0 +1,795 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.config.Elements;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.fingerprint.CircularFingerprinter;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.qsar.DescriptorValue;
+import org.openscience.cdk.qsar.descriptors.molecular.ALOGPDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.APolDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.AromaticAtomsCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.AromaticBondsCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.AtomCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.BCUTDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.BasicGroupCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.CarbonTypesDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.FractionalPSADescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.HBondAcceptorCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.HBondDonorCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.JPlogPDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.MomentOfInertiaDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.RotatableBondsCountDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.RuleOfFiveDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.SmallRingDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.TPSADescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.VABCDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.VAdjMaDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.WHIMDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.WeightDescriptor;
+import org.openscience.cdk.qsar.descriptors.molecular.XLogPDescriptor;
+import org.openscience.cdk.qsar.result.DoubleArrayResult;
+import org.openscience.cdk.qsar.result.DoubleResult;
+import org.openscience.cdk.qsar.result.IntegerArrayResult;
+import org.openscience.cdk.qsar.result.IntegerResult;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.utils.SurfaceAreaEngine;
+
+/**
+ * A class holding one set of pre-initialised CDK descriptors to compute the ligand features of Featurizer.
+ *
+ * CDK descriptor instances keep their parameters as state (e.g. the element of AtomCountDescriptor or the weight
+ * of WHIMDescriptor) and are not safe to share between threads, so each thread gets its own engine with
+ * {@link #get()}. Instead of changing the parameters of a shared instance for every ligand, the engine keeps one
+ * instance per parameter value (three atom counters and five WHIM descriptors) configured once.
+ *
+ * The descriptors are organised in families (see DescriptorFamily), each family declares its columns, its cost
+ * and the molecule it is computed from, so only the requested families are computed. The families computed from
+ * the SMILES molecule run first and the ones which need the minimized mol2 structure run after, and the results are
+ * appended to the feature matrix in the column order of Featurizer.createLigandFeatureMatrix().
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class LigandDescriptorEngine {
+
+	/**
+	 * The version of the descriptor set, it is part of the descriptor cache keys and should be increased
+	 * when a descriptor or its parameters change so cached values computed by older versions are not used
+	 */
+	public static final int DESCRIPTOR_VERSION = 1;
+
+	/**
+	 * The relative cost of computing a descriptor family
+	 */
+	public enum Cost
+	{
+	    CHEAP, MODERATE, EXPENSIVE
+	}
+
+	/**
+	 * The molecule a descriptor family is computed from
+	 */
+	public enum Input
+	{
+	    SMILES_2D, MOL2_3D
+	}
+
+	/**
+	 * The ligand descriptor families in the column order of the ligand feature matrix. Each family adds its columns
+	 * to the matrix schema and computes its values as a double array (INT and STRING cells are stored as whole numbers,
+	 * the STRING value being an index in the family labels, and BITS cells as the indices of the set bits).
+	 */
+	public enum DescriptorFamily
+	{
+		LIPINSKI("lipinski", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("WeightDescriptor", ColumnType.DOUBLE);
+				matrix.addColumn("RuleOfFiveDescriptor", ColumnType.STRING);
+				matrix.addColumn("RotatableBondsCountDescriptor", ColumnType.INT);
+				matrix.addColumn("HBondDonorCountDescriptor", ColumnType.INT);
+				matrix.addColumn("HBondAcceptorCountDescriptor", ColumnType.INT);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { doubleResult(engine.descW.calculate(ac)), intResult(engine.descRof.calculate(ac)),
+						intResult(engine.descRot.calculate(ac)), intResult(engine.descHD.calculate(ac)),
+						intResult(engine.descHA.calculate(ac)) };
+			}
+
+			@Override
+			String getLabel(int index) {
+				return Featurizer.RULE_OF_FIVE_LABELS[index];
+			}
+		},
+		APOL("apol", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("APolDescriptor", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { doubleResult(engine.descApol.calculate(ac)) };
+			}
+		},
+		SMALL_RINGS("small-rings", Cost.MODERATE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumns("SmallRingDescriptor", ColumnType.INT, 9);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return ints((IntegerArrayResult) engine.descSR.calculate(ac).getValue(), 9);
+			}
+		},
+		POLAR_SURFACE("polar-surface", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("VABCDescriptor", ColumnType.DOUBLE);
+				matrix.addColumn("TPSADescriptor", ColumnType.DOUBLE);
+				matrix.addColumn("FractionalPSADescriptor", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { doubleResult(engine.descVol.calculate(ac)), doubleResult(engine.descTpsa.calculate(ac)),
+						doubleResult(engine.descFpsa.calculate(ac)) };
+			}
+		},
+		MOMENT_OF_INERTIA("moment-of-inertia", Cost.MODERATE, Input.MOL2_3D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumns("MomentOfInertiaDescriptor", ColumnType.DOUBLE, 7);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer acCleaned) throws CDKException {
+				return doubles((DoubleArrayResult) engine.descRoJ.calculate(acCleaned).getValue(), 7);
+			}
+		},
+		ATOM_COUNTS("atom-counts", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("AromaticAtomsCountDescriptor", ColumnType.INT);
+				matrix.addColumn("AromaticBondsCountDescriptor", ColumnType.INT);
+				matrix.addColumn("AtomCountDescriptor", ColumnType.INT);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { intResult(engine.descArCount.calculate(ac)), intResult(engine.descArBoCount.calculate(ac)),
+						intResult(engine.descAtCount.calculate(ac)) };
+			}
+		},
+		XLOGP("xlogp", Cost.MODERATE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("XLogPDescriptor", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { doubleResult(engine.descXlogp.calculate(ac)) };
+			}
+		},
+		VERTEX_ADJACENCY("vertex-adjacency", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("VAdjMaDescriptor", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { doubleResult(engine.descVadj.calculate(ac)) };
+			}
+		},
+		BASIC_GROUPS("basic-groups", Cost.MODERATE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("BasicGroupCountDescriptor", ColumnType.INT);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { intResult(engine.descBG.calculate(ac)) };
+			}
+		},
+		SURFACE_AREA("surface-area", Cost.MODERATE, Input.MOL2_3D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("TotalSurfaceArea", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer acCleaned) throws CDKException {
+				return new double[] { engine.surfaceArea.getTotalSurfaceArea(acCleaned) };
+			}
+		},
+		ALOGP("alogp", Cost.MODERATE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumns("AlogPDescriptor", ColumnType.DOUBLE, 3);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return doubles((DoubleArrayResult) engine.descAlogp.calculate(ac).getValue(), 3);
+			}
+		},
+		JPLOGP("jplogp", Cost.MODERATE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("JPlogPDescriptor", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return new double[] { doubleResult(engine.descJPlogp.calculate(ac)) };
+			}
+		},
+		BCUT("bcut", Cost.EXPENSIVE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumns("BCUTDescriptor", ColumnType.DOUBLE, 6);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				try {
+					return doubles((DoubleArrayResult) engine.descBcut.calculate(ac).getValue(), 6);
+				} catch (ArrayIndexOutOfBoundsException ex) {
+					return new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+				}
+			}
+		},
+		WHIM("whim", Cost.EXPENSIVE, Input.MOL2_3D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				for (String weight : Featurizer.WHIM_WEIGHTS) {
+					matrix.addColumns("WHIMDescriptor" + "_" + weight, ColumnType.DOUBLE, 17);
+				}
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer acCleaned) throws CDKException {
+
+				double[] values = new double[engine.descWhim.length * 17];
+
+				for (int w = 0; w < engine.descWhim.length; w++) {
+
+					DoubleArrayResult darWhim = (DoubleArrayResult) engine.descWhim[w].calculate(acCleaned).getValue();
+
+					for (int i = 0; i < 17; i++) {
+						values[w * 17 + i] = darWhim.get(i);
+					}
+				}
+				return values;
+			}
+		},
+		ELEMENTS("elements", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("AtomCountDescriptorN", ColumnType.INT);
+				matrix.addColumn("AtomCountDescriptorO", ColumnType.INT);
+				matrix.addColumn("Electronegativity", ColumnType.DOUBLE);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+
+				double totalE = 0.0;
+
+				for (IAtom atA : ac.atoms()) {
+					totalE += Elements.ofString(atA.getSymbol()).electronegativity();
+				}
+
+				return new double[] { intResult(engine.descAtCountN.calculate(ac)), intResult(engine.descAtCountO.calculate(ac)),
+						totalE };
+			}
+		},
+		CARBON_TYPES("carbon-types", Cost.CHEAP, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumns("CarbonTypesDescriptor", ColumnType.INT, 9);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+				return ints((IntegerArrayResult) engine.descCTD.calculate(ac).getValue(), 9);
+			}
+		},
+		FINGERPRINT("fingerprint", Cost.MODERATE, Input.SMILES_2D) {
+			@Override
+			void addColumns(FeatureMatrix matrix) {
+				matrix.addColumn("CircularFingerprinter", ColumnType.BITS, 1024);
+			}
+
+			@Override
+			double[] calculate(LigandDescriptorEngine engine, IAtomContainer ac) throws CDKException {
+
+				int[] setBits = engine.circularFingerprinter.getBitFingerprint(ac).getSetbits();
+
+				double[] values = new double[setBits.length];
+
+				for (int i = 0; i < setBits.length; i++) {
+					values[i] = setBits[i];
+				}
+				return values;
+			}
+
+			@Override
+			void append(FeatureMatrix matrix, double[] values) {
+
+				int[] setBits = new int[values.length];
+
+				for (int i = 0; i < values.length; i++) {
+					setBits[i] = (int) values[i];
+				}
+				matrix.addBits(setBits);
+			}
+		};
+
+		private final String name;
+		private final Cost cost;
+		private final Input input;
+
+		DescriptorFamily(String name, Cost cost, Input input) {
+			this.name = name;
+			this.cost = cost;
+			this.input = input;
+		}
+
+		/**
+		 * Get the family name used in the configuration and the command line
+		 * @return the family name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the relative cost of the family
+		 * @return a Cost value
+		 */
+		public Cost getCost() {
+			return cost;
+		}
+
+		/**
+		 * Get the molecule the family is computed from
+		 * @return SMILES_2D for the molecule parsed from the SMILES file or MOL2_3D for the minimized mol2 structure
+		 */
+		public Input getInput() {
+			return input;
+		}
+
+		/**
+		 * Add the columns of the family to a feature matrix schema
+		 * @param matrix the feature matrix
+		 */
+		abstract void addColumns(FeatureMatrix matrix);
+
+		/**
+		 * Compute the values of the family
+		 * @param engine the descriptor engine of the current thread
+		 * @param molecule the molecule of the family input
+		 * @return the values in the column order
+		 * @throws CDKException in case of error in computing a descriptor
+		 */
+		abstract double[] calculate(LigandDescriptorEngine engine, IAtomContainer molecule) throws CDKException;
+
+		/**
+		 * Append the values of the family to the current row of a feature matrix
+		 * @param matrix the feature matrix
+		 * @param values the values computed by calculate
+		 */
+		void append(FeatureMatrix matrix, double[] values) {
+
+			for (double value : values) {
+
+				switch (matrix.getColumns().get(matrix.getCursor()).getType()) {
+				case INT:
+					matrix.add((int) value);
+					break;
+				case STRING:
+					matrix.add(getLabel((int) value));
+					break;
+				default:
+					matrix.add(value);
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Get the label of a STRING value
+		 * @param index the value computed by calculate
+		 * @return the label written to the feature matrix
+		 */
+		String getLabel(int index) {
+			throw new UnsupportedOperationException(this.name + " has no STRING column");
+		}
+
+		/**
+		 * Parse a selection of families (e.g. from the command line or the LIGAND_DESCRIPTORS config key).
+		 * The selection is a comma-separated list of family names and presets:
+		 * "all", "2d" (the families computed from the SMILES), "3d" (the families computed from the mol2 structure),
+		 * "cheap" (the CHEAP families), "no-expensive" (all but the EXPENSIVE families) and
+		 * "screening" (lipinski and fingerprint)
+		 * @param selection the selection string, null or empty selects all families
+		 * @return the selected families
+		 */
+		public static Set<DescriptorFamily> parseSelection(String selection) {
+
+			if (selection == null || selection.trim().isEmpty()) {
+				return Collections.unmodifiableSet(EnumSet.allOf(DescriptorFamily.class));
+			}
+
+			EnumSet<DescriptorFamily> families = EnumSet.noneOf(DescriptorFamily.class);
+
+			for (String token : selection.split(",")) {
+
+				String name = token.trim().toLowerCase();
+
+				switch (name) {
+				case "all":
+					families.addAll(EnumSet.allOf(DescriptorFamily.class));
+					break;
+				case "2d":
+				case "3d":
+					for (DescriptorFamily family : values()) {
+						if (family.input == (name.equals("2d") ? Input.SMILES_2D : Input.MOL2_3D)) {
+							families.add(family);
+						}
+					}
+					break;
+				case "cheap":
+				case "no-expensive":
+					for (DescriptorFamily family : values()) {
+						if (family.cost == Cost.CHEAP || (name.equals("no-expensive") && family.cost == Cost.MODERATE)) {
+							families.add(family);
+						}
+					}
+					break;
+				case "screening":
+					families.add(LIPINSKI);
+					families.add(FINGERPRINT);
+					break;
+				default:
+					families.add(fromName(name));
+				}
+			}
+			return Collections.unmodifiableSet(families);
+		}
+
+		/**
+		 * Get a family by its name
+		 * @param name the family name (e.g. "moment-of-inertia")
+		 * @return the DescriptorFamily
+		 */
+		public static DescriptorFamily fromName(String name) {
+
+			for (DescriptorFamily family : values()) {
+				if (family.name.equals(name.trim().toLowerCase())) {
+					return family;
+				}
+			}
+			throw new IllegalArgumentException("Unknown ligand descriptor family: " + name);
+		}
+
+		/**
+		 * Check if a selection of families needs the minimized mol2 structure
+		 * @param families the selected families
+		 * @return true if one of the families is computed from the mol2 structure
+		 */
+		public static boolean needs3D(Set<DescriptorFamily> families) {
+
+			for (DescriptorFamily family : families) {
+				if (family.input == Input.MOL2_3D) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final ThreadLocal<LigandDescriptorEngine> ENGINES = new ThreadLocal<LigandDescriptorEngine>() {
+		@Override
+		protected LigandDescriptorEngine initialValue() {
+			try {
+				return new LigandDescriptorEngine();
+			} catch (CDKException e) {
+				throw new IllegalStateException("The ligand descriptors cannot be initialised", e);
+			}
+		}
+	};
+
+	// RULES OF FIVE
+	private final WeightDescriptor descW = new WeightDescriptor();
+	private final RuleOfFiveDescriptor descRof = new RuleOfFiveDescriptor();
+	private final RotatableBondsCountDescriptor descRot = new RotatableBondsCountDescriptor();
+	private final HBondDonorCountDescriptor descHD = new HBondDonorCountDescriptor();
+	private final HBondAcceptorCountDescriptor descHA = new HBondAcceptorCountDescriptor();
+
+	private final APolDescriptor descApol = new APolDescriptor();
+	private final SmallRingDescriptor descSR = new SmallRingDescriptor();
+	private final VABCDescriptor descVol = new VABCDescriptor();
+	private final TPSADescriptor descTpsa = new TPSADescriptor();
+	private final FractionalPSADescriptor descFpsa = new FractionalPSADescriptor();
+
+	private final AromaticAtomsCountDescriptor descArCount = new AromaticAtomsCountDescriptor();
+	private final AromaticBondsCountDescriptor descArBoCount = new AromaticBondsCountDescriptor();
+
+	private final AtomCountDescriptor descAtCount = new AtomCountDescriptor();
+	private final AtomCountDescriptor descAtCountN = new AtomCountDescriptor();
+	private final AtomCountDescriptor descAtCountO = new AtomCountDescriptor();
+
+	private final XLogPDescriptor descXlogp = new XLogPDescriptor();
+	private final ALOGPDescriptor descAlogp = new ALOGPDescriptor();
+	private final JPlogPDescriptor descJPlogp = new JPlogPDescriptor();
+
+	private final VAdjMaDescriptor descVadj = new VAdjMaDescriptor();
+	private final BasicGroupCountDescriptor descBG = new BasicGroupCountDescriptor();
+	private final BCUTDescriptor descBcut = new BCUTDescriptor();
+	private final CarbonTypesDescriptor descCTD = new CarbonTypesDescriptor();
+
+	// 3D descriptors computed on the minimized mol2 structure
+	private final MomentOfInertiaDescriptor descRoJ = new MomentOfInertiaDescriptor();
+	private final WHIMDescriptor[] descWhim = new WHIMDescriptor[Featurizer.WHIM_WEIGHTS.length];
+
+	// the same surface as NumericalSurface (probe radius 1.4, tessellation level 4)
+	private final SurfaceAreaEngine surfaceArea = SurfaceAreaEngine.create();
+
+	// MCFP fingerprint
+	private final CircularFingerprinter circularFingerprinter = new CircularFingerprinter(
+			CircularFingerprinter.CLASS_ECFP4, 1024);
+
+	/**
+	 * Create and configure a set of descriptors, use get() to obtain the engine of the current thread
+	 * @throws CDKException in case of error in setting the descriptor parameters
+	 */
+	private LigandDescriptorEngine() throws CDKException {
+
+		this.descBG.initialise(DefaultChemObjectBuilder.getInstance());
+
+		this.descAtCount.setParameters(new Object[] { "*" });
+		this.descAtCountN.setParameters(new Object[] { "N" });
+		this.descAtCountO.setParameters(new Object[] { "O" });
+
+		for (int i = 0; i < this.descWhim.length; i++) {
+
+			this.descWhim[i] = new WHIMDescriptor();
+			this.descWhim[i].setParameters(new Object[] { Featurizer.WHIM_WEIGHTS[i] });
+		}
+	}
+
+	/**
+	 * Get the descriptor engine of the current thread
+	 * @return a LigandDescriptorEngine used only by the calling thread
+	 */
+	public static LigandDescriptorEngine get() {
+		return ENGINES.get();
+	}
+
+	/**
+	 * Get the key of the values of a descriptor family of a ligand in the ligand descriptor cache
+	 * @param family the descriptor family
+	 * @param smiles the canonical SMILES of the ligand (see LigandDescriptorCache.canonicalSmiles)
+	 * @param mol2Hash the content hash of the minimized mol2 file, only used by the families computed from the 3D structure
+	 * @return the cache key
+	 */
+	public static String getCacheKey(DescriptorFamily family, String smiles, String mol2Hash) {
+
+		String key = "ligand/" + family.getName() + "/" + DESCRIPTOR_VERSION + "/" + smiles;
+
+		return family.getInput() == Input.MOL2_3D ? key + "/" + mol2Hash : key;
+	}
+
+	/**
+	 * A method to compute all the descriptor families of a ligand
+	 * @param ac the ligand molecule parsed from its SMILES with explicit hydrogens
+	 * @param acCleaned the minimized ligand molecule parsed from its mol2 file
+	 * @return a LigandDescriptors object holding the features of the ligand
+	 * @throws CDKException in case of error in computing a descriptor
+	 */
+	public LigandDescriptors calculate(IAtomContainer ac, IAtomContainer acCleaned) throws CDKException {
+
+		LigandDescriptors d = new LigandDescriptors();
+
+		for (DescriptorFamily family : DescriptorFamily.values()) {
+			if (family.getInput() == Input.SMILES_2D) {
+				calculate(family, ac, d);
+			}
+		}
+
+		for (DescriptorFamily family : DescriptorFamily.values()) {
+			if (family.getInput() == Input.MOL2_3D) {
+				calculate(family, acCleaned, d);
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * A method to compute one descriptor family of a ligand
+	 * @param family the descriptor family
+	 * @param molecule the molecule of the family input (SMILES or mol2 molecule)
+	 * @param d the LigandDescriptors object to fill
+	 * @throws CDKException in case of error in computing a descriptor
+	 */
+	public void calculate(DescriptorFamily family, IAtomContainer molecule, LigandDescriptors d) throws CDKException {
+		d.values.put(family, family.calculate(this, molecule));
+	}
+
+	/**
+	 * A class holding the descriptor values of one ligand by family, so they can be computed by a worker thread
+	 * (or read from the descriptor cache) and appended to the shared feature matrix in the original ligand order
+	 */
+	public static class LigandDescriptors {
+
+		private final Map<DescriptorFamily, double[]> values = new EnumMap<DescriptorFamily, double[]>(DescriptorFamily.class);
+
+		/**
+		 * Create an empty descriptors object to be filled by the engine or decoded from the descriptor cache
+		 */
+		public LigandDescriptors() {
+		}
+
+		/**
+		 * Check if the values of a family are set
+		 * @param family the descriptor family
+		 * @return true if the family was computed or decoded
+		 */
+		public boolean contains(DescriptorFamily family) {
+			return this.values.containsKey(family);
+		}
+
+		/**
+		 * Get the molecular weight
+		 * @return the WeightDescriptor value
+		 */
+		public double getWeight() {
+			return this.values.get(DescriptorFamily.LIPINSKI)[0];
+		}
+
+		/**
+		 * Get the number of rotatable bonds
+		 * @return the RotatableBondsCountDescriptor value
+		 */
+		public int getRotatableBonds() {
+			return (int) this.values.get(DescriptorFamily.LIPINSKI)[2];
+		}
+
+		/**
+		 * Get the number of hydrogen bond donors
+		 * @return the HBondDonorCountDescriptor value
+		 */
+		public int getHBondDonors() {
+			return (int) this.values.get(DescriptorFamily.LIPINSKI)[3];
+		}
+
+		/**
+		 * Get the number of hydrogen bond acceptors
+		 * @return the HBondAcceptorCountDescriptor value
+		 */
+		public int getHBondAcceptors() {
+			return (int) this.values.get(DescriptorFamily.LIPINSKI)[4];
+		}
+
+		/**
+		 * Get the XLogP value
+		 * @return the XLogPDescriptor value
+		 */
+		public double getXLogP() {
+			return this.values.get(DescriptorFamily.XLOGP)[0];
+		}
+
+		/**
+		 * Encode the values of a family (to be stored in the descriptor cache)
+		 * @param family the descriptor family
+		 * @return the encoded values
+		 */
+		public byte[] encode(DescriptorFamily family) {
+
+			double[] familyValues = this.values.get(family);
+
+			ByteBuffer buffer = ByteBuffer.allocate(8 * familyValues.length);
+
+			for (double value : familyValues) {
+				buffer.putDouble(value);
+			}
+			return buffer.array();
+		}
+
+		/**
+		 * Set the values of a family from their encoded form
+		 * @param family the descriptor family
+		 * @param bytes the values encoded by encode
+		 */
+		public void decode(DescriptorFamily family, byte[] bytes) {
+
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+			double[] familyValues = new double[bytes.length / 8];
+
+			for (int i = 0; i < familyValues.length; i++) {
+				familyValues[i] = buffer.getDouble();
+			}
+			this.values.put(family, familyValues);
+		}
+
+		/**
+		 * Append the values of the computed families to the current row of a ligand feature matrix
+		 * (the row identification columns should be already filled)
+		 * @param matrix the feature matrix created by Featurizer.createLigandFeatureMatrix() with the same families
+		 */
+		public void appendTo(FeatureMatrix matrix) {
+
+			for (Map.Entry<DescriptorFamily, double[]> entry : this.values.entrySet()) {
+				entry.getKey().append(matrix, entry.getValue());
+			}
+		}
+	}
+
+	private static double[] ints(IntegerArrayResult result, int length) {
+
+		double[] values = new double[length];
+
+		for (int i = 0; i < length; i++) {
+			values[i] = result.get(i);
+		}
+		return values;
+	}
+
+	private static double[] doubles(DoubleArrayResult result, int length) {
+
+		double[] values = new double[length];
+
+		for (int i = 0; i < length; i++) {
+			values[i] = result.get(i);
+		}
+		return values;
+	}
+
+	private static int intResult(DescriptorValue value) {
+		return ((IntegerResult) value.getValue()).intValue();
+	}
+
+	private static double doubleResult(DescriptorValue value) {
+		return ((DoubleResult) value.getValue()).doubleValue();
+	}
+}
@@ -24,18 +24,26 @@ package io.github.ammar257ammar.psnpbind.core;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 import org.biojava.nbio.structure.StructureException;
 import org.openscience.cdk.exception.CDKException;
 
 import io.github.ammar257ammar.psnpbind.core.Config;
 import io.github.ammar257ammar.psnpbind.core.FoldX;
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.DescriptorFamily;
 import io.github.ammar257ammar.psnpbind.core.SiftsPocketResiduesMapper;
 import io.github.ammar257ammar.psnpbind.core.UniProtVariantsMapper;
 import io.github.ammar257ammar.psnpbind.core.db.DbDataFabricator;
 import io.github.ammar257ammar.psnpbind.core.model.PdbBindDataset;
 import io.github.ammar257ammar.psnpbind.core.model.PdbBindDataset.PdbbindAttribute;
+import io.github.ammar257ammar.psnpbind.core.model.SimilarLigandsDataset;
 import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetWriter;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex.FingerprintType;
 import io.github.ammar257ammar.psnpbind.core.utils.PdbTools;
 
 /**
@@ -154,6 +162,40 @@ public class PSnpBindCore {
         	
         	break;
         	
+    	case "build-chembl-index":
+    		
+        	try {
+        		String fingerprint = Config.getProperty("CHEMBL_FINGERPRINT");
+        		
+				int molecules = FingerprintIndex.build(Config.getProperty("CHEMBL_DUMP_PATH"), 
+						Config.getProperty("CHEMBL_INDEX_PATH"), 
+						fingerprint == null ? FingerprintType.ECFP4 : FingerprintType.fromName(fingerprint), 
+						FingerprintIndex.DEFAULT_BITS);
+				
+				System.out.println("ChEMBL index built with " + molecules + " molecules");
+				
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+        	
+        	break;
+        	
+    	case "similar-ligands-search":
+    		
+        	try {
+        		String maxHits = Config.getProperty("SIMILARITY_MAX_HITS");
+        		
+				Ligand3D.searchSimilarLigands(Config.getProperty("LIGANDS_PATH"), 
+						Config.getProperty("CHEMBL_INDEX_PATH"), 
+						Double.parseDouble(Config.getProperty("SIMILARITY_THRESHOLD")), 
+						maxHits == null ? 0 : Integer.parseInt(maxHits.trim()));
+				
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+        	
+        	break;
+        	
     	case "ligands-tanimoto-dataset":
     		    		
 			try {
@@ -162,17 +204,13 @@ public class PSnpBindCore {
 				DataHandler.writeDatasetToTSV(similarLigands, 
 	        			Config.getProperty("TSV_PATH") + "/chembl_ligands_filtered.tsv");
 
-	        	List<String[]> ligandsWithIDsAndTanimoto = Ligand3D.combineIDsAndTanimotoOfLigands(Config.getProperty("LIGANDS_PATH"), 
-	        			Config.getProperty("TSV_PATH") + "/chembl_ligands_filtered.tsv", false);
+	        	SimilarLigandsDataset ligandsWithLogs = Ligand3D.combineIDsWithLogsOfLigands(Config.getProperty("LIGANDS_PATH"), 
+	        			similarLigands, false);
 
-	        	DataHandler.writeDatasetToTSV(ligandsWithIDsAndTanimoto, 
+	        	DataHandler.writeDatasetToTSV(ligandsWithLogs.getTanimotoData(), 
 	        			Config.getProperty("TSV_PATH") + "/chembl_ligands_filtered_combined_tanimoto.tsv");
 	        	
-	        	
-	        	List<String[]> ligandsWithIDsAndTanimotoAndSmiles = Ligand3D.combineIDsAndTanimotoAndSmilesOfLigands(Config.getProperty("LIGANDS_PATH"), 
-	        			Config.getProperty("TSV_PATH") + "/chembl_ligands_filtered.tsv", false);
-	        	
-	        	DataHandler.writeDatasetToTSV(ligandsWithIDsAndTanimotoAndSmiles, 
+	        	DataHandler.writeDatasetToTSV(ligandsWithLogs.getTanimotoAndSmilesData(), 
 	        			Config.getProperty("TSV_PATH") + "/chembl_ligands_filtered_combined_tanimoto_smiles.tsv");
         	
 			} catch (IOException e) {
@@ -181,16 +219,26 @@ public class PSnpBindCore {
 
 			break;
         	
+    	case "ligands-similarity-matrix":
+    		
+        	try {
+        		String threshold = Config.getProperty("SIMILARITY_MATRIX_THRESHOLD");
+        		
+				Ligand3D.writeSimilarityMatrices(Config.getProperty("TSV_PATH") + "/chembl_ligands_filtered_combined_tanimoto_smiles.tsv", 
+						Config.getProperty("TSV_PATH") + "/similarity", 
+						threshold == null ? 0.0 : Double.parseDouble(threshold.trim()));
+				
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+        	
+        	break;
+        	
     	case "prepare-vina-folders-config":
     		
     		try {
-    			Vina.createFolderStructureFromGromacsFolder(Config.getProperty("FOLDX_PDB_DIR"), Config.getProperty("VINA_DOCKING_DIR"));
-
-    			Vina.createLigandsStructureAfterVinaFolder(Config.getProperty("VINA_DOCKING_DIR"), Config.getProperty("LIGANDS_PATH"), true);
-
-    			Vina.createSeedFilesAfterLigandsStructure(Config.getProperty("VINA_DOCKING_DIR"), "1264647227", false);
-
-    			Vina.createConfigFilesAfterLigandsStructure(Config.getProperty("VINA_DOCKING_DIR"),false);       		
+    			VinaPreparationEngine.create().replace(false).run(Config.getProperty("FOLDX_PDB_DIR"), Config.getProperty("VINA_DOCKING_DIR"), 
+    					Config.getProperty("LIGANDS_PATH"), true, "1264647227");
        		
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -199,10 +247,53 @@ public class PSnpBindCore {
     		
     		break;
   
+    	case "detect-equivalent-pockets":
+    		
+    		try {
+    			PocketEquivalenceDetector.create().detect(Config.getProperty("VINA_DOCKING_DIR"),
+    					Config.getProperty("TSV_PATH") + "/pocket-equivalence.tsv");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+    		
+    		break;
+    		
+    	case "run-dockings":
+    		
+    		try {
+    			DockingScheduler.create().run(Config.getProperty("VINA_DOCKING_DIR"));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+    		
+    		break;
+    		
     	case "generate-dockings-results":
     		
     		try {
-    	    	Vina.generateVinaReportAll(Config.getProperty("VINA_DOCKING_DIR"),Config.getProperty("TSV_PATH")+"/docking-results");
+    	    	Vina.generateVinaReportAll(Config.getProperty("VINA_DOCKING_DIR"),Config.getProperty("TSV_PATH")+"/docking-results",
+    	    			OutputFormat.fromName(cli.outputFormat));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+    		
+    		break;
+    		
+    	case "build-pose-store":
+    		
+    		try {
+    			VinaPoseEngine.create().build(Config.getProperty("VINA_DOCKING_DIR"), Config.getProperty("POSE_STORE_PATH"));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+    		
+    		break;
+    		
+    	case "featurize-interactions":
+    		
+    		try {
+    			InteractionFeaturizer.create().format(OutputFormat.fromName(cli.outputFormat))
+    				.featurize(Config.getProperty("VINA_DOCKING_DIR"), Config.getProperty("POSE_STORE_PATH"), Config.getProperty("FEATURES_PATH"));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -223,6 +314,11 @@ public class PSnpBindCore {
     	    String[] pdbs = {"1owh","2hb1","3jvr","5a7b","4twp","2y5h","2c3i","4jia","4m0y","4dli","4e5w","4crc",
     	                   "4wiv", "3up2", "3u9q", "3pxf", "3b27", "3b5r", "3udh", "5c28", "2pog", "2weg", "4gr0", "4j21","3fv1","3utu"};
     	   
+    	    FingerprintEncoding fingerprintEncoding = FingerprintEncoding.fromName(cli.fingerprintEncoding);
+    	    OutputFormat outputFormat = OutputFormat.fromName(cli.outputFormat);
+    	    Set<DescriptorFamily> ligandDescriptors = DescriptorFamily.parseSelection(
+    	    		cli.ligandDescriptors != null ? cli.ligandDescriptors : Config.getProperty("LIGAND_DESCRIPTORS"));
+    	    
     	    try {
         	    
     	        for(String pdb: pdbs) {
@@ -232,16 +328,21 @@ public class PSnpBindCore {
                   }
 
                   List<String[]> featuresOnePDB = Featurizer.getSnpsFeatures(Config.getProperty("TSV_PATH")+"/pdbbind_pocket_variants.tsv",Config.getProperty("FOLDX_PDB_DIR"),pdb); 
-                  DataHandler.writeDatasetToTSV(featuresOnePDB, Config.getProperty("FEATURES_PATH")+"/"+pdb+"/pdbbind_pocket_variants_features_"+pdb+".tsv");
+                  DataHandler.writeDataset(featuresOnePDB.subList(1, featuresOnePDB.size()), 
+                		  Config.getProperty("FEATURES_PATH")+"/"+pdb+"/pdbbind_pocket_variants_features_"+pdb+".tsv", featuresOnePDB.get(0), outputFormat);
                   
-                  List<String[]> featuresOnePDBL = Featurizer.getLigandsFeatures(Config.getProperty("LIGANDS_PATH"),Config.getProperty("TSV_PATH")+"/chembl_ligands_filtered_combined_tanimoto.tsv",pdb);
-                  DataHandler.writeDatasetToTSV(featuresOnePDBL, Config.getProperty("FEATURES_PATH")+"/"+pdb+"/chembl_ligands_features_"+pdb+".tsv");
+                  try (DatasetWriter ligandsWriter = DataHandler.createDatasetWriter(Config.getProperty("FEATURES_PATH")+"/"+pdb+"/chembl_ligands_features_"+pdb+".tsv", 
+                		  outputFormat, fingerprintEncoding)) {
+                	  
+                	  Featurizer.writeLigandsFeatures(Config.getProperty("LIGANDS_PATH"),Config.getProperty("TSV_PATH")+"/chembl_ligands_filtered_combined_tanimoto.tsv",pdb, ligandDescriptors, ligandsWriter);
+                  }
               
                   List<String[]> featuresOnePocket = Featurizer.getPocketsFeatures(pdb);
-                  DataHandler.writeDatasetToTSV(featuresOnePocket, Config.getProperty("FEATURES_PATH")+"/"+pdb+"/pdbbind_pocket_features_"+pdb+".tsv");   
+                  DataHandler.writeDataset(featuresOnePocket.subList(1, featuresOnePocket.size()), 
+                		  Config.getProperty("FEATURES_PATH")+"/"+pdb+"/pdbbind_pocket_features_"+pdb+".tsv", featuresOnePocket.get(0), outputFormat);
         	    }
               
-        	    Vina.generateVinaReportAll(Config.getProperty("VINA_DOCKING_DIR"),Config.getProperty("FEATURES_PATH"));
+        	    Vina.generateVinaReportAll(Config.getProperty("VINA_DOCKING_DIR"),Config.getProperty("FEATURES_PATH"), outputFormat);
     	  
     	    } catch (IOException | StructureException e) {
               e.printStackTrace();
@@ -0,0 +1,458 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import io.github.ammar257ammar.psnpbind.core.model.PocketResidue;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbTools;
+import io.github.ammar257ammar.psnpbind.core.utils.TsvFormatter;
+
+/**
+ * A class to find the protein variants whose binding pocket is equivalent to the wild-type pocket, so the dockings
+ * of the variant can reuse the wild-type dockings or run with a lower exhaustiveness (see DockingScheduler).
+ *
+ * The pocket of a variant is made of the residues Vina.getPocketForModifiedPDBbindStructure selects (the pocket residue
+ * keys of the entry) in the minimized variant structure. It is compared with the pocket of the minimized wild-type by:
+ *
+ * - the side-chain identity, the fraction of pocket residues with the same residue name as in the wild-type
+ * - the side-chain size change, the sum of the heavy atom count differences of the mutated pocket residues
+ * - the RMSD of the pocket heavy atoms present (by name) in both pockets, without superposition since the
+ *   docking grid of the wild-type is computed in the wild-type coordinates
+ *
+ * A variant is equivalent when all pocket residues are found in both structures and the three values are within
+ * the POCKET_MIN_IDENTITY, POCKET_MAX_ATOM_CHANGE and POCKET_RMSD_THRESHOLD config values. The equivalent variants
+ * are flagged by a [variant]_equivalent.txt file in the variant folder holding the wild-type variant name.
+ *
+ * The default is an exact equivalence (POCKET_MIN_IDENTITY 1.0 and POCKET_MAX_ATOM_CHANGE 0): the pocket residues
+ * are the same as in the wild-type and only their coordinates may differ within the RMSD threshold. A mutated pocket
+ * residue is only accepted when lower values are set explicitly, since its dockings are then reused or reduced.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class PocketEquivalenceDetector {
+
+	public static final String FLAG_SUFFIX = "_equivalent.txt";
+
+	public static final String[] REPORT_HEADER = { "PDB", "Variant", "Wild-type", "Pocket residues", "Mutated residues",
+			"Side-chain identity", "Side-chain atom change", "Matched atoms", "RMSD", "Equivalent" };
+
+	private double rmsdThreshold = getProperty("POCKET_RMSD_THRESHOLD", 0.5);
+	private double minIdentity = getProperty("POCKET_MIN_IDENTITY", 1.0);
+	private int maxAtomChange = (int) getProperty("POCKET_MAX_ATOM_CHANGE", 0);
+
+	private int threads = Config.getThreads();
+
+	private PocketEquivalenceDetector() {
+	}
+
+	/**
+	 * Create a detector configured with the POCKET_* config values
+	 * @return a new detector
+	 */
+	public static PocketEquivalenceDetector create() {
+		return new PocketEquivalenceDetector();
+	}
+
+	/**
+	 * Set the maximum pocket RMSD of an equivalent variant
+	 * @param rmsdThreshold the RMSD threshold in Angstrom
+	 * @return the detector
+	 */
+	public PocketEquivalenceDetector rmsdThreshold(double rmsdThreshold) {
+		this.rmsdThreshold = rmsdThreshold;
+		return this;
+	}
+
+	/**
+	 * Set the minimum side-chain identity of an equivalent variant
+	 * @param minIdentity the fraction of pocket residues which are not mutated
+	 * @return the detector
+	 */
+	public PocketEquivalenceDetector minIdentity(double minIdentity) {
+		this.minIdentity = minIdentity;
+		return this;
+	}
+
+	/**
+	 * Set the maximum side-chain size change of an equivalent variant
+	 * @param maxAtomChange the maximum sum of heavy atom count differences of the mutated pocket residues
+	 * @return the detector
+	 */
+	public PocketEquivalenceDetector maxAtomChange(int maxAtomChange) {
+		this.maxAtomChange = maxAtomChange;
+		return this;
+	}
+
+	/**
+	 * Set the number of variants compared in parallel
+	 * @param threads the number of threads
+	 * @return the detector
+	 */
+	public PocketEquivalenceDetector threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * A method to compare the pocket of a variant with the wild-type pocket
+	 * @param pocketResidueKeys the pocket residue keys of the entry as given by Vina.getPocketResidueKeys
+	 * @param wildTypePath the minimized wild-type PDB file
+	 * @param variantPath the minimized variant PDB file
+	 * @return the pocket comparison
+	 * @throws IOException in case of error in reading the PDB files
+	 */
+	public PocketComparison compare(Set<String> pocketResidueKeys, String wildTypePath, String variantPath) throws IOException {
+
+		Map<String, PocketResidue> wildType = PdbTools.getAtomsOfResidues(wildTypePath, pocketResidueKeys);
+		Map<String, PocketResidue> variant = PdbTools.getAtomsOfResidues(variantPath, pocketResidueKeys);
+
+		PocketComparison comparison = new PocketComparison();
+
+		double sumOfSquares = 0.0;
+
+		for (String key : pocketResidueKeys) {
+
+			PocketResidue wt = wildType.get(key);
+			PocketResidue var = variant.get(key);
+
+			if(wt == null || var == null) {
+				if(wt != var) {
+					comparison.missingResidues++;
+				}
+				continue;
+			}
+
+			comparison.residues++;
+
+			if(!wt.getName().equals(var.getName())) {
+				comparison.mutatedResidues.add(wt.getName() + key + var.getName());
+				comparison.atomChange += Math.abs(countHeavyAtoms(wt) - countHeavyAtoms(var));
+			}
+
+			for (Map.Entry<String, double[]> atom : wt.getAtoms().entrySet()) {
+
+				double[] other = var.getAtoms().get(atom.getKey());
+
+				if(other == null || isHydrogen(atom.getKey())) {
+					continue;
+				}
+
+				double[] a = atom.getValue();
+
+				sumOfSquares += (a[0] - other[0]) * (a[0] - other[0]) + (a[1] - other[1]) * (a[1] - other[1])
+						+ (a[2] - other[2]) * (a[2] - other[2]);
+
+				comparison.atoms++;
+			}
+		}
+
+		comparison.rmsd = comparison.atoms == 0 ? Double.NaN : Math.sqrt(sumOfSquares / comparison.atoms);
+
+		comparison.equivalent = comparison.missingResidues == 0 && comparison.atoms > 0
+				&& comparison.rmsd <= this.rmsdThreshold
+				&& comparison.getSideChainIdentity() >= this.minIdentity
+				&& comparison.atomChange <= this.maxAtomChange;
+
+		return comparison;
+	}
+
+	/**
+	 * A method to compare the pockets of all the variants of all the entries of a docking folder with their wild-type,
+	 * flag the equivalent variants and write a report
+	 * @param vinaPath the AutoDock Vina docking folder
+	 * @param reportPath the report TSV file path
+	 * @return the pocket comparisons of all the variants
+	 * @throws IOException in case of error in IO operations
+	 */
+	public List<PocketComparison> detect(String vinaPath, String reportPath) throws IOException {
+
+		List<PocketComparison> comparisons = new ArrayList<PocketComparison>();
+
+		for (String pdb : VinaPreparationEngine.listEntries(vinaPath)) {
+			comparisons.addAll(detectEntry(vinaPath, pdb, Vina.getPocketResidueKeys(pdb)));
+		}
+
+		Path report = Paths.get(reportPath);
+
+		if(report.getParent() != null) {
+			Files.createDirectories(report.getParent());
+		}
+
+		try (TsvFormatter tsv = new TsvFormatter(Files.newBufferedWriter(report, StandardCharsets.UTF_8))) {
+
+			tsv.writeLine(REPORT_HEADER);
+
+			for (PocketComparison comparison : comparisons) {
+
+				tsv.writeString(comparison.pdb);
+				tsv.writeString(comparison.variant);
+				tsv.writeString(comparison.wildType);
+				tsv.writeInt(comparison.residues);
+				tsv.writeString(String.join(",", comparison.mutatedResidues));
+				tsv.writeDouble(comparison.getSideChainIdentity());
+				tsv.writeInt(comparison.atomChange);
+				tsv.writeInt(comparison.atoms);
+
+				if(Double.isNaN(comparison.rmsd)) {
+					tsv.writeEmpty();
+				}else {
+					tsv.writeDouble(comparison.rmsd);
+				}
+
+				tsv.writeString(String.valueOf(comparison.equivalent));
+				tsv.endLine();
+			}
+		}
+
+		long equivalent = comparisons.stream().filter(PocketComparison::isEquivalent).count();
+
+		System.out.println(equivalent + " of " + comparisons.size() + " variants have a pocket equivalent to the wild-type"
+				+ " (report: " + reportPath + ")");
+
+		return comparisons;
+	}
+
+	/**
+	 * A method to compare the pockets of the variants of an entry with the wild-type and flag the equivalent variants,
+	 * the flag of a variant which is no longer equivalent is removed
+	 * @param vinaPath the AutoDock Vina docking folder
+	 * @param pdb the PdbBind entry
+	 * @param pocketResidueKeys the pocket residue keys of the entry as given by Vina.getPocketResidueKeys
+	 * @return the pocket comparisons of the variants (the wild-type excluded), empty if the entry has no wild-type
+	 * @throws IOException in case of error in IO operations
+	 */
+	public List<PocketComparison> detectEntry(String vinaPath, String pdb, Set<String> pocketResidueKeys) throws IOException {
+
+		Path proteins = Paths.get(vinaPath, pdb, "proteins");
+
+		List<String> variants = VinaPreparationEngine.listEntries(proteins.toString());
+
+		String wildType = variants.stream().filter(variant -> variant.endsWith("_WT")).findFirst().orElse(null);
+
+		if(wildType == null) {
+			System.out.println(pdb + " has no wild-type variant, its pockets are not compared");
+			return Collections.emptyList();
+		}
+
+		List<String> mutations = variants.stream().filter(variant -> !variant.equals(wildType)).collect(Collectors.toList());
+
+		String wildTypePath = getFinalPdb(proteins, wildType).toString();
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+		try {
+
+			return pool.submit(() -> mutations.parallelStream().map(variant -> {
+
+				try {
+
+					PocketComparison comparison = compare(pocketResidueKeys, wildTypePath, getFinalPdb(proteins, variant).toString());
+
+					comparison.pdb = pdb;
+					comparison.variant = variant;
+					comparison.wildType = wildType;
+
+					Path flag = getFlagPath(proteins.resolve(variant), variant);
+
+					if(comparison.equivalent) {
+						Files.write(flag, (wildType + "\t" + comparison.rmsd + "\n").getBytes(StandardCharsets.UTF_8));
+					}else {
+						Files.deleteIfExists(flag);
+					}
+
+					return comparison;
+
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList())).get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Pocket comparison was interrupted", e);
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * A method to read the equivalence flag of a variant
+	 * @param variantFolder the variant folder in the docking folder
+	 * @param variant the variant folder name
+	 * @return the wild-type variant name if the variant pocket is equivalent to the wild-type, otherwise null
+	 * @throws IOException in case of error in reading the flag file
+	 */
+	public static String getEquivalentWildType(Path variantFolder, String variant) throws IOException {
+
+		Path flag = getFlagPath(variantFolder, variant);
+
+		if(!Files.exists(flag)) {
+			return null;
+		}
+
+		String content = new String(Files.readAllBytes(flag), StandardCharsets.UTF_8).trim();
+
+		return content.isEmpty() ? null : content.split("\t")[0];
+	}
+
+	private static Path getFlagPath(Path variantFolder, String variant) {
+		return variantFolder.resolve(variant + FLAG_SUFFIX);
+	}
+
+	private static Path getFinalPdb(Path proteins, String variant) {
+		return proteins.resolve(variant).resolve(variant + "_final.pdb");
+	}
+
+	private static int countHeavyAtoms(PocketResidue residue) {
+		return (int) residue.getAtoms().keySet().stream().filter(name -> !isHydrogen(name)).count();
+	}
+
+	/**
+	 * Hydrogen atom names start with H, or with a digit followed by H in the old PDB naming (e.g. 1HB)
+	 */
+	private static boolean isHydrogen(String atomName) {
+		return atomName.startsWith("H") || (atomName.length() > 1 && Character.isDigit(atomName.charAt(0)) && atomName.charAt(1) == 'H');
+	}
+
+	private static double getProperty(String key, double defaultValue) {
+
+		String value = Config.getProperty(key);
+
+		return value == null || value.trim().isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+	}
+
+	/**
+	 * The comparison of a variant pocket with the wild-type pocket
+	 */
+	public static class PocketComparison {
+
+		private String pdb;
+		private String variant;
+		private String wildType;
+
+		private int residues = 0;
+		private int missingResidues = 0;
+		private int atomChange = 0;
+		private int atoms = 0;
+		private double rmsd = Double.NaN;
+		private boolean equivalent = false;
+
+		private final List<String> mutatedResidues = new ArrayList<String>();
+
+		public String getPdb() {
+			return pdb;
+		}
+
+		public String getVariant() {
+			return variant;
+		}
+
+		public String getWildType() {
+			return wildType;
+		}
+
+		/**
+		 * Get the number of pocket residues found in both structures
+		 * @return the number of compared residues
+		 */
+		public int getResidues() {
+			return residues;
+		}
+
+		/**
+		 * Get the number of pocket residues found in only one of the structures
+		 * @return the number of missing residues
+		 */
+		public int getMissingResidues() {
+			return missingResidues;
+		}
+
+		/**
+		 * Get the mutated pocket residues
+		 * @return the mutations as wild-type name, residue key and variant name (e.g. LEU123ILE)
+		 */
+		public List<String> getMutatedResidues() {
+			return mutatedResidues;
+		}
+
+		/**
+		 * Get the fraction of compared pocket residues which are not mutated
+		 * @return the side-chain identity, 0 if no residue was compared
+		 */
+		public double getSideChainIdentity() {
+			return residues == 0 ? 0.0 : (residues - mutatedResidues.size()) / (double) residues;
+		}
+
+		/**
+		 * Get the side-chain size change of the mutated pocket residues
+		 * @return the sum of the heavy atom count differences
+		 */
+		public int getAtomChange() {
+			return atomChange;
+		}
+
+		/**
+		 * Get the number of heavy atoms the RMSD is computed on
+		 * @return the number of matched atoms
+		 */
+		public int getAtoms() {
+			return atoms;
+		}
+
+		/**
+		 * Get the RMSD of the matched pocket heavy atoms
+		 * @return the RMSD in Angstrom, NaN if no atom was matched
+		 */
+		public double getRmsd() {
+			return rmsd;
+		}
+
+		public boolean isEquivalent() {
+			return equivalent;
+		}
+	}
+}
@@ -20,33 +20,24 @@
 
 package io.github.ammar257ammar.psnpbind.core;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
-import javax.vecmath.Point3d;
-
-import org.apache.commons.io.FileUtils;
 import org.biojava.nbio.structure.AminoAcid;
-import org.biojava.nbio.structure.Atom;
 import org.biojava.nbio.structure.Chain;
 import org.biojava.nbio.structure.ChainImpl;
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureImpl;
-import org.biojava.nbio.structure.StructureTools;
 import org.biojava.nbio.structure.io.PDBFileReader;
 
 import io.github.ammar257ammar.psnpbind.core.model.PDBbindEntry;
 import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
 import io.github.ammar257ammar.psnpbind.core.utils.PdbTools;
 
 /**
@@ -66,41 +57,8 @@ public class Vina {
 	 * @throws IOException in case of error in IO operations
 	 */
 	public static void createFolderStructureFromGromacsOneFolder(String gromacsPath, String pdb, String vinaPath) throws IOException {
-
-		int index = 1;
-
-		File molVarsFolder = new File(gromacsPath+pdb+"/output");
-		File[] molVars = molVarsFolder.listFiles();
-		
-		File newMolFolder = new File(vinaPath+pdb);
-		
-		if(!newMolFolder.exists()) {
-			newMolFolder.mkdir();
-		}
 		
-		for(File molVarFolder: molVars) {
-			
-			if(molVarFolder.isDirectory()) {
-				
-				File newMolVarFolder = new File(vinaPath+pdb+"/proteins/"+molVarFolder.getName());
-
-				if(!newMolVarFolder.exists()) {
-					newMolVarFolder.mkdir();
-				}
-
-				String oldMolVarFolder = gromacsPath+pdb+"/output/"+molVarFolder.getName();
-				String newMolVarFolderStr = vinaPath+pdb+"/proteins/"+molVarFolder.getName();
-
-				File src1 = new File(oldMolVarFolder+"/"+molVarFolder.getName()+"_final.pdb");
-				File dst1 = new File(newMolVarFolderStr+"/"+molVarFolder.getName()+"_final.pdb");
-				
-				FileUtils.copyFile(src1, dst1);	
-				
-				System.out.println("Varinat folder num: "+index);
-				index++;
-				
-			}
-		}	
+		VinaPreparationEngine.create().createProteinFolders(gromacsPath, vinaPath, Collections.singletonList(pdb));
 	}
 
 	/**
@@ -111,18 +69,7 @@ public class Vina {
 	 */
 	public static void createFolderStructureFromGromacsFolder(String gromacsPath, String vinaPath) throws IOException {
 		
-		File entries = new File(gromacsPath);
-		File[] mols = entries.listFiles();
-		
-		System.out.println(mols.length+ " files");
-				
-		for(File molFolder: mols) {
-			if(molFolder.isDirectory()) {
-				
-				Vina.createFolderStructureFromGromacsOneFolder(gromacsPath, molFolder.getName(), vinaPath);
-				
-			}
-		}
+		VinaPreparationEngine.create().createProteinFolders(gromacsPath, vinaPath, VinaPreparationEngine.listEntries(gromacsPath));
 	}
 	
 	/**
@@ -134,100 +81,8 @@ public class Vina {
 	 * @throws IOException in case of error in IO operations
 	 */
 	public static void createLigandsStructureAfterVinaFolderSingle(String vinaPath, String pdb, String ligandsPath, boolean minimized) throws IOException {
-
-		File ligandsDir = new File(vinaPath+pdb+"/ligands");
 		
-		if(!ligandsDir.exists()) {
-			ligandsDir.mkdir();
-		}
-		
-		File molVarsFolder = new File(vinaPath+pdb+"/proteins");
-		File[] molVars = molVarsFolder.listFiles();
-						
-		for(File molVarFolder: molVars) {
-			
-			if(molVarFolder.isDirectory()) {
-				
-				String varVinaFolder = vinaPath+pdb+"/proteins/"+molVarFolder.getName();
-				
-				File dir = new File(varVinaFolder+"/vina");
-				
-				boolean dirCreated = dir.mkdir();
-				
-				if(dirCreated || dir.exists()) {
-					
-					File ligandsFoldersDir = new File(ligandsPath+pdb+"/splitted");
-					File[] ligandsFiles = ligandsFoldersDir.listFiles();
-					
-					for(File ligandsFile: ligandsFiles) {
-						
-						if(minimized) {
-							
-							if(ligandsFile.getName().contains("_min")) {
-								
-								String ligandDockingFolderName = ligandsFile.getName().substring(0, ligandsFile.getName().length()-9); 
-							
-								File ligandDockingFolder = new File(varVinaFolder+"/vina/"+ligandDockingFolderName);
-								
-								boolean ligandDockingFolderCreated = ligandDockingFolder.mkdir();
-								
-								if(ligandDockingFolderCreated || ligandDockingFolder.exists()) {
-								
-									File srcLigand = new File(ligandsPath+pdb+"/splitted/"+ligandsFile.getName());
-									File dstLigand = new File(vinaPath+pdb+"/ligands/"+ligandsFile.getName());
-									
-									if(srcLigand.exists()) {
-										
-										FileUtils.copyFile(srcLigand, dstLigand);
-										
-										System.out.println(ligandsFile.getName() + " Ligand copied");
-									
-									}else {
-										System.out.println(srcLigand.getName()+ " ligand file not copied #####################################");						
-									}
-									
-								}else {
-									System.out.println(ligandDockingFolderName+ " Ligand folder cannot be created!!");						
-								}
-									
-							} // if(ligandsFile.getName().contains("_min")) {
-							
-						}else {
-							
-							if(!ligandsFile.getName().contains("_min")) {
-								
-								String ligandDockingFolderName = ligandsFile.getName().substring(0, ligandsFile.getName().length()-5); 
-							
-								File ligandDockingFolder = new File(varVinaFolder+"/vina/"+ligandDockingFolderName);
-								
-								boolean ligandDockingFolderCreated = ligandDockingFolder.mkdir();
-								
-								if(ligandDockingFolderCreated || ligandDockingFolder.exists()) {
-								
-									File srcLigand = new File(ligandsPath+pdb+"/splitted/"+ligandsFile.getName());
-									File dstLigand = new File(vinaPath+pdb+"/ligands/"+ligandDockingFolderName+"_min.mol2");
-									
-									if(srcLigand.exists()) {
-										
-										FileUtils.copyFile(srcLigand, dstLigand);
-										
-										System.out.println(ligandsFile.getName() + " Ligand copied");
-									
-									}else {
-										System.out.println(srcLigand.getName()+ " ligand file not copied #####################################");						
-									}
-									
-								}else {
-									System.out.println(ligandDockingFolderName+ " Ligand folder cannot be created!!");						
-								}
-									
-							} // if(ligandsFile.getName().contains("_min")) {
-							
-						}
-					} // for(File ligandsFile: ligandsFiles) {			
-				}
-			}
-		}
+		VinaPreparationEngine.create().createLigandFolders(vinaPath, ligandsPath, Collections.singletonList(pdb), minimized);
 	}
 	
 	/**
@@ -239,15 +94,25 @@ public class Vina {
 	 */
 	public static void createLigandsStructureAfterVinaFolder(String vinaPath, String ligandsPath, boolean minimized) throws IOException {
 		
-		File entries = new File(vinaPath);
-		File[] mols = entries.listFiles();
+		VinaPreparationEngine.create().createLigandFolders(vinaPath, ligandsPath, VinaPreparationEngine.listEntries(vinaPath), minimized);
+	}
+
+	/**
+	 * A method to get the residue keys of the binding pocket of PDBbind entry protein. The keys are the same
+	 * for the wild-type and all mutations of the entry, so they can be computed once and reused for all variants
+	 * @param pdb the PdbBind entry protein
+	 * @return an ordered set of pocket residue keys (residue number and insertion code e.g. "123" or "123A")
+	 * @throws IOException if the pocket of the entry could not be parsed
+	 */
+	public static Set<String> getPocketResidueKeys(String pdb) throws IOException{
+		
+		PDBbindEntry pdbEntry = new PDBbindEntry(pdb, false, false);
 		
-		for(File molFolder: mols) {
-			if(molFolder.isDirectory()) {
-				
-				Vina.createLigandsStructureAfterVinaFolderSingle(vinaPath, molFolder.getName(), ligandsPath, minimized);	
-			}
+		if(pdbEntry.getPocketAminoAcids() == null) {
+			throw new IOException("The pocket of " + pdb + " could not be parsed");
 		}
+		
+		return PdbTools.getResidueKeys(pdbEntry.getPocketAminoAcids());
 	}
 
 	/**
@@ -259,28 +124,28 @@ public class Vina {
 	 */
 	public static Structure getPocketForModifiedPDBbindStructure(String pdb, String finalPDBPath) throws IOException{
 		
-		PDBbindEntry pdbEntry = new PDBbindEntry(pdb, false, false);
+		Set<String> pocketResidueKeys = Vina.getPocketResidueKeys(pdb);
 
 		PDBFileReader reader = PdbTools.configureReader(false);
 
 		Structure proteinStructure = reader.getStructure(finalPDBPath);
 		
-		List<AminoAcid> proteinAAlist = PdbTools.getAminoAcidsFromStructure(proteinStructure);
+		Map<String, AminoAcid> proteinAAMap = new HashMap<String, AminoAcid>();
+		
+		for (AminoAcid aap : PdbTools.getAminoAcidsFromStructure(proteinStructure)) {
+			proteinAAMap.putIfAbsent(aap.getResidueNumber().toString(), aap);
+		}
 
 		Structure s = new StructureImpl();
 
 		Chain c = new ChainImpl();
     	
-    	for(AminoAcid aa : pdbEntry.getPocketAminoAcids()){
+    	for(String key : pocketResidueKeys){
     		
-    		for (AminoAcid aap : proteinAAlist) {
-    			
-    			if(aa.getResidueNumber().toString().equals(aap.getResidueNumber().toString())) {
-
-    				c.addGroup(aap);
-
-    				break;
-    			}		
+    		AminoAcid aap = proteinAAMap.get(key);
+    		
+    		if(aap != null) {
+    			c.addGroup(aap);
     		}
     	}
     	
@@ -297,8 +162,18 @@ public class Vina {
 	 * @throws IOException in case of error in IO operations
 	 */
 	public static List<double[]> calculateVinaGridEnhanced(String pdb, String finalPDBPath) throws IOException{
-
-		Structure pocketStructure = Vina.getPocketForModifiedPDBbindStructure(pdb, finalPDBPath);
+		return Vina.calculateVinaGridEnhanced(Vina.getPocketResidueKeys(pdb), finalPDBPath);
+	}
+	
+	/**
+	 * A method to generate Vina grid box config from the pocket residues of a minimized PDBbind entry protein
+	 * using a single scan of the minimized PDB file
+	 * @param pocketResidueKeys the pocket residue keys of the PdbBind entry as given by getPocketResidueKeys
+	 * @param finalPDBPath the path of the minimzed PDB (wild-type or mutation)
+     * @return a list of double arrays representing the calculated Vina Grid need for docking
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static List<double[]> calculateVinaGridEnhanced(Set<String> pocketResidueKeys, String finalPDBPath) throws IOException{
 
     	double minX = 1000.0;
     	double minY = 1000.0;
@@ -308,23 +183,19 @@ public class Vina {
     	double maxY = 0.0;
     	double maxZ = 0.0;
 		
-    	Atom[] pocketAtoms = StructureTools.getAllAtomArray(pocketStructure);
-		
-		for(Atom atom: pocketAtoms){
-			
-			Point3d p = atom.getCoordsAsPoint3d();
+		for(double[] p: PdbTools.getAtomCoordinatesOfResidues(finalPDBPath, pocketResidueKeys)){
 
-			if(p.x < minX)	minX = p.x;
+			if(p[0] < minX)	minX = p[0];
 			
-			if(p.y < minY)  minY = p.y;
+			if(p[1] < minY)  minY = p[1];
 			
-			if(p.z < minZ)	minZ = p.z;
+			if(p[2] < minZ)	minZ = p[2];
 			
-			if(p.x > maxX)	maxX = p.x;
+			if(p[0] > maxX)	maxX = p[0];
 
-			if(p.y > maxY)	maxY = p.y;
+			if(p[1] > maxY)	maxY = p[1];
 
-			if(p.z > maxZ)	maxZ = p.z;
+			if(p[2] > maxZ)	maxZ = p[2];
 		}
 		
 		List<double[]> grid = new ArrayList<double[]>();
@@ -343,93 +214,18 @@ public class Vina {
     	return grid;
 	}
 	
-	
-
 	/**
-	 * A method to generate Vina docking config for PDBbind entries
+	 * A method to generate Vina docking config for PDBbind entries. The pocket residues of each entry
+	 * are parsed once and reused for the wild-type and all its mutations
 	 * @param entriesPath the path of the selected PDBbind entries
 	 * @param replace a boolean to choose if the config file should be replaced if exists
 	 * @throws IOException in case of error in IO operations
 	 */
 	public static void createConfigFilesAfterLigandsStructure(String entriesPath, boolean replace) throws IOException {
 		
-		File entries = new File(entriesPath);
-		File[] mols = entries.listFiles();
-		
-		System.out.println(mols.length+ " files");
-		
-		for(File molFolder: mols) {
-			if(molFolder.isDirectory()) {
-				
-				File molVarsFolder = new File(entriesPath + molFolder.getName()+"/proteins");
-				File[] molVars = molVarsFolder.listFiles();
-				
-				for(File molVarFolder: molVars) {
-					
-					if(molVarFolder.isDirectory()) {
-						
-						File configFile = new File(entriesPath+"/"+molFolder.getName()+"/proteins/" + molVarFolder.getName() +"/"+ molVarFolder.getName()+"_config.txt");
-						
-						if(replace) {
-						
-							List<double[]> grid = Vina.calculateVinaGridEnhanced(molFolder.getName(),entriesPath+"/"+molFolder.getName()+"/proteins/" + molVarFolder.getName() +"/"+ molVarFolder.getName()+"_final.pdb");
-							
-							String gridBox =    "center_x = "+grid.get(2)[0]+"\n" + 
-								    			"center_y = "+grid.get(2)[1]+"\n" + 
-								    			"center_z = "+grid.get(2)[2]+"\n" + 
-								    			"\n" + 
-								    			"size_x = "+(int) grid.get(3)[0]+"\n" + 
-								    			"size_y = "+(int) grid.get(3)[1]+"\n" + 
-								    			"size_z = "+(int) grid.get(3)[2]+"\n\n";
-							
-							String technical =  "cpu = 12\n" + 
-												"num_modes = 3\n" + 
-												"energy_range = 2\n" + 
-												"exhaustiveness = 12\n";
-							
-							
-							try (BufferedWriter writer = new BufferedWriter(new FileWriter(configFile))) 
-							{
-								writer.write(gridBox);
-								writer.write(technical);
-							}
-							System.out.println(molVarFolder.getName()+ " config written!!");
-							
-						}else {
-							
-							if(!configFile.exists()) {
-								
-								List<double[]> grid = Vina.calculateVinaGridEnhanced(molFolder.getName(),entriesPath+"/"+molFolder.getName()+"/proteins/" + molVarFolder.getName() +"/"+ molVarFolder.getName()+"_final.pdb");
-								
-								String gridBox =    "center_x = "+grid.get(2)[0]+"\n" + 
-									    			"center_y = "+grid.get(2)[1]+"\n" + 
-									    			"center_z = "+grid.get(2)[2]+"\n" + 
-									    			"\n" + 
-									    			"size_x = "+(int) grid.get(3)[0]+"\n" + 
-									    			"size_y = "+(int) grid.get(3)[1]+"\n" + 
-									    			"size_z = "+(int) grid.get(3)[2]+"\n\n";
-								
-								String technical =  "cpu = 12\n" + 
-													"num_modes = 3\n" + 
-													"energy_range = 2\n" + 
-													"exhaustiveness = 12\n";
-								
-								
-								try (BufferedWriter writer = new BufferedWriter(new FileWriter(configFile))) 
-								{
-									writer.write(gridBox);
-									writer.write(technical);
-								}
-								System.out.println(molVarFolder.getName()+ " config written!!");
-							}
-						}
-						
-					}
-				}
-			}	
-		}
+		VinaPreparationEngine.create().replace(replace).writeConfigFiles(entriesPath, VinaPreparationEngine.listEntries(entriesPath));
 	}
-	
+
 
 	/**
 	 * A method to generate Vina seed file for all dockings
@@ -440,47 +236,7 @@ public class Vina {
 	 */
 	public static void createSeedFilesAfterLigandsStructure(String entriesPath, String seed, boolean replace) throws IOException {
 		
-		File entries = new File(entriesPath);
-		File[] mols = entries.listFiles();
-		
-		System.out.println(mols.length+ " files");
-		
-		for(File molFolder: mols) {
-			if(molFolder.isDirectory()) {
-				
-				File molVarsFolder = new File(entriesPath + molFolder.getName()+"/proteins");
-				File[] molVars = molVarsFolder.listFiles();
-				
-				for(File molVarFolder: molVars) {
-					
-					if(molVarFolder.isDirectory()) {
-						
-						File seedFile = new File(entriesPath+"/"+molFolder.getName()+"/proteins/" + molVarFolder.getName() +"/"+ molVarFolder.getName()+"_seed.txt");
-						
-						if(replace) {
-							
-							try (BufferedWriter writer = new BufferedWriter(new FileWriter(seedFile))) 
-							{
-								writer.write(seed);
-							}
-							System.out.println(molVarFolder.getName()+ " seed written!!");
-							
-						}else {
-							
-							if(!seedFile.exists()) {
-								
-								try (BufferedWriter writer = new BufferedWriter(new FileWriter(seedFile))) 
-								{
-									writer.write(seed);
-								}
-								System.out.println(molVarFolder.getName()+ " seed written!!");
-								
-							}
-						}		
-					}
-				}
-			}	
-		}
+		VinaPreparationEngine.create().replace(replace).writeSeedFiles(entriesPath, VinaPreparationEngine.listEntries(entriesPath), seed);
 	}
 
 	/**
@@ -490,39 +246,21 @@ public class Vina {
 	 * @throws IOException in case of error in IO operations
 	 */
 	public static void generateVinaReportAll(String entriesPath, String outputPath) throws IOException {
-		
-		if(!entriesPath.endsWith("/")) {
-			entriesPath += "/";
-		}
-		
-		if(!outputPath.endsWith("/")) {
-			outputPath += "/";
-		}
-		
-		if(!(new File(outputPath).exists())) {
-			new File(outputPath).mkdir();
-		}
-		
-		File vinaFolder = new File("/pipeline/processing/vina-docking");
-		
-		File[] pdbs = vinaFolder.listFiles();
-		
-		List<File> pdbsL = Arrays.asList(pdbs).stream().filter(folder -> folder.isDirectory() == true).collect(Collectors.toList()); 
+		generateVinaReportAll(entriesPath, outputPath, OutputFormat.TSV);
+	}
 
-		List<String[]> bindingResults = new ArrayList<String[]>();
-		
-		for(File pdbFile: pdbsL) {
-    	  	
-			String pdb = pdbFile.getName();
-			
-    		if(!new File(outputPath+pdb).exists()) {
-    			new File(outputPath+pdb).mkdir();
-    		}
-    			
-    		bindingResults = Vina.generateVinaReportSingle(entriesPath, outputPath+pdb+"/bindingAffinity-official-"+pdb, pdb, bindingResults);
-    	}
+	/**
+	 * A method to generate Vina report with binding affinities extracted from all protein docking results
+	 * and write the combined docking results table in one of the output formats
+	 * @param entriesPath the path of the selected PDBbind entries
+	 * @param outputPath the output files path (the TSV_PATH config value)
+	 * @param format the additional format of the combined docking results table, written next to
+	 * docking-results-all.tsv (the per-PDB reports are always TSV)
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void generateVinaReportAll(String entriesPath, String outputPath, OutputFormat format) throws IOException {
 		
-		DataHandler.writeDatasetToTSV(bindingResults, outputPath+"docking-results-all.tsv");
+		VinaReportEngine.create().format(format).generateReports(entriesPath, outputPath);
 	}
 
 	/**
@@ -536,109 +274,7 @@ public class Vina {
 	 */
 	public static List<String[]> generateVinaReportSingle(String entriesPath, String outputPath, String pdb, List<String[]> bindingResults) throws IOException {
 		
-		boolean headerAdded = false;
-		
-		if(!entriesPath.endsWith("/")) {
-			entriesPath += "/";
-		}
-		
-		List<String[]> bindingResultsSingle = new ArrayList<String[]>();
-		List<String[]> bindingResultsDf = new ArrayList<String[]>();
-		
-		List<String> bindingResultsDfHeader = new ArrayList<String>();
-				
-		System.out.println(entriesPath+pdb+"/proteins");
-		
-		File molVarsFolder = new File(entriesPath+pdb+"/proteins");
-		File[] molVars = molVarsFolder.listFiles();
-						
-		for(File molVarFolder: molVars) {
-			
-			if(molVarFolder.isDirectory()) {
-				
-				ArrayList<String> varLine = new ArrayList<String>();
-				
-				varLine.add(molVarFolder.getName());
-				
-				if(!headerAdded) {
-					bindingResultsDfHeader.add("Varaint");									
-				}
-				
-				File molLigandsFolder = new File(entriesPath+pdb+"/proteins/"+molVarFolder.getName()+"/vina");
-				File[] molLigands = molLigandsFolder.listFiles();
-				
-				List<File> molLigandsL = Arrays.asList(molLigands).stream().filter(folder -> folder.isDirectory() == true).collect(Collectors.toList()); 
-
-				System.out.println(molVarFolder.getName()+ " files");
-
-				for(File molLigand: molLigandsL) {
-					
-					File dockingLog = new File(entriesPath+pdb+"/proteins/"+molVarFolder.getName()+"/vina/"+molLigand.getName()+"/"+molLigand.getName()+"_min_log.txt");			
-					File dockingPoses = new File(entriesPath+pdb+"/proteins/"+molVarFolder.getName()+"/vina/"+molLigand.getName()+"/"+molLigand.getName()+"_min_docking.pdbqt");					
-					
-					List<String> conformers = new ArrayList<String>();
-					
-					if(dockingPoses.exists()) {
-						
-						if(dockingLog.exists()) {
-						
-							List<String> dockingResults = Files.readAllLines(Paths.get(dockingLog.getAbsolutePath()));
-							
-							Pattern p = Pattern.compile("^\\s+(?<seq>[0-9])\\s+(?<ba>\\S+)\\s+(?<dist>\\S+)\\s+(?<best>\\S+)$"); 
-							Matcher m;
-							
-							String bindingAffinity = "";
-							
-							for(String line: dockingResults) {
-								
-								m = p.matcher(line);
-								
-								if(m.find()){
-									String seq = m.group("seq").trim();
-									String ba = m.group("ba").trim();
-									
-									if(seq.matches("[0-9]") && ba.matches("[+-]?([0-9]*[.])?[0-9]+")){
-										conformers.add("Conformer "+seq+": "+ba);	
-										
-										if(line.startsWith("   1")) {
-											bindingAffinity = ba;											
-										}
-									}
-								}
-							}
-							
-							if(conformers.size() > 0){
-								bindingResults.add(new String[] {pdb, molVarFolder.getName(), molLigand.getName(), String.join(";", conformers)});
-								bindingResultsSingle.add(new String[] {pdb, molVarFolder.getName(), molLigand.getName(), conformers.get(0).split(":")[1].trim()});
-								varLine.add(bindingAffinity);
-							}
-							
-							if(bindingAffinity.equals("") || bindingAffinity == null) {
-								varLine.add("-");
-							}
-							
-						}else {
-							varLine.add("-");							
-						}
-					}else {
-						varLine.add("-");
-					}
-					
-					if(!headerAdded) {
-						bindingResultsDfHeader.add(molLigand.getName());									
-					}
-				} // for(File molLigandsLog: molLigandsLogs)
-				
-				bindingResultsDf.add(varLine.toArray(new String[varLine.size()]));
-				
-				headerAdded = true;
-			}
-		}
-
-		bindingResultsDf.add(0, bindingResultsDfHeader.toArray(new String[bindingResultsDfHeader.size()]));
-		
-		DataHandler.writeDatasetToTSV(bindingResultsSingle, outputPath+".tsv");
-		DataHandler.writeDatasetToTSV(bindingResultsDf, outputPath+"_df.tsv");
+		VinaReportEngine.create().generateReport(entriesPath, pdb, outputPath, row -> bindingResults.add(row));
 		
 		return bindingResults;
 	}
@@ -0,0 +1,162 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader.DockingPoses;
+import io.github.ammar257ammar.psnpbind.core.utils.PoseStore;
+
+/**
+ * A class to collect the docking poses (_min_docking.pdbqt files) of the Vina docking folder in a PoseStore.
+ *
+ * The entries are read one at a time: the docking outputs of an entry are parsed in parallel on a bounded
+ * ForkJoinPool with PdbqtPoseReader and written to the store in the order of the variants and ligands, so the
+ * memory used depends on the size of one entry.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class VinaPoseEngine {
+
+	private int threads = Config.getThreads();
+
+	private VinaPoseEngine() {
+	}
+
+	/**
+	 * Create an engine using Config.getThreads() threads
+	 * @return a new engine
+	 */
+	public static VinaPoseEngine create() {
+		return new VinaPoseEngine();
+	}
+
+	/**
+	 * Set the number of threads used to parse the docking outputs
+	 * @param threads the pool size
+	 * @return the engine
+	 */
+	public VinaPoseEngine threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * A method to write the poses of all the dockings of a docking folder to a new pose store
+	 * @param vinaPath the AutoDock Vina docking folder
+	 * @param storePath the pose store file path, an existing store is replaced
+	 * @return the number of dockings written
+	 * @throws IOException in case of error in IO operations
+	 */
+	public int build(String vinaPath, String storePath) throws IOException {
+
+		long start = System.nanoTime();
+
+		try (PoseStore.Writer writer = PoseStore.createWriter(storePath)) {
+
+			for (String pdb : VinaPreparationEngine.listEntries(vinaPath)) {
+
+				List<Path> outputs = new ArrayList<Path>();
+
+				Path proteins = Paths.get(vinaPath, pdb, "proteins");
+
+				for (String variant : VinaPreparationEngine.listEntries(proteins.toString())) {
+
+					Path vina = proteins.resolve(variant).resolve("vina");
+
+					for (String ligand : VinaPreparationEngine.listEntries(vina.toString())) {
+
+						Path output = vina.resolve(ligand).resolve(ligand + DockingScheduler.POSES_SUFFIX);
+
+						if(Files.exists(output)) {
+							outputs.add(output);
+						}
+					}
+				}
+
+				List<DockingPoses> poses = readPoses(outputs);
+
+				for (int i = 0; i < outputs.size(); i++) {
+
+					Path ligandFolder = outputs.get(i).getParent();
+
+					writer.write(pdb, ligandFolder.getParent().getParent().getFileName().toString(),
+							ligandFolder.getFileName().toString(), poses.get(i));
+				}
+			}
+
+			writer.commit();
+
+			System.out.println(writer.size() + " dockings and " + writer.getPoseCount() + " poses written to " + storePath
+					+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+			return writer.size();
+		}
+	}
+
+	/**
+	 * Parse docking outputs in parallel
+	 * @return the poses of each output, in the order of the outputs
+	 */
+	private List<DockingPoses> readPoses(List<Path> outputs) throws IOException {
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+		try {
+
+			return pool.submit(() -> outputs.parallelStream().map(output -> {
+				try {
+					return PdbqtPoseReader.get().read(output);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList())).get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Pose store build was interrupted", e);
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,409 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import io.github.ammar257ammar.psnpbind.core.utils.FileStore;
+
+/**
+ * A class to prepare the AutoDock Vina docking folders (proteins, ligands, seed and config files) of the selected
+ * PDBbind entries. Every stage fans out per variant folder on a bounded ForkJoinPool, each task creates all the
+ * directories of its variant with Files.createDirectories and writes its small files with one NIO write.
+ *
+ * Existing seed and config files are kept unless replace is set, the pocket residues of an entry are parsed once
+ * and only if at least one of its config files has to be written. Each stage prints its counts and timing and the
+ * timings are kept in getStageTimes().
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class VinaPreparationEngine {
+
+	private static final String CONFIG_TECHNICAL = "cpu = 12\n" + 
+												   "num_modes = 3\n" + 
+												   "energy_range = 2\n" + 
+												   "exhaustiveness = 12\n";
+
+	private int threads = Config.getThreads();
+	private boolean replace = false;
+
+	private final Map<String, Long> stageTimes = new LinkedHashMap<String, Long>();
+
+	private VinaPreparationEngine() {
+	}
+
+	/**
+	 * Create an engine using Config.getThreads() threads which keeps existing seed and config files
+	 * @return a new engine
+	 */
+	public static VinaPreparationEngine create() {
+		return new VinaPreparationEngine();
+	}
+
+	/**
+	 * Set the number of threads of the stages
+	 * @param threads the pool size
+	 * @return the engine
+	 */
+	public VinaPreparationEngine threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Choose if existing seed and config files are replaced
+	 * @param replace a boolean to choose if the seed and config files should be replaced if exist
+	 * @return the engine
+	 */
+	public VinaPreparationEngine replace(boolean replace) {
+		this.replace = replace;
+		return this;
+	}
+
+	/**
+	 * A method to run all the stages of the Vina folders preparation for all the entries of the Gromacs folder
+	 * @param gromacsPath the path for Gromacs folder where EM took place
+	 * @param vinaPath the AutoDock Vina folder being prepared docking
+	 * @param ligandsPath the path for ligands prepared in a previous step
+	 * @param minimized a boolean value to choose if the minimized ligands should be used or the original ones
+	 * @param seed the seed string to be used
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void run(String gromacsPath, String vinaPath, String ligandsPath, boolean minimized, String seed) throws IOException {
+
+		List<String> pdbs = VinaPreparationEngine.listEntries(gromacsPath);
+
+		System.out.println(pdbs.size() + " entries");
+
+		createProteinFolders(gromacsPath, vinaPath, pdbs);
+		createLigandFolders(vinaPath, ligandsPath, pdbs, minimized);
+		writeSeedFiles(vinaPath, pdbs, seed);
+		writeConfigFiles(vinaPath, pdbs);
+
+		System.out.println("Vina folders prepared, stage times (ms): " + this.stageTimes);
+	}
+
+	/**
+	 * A method to generate the proteins folder structure for AutoDock Vina from Gromacs EM results folders
+	 * @param gromacsPath the path for Gromacs folder where EM took place
+	 * @param vinaPath the AutoDock Vina folder being prepared docking
+	 * @param pdbs the PdbBind entries
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void createProteinFolders(String gromacsPath, String vinaPath, List<String> pdbs) throws IOException {
+
+		long start = System.nanoTime();
+
+		FileStore store = FileStore.open(Config.getProperty("FILE_STORE_PATH"));
+
+		List<String[]> variants = new ArrayList<String[]>();
+
+		for (String pdb : pdbs) {
+			for (String variant : VinaPreparationEngine.listEntries(Paths.get(gromacsPath, pdb, "output").toString())) {
+				variants.add(new String[] { pdb, variant });
+			}
+		}
+
+		forEach(variants, variant -> {
+
+			Path variantFolder = Files.createDirectories(Paths.get(vinaPath, variant[0], "proteins", variant[1]));
+
+			store.stage(Paths.get(gromacsPath, variant[0], "output", variant[1], variant[1] + "_final.pdb").toFile(),
+					variantFolder.resolve(variant[1] + "_final.pdb").toFile());
+		});
+
+		report("proteins", variants.size() + " variant folders prepared, " + store.getStats(), start);
+	}
+
+	/**
+	 * A method to stage the ligands of the PDBbind entries once and create the ligand docking folders of every variant
+	 * @param vinaPath the AutoDock Vina folder being prepared docking
+	 * @param ligandsPath the path for ligands prepared in a previous step
+	 * @param pdbs the PdbBind entries
+	 * @param minimized a boolean value to choose if the minimized ligands should be used or the original ones
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void createLigandFolders(String vinaPath, String ligandsPath, List<String> pdbs, boolean minimized) throws IOException {
+
+		long start = System.nanoTime();
+
+		FileStore store = FileStore.open(Config.getProperty("FILE_STORE_PATH"));
+
+		Map<String, List<String>> ligandDockingFolderNames = new LinkedHashMap<String, List<String>>();
+
+		List<File[]> ligands = new ArrayList<File[]>();
+
+		for (String pdb : pdbs) {
+
+			Path ligandsDir = Files.createDirectories(Paths.get(vinaPath, pdb, "ligands"));
+
+			List<String> names = new ArrayList<String>();
+
+			File[] ligandsFiles = Paths.get(ligandsPath, pdb, "splitted").toFile().listFiles();
+
+			for (File ligandsFile : ligandsFiles == null ? new File[0] : ligandsFiles) {
+
+				if(minimized != ligandsFile.getName().contains("_min")) {
+					continue;
+				}
+
+				String ligandDockingFolderName = ligandsFile.getName().substring(0, ligandsFile.getName().length() - (minimized ? 9 : 5));
+
+				ligands.add(new File[] { ligandsFile, ligandsDir.resolve(ligandDockingFolderName + "_min.mol2").toFile() });
+				names.add(ligandDockingFolderName);
+			}
+			ligandDockingFolderNames.put(pdb, names);
+		}
+
+		forEach(ligands, ligand -> store.stage(ligand[0], ligand[1]));
+
+		List<String[]> variants = listVariants(vinaPath, pdbs);
+
+		AtomicInteger folders = new AtomicInteger();
+
+		forEach(variants, variant -> {
+
+			Path vinaFolder = Paths.get(vinaPath, variant[0], "proteins", variant[1], "vina");
+
+			for (String ligandDockingFolderName : ligandDockingFolderNames.get(variant[0])) {
+
+				try {
+					Files.createDirectories(vinaFolder.resolve(ligandDockingFolderName));
+					folders.incrementAndGet();
+				} catch (IOException e) {
+					System.out.println(ligandDockingFolderName + " Ligand folder cannot be created!!");
+				}
+			}
+		});
+
+		report("ligands", ligands.size() + " ligands staged, " + folders.get() + " ligand docking folders in "
+				+ variants.size() + " variants, " + store.getStats(), start);
+	}
+
+	/**
+	 * A method to generate Vina seed file for all dockings
+	 * @param vinaPath the AutoDock Vina folder being prepared docking
+	 * @param pdbs the PdbBind entries
+	 * @param seed the seed string to be used
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeSeedFiles(String vinaPath, List<String> pdbs, String seed) throws IOException {
+
+		long start = System.nanoTime();
+
+		byte[] content = seed.getBytes(StandardCharsets.UTF_8);
+
+		List<String[]> variants = listVariants(vinaPath, pdbs);
+
+		AtomicInteger written = new AtomicInteger();
+
+		forEach(variants, variant -> {
+
+			if(write(Paths.get(vinaPath, variant[0], "proteins", variant[1], variant[1] + "_seed.txt"), content)) {
+				written.incrementAndGet();
+			}
+		});
+
+		report("seed", written.get() + " seed files written, " + (variants.size() - written.get()) + " kept", start);
+	}
+
+	/**
+	 * A method to generate Vina docking config for PDBbind entries. The pocket residues of each entry
+	 * are parsed once and reused for the wild-type and all its mutations
+	 * @param vinaPath the AutoDock Vina folder being prepared docking
+	 * @param pdbs the PdbBind entries
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeConfigFiles(String vinaPath, List<String> pdbs) throws IOException {
+
+		long start = System.nanoTime();
+
+		List<String[]> variants = listVariants(vinaPath, pdbs).stream()
+				.filter(variant -> this.replace || !Files.exists(getConfigPath(vinaPath, variant)))
+				.collect(Collectors.toList());
+
+		List<String> pocketPdbs = variants.stream().map(variant -> variant[0]).distinct().collect(Collectors.toList());
+
+		Map<String, Set<String>> pocketResidueKeys = new ConcurrentHashMap<String, Set<String>>();
+
+		forEach(pocketPdbs, pdb -> pocketResidueKeys.put(pdb, Vina.getPocketResidueKeys(pdb)));
+
+		long pocketsTime = System.nanoTime();
+
+		AtomicInteger written = new AtomicInteger();
+
+		forEach(variants, variant -> {
+
+			List<double[]> grid = Vina.calculateVinaGridEnhanced(pocketResidueKeys.get(variant[0]),
+					Paths.get(vinaPath, variant[0], "proteins", variant[1], variant[1] + "_final.pdb").toString());
+
+			if(write(getConfigPath(vinaPath, variant), getConfig(grid).getBytes(StandardCharsets.UTF_8))) {
+				written.incrementAndGet();
+			}
+		});
+
+		report("config", pocketPdbs.size() + " pockets parsed in " + (pocketsTime - start) / 1000000 + " ms, "
+				+ written.get() + " config files written", start);
+	}
+
+	/**
+	 * A method to generate the content of a Vina docking config file from a calculated grid
+	 * @param grid the Vina grid as returned by Vina.calculateVinaGridEnhanced
+	 * @return the config file content
+	 */
+	public static String getConfig(List<double[]> grid) {
+
+		String gridBox =    "center_x = "+grid.get(2)[0]+"\n" + 
+			    			"center_y = "+grid.get(2)[1]+"\n" + 
+			    			"center_z = "+grid.get(2)[2]+"\n" + 
+			    			"\n" + 
+			    			"size_x = "+(int) grid.get(3)[0]+"\n" + 
+			    			"size_y = "+(int) grid.get(3)[1]+"\n" + 
+			    			"size_z = "+(int) grid.get(3)[2]+"\n\n";
+
+		return gridBox + CONFIG_TECHNICAL;
+	}
+
+	/**
+	 * A method to get the names of the sub-folders of a folder (e.g. the PDBbind entries or the variants of an entry)
+	 * @param path the folder path
+	 * @return the sorted names of the sub-folders, empty if the folder does not exist
+	 */
+	public static List<String> listEntries(String path) {
+
+		File[] files = new File(path).listFiles(File::isDirectory);
+
+		if(files == null) {
+			return new ArrayList<String>();
+		}
+
+		return Arrays.stream(files).map(File::getName).sorted().collect(Collectors.toList());
+	}
+
+	/**
+	 * Get the duration of the stages run by this engine
+	 * @return a map of stage names to durations in milliseconds, in the order the stages ran
+	 */
+	public Map<String, Long> getStageTimes() {
+		return stageTimes;
+	}
+
+	private static List<String[]> listVariants(String vinaPath, List<String> pdbs) {
+
+		List<String[]> variants = new ArrayList<String[]>();
+
+		for (String pdb : pdbs) {
+			for (String variant : VinaPreparationEngine.listEntries(Paths.get(vinaPath, pdb, "proteins").toString())) {
+				variants.add(new String[] { pdb, variant });
+			}
+		}
+		return variants;
+	}
+
+	private static Path getConfigPath(String vinaPath, String[] variant) {
+		return Paths.get(vinaPath, variant[0], "proteins", variant[1], variant[1] + "_config.txt");
+	}
+
+	/**
+	 * Write a small file in one call, an existing file is kept unless replace is set
+	 * @return true if the file was written
+	 */
+	private boolean write(Path path, byte[] content) throws IOException {
+
+		if(this.replace) {
+			Files.write(path, content);
+			return true;
+		}
+
+		try {
+			Files.write(path, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			return false;
+		}
+	}
+
+	private void report(String stage, String message, long start) {
+
+		long time = (System.nanoTime() - start) / 1000000;
+
+		this.stageTimes.put(stage, time);
+
+		System.out.println(stage + ": " + message + " in " + time + " ms");
+	}
+
+	private <T> void forEach(List<T> items, IOConsumer<T> action) throws IOException {
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+		try {
+
+			pool.submit(() -> items.parallelStream().forEach(item -> {
+				try {
+					action.accept(item);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			})).get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Vina folders preparation was interrupted", e);
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private interface IOConsumer<T> {
+		void accept(T item) throws IOException;
+	}
+}
@@ -0,0 +1,592 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.utils.AffinityMatrixStore;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetWriter;
+import io.github.ammar257ammar.psnpbind.core.utils.DockingResultsIndex;
+import io.github.ammar257ammar.psnpbind.core.utils.DockingResultsIndex.DockingResult;
+import io.github.ammar257ammar.psnpbind.core.utils.TsvFormatter;
+import io.github.ammar257ammar.psnpbind.core.utils.VinaLogScanner;
+
+/**
+ * A class to generate the Vina docking reports (binding affinities) of the PDBbind entries.
+ *
+ * The variant folders of an entry are walked in parallel on a bounded ForkJoinPool with Files.walkFileTree and
+ * their docking logs are parsed with VinaLogScanner. The rows of an entry are written to its two reports and
+ * streamed to the combined docking results table as soon as the entry is done, so the memory used depends
+ * on the size of one entry and not on the whole docking tree.
+ *
+ * For each entry, two TSV files are written in outputPath/[PDB]/: bindingAffinity-official-[PDB].tsv (pdb,
+ * variant, ligand, best affinity, reused from) and bindingAffinity-official-[PDB]_df.tsv (one line per variant and
+ * one column per ligand, "-" if the ligand has no docking result). The combined table docking-results-all.tsv
+ * (also written as docking-results-all.npy or .npz next to it when another format is set) holds pdb, variant,
+ * ligand, the conformers and the reused from column of each docking. The reused from column is the wild-type
+ * variant of the dockings copied by the DockingScheduler to an equivalent variant (the ligand folder has a
+ * DockingScheduler.REUSED_SUFFIX flag), and is empty for the docked ligands. The variant x ligand matrices of all
+ * the entries are also written to an AffinityMatrixStore (the AFFINITY_MATRIX_PATH config value, or
+ * docking-affinities.matrix in the output folder) for the analyses which slice them by variant or ligand.
+ *
+ * The parsed logs are kept in a DockingResultsIndex (the DOCKING_INDEX_PATH config value, or
+ * docking-results.index in the output folder), a log is parsed again only if it is new or its modification time
+ * or size changed, so repeated runs during a docking campaign only parse the dockings done since the last run.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class VinaReportEngine {
+
+	public static final String[] DOCKING_RESULTS_HEADER = new String[] { "pdb", "variant", "ligand", "conformers", "reused_from" };
+
+	private static final String LOG_SUFFIX = "_min_log.txt";
+	private static final String POSES_SUFFIX = "_min_docking.pdbqt";
+	private static final String REUSED_SUFFIX = DockingScheduler.REUSED_SUFFIX;
+
+	private int threads = Config.getThreads();
+	private OutputFormat format = OutputFormat.TSV;
+	private String indexPath = Config.getProperty("DOCKING_INDEX_PATH");
+	private String matrixPath = Config.getProperty("AFFINITY_MATRIX_PATH");
+
+	private final AtomicLong parsedLogs = new AtomicLong();
+	private final AtomicLong reusedLogs = new AtomicLong();
+
+	/**
+	 * An output for the rows of the combined docking results table
+	 */
+	public interface RowSink {
+
+		/**
+		 * Write one row of the docking results table
+		 * @param row the pdb, variant, ligand, conformers and reused from cells
+		 * @throws IOException in case of error in IO operations
+		 */
+		void write(String[] row) throws IOException;
+	}
+
+	private VinaReportEngine() {
+	}
+
+	/**
+	 * Create an engine using Config.getThreads() threads and writing the combined table as TSV only
+	 * @return a new engine
+	 */
+	public static VinaReportEngine create() {
+		return new VinaReportEngine();
+	}
+
+	/**
+	 * Set the number of threads used to parse the docking logs
+	 * @param threads the pool size
+	 * @return the engine
+	 */
+	public VinaReportEngine threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Set the additional format of the combined docking results table, written next to docking-results-all.tsv
+	 * which is always written (the per-PDB reports are always TSV)
+	 * @param format the output format
+	 * @return the engine
+	 */
+	public VinaReportEngine format(OutputFormat format) {
+		this.format = format;
+		return this;
+	}
+
+	/**
+	 * Set the docking results index file used by generateReports
+	 * @param indexPath the index file path, if null or empty docking-results.index in the output folder is used
+	 * @return the engine
+	 */
+	public VinaReportEngine index(String indexPath) {
+		this.indexPath = indexPath;
+		return this;
+	}
+
+	/**
+	 * Set the affinity matrix store file written by generateReports
+	 * @param matrixPath the store file path, if null or empty docking-affinities.matrix in the output folder is used
+	 * @return the engine
+	 */
+	public VinaReportEngine matrix(String matrixPath) {
+		this.matrixPath = matrixPath;
+		return this;
+	}
+
+	/**
+	 * A method to generate the Vina reports of all the PDBbind entries of the docking folder
+	 * @param entriesPath the AutoDock Vina docking folder of the selected PDBbind entries
+	 * @param outputPath the output files path
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void generateReports(String entriesPath, String outputPath) throws IOException {
+
+		Files.createDirectories(Paths.get(outputPath));
+
+		List<String> pdbs = VinaPreparationEngine.listEntries(entriesPath);
+
+		System.out.println(pdbs.size() + " entries");
+
+		String index = this.indexPath == null || this.indexPath.trim().isEmpty()
+				? Paths.get(outputPath, "docking-results.index").toString() : this.indexPath.trim();
+
+		String matrix = this.matrixPath == null || this.matrixPath.trim().isEmpty()
+				? Paths.get(outputPath, "docking-affinities.matrix").toString() : this.matrixPath.trim();
+
+		long rows = 0;
+
+		try (DockingResultsIndex previous = DockingResultsIndex.open(index);
+				DockingResultsIndex.Writer current = DockingResultsIndex.createWriter(index);
+				AffinityMatrixStore.Writer matrices = AffinityMatrixStore.createWriter(matrix);
+				CombinedWriter combined = new CombinedWriter(Paths.get(outputPath, "docking-results-all.tsv").toString(), this.format)) {
+
+			for (String pdb : pdbs) {
+
+				Path pdbOutput = Files.createDirectories(Paths.get(outputPath, pdb));
+
+				Map<String, Map<String, DockingResult>> results = new TreeMap<String, Map<String, DockingResult>>();
+
+				rows += generateReport(entriesPath, pdb, pdbOutput.resolve("bindingAffinity-official-" + pdb).toString(), combined,
+						previous.read(pdb), results, matrices);
+
+				current.write(pdb, results);
+			}
+			current.commit();
+			matrices.commit();
+		}
+
+		System.out.println(rows + " docking results written, " + this.parsedLogs.get() + " logs parsed, "
+				+ this.reusedLogs.get() + " logs unchanged since the last run");
+	}
+
+	/**
+	 * A method to generate the Vina reports of a single PDBbind entry
+	 * @param entriesPath the AutoDock Vina docking folder of the selected PDBbind entries
+	 * @param pdb the PdbBind entry protein
+	 * @param outputPath the output file name prefix (two TSV files will be generated, one of them contains "_df" added
+	 * to the prefix)
+	 * @param sink the output of the docking results rows of the entry
+	 * @return the number of docking results of the entry
+	 * @throws IOException in case of error in IO operations
+	 */
+	public long generateReport(String entriesPath, String pdb, String outputPath, RowSink sink) throws IOException {
+		return generateReport(entriesPath, pdb, outputPath, sink, new TreeMap<String, Map<String, DockingResult>>(), null, null);
+	}
+
+	/**
+	 * Get the number of logs parsed by this engine
+	 * @return the number of parsed logs
+	 */
+	public long getParsedLogs() {
+		return parsedLogs.get();
+	}
+
+	/**
+	 * Get the number of logs taken from the docking results index because they did not change
+	 * @return the number of reused logs
+	 */
+	public long getReusedLogs() {
+		return reusedLogs.get();
+	}
+
+	/**
+	 * Generate the reports of an entry, the logs in previous which did not change are not parsed again and all
+	 * the results of the entry are added to current (if not null) and its best affinity matrix to matrices (if not null)
+	 */
+	private long generateReport(String entriesPath, String pdb, String outputPath, RowSink sink,
+			Map<String, Map<String, DockingResult>> previous, Map<String, Map<String, DockingResult>> current,
+			AffinityMatrixStore.Writer matrices) throws IOException {
+
+		long start = System.nanoTime();
+
+		Path proteins = Paths.get(entriesPath, pdb, "proteins");
+
+		List<String> variants = VinaPreparationEngine.listEntries(proteins.toString());
+
+		List<VariantReport> reports = scanVariants(proteins, variants, previous);
+
+		TreeSet<String> ligands = new TreeSet<String>();
+
+		for (VariantReport report : reports) {
+			ligands.addAll(report.getLigands());
+		}
+
+		float[] affinities = new float[reports.size() * ligands.size()];
+		boolean[] reused = new boolean[affinities.length];
+		int cell = 0;
+
+		long rows = 0;
+
+		try (TsvFormatter single = createFormatter(outputPath + ".tsv"); TsvFormatter df = createFormatter(outputPath + "_df.tsv")) {
+
+			df.writeString("Varaint");
+
+			for (String ligand : ligands) {
+				df.writeString(ligand);
+			}
+			df.endLine();
+
+			for (VariantReport report : reports) {
+
+				df.writeString(report.getVariant());
+
+				for (String ligand : ligands) {
+
+					DockingResult result = report.getResult(ligand);
+
+					if(result == null || result.getConformerCount() == 0) {
+						df.writeString("-");
+						affinities[cell++] = Float.NaN;
+						continue;
+					}
+
+					df.writeString(result.getBestAffinity().isEmpty() ? "-" : result.getBestAffinity());
+
+					reused[cell] = result.isReused();
+					affinities[cell++] = result.getBestAffinity().isEmpty() ? Float.NaN : Float.parseFloat(result.getBestAffinity());
+
+					single.writeLine(new String[] { pdb, report.getVariant(), ligand, result.getAffinity(0), result.getReusedFrom() });
+					sink.write(new String[] { pdb, report.getVariant(), ligand, result.getConformers(), result.getReusedFrom() });
+					rows++;
+				}
+				df.endLine();
+
+				if(current != null) {
+					current.put(report.getVariant(), report.getParsedResults());
+				}
+			}
+		}
+
+		if(matrices != null) {
+
+			List<String> variantNames = new ArrayList<String>();
+
+			for (VariantReport report : reports) {
+				variantNames.add(report.getVariant());
+			}
+			matrices.write(pdb, variantNames, new ArrayList<String>(ligands), affinities, reused);
+		}
+
+		System.out.println(pdb + ": " + variants.size() + " variants, " + ligands.size() + " ligands, " + rows
+				+ " docking results in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		return rows;
+	}
+
+	/**
+	 * Walk and parse the docking logs of the variants of an entry in parallel
+	 * @return the reports of the variants in the order of the variants list
+	 */
+	private List<VariantReport> scanVariants(Path proteins, List<String> variants,
+			Map<String, Map<String, DockingResult>> previous) throws IOException {
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+		try {
+
+			return pool.submit(() -> variants.parallelStream().map(variant -> {
+				try {
+					return scanVariant(proteins.resolve(variant).resolve("vina"), variant,
+							previous.getOrDefault(variant, Collections.<String, DockingResult>emptyMap()));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList())).get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Vina report generation was interrupted", e);
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Walk the ligand docking folders of a variant and parse the logs of the ligands which have docking poses,
+	 * unless the log did not change since it was indexed
+	 * @param vinaFolder the vina folder of the variant
+	 * @param variant the variant name
+	 * @param previous the indexed results of the variant
+	 * @return the report of the variant
+	 * @throws IOException in case of error in IO operations
+	 */
+	private VariantReport scanVariant(Path vinaFolder, String variant, Map<String, DockingResult> previous) throws IOException {
+
+		VariantReport report = new VariantReport(variant);
+
+		if(!Files.isDirectory(vinaFolder)) {
+			return report;
+		}
+
+		Map<String, Path> logs = new TreeMap<String, Path>();
+		Map<String, BasicFileAttributes> logAttributes = new TreeMap<String, BasicFileAttributes>();
+		Map<String, Boolean> poses = new TreeMap<String, Boolean>();
+		Map<String, Path> reusedFlags = new TreeMap<String, Path>();
+
+		Files.walkFileTree(vinaFolder, EnumSet.noneOf(FileVisitOption.class), 2, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+
+				if(!dir.equals(vinaFolder)) {
+					poses.put(dir.getFileName().toString(), false);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+
+				Path parent = file.getParent();
+
+				if(parent.equals(vinaFolder) || !attrs.isRegularFile()) {
+					return FileVisitResult.CONTINUE;
+				}
+
+				String ligand = parent.getFileName().toString();
+				String name = file.getFileName().toString();
+
+				if(name.length() == ligand.length() + LOG_SUFFIX.length() && name.startsWith(ligand) && name.endsWith(LOG_SUFFIX)) {
+					logs.put(ligand, file);
+					logAttributes.put(ligand, attrs);
+				}else if(name.length() == ligand.length() + POSES_SUFFIX.length() && name.startsWith(ligand) && name.endsWith(POSES_SUFFIX)) {
+					poses.put(ligand, true);
+				}else if(name.length() == ligand.length() + REUSED_SUFFIX.length() && name.startsWith(ligand) && name.endsWith(REUSED_SUFFIX)) {
+					reusedFlags.put(ligand, file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				System.out.println(file + " cannot be read: " + e.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		VinaLogScanner scanner = VinaLogScanner.get();
+
+		for (Map.Entry<String, Boolean> ligand : poses.entrySet()) {
+
+			Path log = logs.get(ligand.getKey());
+
+			if(!ligand.getValue() || log == null) {
+				report.add(ligand.getKey(), null);
+				continue;
+			}
+
+			long modified = logAttributes.get(ligand.getKey()).lastModifiedTime().toMillis();
+			long size = logAttributes.get(ligand.getKey()).size();
+
+			DockingResult result = previous.get(ligand.getKey());
+
+			if(result != null && result.isCurrent(modified, size)) {
+				this.reusedLogs.incrementAndGet();
+			}else {
+				scanner.scan(log);
+				result = DockingResult.of(modified, size, scanner);
+				this.parsedLogs.incrementAndGet();
+			}
+
+			// the provenance is read from the flag on every run, a reused docking can be docked again with the same log size
+			report.add(ligand.getKey(), result.withReusedFrom(getReusedFrom(reusedFlags.get(ligand.getKey()))));
+		}
+		return report;
+	}
+
+	/**
+	 * Read the wild-type variant of a reused docking flag
+	 * @return the variant name, empty if there is no flag
+	 */
+	private static String getReusedFrom(Path flag) throws IOException {
+
+		if(flag == null) {
+			return "";
+		}
+
+		for (String line : Files.readAllLines(flag, StandardCharsets.UTF_8)) {
+			if(!line.trim().isEmpty()) {
+				return line.trim();
+			}
+		}
+		return "wild-type";
+	}
+
+	private static TsvFormatter createFormatter(String path) throws IOException {
+		return new TsvFormatter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The docking results of one variant, each ligand has the result of its log or null if it was not docked
+	 */
+	private static class VariantReport {
+
+		private final String variant;
+		private final Map<String, DockingResult> results = new TreeMap<String, DockingResult>();
+
+		VariantReport(String variant) {
+			this.variant = variant;
+		}
+
+		void add(String ligand, DockingResult result) {
+			this.results.put(ligand, result);
+		}
+
+		String getVariant() {
+			return variant;
+		}
+
+		Set<String> getLigands() {
+			return results.keySet();
+		}
+
+		DockingResult getResult(String ligand) {
+			return results.get(ligand);
+		}
+
+		Map<String, DockingResult> getParsedResults() {
+
+			Map<String, DockingResult> parsed = new TreeMap<String, DockingResult>();
+
+			for (Map.Entry<String, DockingResult> result : this.results.entrySet()) {
+				if(result.getValue() != null) {
+					parsed.put(result.getKey(), result.getValue());
+				}
+			}
+			return parsed;
+		}
+	}
+
+	/**
+	 * The combined docking results table, always written as docking-results-all.tsv with a TsvFormatter (without header,
+	 * as before, it is read by DbDataFabricator) and also in batches with a DatasetWriter next to it for the other formats
+	 */
+	private static class CombinedWriter implements RowSink, Closeable {
+
+		private final TsvFormatter formatter;
+
+		private DatasetWriter writer;
+		private FeatureMatrix batch;
+
+		CombinedWriter(String path, OutputFormat format) throws IOException {
+
+			this.formatter = createFormatter(DataHandler.getOutputPath(path, OutputFormat.TSV));
+
+			if(format == OutputFormat.TSV) {
+				return;
+			}
+
+			try {
+				this.writer = DataHandler.createDatasetWriter(path, format, FingerprintEncoding.COLUMNS);
+			} catch (IOException | RuntimeException e) {
+				this.formatter.close();
+				throw e;
+			}
+
+			this.batch = FeatureMatrix.create();
+
+			for (String column : DOCKING_RESULTS_HEADER) {
+				this.batch.addColumn(column, ColumnType.STRING);
+			}
+		}
+
+		@Override
+		public void write(String[] row) throws IOException {
+
+			this.formatter.writeLine(row);
+
+			if(this.writer == null) {
+				return;
+			}
+
+			this.batch.appendRow();
+
+			for (String value : row) {
+				this.batch.add(value);
+			}
+
+			if(this.batch.getRowCount() == DataHandler.DATASET_BATCH_SIZE) {
+				this.writer.writeBatch(this.batch);
+				this.batch.clear();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			try {
+
+				if(this.writer != null) {
+					try {
+						this.writer.writeBatch(this.batch);
+					} finally {
+						this.writer.close();
+					}
+				}
+
+			} finally {
+				this.formatter.close();
+			}
+		}
+	}
+}
@@ -36,9 +36,12 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,19 +52,15 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.qsar.descriptors.molecular.HBondAcceptorCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.HBondDonorCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.RotatableBondsCountDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.WeightDescriptor;
-import org.openscience.cdk.qsar.descriptors.molecular.XLogPDescriptor;
-import org.openscience.cdk.qsar.result.DoubleResult;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
 
 import io.github.ammar257ammar.psnpbind.core.Config;
-import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+import io.github.ammar257ammar.psnpbind.core.Featurizer;
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.DescriptorFamily;
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.LigandDescriptors;
+import io.github.ammar257ammar.psnpbind.core.model.PreparedLigand;
 
 /**
  * A class to prepare populate the database with PSnPBind Data.
@@ -100,10 +99,35 @@ public class DbDataFabricator {
 		} 
 	}
 	
+	/**
+	 * A method to remove the docking results which were copied from the wild-type to an equivalent variant
+	 * (their reused_from column is set), so their affinity is not imported as if the variant was docked
+	 * @param dockingsRows the rows of docking-results-all.tsv
+	 * @return the rows of the docked ligands
+	 */
+	private static List<String[]> removeReusedDockings(List<String[]> dockingsRows) {
+		
+		List<String[]> docked = new ArrayList<String[]>(dockingsRows.size());
+		
+		for(String[] dockingRow: dockingsRows) {
+			
+			if(dockingRow.length > 4 && dockingRow[4] != null && !dockingRow[4].trim().isEmpty()) {
+				continue;
+			}
+			docked.add(dockingRow);
+		}
+		
+		System.out.println((dockingsRows.size() - docked.size()) + " docking results reused from the wild-type are not imported "
+				+ "(set DB_IMPORT_REUSED_DOCKINGS=true to import them)");
+		
+		return docked;
+	}
+	
 	/**
      * Insert Ligand data and docking results into the database. In the process, 
      * 5 descriptors of each ligand are computed (number of rotatable bonds,
-     * hydrogen donor count, hydrogen acceptor count, molecular weight, XLogP)
+     * hydrogen donor count, hydrogen acceptor count, molecular weight, XLogP). The docking results reused
+     * from the wild-type are only imported if the DB_IMPORT_REUSED_DOCKINGS config value is true
      * 
      */
 	public static void populateDBWithLigandsData() {
@@ -118,6 +142,10 @@ public class DbDataFabricator {
 		
 		List<String[]> ligandsRows = parser.parseAll(new File(Config.getProperty("TSV_PATH")+"/chembl_ligands_filtered_combined_tanimoto_smiles.tsv"));
 		List<String[]> dockingsRows = parser.parseAll(new File(Config.getProperty("TSV_PATH")+"/docking-results/docking-results-all.tsv"));
+		
+		if(!"true".equalsIgnoreCase(String.valueOf(Config.getProperty("DB_IMPORT_REUSED_DOCKINGS")).trim())) {
+			dockingsRows = removeReusedDockings(dockingsRows);
+		}
 				
 		Connection con = null;
 		PreparedStatement psL = null;
@@ -129,12 +157,6 @@ public class DbDataFabricator {
 		String queryVL = "INSERT INTO psnpbind_variant_ligand values (?,?,?,?,?,?,?)";
 		String selectVariants = "SELECT variant_id, variant_folder, pdb_id, variant_type from psnpbind_variant";
 		
-		RotatableBondsCountDescriptor descRot = new RotatableBondsCountDescriptor();
-		HBondDonorCountDescriptor descHD = new HBondDonorCountDescriptor();
-		HBondAcceptorCountDescriptor descHA = new HBondAcceptorCountDescriptor();
-		WeightDescriptor descW = new WeightDescriptor();
-		XLogPDescriptor descXlogp = new XLogPDescriptor();
-		
 		Map<String, String[]> ligands = new HashMap<String, String[]>();
 		Map<String, String[]> variants = new HashMap<String, String[]>();
 		Set<String> ligandsUnique = new HashSet<String>();
@@ -145,6 +167,8 @@ public class DbDataFabricator {
 			ligands.put(ligandRow[1], new String[] {ligandRow[2], ligandRow[4]});
 		}
 		
+		Map<String, PreparedLigand> preparedLigands = prepareDockedLigands(ligands, dockingsRows);
+		
 		
 		try {
 			
@@ -177,7 +201,7 @@ public class DbDataFabricator {
 				String[] variantData = variants.get(dockingRow[1].trim());
 				String[] ligandData = ligands.get(dockingRow[2].trim());
 				
-				if(ligandData == null) {
+				if(ligandData == null || preparedLigands.get(ligandData[0]) == null) {
 					variantLigandTotal -= 1;
 					continue;
 				}
@@ -186,16 +210,19 @@ public class DbDataFabricator {
 					
 					ligandsUnique.add(ligandData[0]);
 				
-					IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(ligandData[1].trim(), true);
+					PreparedLigand ligand = preparedLigands.get(ligandData[0]);
+					
+					LigandDescriptors descriptors = Featurizer.calculateLigandDescriptors(ligand, 
+							EnumSet.of(DescriptorFamily.LIPINSKI, DescriptorFamily.XLOGP));
 					
 					psL.setString(1, ligandData[0]);
 					psL.setString(2, UUID.nameUUIDFromBytes(ligandData[0].getBytes()).toString());
 					psL.setString(3, ligandData[1]);
-					psL.setString(4, descRot.calculate(ac).getValue().toString());
-					psL.setString(5, descHD.calculate(ac).getValue().toString());
-					psL.setString(6, descHA.calculate(ac).getValue().toString());
-					psL.setString(7, String.valueOf(r(((DoubleResult) descW.calculate(ac).getValue()).doubleValue())));
-					psL.setString(8, descXlogp.calculate(ac).getValue().toString());
+					psL.setString(4, String.valueOf(descriptors.getRotatableBonds()));
+					psL.setString(5, String.valueOf(descriptors.getHBondDonors()));
+					psL.setString(6, String.valueOf(descriptors.getHBondAcceptors()));
+					psL.setString(7, String.valueOf(r(descriptors.getWeight())));
+					psL.setString(8, String.valueOf(descriptors.getXLogP()));
 
 					psL.addBatch();
 				}
@@ -479,6 +506,41 @@ public class DbDataFabricator {
 		} 
 	}
 	
+	/**
+	 * A method to parse the SMILES of the ligands referenced by the docking results in one parallel batch
+	 * @param ligands the ligands data (ChEMBL ID and SMILES) by ligand folder
+	 * @param dockingsRows the docking results rows (the ligand folder is the third column)
+	 * @return the prepared ligands by ChEMBL ID, null for the ligands with a SMILES which cannot be parsed
+	 */
+	private static Map<String, PreparedLigand> prepareDockedLigands(Map<String, String[]> ligands, List<String[]> dockingsRows) {
+		
+		Map<String, String> smilesById = new LinkedHashMap<String, String>();
+		
+		for(String[] dockingRow: dockingsRows) {
+			
+			String[] ligandData = ligands.get(dockingRow[2].trim());
+			
+			if(ligandData != null && !smilesById.containsKey(ligandData[0])) {
+				smilesById.put(ligandData[0], ligandData[1].trim());
+			}
+		}
+		
+		List<String> ids = new ArrayList<String>(smilesById.keySet());
+		List<PreparedLigand> prepared = PreparedLigand.fromSmiles(new ArrayList<String>(smilesById.values()));
+		
+		Map<String, PreparedLigand> preparedLigands = new HashMap<String, PreparedLigand>();
+		
+		for(int i = 0; i < ids.size(); i++) {
+			
+			if(prepared.get(i) == null) {
+				System.out.println(ids.get(i) + " ERROR reading SMILES!!");
+			}
+			preparedLigands.put(ids.get(i), prepared.get(i));
+		}
+		
+		return preparedLigands;
+	}
+	
 	/**
 	 * A method to round a double number to four digits after the floating point
 	 * @param value the value to be rounded
@@ -0,0 +1,545 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class represents a typed feature matrix with a schema (name and type per column)
+ * and primitive column storage. Double and integer columns are kept in primitive arrays
+ * and bit columns (fingerprints) are packed into long words, so featurizing thousands of
+ * ligands does not create a String object per cell.
+ *
+ * Rows are appended with {@link #appendRow()} and filled column by column with the add methods,
+ * in the same order the columns were declared. Cells that are never filled are empty.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class FeatureMatrix {
+
+	public enum ColumnType
+	{
+	    STRING, INT, DOUBLE, BITS
+	}
+
+	/**
+	 * A class represents one column of the feature matrix schema
+	 */
+	public static class Column {
+
+		private final String name;
+		private final ColumnType type;
+		private final int width;
+
+		private Column(String name, ColumnType type, int width) {
+			this.name = name;
+			this.type = type;
+			this.width = width;
+		}
+
+		/**
+		 * Get the column name
+		 * @return the column name (the prefix of the header names for BITS columns)
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the column type
+		 * @return a ColumnType value
+		 */
+		public ColumnType getType() {
+			return type;
+		}
+
+		/**
+		 * Get the column width
+		 * @return the number of bits for BITS columns and 1 for other column types
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * Get the number of long words used to store one cell of this column
+		 * @return the number of words for BITS columns and 0 for other column types
+		 */
+		public int getWords() {
+			return type == ColumnType.BITS ? (width + 63) >>> 6 : 0;
+		}
+	}
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final List<Column> columns = new ArrayList<Column>();
+	private final Map<String, Integer> columnIndex = new HashMap<String, Integer>();
+
+	private Object[] data;
+	private BitSet[] filled;
+
+	private int rows = 0;
+	private int capacity = 0;
+	private int cursor = -1;
+
+	/**
+	 * No-argument constructor, the schema is built with the add column methods
+	 */
+	private FeatureMatrix() {
+	}
+
+	/**
+	 * Create a new empty FeatureMatrix instance
+	 *
+	 * @return a new FeatureMatrix without columns
+	 */
+	public static FeatureMatrix create() {
+		return new FeatureMatrix();
+	}
+
+	/**
+	 * Add a column to the schema of the matrix. The schema cannot be changed after the first row is appended.
+	 *
+	 * @param name the column name
+	 * @param type the column type
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addColumn(String name, ColumnType type) {
+		return addColumn(name, type, type == ColumnType.BITS ? 64 : 1);
+	}
+
+	/**
+	 * Add a column to the schema of the matrix with a given width (number of bits for BITS columns)
+	 *
+	 * @param name the column name
+	 * @param type the column type
+	 * @param width the number of bits for BITS columns, ignored for other types
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addColumn(String name, ColumnType type, int width) {
+
+		if(this.capacity > 0) {
+			throw new IllegalStateException("The schema cannot be changed after rows were appended");
+		}
+
+		if(this.columnIndex.containsKey(name)) {
+			throw new IllegalArgumentException("Duplicated column name: " + name);
+		}
+
+		this.columnIndex.put(name, this.columns.size());
+		this.columns.add(new Column(name, type, type == ColumnType.BITS ? width : 1));
+
+		return this;
+	}
+
+	/**
+	 * Add several columns of the same type named with a prefix and a one-based index (e.g. BCUTDescriptor1..6)
+	 *
+	 * @param prefix the prefix of the column names
+	 * @param type the columns type
+	 * @param count the number of columns to add
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addColumns(String prefix, ColumnType type, int count) {
+
+		for (int i = 1; i <= count; i++) {
+			addColumn(prefix + i, type);
+		}
+		return this;
+	}
+
+	/**
+	 * Append a new empty row to the matrix and move the cursor to its first column
+	 *
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix appendRow() {
+
+		if(this.rows == this.capacity) {
+			grow();
+		}
+
+		this.rows++;
+		this.cursor = 0;
+
+		// the slot may hold the bits of a discarded or cleared row
+		for (int c = 0; c < this.columns.size(); c++) {
+
+			Column column = this.columns.get(c);
+
+			if(column.getType() == ColumnType.BITS) {
+				int offset = (this.rows - 1) * column.getWords();
+				Arrays.fill((long[]) this.data[c], offset, offset + column.getWords(), 0L);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Remove the last appended row (e.g. when featurizing the ligand failed half-way)
+	 */
+	public void discardRow() {
+
+		if(this.rows == 0) {
+			return;
+		}
+
+		this.rows--;
+
+		for (int c = 0; c < this.columns.size(); c++) {
+
+			this.filled[c].clear(this.rows);
+
+			if(this.columns.get(c).getType() == ColumnType.STRING) {
+				((String[]) this.data[c])[this.rows] = null;
+			}
+		}
+		this.cursor = -1;
+	}
+
+	/**
+	 * Remove all rows but keep the schema and the allocated storage, so the matrix can be
+	 * reused as a record batch when streaming large tables
+	 */
+	public void clear() {
+
+		if(this.capacity == 0) {
+			return;
+		}
+
+		for (int c = 0; c < this.columns.size(); c++) {
+
+			this.filled[c].clear();
+
+			if(this.columns.get(c).getType() == ColumnType.STRING) {
+				Arrays.fill((String[]) this.data[c], 0, this.rows, null);
+			}
+		}
+		this.rows = 0;
+		this.cursor = -1;
+	}
+
+	/**
+	 * Set the next STRING cell of the current row
+	 * @param value the cell value
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix add(String value) {
+
+		int c = next(ColumnType.STRING);
+
+		((String[]) this.data[c])[this.rows - 1] = value;
+		markFilled(c, value != null);
+
+		return this;
+	}
+
+	/**
+	 * Set the next INT cell of the current row
+	 * @param value the cell value
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix add(int value) {
+
+		int c = next(ColumnType.INT);
+
+		((int[]) this.data[c])[this.rows - 1] = value;
+		markFilled(c, true);
+
+		return this;
+	}
+
+	/**
+	 * Set the next DOUBLE cell of the current row
+	 * @param value the cell value
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix add(double value) {
+
+		int c = next(ColumnType.DOUBLE);
+
+		((double[]) this.data[c])[this.rows - 1] = value;
+		markFilled(c, true);
+
+		return this;
+	}
+
+	/**
+	 * Set the next BITS cell of the current row from the indices of the set bits
+	 * @param setBits the indices of the bits which are on (e.g. IBitFingerprint.getSetbits())
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addBits(int[] setBits) {
+
+		int c = next(ColumnType.BITS);
+
+		Column column = this.columns.get(c);
+		long[] words = (long[]) this.data[c];
+		int offset = (this.rows - 1) * column.getWords();
+
+		Arrays.fill(words, offset, offset + column.getWords(), 0L);
+
+		for (int bit : setBits) {
+			if(bit >= 0 && bit < column.getWidth()) {
+				words[offset + (bit >>> 6)] |= 1L << (bit & 63);
+			}
+		}
+		markFilled(c, true);
+
+		return this;
+	}
+
+	/**
+	 * Set the next BITS cell of the current row from packed long words
+	 * @param packed the bits packed in long words (bit i is in word i/64 at position i%64), missing words are 0
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addBits(long[] packed) {
+
+		int c = next(ColumnType.BITS);
+
+		Column column = this.columns.get(c);
+		int offset = (this.rows - 1) * column.getWords();
+
+		System.arraycopy(packed, 0, (long[]) this.data[c], offset, Math.min(packed.length, column.getWords()));
+		markFilled(c, true);
+
+		return this;
+	}
+
+	/**
+	 * Leave the next cell of the current row empty
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addEmpty() {
+
+		if(this.cursor < 0 || this.cursor >= this.columns.size()) {
+			throw new IllegalStateException("No column left in the current row");
+		}
+
+		this.cursor++;
+
+		return this;
+	}
+
+	/**
+	 * Leave all the remaining cells of the current row empty
+	 * @return the current FeatureMatrix
+	 */
+	public FeatureMatrix addEmptyToEnd() {
+
+		this.cursor = this.columns.size();
+
+		return this;
+	}
+
+	/**
+	 * Get the position of the cursor in the current row
+	 * @return the index of the next column to be filled
+	 */
+	public int getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Check if a cell has a value
+	 * @param row the row index
+	 * @param column the column index
+	 * @return true if the cell was filled
+	 */
+	public boolean isFilled(int row, int column) {
+		return this.filled[column].get(row);
+	}
+
+	/**
+	 * Get a STRING cell value
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the cell value or null if empty
+	 */
+	public String getString(int row, int column) {
+		return ((String[]) this.data[column])[row];
+	}
+
+	/**
+	 * Get an INT cell value
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the cell value (0 if the cell is empty)
+	 */
+	public int getInt(int row, int column) {
+		return ((int[]) this.data[column])[row];
+	}
+
+	/**
+	 * Get a DOUBLE cell value
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the cell value (0.0 if the cell is empty)
+	 */
+	public double getDouble(int row, int column) {
+		return ((double[]) this.data[column])[row];
+	}
+
+	/**
+	 * Check if a bit is on in a BITS cell
+	 * @param row the row index
+	 * @param column the column index
+	 * @param bit the bit index
+	 * @return true if the bit is on
+	 */
+	public boolean getBit(int row, int column, int bit) {
+
+		int words = this.columns.get(column).getWords();
+
+		return (((long[]) this.data[column])[row * words + (bit >>> 6)] & (1L << (bit & 63))) != 0;
+	}
+
+	/**
+	 * Get the backing words array of a BITS column, the cell of row r starts at r * column.getWords()
+	 * @param column the column index
+	 * @return the packed words of all rows (the array can be longer than the number of rows)
+	 */
+	public long[] getBitsWords(int column) {
+		return (long[]) this.data[column];
+	}
+
+	/**
+	 * Get the schema of the matrix
+	 * @return a list of Column objects
+	 */
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Get a column index by name
+	 * @param name the column name
+	 * @return the column index or -1 if not found
+	 */
+	public int indexOf(String name) {
+
+		Integer index = this.columnIndex.get(name);
+
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Get the number of rows
+	 * @return the number of appended rows
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Get the number of columns in the schema
+	 * @return the number of columns
+	 */
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Get the header as it is written to a TSV file. BITS columns are expanded
+	 * to one name per bit with a one-based index (e.g. CircularFingerprinter1..1024)
+	 *
+	 * @return a string array holding the header names
+	 */
+	public String[] getHeader() {
+
+		List<String> header = new ArrayList<String>();
+
+		for (Column column : this.columns) {
+
+			if(column.getType() == ColumnType.BITS) {
+				for (int i = 1; i <= column.getWidth(); i++) {
+					header.add(column.getName() + i);
+				}
+			}else {
+				header.add(column.getName());
+			}
+		}
+		return header.toArray(new String[header.size()]);
+	}
+
+	private int next(ColumnType type) {
+
+		if(this.cursor < 0 || this.cursor >= this.columns.size()) {
+			throw new IllegalStateException("No column left in the current row");
+		}
+
+		if(this.columns.get(this.cursor).getType() != type) {
+			throw new IllegalArgumentException("Column " + this.columns.get(this.cursor).getName() + " is of type "
+					+ this.columns.get(this.cursor).getType() + " not " + type);
+		}
+
+		return this.cursor++;
+	}
+
+	private void markFilled(int column, boolean value) {
+		this.filled[column].set(this.rows - 1, value);
+	}
+
+	private void grow() {
+
+		int newCapacity = this.capacity == 0 ? INITIAL_CAPACITY : this.capacity * 2;
+
+		if(this.data == null) {
+			this.data = new Object[this.columns.size()];
+			this.filled = new BitSet[this.columns.size()];
+
+			for (int c = 0; c < this.columns.size(); c++) {
+				this.filled[c] = new BitSet();
+			}
+		}
+
+		for (int c = 0; c < this.columns.size(); c++) {
+
+			Column column = this.columns.get(c);
+
+			switch (column.getType()) {
+			case STRING:
+				this.data[c] = this.data[c] == null ? new String[newCapacity] : Arrays.copyOf((String[]) this.data[c], newCapacity);
+				break;
+			case INT:
+				this.data[c] = this.data[c] == null ? new int[newCapacity] : Arrays.copyOf((int[]) this.data[c], newCapacity);
+				break;
+			case DOUBLE:
+				this.data[c] = this.data[c] == null ? new double[newCapacity] : Arrays.copyOf((double[]) this.data[c], newCapacity);
+				break;
+			case BITS:
+				this.data[c] = this.data[c] == null ? new long[newCapacity * column.getWords()]
+						: Arrays.copyOf((long[]) this.data[c], newCapacity * column.getWords());
+				break;
+			}
+		}
+
+		this.capacity = newCapacity;
+	}
+}
@@ -0,0 +1,137 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintTools;
+
+/**
+ * A class represents a memory-mapped binary fingerprint file as written by
+ * FingerprintTools.openFingerprintFile (a header followed by fixed size rows of packed long words)
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class FingerprintBlock {
+
+	private final int bits;
+	private final int words;
+	private final long rows;
+
+	private final LongBuffer data;
+
+	private FingerprintBlock(int bits, int words, long rows, LongBuffer data) {
+		this.bits = bits;
+		this.words = words;
+		this.rows = rows;
+		this.data = data;
+	}
+
+	/**
+	 * Memory-map a binary fingerprint file
+	 *
+	 * @param path the fingerprint file path
+	 * @return a FingerprintBlock backed by the mapped file
+	 * @throws IOException in case of error in IO operations or if the file is not a fingerprint file
+	 */
+	public static FingerprintBlock map(String path) throws IOException {
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			byte[] magic = new byte[FingerprintTools.FINGERPRINT_FILE_MAGIC.length];
+			buffer.get(magic);
+
+			if(!Arrays.equals(magic, FingerprintTools.FINGERPRINT_FILE_MAGIC)) {
+				throw new IOException(path + " is not a fingerprint file");
+			}
+
+			int bits = buffer.getInt();
+			int words = buffer.getInt();
+			long rows = buffer.getLong();
+
+			buffer.position(FingerprintTools.FINGERPRINT_FILE_HEADER_SIZE);
+
+			return new FingerprintBlock(bits, words, rows, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+		}
+	}
+
+	/**
+	 * Copy one fingerprint into a words array
+	 * @param row the row index
+	 * @param dest the destination array
+	 * @param offset the index in dest where the first word is copied
+	 */
+	public void get(int row, long[] dest, int offset) {
+
+		int start = row * this.words;
+
+		for (int w = 0; w < this.words; w++) {
+			dest[offset + w] = this.data.get(start + w);
+		}
+	}
+
+	/**
+	 * Get one fingerprint as a new words array
+	 * @param row the row index
+	 * @return the packed fingerprint
+	 */
+	public long[] get(int row) {
+
+		long[] fp = new long[this.words];
+		get(row, fp, 0);
+
+		return fp;
+	}
+
+	/**
+	 * Get the fingerprint length
+	 * @return the number of bits of each fingerprint
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * Get the row width
+	 * @return the number of long words of each fingerprint
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * Get the number of fingerprints
+	 * @return the number of rows in the file
+	 */
+	public long getRows() {
+		return rows;
+	}
+}
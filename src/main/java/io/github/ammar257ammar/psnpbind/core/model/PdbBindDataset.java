@@ -34,6 +34,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import io.github.ammar257ammar.psnpbind.core.Config;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetJoin;
 
 /**
  * A class represents a PdbBind dataset object with methods to manipulate the dataset (filtering,
@@ -150,17 +151,18 @@ public class PdbBindDataset {
 			e.printStackTrace();
 		}
 		
-		// Left join the Uniprot IDs list (2nd list) to the first one on PDB ID 
+		// Join the Uniprot IDs list (2nd list) to the first one on PDB ID 
 		// to merge the two lists in one
+		DatasetJoin generalNamesJoin = DatasetJoin.create(generalNamesFileList, 0);
+		
 		for(String[] general : generalFileList) {
-			for(String[] generalNames : generalNamesFileList) {
+			
+			List<String[]> generalNames = generalNamesJoin.get(general, 0);
+			
+			// if the PDB ID matches, add a new row to the main List containing data from both lists (first match only)
+			if(!generalNames.isEmpty()) {
 				
-				// if the PDB ID matches, add a new row to the main List containing data from both lists 
-				if(general[0].equals(generalNames[0])) {
-					
-					this.pdbbindData.add(new String[]{general[0], general[1], general[2], generalNames[1]});
-					break;
-				}
+				this.pdbbindData.add(new String[]{general[0], general[1], general[2], generalNames.get(0)[1]});
 			}
 		}
 			
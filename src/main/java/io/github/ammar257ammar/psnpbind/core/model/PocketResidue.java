@@ -0,0 +1,73 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A class represents a binding pocket residue read from the ATOM records of a PDB file, with the coordinates
+ * of its atoms by atom name.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class PocketResidue {
+
+	private final String key;
+	private final String name;
+	private final Map<String, double[]> atoms = new LinkedHashMap<String, double[]>();
+
+	/**
+	 * Create a pocket residue without atoms
+	 * @param key the residue key (residue number and insertion code e.g. "123" or "123A")
+	 * @param name the three letter residue name
+	 */
+	public PocketResidue(String key, String name) {
+		this.key = key;
+		this.name = name;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the atoms of the residue
+	 * @return a map of atom names to [x, y, z] coordinates, in the file order
+	 */
+	public Map<String, double[]> getAtoms() {
+		return atoms;
+	}
+
+	/**
+	 * Add an atom to the residue, an atom name already added is kept
+	 * @param atomName the atom name
+	 * @param coordinates the [x, y, z] coordinates
+	 */
+	public void addAtom(String atomName, double[] coordinates) {
+		atoms.putIfAbsent(atomName, coordinates);
+	}
+}
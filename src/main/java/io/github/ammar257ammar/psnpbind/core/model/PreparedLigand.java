@@ -0,0 +1,201 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+import io.github.ammar257ammar.psnpbind.core.utils.LigandDescriptorCache;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+
+/**
+ * A class represents a ligand parsed and perceived once (atom types, hydrogens, aromaticity and kekulization)
+ * and shared by the validation, cache lookup and descriptor steps of a featurization run.
+ *
+ * The 2D molecule is parsed from the SMILES when the object is created. The 3D molecule is parsed from the minimized
+ * mol2 file only when it is first requested, and the canonical SMILES and the mol2 content hash (the descriptor cache
+ * keys) are computed once and kept with the molecules.
+ *
+ * A PreparedLigand is not thread-safe, it is meant to be used by the thread which featurizes the ligand.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class PreparedLigand {
+
+	private final String smiles;
+	private final IAtomContainer molecule2D;
+	private final File mol2File;
+
+	private IAtomContainer molecule3D = null;
+	private boolean molecule3DParsed = false;
+
+	private String canonicalSmiles = null;
+	private String mol2Hash = null;
+
+	private PreparedLigand(String smiles, IAtomContainer molecule2D, File mol2File) {
+		this.smiles = smiles;
+		this.molecule2D = molecule2D;
+		this.mol2File = mol2File;
+	}
+
+	/**
+	 * A method to prepare a ligand from its SMILES file and minimized mol2 file
+	 * @param smilesFile the ligand SMILES file
+	 * @param mol2File the minimized ligand mol2 file, or null if the 3D structure is not needed
+	 * @return a PreparedLigand or null if the SMILES file is missing, empty or cannot be parsed
+	 * @throws IOException in case of error in IO operations
+	 * @throws ClassNotFoundException in case of error in reading the molecule
+	 * @throws CDKException in case of error in perceiving the molecule
+	 */
+	public static PreparedLigand fromFiles(File smilesFile, File mol2File)
+			throws IOException, ClassNotFoundException, CDKException {
+
+		if (!smilesFile.exists() || smilesFile.length() == 0) {
+			return null;
+		}
+
+		String smiles = LigandTools.readSmilesFromFile(smilesFile);
+
+		IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(smiles, true);
+
+		if (ac == null) {
+			System.out.println(smilesFile.getName() + " ERROR reading file!!");
+			return null;
+		}
+
+		return new PreparedLigand(smiles, ac, mol2File);
+	}
+
+	/**
+	 * A method to prepare a ligand from a SMILES string (without 3D structure)
+	 * @param smiles the ligand SMILES
+	 * @return a PreparedLigand or null if the SMILES cannot be parsed
+	 * @throws IOException in case of error in IO operations
+	 * @throws ClassNotFoundException in case of error in reading the molecule
+	 * @throws CDKException in case of error in perceiving the molecule
+	 */
+	public static PreparedLigand fromSmiles(String smiles) throws IOException, ClassNotFoundException, CDKException {
+
+		IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(smiles, true);
+
+		return ac == null ? null : new PreparedLigand(smiles, ac, null);
+	}
+
+	/**
+	 * A method to prepare many ligands from their SMILES strings in parallel (without 3D structure)
+	 * @param smiles the ligands' SMILES
+	 * @return the PreparedLigands in the order of the SMILES, null for the SMILES which cannot be parsed
+	 */
+	public static List<PreparedLigand> fromSmiles(List<String> smiles) {
+
+		List<IAtomContainer> molecules = LigandTools.readSmilesStrings(smiles, true);
+
+		List<PreparedLigand> ligands = new ArrayList<PreparedLigand>(smiles.size());
+
+		for (int i = 0; i < smiles.size(); i++) {
+			ligands.add(molecules.get(i) == null ? null : new PreparedLigand(smiles.get(i), molecules.get(i), null));
+		}
+		return ligands;
+	}
+
+	/**
+	 * Check if the minimized mol2 file of the ligand exists and is not empty
+	 * @return true if the 3D structure can be read
+	 */
+	public boolean hasMol2File() {
+		return this.mol2File != null && this.mol2File.exists() && this.mol2File.length() > 0;
+	}
+
+	/**
+	 * Get the SMILES the ligand was parsed from
+	 * @return the SMILES string
+	 */
+	public String getSmiles() {
+		return smiles;
+	}
+
+	/**
+	 * Get the molecule parsed from the SMILES with explicit hydrogens, aromaticity and atom types perceived
+	 * @return a CDK IAtomContainer
+	 */
+	public IAtomContainer getMolecule2D() {
+		return molecule2D;
+	}
+
+	/**
+	 * Get the minimized molecule parsed from the mol2 file (without adding hydrogens), it is parsed on the first call
+	 * @return a CDK IAtomContainer or null if the mol2 file is missing or cannot be parsed
+	 * @throws IOException in case of error in IO operations
+	 * @throws ClassNotFoundException in case of error in reading the molecule
+	 * @throws CDKException in case of error in perceiving the molecule
+	 */
+	public IAtomContainer getMolecule3D() throws IOException, ClassNotFoundException, CDKException {
+
+		if (!this.molecule3DParsed) {
+
+			this.molecule3DParsed = true;
+
+			if (hasMol2File()) {
+
+				this.molecule3D = LigandTools.readMol2andAddHydrogens(this.mol2File, false);
+
+				if (this.molecule3D == null) {
+					System.out.println(this.mol2File.getName() + " ERROR reading file!!");
+				}
+			}
+		}
+		return this.molecule3D;
+	}
+
+	/**
+	 * Get the canonical SMILES of the ligand (the descriptor cache key), it is computed on the first call
+	 * @return the canonical SMILES
+	 * @throws CDKException in case of error in generating the SMILES
+	 */
+	public String getCanonicalSmiles() throws CDKException {
+
+		if (this.canonicalSmiles == null) {
+			this.canonicalSmiles = LigandDescriptorCache.canonicalSmiles(this.molecule2D);
+		}
+		return this.canonicalSmiles;
+	}
+
+	/**
+	 * Get the content hash of the minimized mol2 file (the descriptor cache key of the 3D descriptors),
+	 * it is computed on the first call
+	 * @return the SHA-256 hash of the mol2 file or null if the ligand has no mol2 file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public String getMol2Hash() throws IOException {
+
+		if (this.mol2Hash == null && hasMol2File()) {
+			this.mol2Hash = LigandDescriptorCache.hash(Files.readAllBytes(this.mol2File.toPath()));
+		}
+		return this.mol2Hash;
+	}
+}
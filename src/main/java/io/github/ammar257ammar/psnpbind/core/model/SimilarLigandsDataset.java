@@ -0,0 +1,62 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.model;
+
+import java.util.List;
+
+/**
+ * A class represents the two similar ligands tables built by Ligand3D from the OpenBabel logs and SMILES files:
+ * the ligands with their Tanimoto similarity, and the same ligands with their SMILES
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class SimilarLigandsDataset {
+
+	private final List<String[]> tanimotoData;
+	private final List<String[]> tanimotoAndSmilesData;
+
+	/**
+	 * SimilarLigandsDataset Constructor
+	 * @param tanimotoData the rows (PDB folder, ligand name, ChEMBL ID, Tanimoto similarity)
+	 * @param tanimotoAndSmilesData the rows (PDB folder, ligand name, ChEMBL ID, Tanimoto similarity, SMILES)
+	 */
+	public SimilarLigandsDataset(List<String[]> tanimotoData, List<String[]> tanimotoAndSmilesData) {
+		this.tanimotoData = tanimotoData;
+		this.tanimotoAndSmilesData = tanimotoAndSmilesData;
+	}
+
+	/**
+	 * Get the ligands with their Tanimoto similarity
+	 * @return the rows (PDB folder, ligand name, ChEMBL ID, Tanimoto similarity)
+	 */
+	public List<String[]> getTanimotoData() {
+		return tanimotoData;
+	}
+
+	/**
+	 * Get the ligands with their Tanimoto similarity and SMILES
+	 * @return the rows (PDB folder, ligand name, ChEMBL ID, Tanimoto similarity, SMILES)
+	 */
+	public List<String[]> getTanimotoAndSmilesData() {
+		return tanimotoAndSmilesData;
+	}
+}
@@ -0,0 +1,230 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.model;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A class represents a sparse symmetric similarity matrix in CSR format (row pointers, column indices and values)
+ * as computed by TanimotoMatrixEngine. The diagonal is not stored.
+ *
+ * The binary file holds a 32 bytes header (8 bytes magic "PSNPSM01", int32 number of rows, 4 reserved bytes,
+ * int64 number of stored values, float32 threshold, 4 reserved bytes) followed by the row pointers (rows + 1 int64),
+ * the column indices (int32) and the values (float32), all little-endian, so it can be loaded with numpy
+ * and scipy.sparse.csr_matrix.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class SimilarityMatrix {
+
+	public static final byte[] MATRIX_FILE_MAGIC = "PSNPSM01".getBytes(StandardCharsets.US_ASCII);
+
+	public static final int MATRIX_FILE_HEADER_SIZE = 32;
+
+	private final int rows;
+	private final float threshold;
+
+	private final long[] rowPointers;
+	private final int[] columns;
+	private final float[] values;
+
+	/**
+	 * SimilarityMatrix Constructor
+	 * @param rows the number of rows (and columns)
+	 * @param threshold the minimum similarity of the stored values
+	 * @param rowPointers the index of the first value of each row (rows + 1 values)
+	 * @param columns the column index of each value, sorted in each row
+	 * @param values the similarity values
+	 */
+	public SimilarityMatrix(int rows, float threshold, long[] rowPointers, int[] columns, float[] values) {
+		this.rows = rows;
+		this.threshold = threshold;
+		this.rowPointers = rowPointers;
+		this.columns = columns;
+		this.values = values;
+	}
+
+	/**
+	 * Get a similarity value
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the similarity, 1 on the diagonal and 0 if the value is not stored (below the threshold)
+	 */
+	public float get(int row, int column) {
+
+		if (row == column) {
+			return 1.0f;
+		}
+
+		int from = (int) this.rowPointers[row];
+		int to = (int) this.rowPointers[row + 1];
+
+		int index = Arrays.binarySearch(this.columns, from, to, column);
+
+		return index >= 0 ? this.values[index] : 0.0f;
+	}
+
+	/**
+	 * A method to write the matrix to a binary file
+	 * @param path the output file path
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void write(String path) throws IOException {
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16)) {
+
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.put(MATRIX_FILE_MAGIC);
+			buffer.putInt(this.rows);
+			buffer.putInt(0);
+			buffer.putLong(this.columns.length);
+			buffer.putFloat(this.threshold);
+			buffer.putInt(0);
+
+			for (long pointer : this.rowPointers) {
+				flushIfFull(out, buffer, 8);
+				buffer.putLong(pointer);
+			}
+
+			for (int column : this.columns) {
+				flushIfFull(out, buffer, 4);
+				buffer.putInt(column);
+			}
+
+			for (float value : this.values) {
+				flushIfFull(out, buffer, 4);
+				buffer.putFloat(value);
+			}
+
+			out.write(buffer.array(), 0, buffer.position());
+		}
+	}
+
+	/**
+	 * A method to read a binary matrix file
+	 * @param path the matrix file path
+	 * @return the SimilarityMatrix object
+	 * @throws IOException in case of error in IO operations or if the file is not a matrix file
+	 */
+	public static SimilarityMatrix read(String path) throws IOException {
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			byte[] magic = new byte[MATRIX_FILE_MAGIC.length];
+			buffer.get(magic);
+
+			if (!Arrays.equals(magic, MATRIX_FILE_MAGIC)) {
+				throw new IOException(path + " is not a similarity matrix file");
+			}
+
+			int rows = buffer.getInt();
+			buffer.getInt();
+			int count = (int) buffer.getLong();
+			float threshold = buffer.getFloat();
+			buffer.getInt();
+
+			long[] rowPointers = new long[rows + 1];
+			int[] columns = new int[count];
+			float[] values = new float[count];
+
+			buffer.asLongBuffer().get(rowPointers);
+			buffer.position(buffer.position() + 8 * (rows + 1));
+
+			buffer.asIntBuffer().get(columns);
+			buffer.position(buffer.position() + 4 * count);
+
+			buffer.asFloatBuffer().get(values);
+
+			return new SimilarityMatrix(rows, threshold, rowPointers, columns, values);
+		}
+	}
+
+	/**
+	 * Get the number of rows
+	 * @return the number of rows (and columns) of the matrix
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Get the threshold
+	 * @return the minimum similarity of the stored values
+	 */
+	public float getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Get the number of stored values
+	 * @return the number of values above the threshold (both triangles, without the diagonal)
+	 */
+	public long getValuesCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Get the row pointers
+	 * @return the index of the first value of each row (rows + 1 values)
+	 */
+	public long[] getRowPointers() {
+		return rowPointers;
+	}
+
+	/**
+	 * Get the column indices
+	 * @return the column index of each value
+	 */
+	public int[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Get the values
+	 * @return the similarity values
+	 */
+	public float[] getValues() {
+		return values;
+	}
+
+	private static void flushIfFull(OutputStream out, ByteBuffer buffer, int size) throws IOException {
+
+		if (buffer.remaining() < size) {
+			out.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,656 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A binary store of the variant x ligand best affinity matrices of the PDBbind entries, the compact counterpart
+ * of the bindingAffinity-official-[PDB]_df.tsv reports, where the variant and ligand names are written once per entry
+ * instead of once per docking.
+ *
+ * The store file is made of a 32 bytes header (8 bytes magic "PSNPAM02", int32 number of entries, 4 reserved
+ * bytes, int64 offset of the index, 8 reserved bytes), one block per entry aligned to 8 bytes and the index (the
+ * sorted PDB codes with the offset and the length of their block). A block starts with the int32 number of
+ * variants and ligands, the int32 offsets of the affinities and of the two bitmaps in the block and 4 reserved
+ * bytes, followed by the variant and ligand dictionaries (the names of the rows and columns), the float32
+ * affinities of the matrix in row-major order (a variant row is contiguous), the missing value bitmap (one bit per
+ * cell in int64 words, set if the ligand was not docked in the variant or the docking has no affinity) and the
+ * reused bitmap (set if the docking was copied from an equivalent wild-type variant by the DockingScheduler
+ * instead of docked). All numbers are little-endian and the strings are UTF-8 with an int16 length.
+ *
+ * The matrix of an entry is loaded with one mapping of its block. Like the pose store, the store is never updated
+ * in place: a Writer writes a new file which replaces the store when committed.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class AffinityMatrixStore implements Closeable {
+
+	private static final byte[] MAGIC = "PSNPAM02".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int HEADER_SIZE = 32;
+	private static final int BLOCK_HEADER_SIZE = 24;
+
+	private final String path;
+	private final FileChannel channel;
+
+	private final String[] pdbs;
+	private final long[] offsets;
+	private final long[] lengths;
+
+	private AffinityMatrixStore(String path, FileChannel channel, String[] pdbs, long[] offsets, long[] lengths) {
+		this.path = path;
+		this.channel = channel;
+		this.pdbs = pdbs;
+		this.offsets = offsets;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * Open a store file and read its index
+	 * @param path the store file path
+	 * @return an AffinityMatrixStore, the matrices are mapped when they are read
+	 * @throws IOException in case of error in IO operations or if the file is not an affinity matrix store
+	 */
+	public static AffinityMatrixStore open(String path) throws IOException {
+
+		FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+
+		try {
+
+			ByteBuffer header = read(channel, 0, HEADER_SIZE);
+
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+
+			if(!Arrays.equals(magic, MAGIC)) {
+				throw new IOException(path + " is not an affinity matrix store");
+			}
+
+			int count = header.getInt();
+			header.getInt();
+			long indexOffset = header.getLong();
+
+			ByteBuffer index = read(channel, indexOffset, (int) (channel.size() - indexOffset));
+
+			String[] pdbs = new String[count];
+			long[] offsets = new long[count];
+			long[] lengths = new long[count];
+
+			for (int i = 0; i < count; i++) {
+				pdbs[i] = getString(index);
+				offsets[i] = index.getLong();
+				lengths[i] = index.getLong();
+			}
+
+			return new AffinityMatrixStore(path, channel, pdbs, offsets, lengths);
+
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Create a writer of a new version of a store file
+	 * @param path the store file path
+	 * @return a Writer, the store file is replaced when the writer is committed
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static Writer createWriter(String path) throws IOException {
+		return new Writer(path);
+	}
+
+	/**
+	 * Map and read the affinity matrix of an entry
+	 * @param pdb the PdbBind entry
+	 * @return the matrix, or null if the entry is not in the store
+	 * @throws IOException in case of error in IO operations
+	 */
+	public AffinityMatrix getMatrix(String pdb) throws IOException {
+
+		int entry = Arrays.binarySearch(this.pdbs, pdb);
+
+		if(entry < 0) {
+			return null;
+		}
+
+		MappedByteBuffer block = this.channel.map(FileChannel.MapMode.READ_ONLY, this.offsets[entry], this.lengths[entry]);
+		block.order(ByteOrder.LITTLE_ENDIAN);
+
+		return new AffinityMatrix(pdb, block);
+	}
+
+	/**
+	 * Check if an entry is in the store
+	 * @param pdb the PdbBind entry
+	 * @return true if the store has the matrix of the entry
+	 */
+	public boolean contains(String pdb) {
+		return Arrays.binarySearch(this.pdbs, pdb) >= 0;
+	}
+
+	/**
+	 * Get the entries of the store
+	 * @return the sorted PDB codes
+	 */
+	public List<String> getPdbs() {
+		return Collections.unmodifiableList(Arrays.asList(this.pdbs));
+	}
+
+	/**
+	 * Get the number of entries in the store
+	 * @return the number of matrices
+	 */
+	public int size() {
+		return this.pdbs.length;
+	}
+
+	/**
+	 * The mapped matrices stay readable until they are garbage collected (Java 8 has no unmapping API)
+	 */
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return this.path + " (" + this.pdbs.length + " entries)";
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the affinity matrix store");
+			}
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The variant x ligand affinity matrix of an entry, read in place from the mapped block
+	 */
+	public static class AffinityMatrix {
+
+		private final String pdb;
+		private final ByteBuffer block;
+
+		private final String[] variants;
+		private final String[] ligands;
+
+		private final Map<String, Integer> variantIndex;
+		private final Map<String, Integer> ligandIndex;
+
+		private final int dataOffset;
+		private final int bitmapOffset;
+		private final int reusedOffset;
+
+		private AffinityMatrix(String pdb, ByteBuffer block) {
+
+			this.pdb = pdb;
+			this.block = block;
+
+			this.variants = new String[block.getInt(0)];
+			this.ligands = new String[block.getInt(4)];
+			this.dataOffset = block.getInt(8);
+			this.bitmapOffset = block.getInt(12);
+			this.reusedOffset = block.getInt(16);
+
+			ByteBuffer dictionaries = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			dictionaries.position(BLOCK_HEADER_SIZE);
+
+			this.variantIndex = readDictionary(dictionaries, this.variants);
+			this.ligandIndex = readDictionary(dictionaries, this.ligands);
+		}
+
+		public String getPdb() {
+			return pdb;
+		}
+
+		/**
+		 * Get the rows of the matrix
+		 * @return the variant names in the order of the rows
+		 */
+		public List<String> getVariants() {
+			return Collections.unmodifiableList(Arrays.asList(variants));
+		}
+
+		/**
+		 * Get the columns of the matrix
+		 * @return the ligand names in the order of the columns
+		 */
+		public List<String> getLigands() {
+			return Collections.unmodifiableList(Arrays.asList(ligands));
+		}
+
+		public int getVariantCount() {
+			return variants.length;
+		}
+
+		public int getLigandCount() {
+			return ligands.length;
+		}
+
+		/**
+		 * Get the row of a variant
+		 * @param variant the variant name
+		 * @return the row index, or -1 if the variant is not in the matrix
+		 */
+		public int getVariantIndex(String variant) {
+			return variantIndex.getOrDefault(variant, -1);
+		}
+
+		/**
+		 * Get the column of a ligand
+		 * @param ligand the ligand name
+		 * @return the column index, or -1 if the ligand is not in the matrix
+		 */
+		public int getLigandIndex(String ligand) {
+			return ligandIndex.getOrDefault(ligand, -1);
+		}
+
+		/**
+		 * Get the best affinity of a ligand docked in a variant
+		 * @param variant the row index
+		 * @param ligand the column index
+		 * @return the affinity in kcal/mol, NaN if it is missing
+		 */
+		public float get(int variant, int ligand) {
+			return block.getFloat(dataOffset + 4 * cell(variant, ligand));
+		}
+
+		/**
+		 * Get the best affinity of a ligand docked in a variant
+		 * @param variant the variant name
+		 * @param ligand the ligand name
+		 * @return the affinity in kcal/mol, NaN if it is missing or the variant or the ligand is not in the matrix
+		 */
+		public float get(String variant, String ligand) {
+
+			int row = getVariantIndex(variant);
+			int column = getLigandIndex(ligand);
+
+			return row < 0 || column < 0 ? Float.NaN : get(row, column);
+		}
+
+		/**
+		 * Check if an affinity is missing
+		 * @param variant the row index
+		 * @param ligand the column index
+		 * @return true if the ligand was not docked in the variant or the docking has no affinity
+		 */
+		public boolean isMissing(int variant, int ligand) {
+			return isSet(bitmapOffset, cell(variant, ligand));
+		}
+
+		/**
+		 * Check if an affinity was copied from the docking of an equivalent wild-type variant
+		 * @param variant the row index
+		 * @param ligand the column index
+		 * @return true if the ligand was not docked in the variant but its wild-type docking was reused
+		 */
+		public boolean isReused(int variant, int ligand) {
+			return isSet(reusedOffset, cell(variant, ligand));
+		}
+
+		/**
+		 * Get the number of missing affinities
+		 * @return the number of cells set in the missing value bitmap
+		 */
+		public int getMissingCount() {
+			return count(bitmapOffset);
+		}
+
+		/**
+		 * Get the number of reused affinities
+		 * @return the number of cells set in the reused bitmap
+		 */
+		public int getReusedCount() {
+			return count(reusedOffset);
+		}
+
+		/**
+		 * Get the affinities of all the ligands docked in a variant
+		 * @param variant the row index
+		 * @return a copy of the row, NaN for the missing affinities
+		 */
+		public float[] getVariantAffinities(int variant) {
+
+			if(variant < 0 || variant >= variants.length) {
+				throw new IndexOutOfBoundsException("Variant " + variant + " of " + variants.length);
+			}
+
+			float[] row = new float[ligands.length];
+
+			ByteBuffer data = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			data.position(dataOffset + 4 * variant * ligands.length);
+			data.asFloatBuffer().get(row);
+
+			return row;
+		}
+
+		/**
+		 * Get the affinities of all the ligands docked in a variant
+		 * @param variant the variant name
+		 * @return a copy of the row, NaN for the missing affinities, or null if the variant is not in the matrix
+		 */
+		public float[] getVariantAffinities(String variant) {
+
+			int row = getVariantIndex(variant);
+
+			return row < 0 ? null : getVariantAffinities(row);
+		}
+
+		/**
+		 * Get the affinities of a ligand docked in all the variants
+		 * @param ligand the column index
+		 * @return a copy of the column, NaN for the missing affinities
+		 */
+		public float[] getLigandAffinities(int ligand) {
+
+			if(ligand < 0 || ligand >= ligands.length) {
+				throw new IndexOutOfBoundsException("Ligand " + ligand + " of " + ligands.length);
+			}
+
+			float[] column = new float[variants.length];
+
+			for (int v = 0; v < column.length; v++) {
+				column[v] = block.getFloat(dataOffset + 4 * (v * ligands.length + ligand));
+			}
+			return column;
+		}
+
+		/**
+		 * Get the affinities of a ligand docked in all the variants
+		 * @param ligand the ligand name
+		 * @return a copy of the column, NaN for the missing affinities, or null if the ligand is not in the matrix
+		 */
+		public float[] getLigandAffinities(String ligand) {
+
+			int column = getLigandIndex(ligand);
+
+			return column < 0 ? null : getLigandAffinities(column);
+		}
+
+		private boolean isSet(int bitmap, int cell) {
+			return (block.getLong(bitmap + 8 * (cell >>> 6)) & (1L << (cell & 63))) != 0;
+		}
+
+		private int count(int bitmap) {
+
+			int count = 0;
+
+			for (int word = 0; word < (variants.length * ligands.length + 63) / 64; word++) {
+				count += Long.bitCount(block.getLong(bitmap + 8 * word));
+			}
+			return count;
+		}
+
+		private int cell(int variant, int ligand) {
+
+			if(variant < 0 || variant >= variants.length || ligand < 0 || ligand >= ligands.length) {
+				throw new IndexOutOfBoundsException("Cell " + variant + ", " + ligand + " of a " + variants.length + " x "
+						+ ligands.length + " matrix");
+			}
+			return variant * ligands.length + ligand;
+		}
+
+		private static Map<String, Integer> readDictionary(ByteBuffer buffer, String[] names) {
+
+			Map<String, Integer> index = new HashMap<String, Integer>(names.length * 2);
+
+			for (int i = 0; i < names.length; i++) {
+				names[i] = getString(buffer);
+				index.put(names[i], i);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * A writer of a new version of a store file, the blocks are written as the matrices are added to a temporary file
+	 * which replaces the store file when the writer is committed (and is deleted if the writer is closed before)
+	 */
+	public static class Writer implements Closeable {
+
+		private final Path target;
+		private final Path temporary;
+		private final FileChannel channel;
+
+		private final Map<String, long[]> blocks = new TreeMap<String, long[]>();
+
+		private long position = HEADER_SIZE;
+		private boolean committed = false;
+
+		private Writer(String path) throws IOException {
+
+			this.target = new File(path).getAbsoluteFile().toPath();
+
+			Files.createDirectories(this.target.getParent());
+
+			this.temporary = this.target.resolveSibling(this.target.getFileName() + ".tmp");
+			this.channel = FileChannel.open(this.temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		/**
+		 * Add the affinity matrix of an entry
+		 * @param pdb the PdbBind entry
+		 * @param variants the variant names of the rows
+		 * @param ligands the ligand names of the columns
+		 * @param affinities the affinities in row-major order (variants.size() x ligands.size()), NaN if missing
+		 * @throws IOException in case of error in IO operations
+		 * @throws IllegalArgumentException if the entry was already added or the matrix size does not match the names
+		 */
+		public void write(String pdb, List<String> variants, List<String> ligands, float[] affinities) throws IOException {
+			write(pdb, variants, ligands, affinities, null);
+		}
+
+		/**
+		 * Add the affinity matrix of an entry with the provenance of its affinities
+		 * @param pdb the PdbBind entry
+		 * @param variants the variant names of the rows
+		 * @param ligands the ligand names of the columns
+		 * @param affinities the affinities in row-major order (variants.size() x ligands.size()), NaN if missing
+		 * @param reused the cells copied from an equivalent wild-type variant in the same order, null if all were docked
+		 * @throws IOException in case of error in IO operations
+		 * @throws IllegalArgumentException if the entry was already added or the matrix size does not match the names
+		 */
+		public void write(String pdb, List<String> variants, List<String> ligands, float[] affinities, boolean[] reused)
+				throws IOException {
+
+			if(this.blocks.containsKey(pdb)) {
+				throw new IllegalArgumentException("The affinity matrix of " + pdb + " was already written");
+			}
+
+			long cells = (long) variants.size() * ligands.size();
+
+			if(affinities.length != cells || (reused != null && reused.length != cells)) {
+				throw new IllegalArgumentException("The affinity matrix of " + pdb + " has " + affinities.length
+						+ " cells instead of " + variants.size() + " x " + ligands.size());
+			}
+
+			byte[][] names = new byte[variants.size() + ligands.size()][];
+			int dictionarySize = 0;
+
+			for (int i = 0; i < names.length; i++) {
+				names[i] = (i < variants.size() ? variants.get(i) : ligands.get(i - variants.size())).getBytes(StandardCharsets.UTF_8);
+				dictionarySize += 2 + names[i].length;
+			}
+
+			long dataOffset = (BLOCK_HEADER_SIZE + dictionarySize + 7) & ~7L;
+			long bitmapOffset = (dataOffset + 4 * cells + 7) & ~7L;
+			long reusedOffset = bitmapOffset + 8 * ((cells + 63) / 64);
+			long size = reusedOffset + 8 * ((cells + 63) / 64);
+
+			if(size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("The affinity matrix of " + pdb + " is larger than 2 GB");
+			}
+
+			ByteBuffer block = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+			block.putInt(variants.size());
+			block.putInt(ligands.size());
+			block.putInt((int) dataOffset);
+			block.putInt((int) bitmapOffset);
+			block.putInt((int) reusedOffset);
+			block.putInt(0);
+
+			for (byte[] name : names) {
+				block.putShort((short) name.length);
+				block.put(name);
+			}
+
+			for (int cell = 0; cell < affinities.length; cell++) {
+
+				block.putFloat((int) dataOffset + 4 * cell, affinities[cell]);
+
+				if(Float.isNaN(affinities[cell])) {
+					set(block, (int) bitmapOffset, cell);
+				}
+
+				if(reused != null && reused[cell]) {
+					set(block, (int) reusedOffset, cell);
+				}
+			}
+
+			this.position = (this.position + 7) & ~7L;
+			this.blocks.put(pdb, new long[] { this.position, size });
+
+			block.clear();
+
+			while (block.hasRemaining()) {
+				this.position += this.channel.write(block, this.position);
+			}
+		}
+
+		/**
+		 * Write the index and the header and replace the store file with the new version
+		 * @throws IOException in case of error in IO operations
+		 */
+		public void commit() throws IOException {
+
+			long indexOffset = this.position;
+
+			int indexSize = 0;
+
+			for (String pdb : this.blocks.keySet()) {
+				indexSize += 2 + pdb.getBytes(StandardCharsets.UTF_8).length + 16;
+			}
+
+			ByteBuffer index = ByteBuffer.allocate(indexSize).order(ByteOrder.LITTLE_ENDIAN);
+
+			for (Map.Entry<String, long[]> block : this.blocks.entrySet()) {
+
+				byte[] pdb = block.getKey().getBytes(StandardCharsets.UTF_8);
+
+				index.putShort((short) pdb.length);
+				index.put(pdb);
+				index.putLong(block.getValue()[0]);
+				index.putLong(block.getValue()[1]);
+			}
+
+			index.flip();
+
+			while (index.hasRemaining()) {
+				this.position += this.channel.write(index, this.position);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			header.put(MAGIC);
+			header.putInt(this.blocks.size());
+			header.putInt(0);
+			header.putLong(indexOffset);
+			header.putLong(0L);
+
+			header.clear();
+
+			while (header.hasRemaining()) {
+				this.channel.write(header, header.position());
+			}
+
+			this.channel.force(true);
+			this.channel.close();
+
+			Files.move(this.temporary, this.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			this.committed = true;
+		}
+
+		private static void set(ByteBuffer block, int bitmap, int cell) {
+
+			int word = bitmap + 8 * (cell >>> 6);
+
+			block.putLong(word, block.getLong(word) | (1L << (cell & 63)));
+		}
+
+		/**
+		 * Get the number of matrices added
+		 * @return the number of entries
+		 */
+		public int size() {
+			return this.blocks.size();
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if(!this.committed) {
+				this.channel.close();
+				Files.deleteIfExists(this.temporary);
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.CDKHydrogenAdder;
+
+/**
+ * The CDK objects of one thread used by LigandTools and FingerprintIndex, SmilesParser and CDKHydrogenAdder keep
+ * state between calls and must not be shared between threads
+ *
+ * @author Ammar Ammar
+ *
+ */
+class CdkToolkit {
+
+	private static final ThreadLocal<CdkToolkit> TOOLKITS = ThreadLocal.withInitial(CdkToolkit::new);
+
+	final SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+
+	final SmilesGenerator smilesGenerator = new SmilesGenerator(SmiFlavor.Isomeric);
+
+	final CDKHydrogenAdder hydrogenAdder = CDKHydrogenAdder.getInstance(SilentChemObjectBuilder.getInstance());
+
+	final Aromaticity aromaticity = new Aromaticity(ElectronDonation.daylight(), Cycles.or(Cycles.all(), Cycles.all(6)));
+
+	private CdkToolkit() {
+	}
+
+	/**
+	 * Get the toolkit of the current thread
+	 * @return the CdkToolkit of the thread
+	 */
+	static CdkToolkit get() {
+		return TOOLKITS.get();
+	}
+}
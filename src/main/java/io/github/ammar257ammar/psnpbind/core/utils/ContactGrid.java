@@ -0,0 +1,182 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+/**
+ * A uniform spatial hash of a set of atoms, to find the atoms within a contact distance of a point by checking
+ * the 27 cells around it instead of all the atoms.
+ *
+ * The atoms are sorted by cell once when the grid is built (the atom indices of each cell are stored contiguously
+ * with the start of each cell, like a CSR matrix), so a query reads a few short runs of one array. The cell size is
+ * the largest query distance, a larger distance would miss atoms. A grid is read-only and can be shared by threads.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class ContactGrid {
+
+	/**
+	 * A visitor of the atoms found by a query
+	 */
+	public interface ContactVisitor {
+
+		/**
+		 * Visit an atom within the query distance
+		 * @param atom the atom index in the coordinates of the grid
+		 * @param distanceSquared the squared distance to the query point
+		 */
+		void visit(int atom, double distanceSquared);
+	}
+
+	private final float[] coordinates;
+	private final double cellSize;
+
+	private final double minX;
+	private final double minY;
+	private final double minZ;
+
+	private final int nx;
+	private final int ny;
+	private final int nz;
+
+	private final int[] cellStarts;
+	private final int[] cellAtoms;
+
+	private ContactGrid(float[] coordinates, double cellSize, double minX, double minY, double minZ, int nx, int ny, int nz,
+			int[] cellStarts, int[] cellAtoms) {
+		this.coordinates = coordinates;
+		this.cellSize = cellSize;
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		this.cellStarts = cellStarts;
+		this.cellAtoms = cellAtoms;
+	}
+
+	/**
+	 * Build the grid of a set of atoms
+	 * @param coordinates the x, y and z coordinates of each atom
+	 * @param cellSize the cell edge in Angstrom, the largest distance of the queries
+	 * @return a ContactGrid
+	 */
+	public static ContactGrid build(float[] coordinates, double cellSize) {
+
+		int atoms = coordinates.length / 3;
+
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+
+		for (int i = 0; i < atoms; i++) {
+			minX = Math.min(minX, coordinates[3 * i]);
+			minY = Math.min(minY, coordinates[3 * i + 1]);
+			minZ = Math.min(minZ, coordinates[3 * i + 2]);
+			maxX = Math.max(maxX, coordinates[3 * i]);
+			maxY = Math.max(maxY, coordinates[3 * i + 1]);
+			maxZ = Math.max(maxZ, coordinates[3 * i + 2]);
+		}
+
+		if(atoms == 0) {
+			minX = minY = minZ = maxX = maxY = maxZ = 0.0;
+		}
+
+		int nx = (int) ((maxX - minX) / cellSize) + 1;
+		int ny = (int) ((maxY - minY) / cellSize) + 1;
+		int nz = (int) ((maxZ - minZ) / cellSize) + 1;
+
+		int[] cells = new int[atoms];
+		int[] cellStarts = new int[nx * ny * nz + 1];
+
+		for (int i = 0; i < atoms; i++) {
+
+			int cx = (int) ((coordinates[3 * i] - minX) / cellSize);
+			int cy = (int) ((coordinates[3 * i + 1] - minY) / cellSize);
+			int cz = (int) ((coordinates[3 * i + 2] - minZ) / cellSize);
+
+			cells[i] = (cx * ny + cy) * nz + cz;
+			cellStarts[cells[i] + 1]++;
+		}
+
+		for (int c = 0; c < nx * ny * nz; c++) {
+			cellStarts[c + 1] += cellStarts[c];
+		}
+
+		int[] cellAtoms = new int[atoms];
+		int[] filled = new int[nx * ny * nz];
+
+		for (int i = 0; i < atoms; i++) {
+			cellAtoms[cellStarts[cells[i]] + filled[cells[i]]++] = i;
+		}
+
+		return new ContactGrid(coordinates, cellSize, minX, minY, minZ, nx, ny, nz, cellStarts, cellAtoms);
+	}
+
+	/**
+	 * Visit the atoms within a distance of a point
+	 * @param x the point x coordinate
+	 * @param y the point y coordinate
+	 * @param z the point z coordinate
+	 * @param distance the query distance, at most the cell size
+	 * @param visitor the visitor of the atoms found
+	 */
+	public void query(double x, double y, double z, double distance, ContactVisitor visitor) {
+
+		int cx = (int) Math.floor((x - this.minX) / this.cellSize);
+		int cy = (int) Math.floor((y - this.minY) / this.cellSize);
+		int cz = (int) Math.floor((z - this.minZ) / this.cellSize);
+
+		double maxSquared = distance * distance;
+
+		for (int ix = Math.max(cx - 1, 0); ix <= Math.min(cx + 1, this.nx - 1); ix++) {
+			for (int iy = Math.max(cy - 1, 0); iy <= Math.min(cy + 1, this.ny - 1); iy++) {
+				for (int iz = Math.max(cz - 1, 0); iz <= Math.min(cz + 1, this.nz - 1); iz++) {
+
+					int cell = (ix * this.ny + iy) * this.nz + iz;
+
+					for (int k = this.cellStarts[cell]; k < this.cellStarts[cell + 1]; k++) {
+
+						int atom = this.cellAtoms[k];
+
+						double dx = this.coordinates[3 * atom] - x;
+						double dy = this.coordinates[3 * atom + 1] - y;
+						double dz = this.coordinates[3 * atom + 2] - z;
+
+						double squared = dx * dx + dy * dy + dz * dz;
+
+						if(squared <= maxSquared) {
+							visitor.visit(atom, squared);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of atoms of the grid
+	 * @return the number of atoms
+	 */
+	public int size() {
+		return this.cellAtoms.length;
+	}
+}
@@ -30,6 +30,9 @@ import java.util.List;
 import com.univocity.parsers.tsv.TsvWriter;
 import com.univocity.parsers.tsv.TsvWriterSettings;
 
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.Column;
+
 /**
  * A utility class to perform operations on datasets of type List (String[])
  * It can print first rows of the dataset, return number of rows and columns, 
@@ -41,6 +44,70 @@ import com.univocity.parsers.tsv.TsvWriterSettings;
 public class DataHandler {
 
     public static final int MAX_NUMBER_OF_RECORDS=10;
+    
+    public static final int DATASET_BATCH_SIZE=4096;
+    
+	/**
+	 * The formats available to write datasets and feature matrices
+	 */
+	public enum OutputFormat
+	{
+		TSV(".tsv"), NPY(".npy"), NPZ(".npz");
+		
+		private final String extension;
+		
+		OutputFormat(String extension) {
+			this.extension = extension;
+		}
+		
+		/**
+		 * Get the file extension of the format
+		 * @return the extension including the dot
+		 */
+		public String getExtension() {
+			return extension;
+		}
+		
+		/**
+		 * Parse a format name case-insensitively (e.g. from the command line)
+		 * @param name the format name
+		 * @return the OutputFormat
+		 */
+		public static OutputFormat fromName(String name) {
+			return OutputFormat.valueOf(name.trim().toUpperCase());
+		}
+	}
+	
+	/**
+	 * The encodings available to write fingerprint (BITS) columns of a feature matrix
+	 */
+	public enum FingerprintEncoding
+	{
+		COLUMNS(""), HEX("_hex"), BASE64("_base64"), SPARSE("_bits"), BINARY("_row");
+		
+		private final String suffix;
+		
+		FingerprintEncoding(String suffix) {
+			this.suffix = suffix;
+		}
+		
+		/**
+		 * Get the suffix added to the fingerprint column name in the TSV header
+		 * @return the header suffix
+		 */
+		public String getSuffix() {
+			return suffix;
+		}
+		
+		/**
+		 * Parse an encoding name case-insensitively (e.g. from the command line)
+		 * @param name the encoding name
+		 * @return the FingerprintEncoding
+		 */
+		public static FingerprintEncoding fromName(String name) {
+			return FingerprintEncoding.valueOf(name.trim().toUpperCase());
+		}
+	}
 	
     /**
 	 * write a dataset to TSV file.
@@ -79,6 +146,241 @@ public class DataHandler {
 		writeDatasetToTSV(dataset, path, null);
 	}
 	
+	/**
+	 * Write a feature matrix to TSV file with its header as the first line and fingerprints expanded
+	 * to one "0"/"1" column per bit.
+	 * @see #writeFeatureMatrixToTSV(FeatureMatrix, String, FingerprintEncoding)
+	 * @param matrix the feature matrix to be written to the filesystem
+	 * @param path of the file to write the matrix to it
+	 */
+	public static void writeFeatureMatrixToTSV(FeatureMatrix matrix, String path){
+		writeFeatureMatrixToTSV(matrix, path, FingerprintEncoding.COLUMNS);
+	}
+	
+	/**
+	 * Write a feature matrix to TSV file with its header as the first line.
+	 * Primitive cells are formatted directly into the output buffer without creating String objects,
+	 * doubles are rounded to 4 decimals and BITS columns are written with the selected encoding.
+	 * With the BINARY encoding, each BITS column is written to its own fingerprint file
+	 * (see getFingerprintFilePath) and the TSV holds the row index of each ligand in that file.
+	 * @param matrix the feature matrix to be written to the filesystem
+	 * @param path of the file to write the matrix to it
+	 * @param encoding the fingerprint encoding of BITS columns
+	 */
+	public static void writeFeatureMatrixToTSV(FeatureMatrix matrix, String path, FingerprintEncoding encoding){
+		writeFeatureMatrix(matrix, path, OutputFormat.TSV, encoding);
+	}
+	
+	/**
+	 * Write a feature matrix in one of the output formats.
+	 * @param matrix the feature matrix to be written to the filesystem
+	 * @param path of the file to write the matrix to it (the extension is replaced by the format extension)
+	 * @param format the output format
+	 * @param encoding the fingerprint encoding of BITS columns (used by the TSV format only)
+	 */
+	public static void writeFeatureMatrix(FeatureMatrix matrix, String path, OutputFormat format, FingerprintEncoding encoding){
+		
+		try (DatasetWriter writer = createDatasetWriter(path, format, encoding)) {
+			
+			writer.writeBatch(matrix);
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Write a dataset in one of the output formats. TSV datasets are written as is, for the other formats
+	 * the rows are written with a RowDatasetWriter, which infers the type of each column (INT, DOUBLE or STRING,
+	 * see inferDatasetSchema) from the first batch of rows and converts the rows in batches of DATASET_BATCH_SIZE rows.
+	 * To write a dataset which is not in memory, use a RowDatasetWriter directly.
+	 * @param dataset to be written to the filesystem
+	 * @param path of the file to write the dataset to it (the extension is replaced by the format extension)
+	 * @param header row for the dataset, if null the columns are named column1..N
+	 * @param format the output format
+	 */
+	public static void writeDataset(List<String[]> dataset, String path, String[] header, OutputFormat format){
+		
+		if(format == OutputFormat.TSV) {
+			writeDatasetToTSV(dataset, getOutputPath(path, format), header);
+			return;
+		}
+		
+		writeDataset(dataset, path, header, null, format);
+	}
+	
+	/**
+	 * Write a dataset in one of the output formats with the given column types (see writeDataset)
+	 * @param dataset to be written to the filesystem
+	 * @param path of the file to write the dataset to it (the extension is replaced by the format extension)
+	 * @param header row for the dataset, if null the columns are named column1..N
+	 * @param types the type of each column (STRING, INT or DOUBLE), if null they are inferred from the first rows
+	 * @param format the output format
+	 */
+	public static void writeDataset(Iterable<String[]> dataset, String path, String[] header, FeatureMatrix.ColumnType[] types,
+			OutputFormat format){
+		
+		try (RowDatasetWriter writer = new RowDatasetWriter(path, header, types, format)) {
+			
+			for(String[] row: dataset) {
+				writer.writeRow(row);
+			}
+			
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Create a typed empty feature matrix for a dataset of strings. A column is INT if all its non-empty values
+	 * are integers, DOUBLE if they are all numbers and STRING otherwise. Empty values are null, "", "-" and "NA".
+	 * @param dataset the dataset rows (without header), e.g. the first batch of a RowDatasetWriter
+	 * @param header row for the dataset, if null the columns are named column1..N
+	 * @return an empty FeatureMatrix with the inferred schema
+	 */
+	public static FeatureMatrix inferDatasetSchema(List<String[]> dataset, String[] header){
+		
+		int width = header != null ? header.length : 0;
+		
+		for(String[] row: dataset) {
+			width = Math.max(width, row.length);
+		}
+		
+		FeatureMatrix.ColumnType[] types = new FeatureMatrix.ColumnType[width];
+		
+		for(int c=0; c<width; c++) {
+			
+			FeatureMatrix.ColumnType type = FeatureMatrix.ColumnType.INT;
+			
+			for(String[] row: dataset) {
+				
+				String value = c < row.length ? row[c] : null;
+				
+				if(isEmptyValue(value)) {
+					continue;
+				}
+				
+				if(type == FeatureMatrix.ColumnType.INT && !isInteger(value.trim())) {
+					type = FeatureMatrix.ColumnType.DOUBLE;
+				}
+				
+				if(type == FeatureMatrix.ColumnType.DOUBLE && !isDouble(value.trim())) {
+					type = FeatureMatrix.ColumnType.STRING;
+					break;
+				}
+			}
+			types[c] = type;
+		}
+		
+		FeatureMatrix matrix = FeatureMatrix.create();
+		
+		for(int c=0; c<width; c++) {
+			matrix.addColumn(header != null && c < header.length ? header[c] : "column" + (c + 1), types[c]);
+		}
+		
+		return matrix;
+	}
+	
+	/**
+	 * Create a writer for a table in one of the output formats
+	 * @param path of the output file (the extension is replaced by the format extension, see getOutputPath)
+	 * @param format the output format
+	 * @param encoding the fingerprint encoding of BITS columns (used by the TSV format only)
+	 * @return a DatasetWriter, the caller should close it after the last batch
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static DatasetWriter createDatasetWriter(String path, OutputFormat format, FingerprintEncoding encoding) throws IOException{
+		
+		String outputPath = getOutputPath(path, format);
+		
+		switch(format) {
+		case NPY:
+			return new NpyDatasetWriter(outputPath);
+		case NPZ:
+			return new NpzDatasetWriter(outputPath);
+		default:
+			return new TsvDatasetWriter(outputPath, encoding);
+		}
+	}
+	
+	/**
+	 * Get the path of an output file for a format
+	 * @param path of the output file
+	 * @param format the output format
+	 * @return the path with its ".tsv", ".npy" or ".npz" extension replaced by the format extension
+	 */
+	public static String getOutputPath(String path, OutputFormat format){
+		
+		for(OutputFormat f: OutputFormat.values()) {
+			if(path.endsWith(f.getExtension())) {
+				return path.substring(0, path.length() - f.getExtension().length()) + format.getExtension();
+			}
+		}
+		return path + format.getExtension();
+	}
+	
+	/**
+	 * Get the header of a feature matrix TSV file for a fingerprint encoding. With COLUMNS, a BITS column
+	 * is expanded to one name per bit, otherwise it has one column named with a suffix (_hex, _base64, _bits or _row)
+	 * @param matrix the feature matrix
+	 * @param encoding the fingerprint encoding of BITS columns
+	 * @return a string array holding the header names
+	 */
+	public static String[] getFeatureMatrixHeader(FeatureMatrix matrix, FingerprintEncoding encoding){
+		
+		if(encoding == FingerprintEncoding.COLUMNS) {
+			return matrix.getHeader();
+		}
+		
+		List<Column> columns = matrix.getColumns();
+		String[] header = new String[columns.size()];
+		
+		for(int c=0; c<columns.size(); c++) {
+			
+			Column column = columns.get(c);
+			
+			header[c] = column.getType() == FeatureMatrix.ColumnType.BITS ? column.getName() + encoding.getSuffix() : column.getName();
+		}
+		return header;
+	}
+	
+	/**
+	 * Get the path of the binary fingerprint file written next to a feature matrix TSV file
+	 * @param path of the TSV file
+	 * @param columnName the name of the BITS column
+	 * @return the TSV path with the ".tsv" extension replaced by "_columnName.bin"
+	 */
+	public static String getFingerprintFilePath(String path, String columnName){
+		
+		String base = path.endsWith(".tsv") ? path.substring(0, path.length() - 4) : path;
+		
+		return base + "_" + columnName + ".bin";
+	}
+	
+	static boolean isEmptyValue(String value) {
+		return value == null || value.trim().isEmpty() || value.equals("-") || value.equals("NA");
+	}
+	
+	static boolean isInteger(String value) {
+		
+		try {
+			Integer.parseInt(value);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+	
+	static boolean isDouble(String value) {
+		
+		try {
+			Double.parseDouble(value);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+	
 	/**
 	 * Print the first N rows of the specified dataset to console (to examine the dataset)
 	 * @param dataset to print its head
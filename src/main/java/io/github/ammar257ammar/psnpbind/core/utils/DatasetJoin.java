@@ -0,0 +1,178 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A class to join List&lt;String[]&gt; tables (e.g. parsed TSV files) with a hash join on one or more key columns.
+ *
+ * The right table is indexed once by its key columns (the build) and every row of the left table looks up its
+ * matches in the index (the probe), so a join costs O(left + right) instead of the O(left * right) of a nested loop
+ * join with a predicate. The output keeps the order of a nested loop join: the left rows in their order, each followed
+ * by its matching right rows in their order. Empty (null) cells are keyed as empty strings.
+ *
+ * The join results are lazy streams, they can be collected or written row by row. The build and the probe run
+ * in parallel (keeping the order) when parallel(true) is set.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class DatasetJoin {
+
+	private static final char KEY_SEPARATOR = '\u0001';
+
+	private final List<String[]> rows;
+	private final int[] keyColumns;
+
+	private boolean parallel = false;
+
+	private Map<String, List<String[]>> index = null;
+
+	private DatasetJoin(List<String[]> rows, int[] keyColumns) {
+		this.rows = rows;
+		this.keyColumns = keyColumns;
+	}
+
+	/**
+	 * Create a join on the right (build) table
+	 * @param rows the rows of the right table
+	 * @param keyColumns the indices of the key columns of the right table
+	 * @return a DatasetJoin object
+	 */
+	public static DatasetJoin create(List<String[]> rows, int... keyColumns) {
+
+		if (keyColumns.length == 0) {
+			throw new IllegalArgumentException("At least one key column is needed");
+		}
+		return new DatasetJoin(rows, keyColumns.clone());
+	}
+
+	/**
+	 * Set if the index is built and probed in parallel
+	 * @param parallel true to use the common fork-join pool
+	 * @return the current DatasetJoin object
+	 */
+	public DatasetJoin parallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	/**
+	 * A method to get the right rows matching a key
+	 * @param row a row holding the key
+	 * @param columns the indices of the key columns in the row (in the order of the right key columns)
+	 * @return the matching right rows, an empty list if there is none
+	 */
+	public List<String[]> get(String[] row, int... columns) {
+
+		List<String[]> matches = getIndex().get(key(row, columns));
+
+		return matches == null ? Collections.<String[]>emptyList() : matches;
+	}
+
+	/**
+	 * A method to compute the left outer join of a table with the right table
+	 * @param left the rows of the left table
+	 * @param combiner a function creating an output row from a left row and a right row (null if the left row has no match)
+	 * @param leftColumns the indices of the key columns of the left table (in the order of the right key columns)
+	 * @return a lazy stream of the output rows
+	 */
+	public Stream<String[]> leftJoin(List<String[]> left, BiFunction<String[], String[], String[]> combiner,
+			int... leftColumns) {
+
+		checkKeyColumns(leftColumns);
+
+		return stream(left).flatMap(row -> {
+
+			List<String[]> matches = get(row, leftColumns);
+
+			if (matches.isEmpty()) {
+				return Stream.<String[]>of(combiner.apply(row, null));
+			}
+			return matches.stream().map(match -> combiner.apply(row, match));
+		});
+	}
+
+	/**
+	 * A method to compute the inner join of a table with the right table
+	 * @param left the rows of the left table
+	 * @param combiner a function creating an output row from a left row and a matching right row
+	 * @param leftColumns the indices of the key columns of the left table (in the order of the right key columns)
+	 * @return a lazy stream of the output rows
+	 */
+	public Stream<String[]> innerJoin(List<String[]> left, BiFunction<String[], String[], String[]> combiner,
+			int... leftColumns) {
+
+		checkKeyColumns(leftColumns);
+
+		return stream(left).flatMap(row -> get(row, leftColumns).stream().map(match -> combiner.apply(row, match)));
+	}
+
+	private synchronized Map<String, List<String[]>> getIndex() {
+
+		if (this.index == null) {
+			this.index = stream(this.rows).collect(Collectors.groupingBy(row -> key(row, this.keyColumns)));
+		}
+		return this.index;
+	}
+
+	private Stream<String[]> stream(List<String[]> table) {
+		return this.parallel ? table.parallelStream() : table.stream();
+	}
+
+	private void checkKeyColumns(int[] leftColumns) {
+
+		if (leftColumns.length != this.keyColumns.length) {
+			throw new IllegalArgumentException(
+					"The left table has " + leftColumns.length + " key columns, the right table has " + this.keyColumns.length);
+		}
+		// the index is built before the probe starts, not by the first parallel probe task
+		getIndex();
+	}
+
+	private static String key(String[] row, int[] columns) {
+
+		if (columns.length == 1) {
+			return cell(row, columns[0]);
+		}
+
+		StringBuilder key = new StringBuilder();
+
+		for (int i = 0; i < columns.length; i++) {
+
+			if (i > 0) {
+				key.append(KEY_SEPARATOR);
+			}
+			key.append(cell(row, columns[i]));
+		}
+		return key.toString();
+	}
+
+	private static String cell(String[] row, int column) {
+		return column < row.length && row[column] != null ? row[column] : "";
+	}
+}
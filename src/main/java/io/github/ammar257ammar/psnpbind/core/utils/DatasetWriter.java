@@ -0,0 +1,53 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+
+/**
+ * An interface for the writers of the output datasets (TSV, NumPy .npy and .npz).
+ * Tables are written in record batches: every batch is a FeatureMatrix with the same schema,
+ * so a large table can be written without holding all its rows in memory
+ * (the batch can be cleared and refilled after each call).
+ *
+ * The file is complete only after close() is called.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public interface DatasetWriter extends Closeable {
+
+	/**
+	 * Write all the rows of a batch to the output
+	 * @param batch a feature matrix holding the next rows of the table
+	 * @throws IOException in case of error in IO operations
+	 */
+	void writeBatch(FeatureMatrix batch) throws IOException;
+
+	/**
+	 * Get the number of rows written so far
+	 * @return the number of rows
+	 */
+	long getRowCount();
+}
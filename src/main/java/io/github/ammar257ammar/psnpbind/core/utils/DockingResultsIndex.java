@@ -0,0 +1,578 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of parsed Vina docking logs, so a report run only parses the logs which are new or changed
+ * since the previous run (a log is reused while its modification time and size are the same).
+ *
+ * The index file is made of a 32 bytes header (8 bytes magic "PSNPDR02", int32 number of entries,
+ * int32 reserved, int64 offset of the directory, 8 reserved bytes), one block per PDB entry and a directory
+ * of the blocks (PDB, int64 offset, int32 length). A block holds the variants of the entry, each with its ligands
+ * (ligand, int64 log modification time, int64 log size, the conformers as mode number and affinity text, the
+ * index of the mode 1 conformer and the wild-type variant the docking was reused from, empty if it was docked),
+ * followed by the CRC32 of the block. All numbers are little-endian and the strings
+ * are UTF-8 with an int16 length.
+ *
+ * Only the directory is kept in memory, the blocks are read one entry at a time. The index is never updated
+ * in place: a Writer writes a new file next to it and replaces it when committed, so an interrupted run leaves
+ * the previous index unchanged. A block which cannot be read (e.g. corrupted) is ignored and its logs are
+ * parsed again.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class DockingResultsIndex implements Closeable {
+
+	private static final byte[] MAGIC = "PSNPDR02".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int HEADER_SIZE = 32;
+
+	private final String path;
+	private final FileChannel channel;
+
+	private final Map<String, long[]> directory = new LinkedHashMap<String, long[]>();
+
+	private DockingResultsIndex(String path, FileChannel channel) {
+		this.path = path;
+		this.channel = channel;
+	}
+
+	/**
+	 * Open an index file, a missing or invalid file gives an empty index
+	 * @param path the index file path
+	 * @return a DockingResultsIndex
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static DockingResultsIndex open(String path) throws IOException {
+
+		File file = new File(path);
+
+		if(!file.isFile()) {
+			return new DockingResultsIndex(path, null);
+		}
+
+		DockingResultsIndex index = new DockingResultsIndex(path, FileChannel.open(file.toPath(), StandardOpenOption.READ));
+
+		try {
+			index.loadDirectory();
+		} catch (IOException | RuntimeException e) {
+			System.out.println(path + " is not a valid docking results index, all the logs will be parsed: " + e.getMessage());
+			index.directory.clear();
+		}
+		return index;
+	}
+
+	/**
+	 * Create a writer of a new version of an index file
+	 * @param path the index file path
+	 * @return a Writer, the index file is replaced when the writer is committed
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static Writer createWriter(String path) throws IOException {
+		return new Writer(path);
+	}
+
+	/**
+	 * Read the docking results of a PDB entry
+	 * @param pdb the PdbBind entry
+	 * @return a map of variants to a map of ligands to their results, empty if the entry is not in the index
+	 * @throws IOException in case of error in IO operations
+	 */
+	public Map<String, Map<String, DockingResult>> read(String pdb) throws IOException {
+
+		Map<String, Map<String, DockingResult>> variants = new TreeMap<String, Map<String, DockingResult>>();
+
+		ByteBuffer block = readBlock(pdb);
+
+		if(block == null) {
+			return variants;
+		}
+
+		try {
+
+			int variantCount = block.getInt();
+
+			for (int v = 0; v < variantCount; v++) {
+
+				String variant = getString(block);
+				int ligandCount = block.getInt();
+
+				Map<String, DockingResult> ligands = new TreeMap<String, DockingResult>();
+
+				for (int l = 0; l < ligandCount; l++) {
+
+					String ligand = getString(block);
+
+					long modified = block.getLong();
+					long size = block.getLong();
+
+					int count = block.get();
+
+					int[] modes = new int[count];
+					String[] affinities = new String[count];
+
+					for (int c = 0; c < count; c++) {
+						modes[c] = block.get();
+						affinities[c] = getString(block);
+					}
+
+					int best = block.get();
+
+					String reusedFrom = getString(block);
+
+					ligands.put(ligand, new DockingResult(modified, size, modes, affinities, best < 0 ? "" : affinities[best])
+							.withReusedFrom(reusedFrom));
+				}
+				variants.put(variant, ligands);
+			}
+
+		} catch (RuntimeException e) {
+
+			System.out.println(this.path + ": the block of " + pdb + " cannot be read, its logs will be parsed");
+			variants.clear();
+		}
+		return variants;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if(this.channel != null) {
+			this.channel.close();
+		}
+	}
+
+	private void loadDirectory() throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(header, 0);
+		header.flip();
+
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+
+		if(!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("wrong file type");
+		}
+
+		int count = header.getInt();
+		header.getInt();
+		long directoryOffset = header.getLong();
+
+		ByteBuffer directoryBuffer = ByteBuffer.allocate((int) (this.channel.size() - directoryOffset)).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(directoryBuffer, directoryOffset);
+		directoryBuffer.flip();
+
+		for (int i = 0; i < count; i++) {
+
+			String pdb = getString(directoryBuffer);
+
+			this.directory.put(pdb, new long[] { directoryBuffer.getLong(), directoryBuffer.getInt() });
+		}
+	}
+
+	/**
+	 * Read the block of a PDB entry and check its CRC
+	 * @return the block content positioned at its start, or null if the entry is not in the index or its block is invalid
+	 */
+	private ByteBuffer readBlock(String pdb) throws IOException {
+
+		long[] location = this.directory.get(pdb);
+
+		if(location == null) {
+			return null;
+		}
+
+		ByteBuffer block = ByteBuffer.allocate((int) location[1]).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(block, location[0]);
+
+		int length = block.capacity() - 4;
+
+		if(length < 0 || block.getInt(length) != crc(block.array(), 0, length)) {
+			System.out.println(this.path + ": the block of " + pdb + " is corrupted, its logs will be parsed");
+			return null;
+		}
+
+		block.flip();
+		block.limit(length);
+
+		return block;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+
+		while (buffer.hasRemaining()) {
+
+			if(this.channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the index file " + this.path);
+			}
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int crc(byte[] bytes, int offset, int length) {
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * The parsed results table of one docking log with the modification time and size of the log
+	 */
+	public static class DockingResult {
+
+		private final long modified;
+		private final long size;
+
+		private final int[] modes;
+		private final String[] affinities;
+		private final String bestAffinity;
+
+		private String reusedFrom = "";
+
+		/**
+		 * Create a docking result
+		 * @param modified the log modification time in milliseconds
+		 * @param size the log size in bytes
+		 * @param modes the mode numbers of the conformers
+		 * @param affinities the affinities of the conformers as written in the log
+		 * @param bestAffinity the affinity of the mode 1 conformer, or an empty string
+		 */
+		public DockingResult(long modified, long size, int[] modes, String[] affinities, String bestAffinity) {
+			this.modified = modified;
+			this.size = size;
+			this.modes = modes;
+			this.affinities = affinities;
+			this.bestAffinity = bestAffinity;
+		}
+
+		/**
+		 * Create a docking result from the last log scanned by a VinaLogScanner
+		 * @param modified the log modification time in milliseconds
+		 * @param size the log size in bytes
+		 * @param scanner the scanner
+		 * @return a DockingResult
+		 */
+		public static DockingResult of(long modified, long size, VinaLogScanner scanner) {
+
+			int count = scanner.getConformerCount();
+
+			int[] modes = new int[count];
+			String[] affinities = new String[count];
+
+			for (int i = 0; i < count; i++) {
+				modes[i] = scanner.getMode(i);
+				affinities[i] = scanner.getAffinity(i);
+			}
+			return new DockingResult(modified, size, modes, affinities, scanner.getBestAffinity());
+		}
+
+		/**
+		 * Set the provenance of a docking copied from an equivalent wild-type variant
+		 * @param reusedFrom the wild-type variant the poses and log were copied from, empty or null if the ligand was docked
+		 * @return a copy of the result with the provenance
+		 */
+		public DockingResult withReusedFrom(String reusedFrom) {
+
+			DockingResult result = new DockingResult(this.modified, this.size, this.modes, this.affinities, this.bestAffinity);
+
+			result.reusedFrom = reusedFrom == null ? "" : reusedFrom;
+
+			return result;
+		}
+
+		/**
+		 * Get the provenance of the result
+		 * @return the wild-type variant the docking was reused from (see DockingScheduler.REUSED_SUFFIX), empty if it was docked
+		 */
+		public String getReusedFrom() {
+			return reusedFrom;
+		}
+
+		/**
+		 * Check if the docking was copied from an equivalent wild-type variant instead of docked
+		 * @return true if the affinities were not measured on this variant
+		 */
+		public boolean isReused() {
+			return !reusedFrom.isEmpty();
+		}
+
+		/**
+		 * Check if the result was parsed from a log with the same modification time and size
+		 * @param modified the log modification time in milliseconds
+		 * @param size the log size in bytes
+		 * @return true if the log did not change
+		 */
+		public boolean isCurrent(long modified, long size) {
+			return this.modified == modified && this.size == size;
+		}
+
+		/**
+		 * Get the number of conformers
+		 * @return the number of conformers
+		 */
+		public int getConformerCount() {
+			return modes.length;
+		}
+
+		/**
+		 * Get the affinity of a conformer
+		 * @param index the conformer index in the table
+		 * @return the affinity as written in the log
+		 */
+		public String getAffinity(int index) {
+			return affinities[index];
+		}
+
+		/**
+		 * Get the affinity of the mode 1 conformer
+		 * @return the affinity as written in the log, or an empty string if the table has no mode 1
+		 */
+		public String getBestAffinity() {
+			return bestAffinity;
+		}
+
+		/**
+		 * Get the conformers in the docking results format
+		 * @return the conformers joined with ";" (e.g. "Conformer 1: -8.5;Conformer 2: -8.1")
+		 */
+		public String getConformers() {
+
+			StringBuilder sb = new StringBuilder(this.modes.length * 20);
+
+			for (int i = 0; i < this.modes.length; i++) {
+
+				if(i > 0) {
+					sb.append(';');
+				}
+				sb.append("Conformer ").append(this.modes[i]).append(": ").append(this.affinities[i]);
+			}
+			return sb.toString();
+		}
+
+		private int getBestIndex() {
+
+			for (int i = 0; i < this.modes.length; i++) {
+				if(this.modes[i] == 1 && this.affinities[i].equals(this.bestAffinity)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * A writer of a new version of an index file, the blocks are written one entry at a time to a temporary file
+	 * which replaces the index file when the writer is committed (and is deleted if the writer is closed before)
+	 */
+	public static class Writer implements Closeable {
+
+		private final Path target;
+		private final Path temporary;
+		private final FileChannel channel;
+
+		private final Map<String, long[]> directory = new LinkedHashMap<String, long[]>();
+
+		private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		private long position = HEADER_SIZE;
+		private boolean committed = false;
+
+		private Writer(String path) throws IOException {
+
+			this.target = new File(path).getAbsoluteFile().toPath();
+
+			Files.createDirectories(this.target.getParent());
+
+			this.temporary = this.target.resolveSibling(this.target.getFileName() + ".tmp");
+			this.channel = FileChannel.open(this.temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		/**
+		 * Write the docking results of a PDB entry
+		 * @param pdb the PdbBind entry
+		 * @param variants a map of variants to a map of ligands to their results
+		 * @throws IOException in case of error in IO operations
+		 */
+		public void write(String pdb, Map<String, Map<String, DockingResult>> variants) throws IOException {
+
+			this.buffer.clear();
+
+			ensure(4);
+			this.buffer.putInt(variants.size());
+
+			for (Map.Entry<String, Map<String, DockingResult>> variant : variants.entrySet()) {
+
+				putString(variant.getKey());
+
+				ensure(4);
+				this.buffer.putInt(variant.getValue().size());
+
+				for (Map.Entry<String, DockingResult> ligand : variant.getValue().entrySet()) {
+
+					DockingResult result = ligand.getValue();
+
+					putString(ligand.getKey());
+
+					ensure(17);
+					this.buffer.putLong(result.modified);
+					this.buffer.putLong(result.size);
+					this.buffer.put((byte) result.modes.length);
+
+					for (int c = 0; c < result.modes.length; c++) {
+
+						ensure(1);
+						this.buffer.put((byte) result.modes[c]);
+						putString(result.affinities[c]);
+					}
+
+					ensure(1);
+					this.buffer.put((byte) result.getBestIndex());
+
+					putString(result.reusedFrom);
+				}
+			}
+
+			ensure(4);
+			this.buffer.putInt(crc(this.buffer.array(), 0, this.buffer.position()));
+
+			writeBlock(pdb);
+		}
+
+		/**
+		 * Write the directory and the header and replace the index file with the new version
+		 * @throws IOException in case of error in IO operations
+		 */
+		public void commit() throws IOException {
+
+			this.buffer.clear();
+
+			for (Map.Entry<String, long[]> entry : this.directory.entrySet()) {
+
+				putString(entry.getKey());
+
+				ensure(12);
+				this.buffer.putLong(entry.getValue()[0]);
+				this.buffer.putInt((int) entry.getValue()[1]);
+			}
+
+			long directoryOffset = this.position;
+
+			writeBuffer();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			header.put(MAGIC);
+			header.putInt(this.directory.size());
+			header.putInt(0);
+			header.putLong(directoryOffset);
+
+			header.clear();
+
+			while (header.hasRemaining()) {
+				this.channel.write(header, header.position());
+			}
+
+			this.channel.force(true);
+			this.channel.close();
+
+			Files.move(this.temporary, this.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			this.committed = true;
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if(!this.committed) {
+				this.channel.close();
+				Files.deleteIfExists(this.temporary);
+			}
+		}
+
+		private void writeBlock(String pdb) throws IOException {
+
+			this.directory.put(pdb, new long[] { this.position, this.buffer.position() });
+
+			writeBuffer();
+		}
+
+		private void writeBuffer() throws IOException {
+
+			this.buffer.flip();
+
+			while (this.buffer.hasRemaining()) {
+				this.position += this.channel.write(this.buffer, this.position);
+			}
+		}
+
+		private void putString(String value) {
+
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			ensure(2 + bytes.length);
+			this.buffer.putShort((short) bytes.length);
+			this.buffer.put(bytes);
+		}
+
+		private void ensure(int bytes) {
+
+			if(this.buffer.remaining() < bytes) {
+
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes))
+						.order(ByteOrder.LITTLE_ENDIAN);
+
+				this.buffer.flip();
+				larger.put(this.buffer);
+
+				this.buffer = larger;
+			}
+		}
+	}
+}
@@ -0,0 +1,369 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed file store used to stage input files (proteins, ligands) into the FoldX and Vina folders.
+ *
+ * A file is stored once under the SHA-256 of its content (objects/ab/abcd...) and materialized at its destinations
+ * with a hard link, or a symbolic link if hard links are not supported (e.g. the destination is on another file system),
+ * or a copy as a last resort. The store falls back to the next materialization only when the file system refuses the
+ * links (cross-device link, operation not permitted or not supported), any other error is thrown. Staging the same file
+ * again, or to a destination already linked to the object, does not write anything.
+ *
+ * The stored objects are read-only and a hard-linked destination shares the read-only inode of its object, so the
+ * staged files must not be modified in place. The destinations a tool writes to are staged with stageCopy instead.
+ *
+ * The hashes of the staged source files are remembered by path, size and modification time, so a source is read
+ * once even when it is staged to many destinations. The methods are thread safe.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class FileStore {
+
+	public enum Materialization {
+		HARD_LINK, SYMBOLIC_LINK, COPY
+	}
+
+	private static final Map<String, FileStore> OPEN_STORES = new HashMap<String, FileStore>();
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final Path objectsPath;
+
+	private volatile Materialization materialization = Materialization.HARD_LINK;
+
+	private final Map<String, String> sourceHashes = new ConcurrentHashMap<String, String>();
+
+	private final AtomicLong storedFiles = new AtomicLong();
+	private final AtomicLong storedBytes = new AtomicLong();
+	private final AtomicLong materializedFiles = new AtomicLong();
+	private final AtomicLong skippedFiles = new AtomicLong();
+
+	private FileStore(Path objectsPath) {
+		this.objectsPath = objectsPath;
+	}
+
+	/**
+	 * Open a store, the same instance is returned for the same path
+	 * @param path the store folder, it is created if it does not exist. A null or empty path gives a store without
+	 * objects which copies the source files to their destinations (the files are still not copied again
+	 * to a destination holding the same content)
+	 * @return the FileStore of the folder
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static synchronized FileStore open(String path) throws IOException {
+
+		String key = path == null || path.trim().isEmpty() ? "" : new File(path).getAbsolutePath();
+
+		FileStore store = OPEN_STORES.get(key);
+
+		if (store == null) {
+
+			if (key.isEmpty()) {
+				store = new FileStore(null);
+				store.materialization = Materialization.COPY;
+			} else {
+				store = new FileStore(new File(key, "objects").toPath());
+				Files.createDirectories(store.objectsPath);
+			}
+			OPEN_STORES.put(key, store);
+		}
+		return store;
+	}
+
+	/**
+	 * A method to add a file to the store
+	 * @param source the file to store
+	 * @return the SHA-256 of the file content (the object key)
+	 * @throws IOException in case of error in IO operations
+	 */
+	public String put(File source) throws IOException {
+
+		String hash = hash(source);
+
+		if (this.objectsPath == null) {
+			return hash;
+		}
+
+		Path object = getObjectPath(hash);
+
+		if (!Files.exists(object)) {
+
+			Files.createDirectories(object.getParent());
+
+			// copied under a temporary name and renamed, an object is either missing or complete
+			Path temporary = Files.createTempFile(object.getParent(), hash, ".tmp");
+
+			Files.copy(source.toPath(), temporary, StandardCopyOption.REPLACE_EXISTING);
+			temporary.toFile().setReadOnly();
+
+			Files.move(temporary, object, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+			this.storedFiles.incrementAndGet();
+			this.storedBytes.addAndGet(source.length());
+		}
+		return hash;
+	}
+
+	/**
+	 * A method to create a file from a stored object, an existing destination is replaced
+	 * @param hash the object key returned by put
+	 * @param destination the file to create
+	 * @throws IOException in case of error in IO operations or if the object is not in the store
+	 */
+	public void materialize(String hash, File destination) throws IOException {
+
+		if (this.objectsPath == null) {
+			throw new IOException("The store has no objects, use stage to copy files");
+		}
+
+		Path object = getObjectPath(hash);
+		Path target = destination.toPath();
+
+		if (!Files.exists(object)) {
+			throw new IOException("No object " + hash + " in the store");
+		}
+
+		if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+
+			if (Files.exists(target) && Files.isSameFile(target, object)) {
+				this.skippedFiles.incrementAndGet();
+				return;
+			}
+			Files.delete(target);
+		}
+
+		if (this.materialization == Materialization.HARD_LINK) {
+			try {
+				Files.createLink(target, object);
+				this.materializedFiles.incrementAndGet();
+				return;
+			} catch (UnsupportedOperationException e) {
+				useFallback(Materialization.SYMBOLIC_LINK, "Hard links are not supported in " + target.getParent());
+			} catch (IOException e) {
+				if (!isLinkRefused(e)) {
+					throw e;
+				}
+				useFallback(Materialization.SYMBOLIC_LINK, "Hard links are refused in " + target.getParent() + " (" + e.getMessage() + ")");
+			}
+		}
+
+		if (this.materialization == Materialization.SYMBOLIC_LINK) {
+			try {
+				Files.createSymbolicLink(target, object.toAbsolutePath());
+				this.materializedFiles.incrementAndGet();
+				return;
+			} catch (UnsupportedOperationException e) {
+				useFallback(Materialization.COPY, "Symbolic links are not supported in " + target.getParent());
+			} catch (IOException e) {
+				if (!isLinkRefused(e)) {
+					throw e;
+				}
+				useFallback(Materialization.COPY, "Symbolic links are refused in " + target.getParent() + " (" + e.getMessage() + ")");
+			}
+		}
+
+		Files.copy(object, target);
+		this.materializedFiles.incrementAndGet();
+	}
+
+	/**
+	 * A method to stage a file to a destination through the store
+	 * @param source the file to stage
+	 * @param destination the file to create
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void stage(File source, File destination) throws IOException {
+
+		if (this.objectsPath != null) {
+			materialize(put(source), destination);
+			return;
+		}
+
+		stageCopy(source, destination);
+	}
+
+	/**
+	 * A method to stage a file as a writable copy, for the destinations modified in place by a tool. A destination
+	 * linked to a stored object is replaced by a copy
+	 * @param source the file to stage
+	 * @param destination the file to create
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void stageCopy(File source, File destination) throws IOException {
+
+		Path target = destination.toPath();
+
+		if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS) && !isStoredObject(target)
+				&& destination.length() == source.length() && hash(destination).equals(hash(source))) {
+			this.skippedFiles.incrementAndGet();
+			return;
+		}
+
+		Files.deleteIfExists(target);
+		Files.copy(source.toPath(), target);
+
+		destination.setWritable(true);
+
+		this.materializedFiles.incrementAndGet();
+	}
+
+	/**
+	 * Get the stored object of a key
+	 * @param hash the object key returned by put
+	 * @return the object file
+	 */
+	public File getObject(String hash) {
+		return getObjectPath(hash).toFile();
+	}
+
+	/**
+	 * Get the current materialization, it falls back from hard links to symbolic links to copies when the file system
+	 * refuses the links
+	 * @return the way the objects are materialized
+	 */
+	public Materialization getMaterialization() {
+		return materialization;
+	}
+
+	/**
+	 * Get the store statistics
+	 * @return a summary of the stored, materialized and skipped files
+	 */
+	public String getStats() {
+		return "stored files: " + this.storedFiles.get() + " (" + this.storedBytes.get() + " bytes), materialized files: "
+				+ this.materializedFiles.get() + " (" + this.materialization + "), unchanged files: "
+				+ this.skippedFiles.get();
+	}
+
+	/**
+	 * Check if a file is a hard link to a stored object (its inode is read-only and shared)
+	 */
+	private boolean isStoredObject(Path file) throws IOException {
+
+		if (this.objectsPath == null) {
+			return false;
+		}
+
+		Path object = getObjectPath(hash(file.toFile()));
+
+		return Files.exists(object) && Files.isSameFile(file, object);
+	}
+
+	/**
+	 * Check if a link creation failed because the file system refuses this kind of link (EXDEV, EPERM or EOPNOTSUPP)
+	 * and not because of the destination (missing folder, existing file, concurrent writer)
+	 */
+	private static boolean isLinkRefused(IOException e) {
+
+		if (!(e instanceof FileSystemException) || e instanceof NoSuchFileException || e instanceof FileAlreadyExistsException
+				|| e instanceof AccessDeniedException) {
+			return false;
+		}
+
+		String reason = ((FileSystemException) e).getReason();
+
+		if (reason == null) {
+			return false;
+		}
+
+		reason = reason.toLowerCase();
+
+		return reason.contains("cross-device") || reason.contains("not permitted") || reason.contains("not supported")
+				|| reason.contains("different disk drive");
+	}
+
+	private synchronized void useFallback(Materialization fallback, String message) {
+
+		if (fallback.compareTo(this.materialization) > 0) {
+			System.out.println(message + ", using " + (fallback == Materialization.COPY ? "copies" : "symbolic links"));
+			this.materialization = fallback;
+		}
+	}
+
+	private Path getObjectPath(String hash) {
+		return this.objectsPath.resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	private String hash(File source) throws IOException {
+
+		String key = source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified();
+
+		String hash = this.sourceHashes.get(key);
+
+		if (hash == null) {
+			hash = sha256(source);
+			this.sourceHashes.put(key, hash);
+		}
+		return hash;
+	}
+
+	private static String sha256(File file) throws IOException {
+
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		byte[] buffer = new byte[1 << 16];
+
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+
+			int read;
+
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = HEX_DIGITS[(bytes[i] >>> 4) & 0x0F];
+			hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+		}
+		return new String(hex);
+	}
+}
@@ -0,0 +1,687 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.fingerprint.CircularFingerprinter;
+import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+/**
+ * A class represents an on-disk index of molecule fingerprints (e.g. a ChEMBL dump) for Tanimoto similarity search.
+ *
+ * The fingerprints are packed in long words (see FingerprintTools) and sorted by their number of set bits, so a query
+ * with a bits only visits the molecules with b bits where min(a, b) / max(a, b) can reach the threshold (BitBound pruning),
+ * and a top-k query visits the popcount bins in the order of their upper bound and stops when no bin can improve the hits.
+ *
+ * The index file holds a 64 bytes header (8 bytes magic "PSNPFI01", int32 fingerprint type, int32 number of bits,
+ * int32 words per row, 4 reserved bytes, int64 number of rows, int64 offset of the fingerprints, int64 offset of
+ * the records table, int64 offset of the records data), the first row of each popcount (bits + 2 int32), the
+ * sorted fingerprints (rows * words little-endian int64), the records offsets (rows + 1 int64) and the records
+ * ("ID\tSMILES" in UTF-8).
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class FingerprintIndex {
+
+	public static final byte[] INDEX_FILE_MAGIC = "PSNPFI01".getBytes(StandardCharsets.US_ASCII);
+
+	public static final int INDEX_FILE_HEADER_SIZE = 64;
+
+	public static final int DEFAULT_BITS = 1024;
+
+	private static final int BUILD_BATCH_SIZE = 10000;
+
+	public enum FingerprintType {
+
+		ECFP4("ecfp4"), PATH("path");
+
+		private final String name;
+
+		FingerprintType(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Get the fingerprint type name
+		 * @return the name of the fingerprint type
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get a fingerprint type by its name
+		 * @param name the fingerprint type name (ecfp4 or path)
+		 * @return the fingerprint type
+		 */
+		public static FingerprintType fromName(String name) {
+
+			for (FingerprintType type : FingerprintType.values()) {
+				if (type.name.equalsIgnoreCase(name.trim())) {
+					return type;
+				}
+			}
+			throw new IllegalArgumentException("Unknown fingerprint type: " + name);
+		}
+
+		/**
+		 * A method to calculate the packed fingerprint of a molecule. The molecule is standardized first (atom types,
+		 * implicit hydrogens, explicit hydrogens removed and Daylight aromaticity) so molecules read from SMILES, SDF
+		 * files with or without hydrogens give the same fingerprint.
+		 * @param ac the molecule, its atom types and aromaticity flags are updated
+		 * @param bits the fingerprint length in bits
+		 * @return the packed fingerprint
+		 * @throws CDKException in case of error in perceiving or fingerprinting the molecule
+		 */
+		public long[] calculate(IAtomContainer ac, int bits) throws CDKException {
+
+			CdkToolkit toolkit = CdkToolkit.get();
+
+			AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(ac);
+
+			for (IAtom atom : ac.atoms()) {
+				if (atom.getImplicitHydrogenCount() == null) {
+					toolkit.hydrogenAdder.addImplicitHydrogens(ac, atom);
+				}
+			}
+
+			IAtomContainer molecule = AtomContainerManipulator.suppressHydrogens(ac);
+
+			toolkit.aromaticity.apply(molecule);
+
+			int[] setBits;
+
+			if (this == ECFP4) {
+				setBits = new CircularFingerprinter(CircularFingerprinter.CLASS_ECFP4, bits).getBitFingerprint(molecule)
+						.getSetbits();
+			} else {
+				setBits = new Fingerprinter(bits, Fingerprinter.DEFAULT_SEARCH_DEPTH).getBitFingerprint(molecule)
+						.getSetbits();
+			}
+			return FingerprintTools.pack(setBits, bits);
+		}
+	}
+
+	private final FingerprintType type;
+	private final int bits;
+	private final int words;
+	private final int rows;
+
+	private final int[] binStarts;
+	private final long[] fingerprints;
+
+	private final MappedByteBuffer buffer;
+	private final long recordsOffset;
+
+	private FingerprintIndex(FingerprintType type, int bits, int words, int rows, int[] binStarts, long[] fingerprints,
+			MappedByteBuffer buffer, long recordsOffset) {
+		this.type = type;
+		this.bits = bits;
+		this.words = words;
+		this.rows = rows;
+		this.binStarts = binStarts;
+		this.fingerprints = fingerprints;
+		this.buffer = buffer;
+		this.recordsOffset = recordsOffset;
+	}
+
+	/**
+	 * A method to build a fingerprint index from a molecules dump. SDF files (.sdf or .sdf.gz) use the chembl_id
+	 * property (or the title) as ID, other files are read as SMILES files with the SMILES followed by the ID on each line
+	 * (a ChEMBL chemreps file with its chembl_id and canonical_smiles header is also accepted).
+	 * The fingerprints are calculated in parallel, the molecules which cannot be read are skipped.
+	 * @param inputPath the molecules dump path
+	 * @param indexPath the index file path
+	 * @param type the fingerprint type
+	 * @param bits the fingerprint length in bits
+	 * @return the number of molecules in the index
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static int build(String inputPath, String indexPath, FingerprintType type, int bits) throws IOException {
+
+		int words = (bits + 63) >>> 6;
+
+		List<String> records = new ArrayList<String>();
+		List<Integer> counts = new ArrayList<Integer>();
+
+		long[] allWords = new long[words * BUILD_BATCH_SIZE];
+
+		try (MoleculeSource source = MoleculeSource.open(inputPath)) {
+
+			List<Molecule> batch;
+
+			while (!(batch = source.next(BUILD_BATCH_SIZE)).isEmpty()) {
+
+				batch.parallelStream().forEach(molecule -> molecule.calculate(type, bits));
+
+				for (Molecule molecule : batch) {
+
+					if (molecule.fingerprint == null) {
+						continue;
+					}
+
+					long[] fp = molecule.fingerprint;
+
+					if ((records.size() + 1) * words > allWords.length) {
+						allWords = Arrays.copyOf(allWords, Math.max(allWords.length * 2, (records.size() + 1) * words));
+					}
+					System.arraycopy(fp, 0, allWords, records.size() * words, words);
+
+					counts.add(FingerprintTools.cardinality(fp, 0, words));
+					records.add(molecule.id.replace('\t', ' ') + "\t" + molecule.smiles);
+				}
+				System.out.println("Fingerprints calculated: " + records.size());
+			}
+		}
+
+		int rows = records.size();
+
+		// counting sort of the rows by popcount
+		int[] binStarts = new int[bits + 2];
+
+		for (int count : counts) {
+			binStarts[count + 1]++;
+		}
+		for (int b = 1; b < binStarts.length; b++) {
+			binStarts[b] += binStarts[b - 1];
+		}
+
+		int[] order = new int[rows];
+		int[] next = Arrays.copyOf(binStarts, binStarts.length);
+
+		for (int row = 0; row < rows; row++) {
+			order[next[counts.get(row)]++] = row;
+		}
+
+		byte[][] data = new byte[rows][];
+		long dataSize = 0;
+
+		for (int i = 0; i < rows; i++) {
+			data[i] = records.get(order[i]).getBytes(StandardCharsets.UTF_8);
+			dataSize += data[i].length;
+		}
+
+		long fingerprintsOffset = align(INDEX_FILE_HEADER_SIZE + 4L * binStarts.length);
+		long tableOffset = fingerprintsOffset + 8L * rows * words;
+		long dataOffset = tableOffset + 8L * (rows + 1);
+
+		if (dataOffset + dataSize > Integer.MAX_VALUE) {
+			throw new IOException("The index would be larger than 2 GB, split the molecules dump");
+		}
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(indexPath), 1 << 16)) {
+
+			ByteBuffer header = ByteBuffer.allocate((int) fingerprintsOffset).order(ByteOrder.LITTLE_ENDIAN);
+
+			header.put(INDEX_FILE_MAGIC);
+			header.putInt(type.ordinal());
+			header.putInt(bits);
+			header.putInt(words);
+			header.putInt(0);
+			header.putLong(rows);
+			header.putLong(fingerprintsOffset);
+			header.putLong(tableOffset);
+			header.putLong(dataOffset);
+
+			header.position(INDEX_FILE_HEADER_SIZE);
+
+			for (int start : binStarts) {
+				header.putInt(start);
+			}
+			out.write(header.array());
+
+			ByteBuffer row = ByteBuffer.allocate(8 * Math.max(words, 1)).order(ByteOrder.LITTLE_ENDIAN);
+
+			for (int i = 0; i < rows; i++) {
+				FingerprintTools.writeFingerprintRow(out, row, allWords, order[i] * words, words);
+			}
+
+			long offset = 0;
+
+			for (int i = 0; i <= rows; i++) {
+
+				row.clear();
+				row.putLong(offset);
+				out.write(row.array(), 0, 8);
+
+				if (i < rows) {
+					offset += data[i].length;
+				}
+			}
+
+			for (byte[] record : data) {
+				out.write(record);
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Open an index file, the fingerprints are loaded in memory and the records are read from the mapped file
+	 * @param indexPath the index file path
+	 * @return a FingerprintIndex object
+	 * @throws IOException in case of error in IO operations or if the file is not an index file
+	 */
+	public static FingerprintIndex open(String indexPath) throws IOException {
+
+		try (RandomAccessFile file = new RandomAccessFile(indexPath, "r"); FileChannel channel = file.getChannel()) {
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			byte[] magic = new byte[INDEX_FILE_MAGIC.length];
+			buffer.get(magic);
+
+			if (!Arrays.equals(magic, INDEX_FILE_MAGIC)) {
+				throw new IOException(indexPath + " is not a fingerprint index file");
+			}
+
+			FingerprintType type = FingerprintType.values()[buffer.getInt()];
+			int bits = buffer.getInt();
+			int words = buffer.getInt();
+			buffer.getInt();
+			int rows = (int) buffer.getLong();
+			long fingerprintsOffset = buffer.getLong();
+			long tableOffset = buffer.getLong();
+
+			int[] binStarts = new int[bits + 2];
+
+			buffer.position(INDEX_FILE_HEADER_SIZE);
+			buffer.asIntBuffer().get(binStarts);
+
+			long[] fingerprints = new long[rows * words];
+
+			buffer.position((int) fingerprintsOffset);
+			buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(fingerprints);
+
+			return new FingerprintIndex(type, bits, words, rows, binStarts, fingerprints, buffer, tableOffset);
+		}
+	}
+
+	/**
+	 * A method to find the molecules most similar to a query fingerprint
+	 * @param query the packed query fingerprint (calculated with the type and length of the index)
+	 * @param threshold the minimum Tanimoto similarity of the hits
+	 * @param maxHits the maximum number of hits, 0 or less to keep all the hits above the threshold
+	 * @return the hits sorted by decreasing similarity (ties in the index order)
+	 */
+	public List<Hit> search(long[] query, double threshold, int maxHits) {
+
+		int a = FingerprintTools.cardinality(query, 0, this.words);
+
+		List<Hit> hits = new ArrayList<Hit>();
+
+		if (a == 0) {
+			return hits;
+		}
+
+		Comparator<Hit> worstFirst = Comparator.comparingDouble(Hit::getSimilarity)
+				.thenComparing(Comparator.comparingInt((Hit hit) -> hit.row).reversed());
+
+		PriorityQueue<Hit> best = new PriorityQueue<Hit>(worstFirst);
+
+		int down = a;
+		int up = a + 1;
+
+		while (true) {
+
+			double downBound = down >= 0 ? bound(a, down) : -1;
+			double upBound = up <= this.bits ? bound(a, up) : -1;
+
+			int b;
+			double binBound;
+
+			if (downBound >= upBound) {
+				b = down--;
+				binBound = downBound;
+			} else {
+				b = up++;
+				binBound = upBound;
+			}
+
+			if (binBound < threshold || binBound <= 0) {
+				break;
+			}
+
+			if (maxHits > 0 && best.size() == maxHits && binBound < best.peek().similarity) {
+				break;
+			}
+
+			for (int row = this.binStarts[b]; row < this.binStarts[b + 1]; row++) {
+
+				int offset = row * this.words;
+				int common = 0;
+
+				for (int w = 0; w < this.words; w++) {
+					common += Long.bitCount(query[w] & this.fingerprints[offset + w]);
+				}
+
+				double similarity = (double) common / (a + b - common);
+
+				if (similarity < threshold) {
+					continue;
+				}
+
+				Hit hit = new Hit(row, similarity);
+
+				if (maxHits <= 0) {
+					hits.add(hit);
+				} else if (best.size() < maxHits) {
+					best.add(hit);
+				} else if (worstFirst.compare(hit, best.peek()) > 0) {
+					best.poll();
+					best.add(hit);
+				}
+			}
+		}
+
+		hits.addAll(best);
+		hits.sort(worstFirst.reversed());
+
+		for (Hit hit : hits) {
+
+			String record = getRecord(hit.row);
+			int tab = record.indexOf('\t');
+
+			hit.id = record.substring(0, tab);
+			hit.smiles = record.substring(tab + 1);
+		}
+
+		return hits;
+	}
+
+	/**
+	 * A method to find the molecules most similar to a query molecule
+	 * @param ac the query molecule, its atom types and aromaticity flags are updated
+	 * @param threshold the minimum Tanimoto similarity of the hits
+	 * @param maxHits the maximum number of hits, 0 or less to keep all the hits above the threshold
+	 * @return the hits sorted by decreasing similarity (ties in the index order)
+	 * @throws CDKException in case of error in perceiving or fingerprinting the molecule
+	 */
+	public List<Hit> search(IAtomContainer ac, double threshold, int maxHits) throws CDKException {
+		return search(this.type.calculate(ac, this.bits), threshold, maxHits);
+	}
+
+	/**
+	 * A method to parse a SMILES string with the parser of the current thread (without changing the hydrogens)
+	 * @param smiles the SMILES string
+	 * @return a CDK IAtomContainer or null if the SMILES is invalid
+	 */
+	public static IAtomContainer parseSmiles(String smiles) {
+
+		try {
+			return CdkToolkit.get().smilesParser.parseSmiles(smiles);
+		} catch (InvalidSmilesException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the fingerprint type
+	 * @return the fingerprint type of the index
+	 */
+	public FingerprintType getType() {
+		return type;
+	}
+
+	/**
+	 * Get the fingerprint length
+	 * @return the number of bits of each fingerprint
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * Get the number of molecules
+	 * @return the number of rows in the index
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * A class represents a similarity search hit
+	 */
+	public static class Hit {
+
+		private final int row;
+		private final double similarity;
+
+		private String id;
+		private String smiles;
+
+		private Hit(int row, double similarity) {
+			this.row = row;
+			this.similarity = similarity;
+		}
+
+		/**
+		 * Get the molecule ID
+		 * @return the ID of the molecule (e.g. ChEMBL ID)
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Get the molecule SMILES
+		 * @return the SMILES of the molecule
+		 */
+		public String getSmiles() {
+			return smiles;
+		}
+
+		/**
+		 * Get the Tanimoto similarity
+		 * @return the similarity of the molecule to the query
+		 */
+		public double getSimilarity() {
+			return similarity;
+		}
+	}
+
+	private String getRecord(int row) {
+
+		int start = (int) (this.recordsOffset + 8L * (this.rows + 1)
+				+ this.buffer.getLong((int) (this.recordsOffset + 8L * row)));
+		int end = (int) (this.recordsOffset + 8L * (this.rows + 1)
+				+ this.buffer.getLong((int) (this.recordsOffset + 8L * (row + 1))));
+
+		byte[] record = new byte[end - start];
+
+		for (int i = 0; i < record.length; i++) {
+			record[i] = this.buffer.get(start + i);
+		}
+		return new String(record, StandardCharsets.UTF_8);
+	}
+
+	private static double bound(int a, int b) {
+		return (double) Math.min(a, b) / Math.max(a, b);
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	/**
+	 * A molecule of the dump, the SMILES (SMILES files) or the IAtomContainer (SDF files) is null until the fingerprint
+	 * is calculated, the fingerprint stays null if the molecule cannot be read
+	 */
+	private static class Molecule {
+
+		private final String id;
+		private String smiles;
+		private IAtomContainer ac;
+
+		private long[] fingerprint = null;
+
+		private Molecule(String id, String smiles, IAtomContainer ac) {
+			this.id = id;
+			this.smiles = smiles;
+			this.ac = ac;
+		}
+
+		private void calculate(FingerprintType type, int bits) {
+
+			try {
+
+				if (this.ac == null) {
+					this.ac = parseSmiles(this.smiles);
+				}
+
+				if (this.id == null || this.id.isEmpty() || this.ac == null || this.ac.getAtomCount() == 0) {
+					return;
+				}
+
+				long[] fp = type.calculate(this.ac, bits);
+
+				if (this.smiles == null) {
+					this.smiles = CdkToolkit.get().smilesGenerator.create(AtomContainerManipulator.suppressHydrogens(this.ac));
+				}
+
+				this.fingerprint = fp;
+
+			} catch (CDKException | RuntimeException e) {
+				System.out.println("Fingerprint calculation failed: " + this.id);
+			} finally {
+				// the molecules are only needed for the fingerprint
+				this.ac = null;
+			}
+		}
+	}
+
+	/**
+	 * A sequential reader of the molecules dump
+	 */
+	private static class MoleculeSource implements AutoCloseable {
+
+		private final BufferedReader reader;
+		private final IteratingSDFReader sdfReader;
+
+		private int idColumn = 1;
+		private int smilesColumn = 0;
+		private boolean firstLine = true;
+
+		private MoleculeSource(BufferedReader reader, IteratingSDFReader sdfReader) {
+			this.reader = reader;
+			this.sdfReader = sdfReader;
+		}
+
+		private static MoleculeSource open(String path) throws IOException {
+
+			InputStream in = new FileInputStream(path);
+
+			if (path.endsWith(".gz")) {
+				in = new GZIPInputStream(in, 1 << 16);
+			}
+
+			String name = path.endsWith(".gz") ? path.substring(0, path.length() - 3) : path;
+
+			if (name.toLowerCase().endsWith(".sdf") || name.toLowerCase().endsWith(".sd")) {
+				return new MoleculeSource(null, new IteratingSDFReader(in, SilentChemObjectBuilder.getInstance(), true));
+			}
+			return new MoleculeSource(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16), null);
+		}
+
+		private List<Molecule> next(int count) throws IOException {
+
+			List<Molecule> molecules = new ArrayList<Molecule>(count);
+
+			if (this.sdfReader != null) {
+
+				while (molecules.size() < count && this.sdfReader.hasNext()) {
+
+					IAtomContainer ac = this.sdfReader.next();
+
+					String id = ac.getProperty("chembl_id");
+
+					molecules.add(new Molecule(id != null ? id : ac.getTitle(), null, ac));
+				}
+				return molecules;
+			}
+
+			String line;
+
+			while (molecules.size() < count && (line = this.reader.readLine()) != null) {
+
+				String[] lineArr = line.trim().split("\\s+");
+
+				if (this.firstLine) {
+
+					this.firstLine = false;
+
+					List<String> header = Arrays.asList(lineArr);
+
+					if (header.contains("chembl_id") && header.contains("canonical_smiles")) {
+						this.idColumn = header.indexOf("chembl_id");
+						this.smilesColumn = header.indexOf("canonical_smiles");
+						continue;
+					}
+				}
+
+				if (lineArr.length > Math.max(this.idColumn, this.smilesColumn)) {
+					molecules.add(new Molecule(lineArr[this.idColumn], lineArr[this.smilesColumn], null));
+				}
+			}
+			return molecules;
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if (this.sdfReader != null) {
+				this.sdfReader.close();
+			} else {
+				this.reader.close();
+			}
+		}
+	}
+}
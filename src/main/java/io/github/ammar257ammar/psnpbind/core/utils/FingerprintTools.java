@@ -0,0 +1,253 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A utility class to handle fingerprints packed in long words (bit i is stored in word i/64 at position i%64)
+ * and to write them in compact text and binary encodings.
+ *
+ * The byte order used by the HEX and BASE64 encodings and by the binary fingerprint file is little-endian:
+ * byte k holds the bits 8k..8k+7 with bit 8k as its least significant bit.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class FingerprintTools {
+
+	public static final byte[] FINGERPRINT_FILE_MAGIC = "PSNPFP01".getBytes(StandardCharsets.US_ASCII);
+
+	public static final int FINGERPRINT_FILE_HEADER_SIZE = 32;
+
+	public static final String SPARSE_EMPTY_SET = "none";
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+
+	/**
+	 * Pack the indices of set bits into long words
+	 * @param setBits the indices of the bits which are on
+	 * @param bits the fingerprint length in bits
+	 * @return the packed fingerprint
+	 */
+	public static long[] pack(int[] setBits, int bits) {
+
+		long[] words = new long[(bits + 63) >>> 6];
+
+		for (int bit : setBits) {
+			if(bit >= 0 && bit < bits) {
+				words[bit >>> 6] |= 1L << (bit & 63);
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Count the set bits of a packed fingerprint
+	 * @param words the packed words array
+	 * @param offset the index of the first word of the fingerprint
+	 * @param length the number of words of the fingerprint
+	 * @return the number of bits which are on
+	 */
+	public static int cardinality(long[] words, int offset, int length) {
+
+		int count = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+			count += Long.bitCount(words[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Write a packed fingerprint as one TSV cell of hexadecimal digits (two digits per byte)
+	 * @param formatter the TSV formatter
+	 * @param words the packed words array
+	 * @param offset the index of the first word of the fingerprint
+	 * @param bits the fingerprint length in bits
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void writeHex(TsvFormatter formatter, long[] words, int offset, int bits) throws IOException {
+
+		formatter.startCell();
+
+		int bytes = (bits + 7) >>> 3;
+
+		for (int b = 0; b < bytes; b++) {
+
+			int value = byteAt(words, offset, b);
+
+			formatter.append(HEX_DIGITS[value >>> 4]);
+			formatter.append(HEX_DIGITS[value & 0x0F]);
+		}
+	}
+
+	/**
+	 * Write a packed fingerprint as one TSV cell of standard Base64 (with padding)
+	 * @param formatter the TSV formatter
+	 * @param words the packed words array
+	 * @param offset the index of the first word of the fingerprint
+	 * @param bits the fingerprint length in bits
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void writeBase64(TsvFormatter formatter, long[] words, int offset, int bits) throws IOException {
+
+		formatter.startCell();
+
+		int bytes = (bits + 7) >>> 3;
+
+		for (int b = 0; b < bytes; b += 3) {
+
+			int b0 = byteAt(words, offset, b);
+			int b1 = b + 1 < bytes ? byteAt(words, offset, b + 1) : 0;
+			int b2 = b + 2 < bytes ? byteAt(words, offset, b + 2) : 0;
+
+			int triple = (b0 << 16) | (b1 << 8) | b2;
+
+			formatter.append(BASE64_DIGITS[(triple >>> 18) & 0x3F]);
+			formatter.append(BASE64_DIGITS[(triple >>> 12) & 0x3F]);
+			formatter.append(b + 1 < bytes ? BASE64_DIGITS[(triple >>> 6) & 0x3F] : '=');
+			formatter.append(b + 2 < bytes ? BASE64_DIGITS[triple & 0x3F] : '=');
+		}
+	}
+
+	/**
+	 * Write a packed fingerprint as one TSV cell holding the indices of the set bits separated by ";",
+	 * or SPARSE_EMPTY_SET if no bit is set so it is not read as a missing fingerprint (an empty cell)
+	 * @param formatter the TSV formatter
+	 * @param words the packed words array
+	 * @param offset the index of the first word of the fingerprint
+	 * @param length the number of words of the fingerprint
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void writeSparse(TsvFormatter formatter, long[] words, int offset, int length) throws IOException {
+
+		formatter.startCell();
+
+		boolean first = true;
+
+		for (int w = 0; w < length; w++) {
+
+			long word = words[offset + w];
+
+			while (word != 0) {
+
+				int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+
+				if(!first) {
+					formatter.append(';');
+				}
+				formatter.appendInt(bit);
+
+				first = false;
+				word &= word - 1;
+			}
+		}
+
+		if(first) {
+			for (int i = 0; i < SPARSE_EMPTY_SET.length(); i++) {
+				formatter.append(SPARSE_EMPTY_SET.charAt(i));
+			}
+		}
+	}
+
+	/**
+	 * Open a binary fingerprint file and write its header. The file is made of a 32 bytes header
+	 * (8 bytes magic "PSNPFP01", int32 number of bits, int32 words per row, int64 number of rows, 8 reserved bytes)
+	 * followed by rows * words little-endian int64 values, so it can be memory-mapped by downstream loaders
+	 * (e.g. numpy.memmap(path, dtype='&lt;u8', offset=32, shape=(rows, words))).
+	 *
+	 * @param path the output file path
+	 * @param bits the fingerprint length in bits
+	 * @param rows the number of fingerprints which will be written
+	 * @return an output stream positioned after the header
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static OutputStream openFingerprintFile(String path, int bits, long rows) throws IOException {
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+
+		ByteBuffer header = ByteBuffer.allocate(FINGERPRINT_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		header.put(FINGERPRINT_FILE_MAGIC);
+		header.putInt(bits);
+		header.putInt((bits + 63) >>> 6);
+		header.putLong(rows);
+
+		out.write(header.array());
+
+		return out;
+	}
+
+	/**
+	 * Update the number of rows in the header of a binary fingerprint file, for files written
+	 * in batches where the final number of rows is only known when the last batch is written
+	 * @param path the fingerprint file path
+	 * @param rows the number of fingerprints in the file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void updateFingerprintFileRows(String path, long rows) throws IOException {
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+
+			ByteBuffer value = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			value.putLong(rows);
+
+			file.seek(FINGERPRINT_FILE_MAGIC.length + 8);
+			file.write(value.array());
+		}
+	}
+
+	/**
+	 * Write one packed fingerprint row to a binary fingerprint file
+	 * @param out the stream returned by openFingerprintFile
+	 * @param buffer a little-endian buffer with a capacity of at least 8 * length bytes, reused between rows
+	 * @param words the packed words array
+	 * @param offset the index of the first word of the fingerprint, or -1 to write an empty fingerprint
+	 * @param length the number of words of the fingerprint
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static void writeFingerprintRow(OutputStream out, ByteBuffer buffer, long[] words, int offset, int length)
+			throws IOException {
+
+		buffer.clear();
+
+		for (int w = 0; w < length; w++) {
+			buffer.putLong(offset < 0 ? 0L : words[offset + w]);
+		}
+
+		out.write(buffer.array(), 0, buffer.position());
+	}
+
+	private static int byteAt(long[] words, int offset, int b) {
+		return (int) (words[offset + (b >>> 3)] >>> ((b & 7) << 3)) & 0xFF;
+	}
+}
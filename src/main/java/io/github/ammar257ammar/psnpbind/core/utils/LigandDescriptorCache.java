@@ -0,0 +1,335 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+import io.github.ammar257ammar.psnpbind.core.Config;
+
+/**
+ * A persistent cache of ligand descriptor blocks, so a molecule shared by several PDB entries
+ * (or computed by an earlier run or stage) is featurized only once.
+ *
+ * The cache is an append-only file of records (int32 key length, int32 value length, UTF-8 key, value,
+ * CRC32 of key and value). The record offsets are indexed in memory when the file is opened and the most recently
+ * used values are kept in an LRU map in front of the file. A record written partially (e.g. the process was killed)
+ * is detected by its length or CRC and cut off when the file is opened again.
+ *
+ * The keys are built by the callers from a descriptor version and the canonical SMILES of the molecule
+ * (see canonicalSmiles), so changing the descriptor set only needs a new version number.
+ * The methods are synchronized, one cache instance can be shared by the featurization threads.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class LigandDescriptorCache implements Closeable {
+
+	public static final int DEFAULT_LRU_CAPACITY = 10000;
+
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int RECORD_TRAILER_SIZE = 4;
+
+	private static final Map<String, LigandDescriptorCache> OPEN_CACHES = new HashMap<String, LigandDescriptorCache>();
+
+	private final String path;
+	private final FileChannel channel;
+
+	private final Map<String, long[]> index = new HashMap<String, long[]>();
+	private final Map<String, byte[]> lru;
+
+	private long size;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private LigandDescriptorCache(String path, final int lruCapacity) throws IOException {
+
+		this.path = path;
+		this.channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		this.lru = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > lruCapacity;
+			}
+		};
+
+		loadIndex();
+	}
+
+	/**
+	 * Open a cache file, the same instance is returned for the same path until it is closed
+	 * @param path of the cache file, it is created if it does not exist
+	 * @return the LigandDescriptorCache of the file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static synchronized LigandDescriptorCache open(String path) throws IOException {
+
+		String key = new File(path).getAbsolutePath();
+
+		LigandDescriptorCache cache = OPEN_CACHES.get(key);
+
+		if(cache == null) {
+			cache = new LigandDescriptorCache(key, DEFAULT_LRU_CAPACITY);
+			OPEN_CACHES.put(key, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Open the cache file configured with the LIGAND_CACHE_PATH key, or "ligand-descriptors.cache"
+	 * in the LIGANDS_PATH folder if the key is not set
+	 * @return the LigandDescriptorCache of the configured file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static LigandDescriptorCache openDefault() throws IOException {
+
+		String path = Config.getProperty("LIGAND_CACHE_PATH");
+
+		if(path == null || path.trim().isEmpty()) {
+			path = new File(Config.getProperty("LIGANDS_PATH"),
+					"ligand-descriptors.cache").getPath();
+		}
+		return open(path.trim());
+	}
+
+	/**
+	 * Get a cached value
+	 * @param key the record key
+	 * @return the value or null if the key is not in the cache
+	 * @throws IOException in case of error in IO operations
+	 */
+	public synchronized byte[] get(String key) throws IOException {
+
+		byte[] value = this.lru.get(key);
+
+		if(value != null) {
+			this.hits++;
+			return value;
+		}
+
+		long[] location = this.index.get(key);
+
+		if(location == null) {
+			this.misses++;
+			return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) location[1]);
+
+		readFully(buffer, location[0]);
+
+		value = buffer.array();
+
+		this.lru.put(key, value);
+		this.hits++;
+
+		return value;
+	}
+
+	/**
+	 * Append a value to the cache file, a key which is already in the cache is not written again
+	 * @param key the record key
+	 * @param value the value bytes
+	 * @throws IOException in case of error in IO operations
+	 */
+	public synchronized void put(String key, byte[] value) throws IOException {
+
+		if(this.index.containsKey(key)) {
+			return;
+		}
+
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + value.length + RECORD_TRAILER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		record.putInt(keyBytes.length);
+		record.putInt(value.length);
+		record.put(keyBytes);
+		record.put(value);
+		record.putInt(crc(record.array(), RECORD_HEADER_SIZE, keyBytes.length + value.length));
+
+		record.flip();
+
+		long offset = this.size;
+
+		while(record.hasRemaining()) {
+			this.channel.write(record, offset + record.position());
+		}
+
+		this.size += record.limit();
+
+		this.index.put(key, new long[] { offset + RECORD_HEADER_SIZE + keyBytes.length, value.length });
+		this.lru.put(key, value);
+	}
+
+	/**
+	 * Get the number of records in the cache
+	 * @return the number of keys
+	 */
+	public synchronized int size() {
+		return this.index.size();
+	}
+
+	/**
+	 * Get a summary of the cache use since it was opened
+	 * @return a string with the number of records, hits and misses
+	 */
+	public synchronized String getStats() {
+		return this.path + ": " + this.index.size() + " records, " + this.hits + " hits, " + this.misses + " misses";
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		synchronized (LigandDescriptorCache.class) {
+			OPEN_CACHES.remove(this.path);
+		}
+
+		synchronized (this) {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Get the canonical SMILES of a molecule (hydrogens suppressed, with stereo and isotopes and aromatic symbols),
+	 * used to build the cache keys independently of how the SMILES was written in the input files
+	 * @param ac the molecule
+	 * @return the canonical SMILES
+	 * @throws CDKException in case of error in generating the SMILES
+	 */
+	public static String canonicalSmiles(IAtomContainer ac) throws CDKException {
+
+		SmilesGenerator generator = new SmilesGenerator(SmiFlavor.Absolute | SmiFlavor.UseAromaticSymbols);
+
+		return generator.create(AtomContainerManipulator.copyAndSuppressedHydrogens(ac));
+	}
+
+	/**
+	 * Get the SHA-256 hash of a content (e.g. a mol2 file) as hexadecimal digits, used in the keys of descriptors
+	 * computed from a 3D structure
+	 * @param content the bytes to hash
+	 * @return the hexadecimal hash
+	 */
+	public static String hash(byte[] content) {
+
+		try {
+
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+
+			for(byte b: digest) {
+				hex.append(Character.forDigit((b >>> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+			}
+			return hex.toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void loadIndex() throws IOException {
+
+		long fileSize = this.channel.size();
+		long offset = 0;
+
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		while(offset + RECORD_HEADER_SIZE <= fileSize) {
+
+			header.clear();
+			readFully(header, offset);
+			header.flip();
+
+			int keyLength = header.getInt();
+			int valueLength = header.getInt();
+
+			long recordSize = (long) RECORD_HEADER_SIZE + keyLength + valueLength + RECORD_TRAILER_SIZE;
+
+			if(keyLength < 0 || valueLength < 0 || offset + recordSize > fileSize) {
+				break;
+			}
+
+			ByteBuffer record = ByteBuffer.allocate(keyLength + valueLength + RECORD_TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(record, offset + RECORD_HEADER_SIZE);
+
+			if(record.getInt(keyLength + valueLength) != crc(record.array(), 0, keyLength + valueLength)) {
+				break;
+			}
+
+			String key = new String(record.array(), 0, keyLength, StandardCharsets.UTF_8);
+
+			this.index.put(key, new long[] { offset + RECORD_HEADER_SIZE + keyLength, valueLength });
+
+			offset += recordSize;
+		}
+
+		if(offset < fileSize) {
+			System.out.println(this.path + ": dropping " + (fileSize - offset) + " bytes of an incomplete record");
+			this.channel.truncate(offset);
+		}
+
+		this.size = offset;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+
+		while(buffer.hasRemaining()) {
+
+			if(this.channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the cache file " + this.path);
+			}
+		}
+	}
+
+	private static int crc(byte[] bytes, int offset, int length) {
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+
+		return (int) crc.getValue();
+	}
+}
@@ -1,6 +1,6 @@
 /**
 * Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
-* 
+*
 *Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
 *
 *This program is free software: you can redistribute it and/or modify
@@ -20,34 +20,30 @@
 
 package io.github.ammar257ammar.psnpbind.core.utils;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.openscience.cdk.DefaultChemObjectBuilder;
-import org.openscience.cdk.aromaticity.Aromaticity;
-import org.openscience.cdk.aromaticity.ElectronDonation;
 import org.openscience.cdk.aromaticity.Kekulization;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.exception.InvalidSmilesException;
-import org.openscience.cdk.graph.CycleFinder;
-import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.io.Mol2Reader;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
-import org.openscience.cdk.smiles.SmilesParser;
-import org.openscience.cdk.tools.CDKHydrogenAdder;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 /**
  * A utility class to manipulate ligand files mainly using CDK (Mol2 and SMILES formats)
  * 
+ * The CDK objects used to parse and perceive the molecules (SMILES parser, hydrogen adder and aromaticity model)
+ * are created once per thread and reused by all the calls of that thread.
+ * 
  * @author Ammar Ammar
  *
  */
@@ -66,22 +62,18 @@ public class LigandTools {
 	public static IAtomContainer readMol2andAddHydrogens(File file, boolean addHydrogens)
 			throws IOException, ClassNotFoundException, CDKException {
 
-		InputStream ins = new FileInputStream(file);
-
-		Mol2Reader reader = new Mol2Reader(ins);
-
 		IAtomContainer ac = null;
 
-		try {
+		try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1);
+				Mol2Reader reader = new Mol2Reader(in)) {
+
 			ac = reader.read(DefaultChemObjectBuilder.getInstance().newInstance(IAtomContainer.class));
+
 		} catch (CDKException ex) {
 			System.out.println("ERROR: reading file failed!!");
-			reader.close();
 			return null;
 		}
 
-		reader.close();
-
 		for (IAtom atA : ac.atoms()) {
 
 			if (atA.getBondCount() == 0) {
@@ -97,8 +89,7 @@ public class LigandTools {
 
 		if (addHydrogens) {
 
-			CDKHydrogenAdder adder = CDKHydrogenAdder.getInstance(SilentChemObjectBuilder.getInstance());
-			adder.addImplicitHydrogens(ac);
+			CdkToolkit.get().hydrogenAdder.addImplicitHydrogens(ac);
 
 			AtomContainerManipulator.convertImplicitToExplicitHydrogens(ac);
 		}
@@ -138,6 +129,19 @@ public class LigandTools {
 		return ac;
 	}
 	
+	/**
+	 * A method to read many mol2 files in parallel (on the common fork-join pool)
+	 * @param files the molecule files
+	 * @param addHydrogens boolean if hydrogen should be added to the molecules
+	 * @return the CDK IAtomContainers in the order of the files, null for the files which cannot be parsed
+	 */
+	public static List<IAtomContainer> readMol2Files(List<File> files, boolean addHydrogens) {
+		
+		return files.parallelStream()
+				.map(file -> readMol2andAddHydrogens(file.getAbsolutePath(), addHydrogens))
+				.collect(Collectors.toList());
+	}
+	
 	/**
 	 * A method to read a molecule from SMILES string file and parse it
 	 * as a CDK IAtomContainer
@@ -151,50 +155,28 @@ public class LigandTools {
 	public static IAtomContainer readSmilesFileandAddHydrogens(File file, boolean addHydrogens)
 			throws IOException, ClassNotFoundException, CDKException {
 
-		List<String> lines = Files.readAllLines(Paths.get(file.getAbsolutePath()), StandardCharsets.UTF_8);
-
-		String smile = lines.get(0).substring(0, lines.get(0).indexOf("CHEMBL")).trim();
+		String smile = readSmilesFromFile(file);
 
 		System.out.println(smile);
 		
-		SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
-
-		IAtomContainer ac;
-		try {
-			ac = sp.parseSmiles(smile);
-		} catch (InvalidSmilesException e) {
-			System.out.println("ERROR: reading file failed!!");
-			return null;
-		}
-
-		AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(ac);
-
-		for (IAtom atom : ac.atoms())
-			atom.setImplicitHydrogenCount(0);
-
-		if (addHydrogens) {
-
-			CDKHydrogenAdder adder = CDKHydrogenAdder.getInstance(SilentChemObjectBuilder.getInstance());
-			adder.addImplicitHydrogens(ac);
-
-			AtomContainerManipulator.convertImplicitToExplicitHydrogens(ac);
-		}
-
-		ElectronDonation model = ElectronDonation.daylight();
-		CycleFinder cycles = Cycles.or(Cycles.all(), Cycles.all(6));
-		Aromaticity aromaticity = new Aromaticity(model, cycles);
-
-		aromaticity.apply(ac);
-
-		try {
-
-			Kekulization.kekulize(ac);
-
-		} catch (CDKException ex) {
-			System.out.println("kekulize failed!!");
+		return readSmilesStringandAddHydrogens(smile, addHydrogens);
+	}
+	
+	/**
+	 * A method to read the SMILES string of a ligand SMILES file (the first line holds the SMILES followed by the ChEMBL ID)
+	 * @param file the molecule SMILES file object
+	 * @return the SMILES string
+	 * @throws IOException thrown exception
+	 */
+	public static String readSmilesFromFile(File file) throws IOException {
+		
+		String line;
+		
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(file.getAbsolutePath()), StandardCharsets.UTF_8)) {
+			line = reader.readLine();
 		}
 
-		return ac;
+		return line.substring(0, line.indexOf("CHEMBL")).trim();
 	}
 	
 	/**
@@ -210,11 +192,11 @@ public class LigandTools {
 	public static IAtomContainer readSmilesStringandAddHydrogens(String smile, boolean addHydrogens)
 			throws IOException, ClassNotFoundException, CDKException {
 
-		SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+		CdkToolkit toolkit = CdkToolkit.get();
 
 		IAtomContainer ac;
 		try {
-			ac = sp.parseSmiles(smile);
+			ac = toolkit.smilesParser.parseSmiles(smile);
 		} catch (InvalidSmilesException e) {
 			System.out.println("ERROR: reading file failed!!");
 			return null;
@@ -227,17 +209,12 @@ public class LigandTools {
 
 		if (addHydrogens) {
 
-			CDKHydrogenAdder adder = CDKHydrogenAdder.getInstance(SilentChemObjectBuilder.getInstance());
-			adder.addImplicitHydrogens(ac);
+			toolkit.hydrogenAdder.addImplicitHydrogens(ac);
 
 			AtomContainerManipulator.convertImplicitToExplicitHydrogens(ac);
 		}
 
-		ElectronDonation model = ElectronDonation.daylight();
-		CycleFinder cycles = Cycles.or(Cycles.all(), Cycles.all(6));
-		Aromaticity aromaticity = new Aromaticity(model, cycles);
-
-		aromaticity.apply(ac);
+		toolkit.aromaticity.apply(ac);
 
 		try {
 
@@ -249,5 +226,25 @@ public class LigandTools {
 
 		return ac;
 	}
+	
+	/**
+	 * A method to parse many SMILES strings in parallel (on the common fork-join pool)
+	 * @param smiles the molecules' SMILES strings
+	 * @param addHydrogens boolean if hydrogen should be added to the molecules
+	 * @return the CDK IAtomContainers in the order of the SMILES, null for the SMILES which cannot be parsed
+	 */
+	public static List<IAtomContainer> readSmilesStrings(List<String> smiles, boolean addHydrogens) {
+		
+		return smiles.parallelStream().map(smile -> {
+			
+			try {
+				return readSmilesStringandAddHydrogens(smile, addHydrogens);
+			} catch (ClassNotFoundException | IOException | CDKException e) {
+				e.printStackTrace();
+				return null;
+			}
+			
+		}).collect(Collectors.toList());
+	}
 
 }
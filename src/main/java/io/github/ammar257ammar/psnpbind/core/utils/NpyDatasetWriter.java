@@ -0,0 +1,216 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.Column;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+
+/**
+ * A DatasetWriter for a NumPy .npy float32 matrix (rows x numeric columns) ready to be loaded with numpy.load
+ * (or numpy.load(path, mmap_mode='r') for tables larger than memory).
+ *
+ * INT and DOUBLE columns are written as float32 values and BITS columns are expanded to one 0/1 value per bit.
+ * Empty cells are written as NaN. Two files are written next to the matrix:
+ * "_columns.txt" with the name of each matrix column (one per line) and, if the table has STRING columns,
+ * "_index.tsv" with the STRING columns (e.g. the PDB and ligand identifiers) of each matrix row.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class NpyDatasetWriter implements DatasetWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final String basePath;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private TsvFormatter index;
+	private List<Column> schema;
+
+	private int width = 0;
+	private long rowCount = 0;
+
+	/**
+	 * Create a .npy writer
+	 * @param path of the .npy file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public NpyDatasetWriter(String path) throws IOException {
+
+		this.basePath = path.endsWith(".npy") ? path.substring(0, path.length() - 4) : path;
+
+		this.file = new RandomAccessFile(path, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+
+		this.buffer.put(NumpyTools.createHeader(NumpyTools.FLOAT32, 0, 0));
+	}
+
+	@Override
+	public void writeBatch(FeatureMatrix batch) throws IOException {
+
+		if(this.schema == null) {
+			open(batch);
+		}
+
+		List<Column> columns = batch.getColumns();
+
+		for(int row=0; row<batch.getRowCount(); row++) {
+
+			boolean hasStrings = false;
+
+			for(int c=0; c<columns.size(); c++) {
+
+				Column column = columns.get(c);
+				boolean filled = batch.isFilled(row, c);
+
+				switch(column.getType()) {
+				case STRING:
+					this.index.writeString(filled ? batch.getString(row, c) : null);
+					hasStrings = true;
+					break;
+				case INT:
+					putFloat(filled ? batch.getInt(row, c) : Float.NaN);
+					break;
+				case DOUBLE:
+					putFloat(filled ? (float) batch.getDouble(row, c) : Float.NaN);
+					break;
+				case BITS:
+					for(int bit=0; bit<column.getWidth(); bit++) {
+						putFloat(filled ? (batch.getBit(row, c, bit) ? 1f : 0f) : Float.NaN);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+
+			if(hasStrings) {
+				this.index.endLine();
+			}
+			this.rowCount++;
+		}
+	}
+
+	@Override
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		try {
+			drain();
+
+			this.buffer.put(NumpyTools.createHeader(NumpyTools.FLOAT32, this.rowCount, this.width));
+			this.buffer.flip();
+
+			this.channel.write(this.buffer, 0);
+
+		} finally {
+
+			this.file.close();
+
+			if(this.index != null) {
+				this.index.close();
+			}
+		}
+	}
+
+	/**
+	 * Get the path of the file holding the matrix column names
+	 * @return the .npy path with the extension replaced by "_columns.txt"
+	 */
+	public String getColumnsPath() {
+		return this.basePath + "_columns.txt";
+	}
+
+	/**
+	 * Get the path of the TSV file holding the STRING columns of the table
+	 * @return the .npy path with the extension replaced by "_index.tsv"
+	 */
+	public String getIndexPath() {
+		return this.basePath + "_index.tsv";
+	}
+
+	private void open(FeatureMatrix batch) throws IOException {
+
+		this.schema = batch.getColumns();
+
+		List<String> numericNames = new ArrayList<String>();
+		List<String> stringNames = new ArrayList<String>();
+
+		for(Column column: this.schema) {
+
+			if(column.getType() == ColumnType.STRING) {
+				stringNames.add(column.getName());
+			}else if(column.getType() == ColumnType.BITS) {
+				for(int bit=1; bit<=column.getWidth(); bit++) {
+					numericNames.add(column.getName() + bit);
+				}
+			}else {
+				numericNames.add(column.getName());
+			}
+		}
+
+		this.width = numericNames.size();
+
+		DataHandler.writeStringToFile(String.join("\n", numericNames) + "\n", getColumnsPath());
+
+		if(!stringNames.isEmpty()) {
+			this.index = new TsvFormatter(new FileWriter(new File(getIndexPath())));
+			this.index.writeLine(stringNames.toArray(new String[stringNames.size()]));
+		}
+	}
+
+	private void putFloat(float value) throws IOException {
+
+		if(this.buffer.remaining() < 4) {
+			drain();
+		}
+		this.buffer.putFloat(value);
+	}
+
+	private void drain() throws IOException {
+
+		this.buffer.flip();
+
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+}
@@ -0,0 +1,342 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.Column;
+
+/**
+ * A DatasetWriter for a NumPy .npz archive holding one typed array per column (numpy.load(path)["column"]):
+ * INT columns as int32, DOUBLE columns as float64, STRING columns as fixed width unicode
+ * and BITS columns as packed uint8 rows (numpy.unpackbits(a, axis=1, bitorder='little') restores the bits).
+ *
+ * Empty INT, STRING and BITS cells are written as 0, "" and zero bits and DOUBLE cells as NaN.
+ * Each column with empty cells gets a boolean "_mask" array (True where the cell is filled).
+ *
+ * The batches are spooled to one temporary file per column next to the output file and the archive
+ * is built when the writer is closed, so only one batch is held in memory.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class NpzDatasetWriter implements DatasetWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final String path;
+	private final Path spoolFolder;
+
+	private List<Column> schema;
+
+	private Spool[] values;
+	private Spool[] masks;
+	private boolean[] hasEmpty;
+	private int[] maxLength;
+
+	private long rowCount = 0;
+
+	/**
+	 * Create a .npz writer
+	 * @param path of the .npz file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public NpzDatasetWriter(String path) throws IOException {
+
+		this.path = path;
+		this.spoolFolder = Files.createTempDirectory(new File(path).getAbsoluteFile().getParentFile().toPath(), ".npz-");
+	}
+
+	@Override
+	public void writeBatch(FeatureMatrix batch) throws IOException {
+
+		if(this.schema == null) {
+			open(batch);
+		}
+
+		for(int row=0; row<batch.getRowCount(); row++) {
+
+			for(int c=0; c<this.schema.size(); c++) {
+
+				Column column = this.schema.get(c);
+				Spool spool = this.values[c];
+
+				boolean filled = batch.isFilled(row, c);
+
+				if(!filled) {
+					this.hasEmpty[c] = true;
+				}
+				this.masks[c].putByte(filled ? 1 : 0);
+
+				switch(column.getType()) {
+				case STRING:
+					String value = filled ? batch.getString(row, c) : "";
+
+					int length = value.codePointCount(0, value.length());
+
+					this.maxLength[c] = Math.max(this.maxLength[c], length);
+
+					spool.putInt(length);
+
+					for(int i=0; i<value.length(); i=value.offsetByCodePoints(i, 1)) {
+						spool.putInt(value.codePointAt(i));
+					}
+					break;
+				case INT:
+					spool.putInt(filled ? batch.getInt(row, c) : 0);
+					break;
+				case DOUBLE:
+					spool.putDouble(filled ? batch.getDouble(row, c) : Double.NaN);
+					break;
+				case BITS:
+					long[] words = batch.getBitsWords(c);
+					int offset = row * column.getWords();
+					int bytes = (column.getWidth() + 7) >>> 3;
+
+					for(int b=0; b<bytes; b++) {
+						spool.putByte(filled ? (int) (words[offset + (b >>> 3)] >>> ((b & 7) << 3)) & 0xFF : 0);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			this.rowCount++;
+		}
+	}
+
+	@Override
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(this.path), BUFFER_SIZE))) {
+
+			zip.setLevel(Deflater.BEST_SPEED);
+
+			if(this.schema == null) {
+				return;
+			}
+
+			for(int c=0; c<this.schema.size(); c++) {
+
+				Column column = this.schema.get(c);
+				String name = getArrayName(column.getName());
+
+				this.values[c].finish();
+				this.masks[c].finish();
+
+				zip.putNextEntry(new ZipEntry(name + ".npy"));
+
+				switch(column.getType()) {
+				case STRING:
+					zip.write(NumpyTools.createHeader(NumpyTools.unicode(this.maxLength[c]), this.rowCount));
+					writeStrings(zip, this.values[c], Math.max(this.maxLength[c], 1));
+					break;
+				case INT:
+					zip.write(NumpyTools.createHeader(NumpyTools.INT32, this.rowCount));
+					Files.copy(this.values[c].file, zip);
+					break;
+				case DOUBLE:
+					zip.write(NumpyTools.createHeader(NumpyTools.FLOAT64, this.rowCount));
+					Files.copy(this.values[c].file, zip);
+					break;
+				case BITS:
+					zip.write(NumpyTools.createHeader(NumpyTools.UINT8, this.rowCount, (column.getWidth() + 7) >>> 3));
+					Files.copy(this.values[c].file, zip);
+					break;
+				default:
+					break;
+				}
+				zip.closeEntry();
+
+				if(this.hasEmpty[c]) {
+
+					zip.putNextEntry(new ZipEntry(name + "_mask.npy"));
+					zip.write(NumpyTools.createHeader(NumpyTools.BOOL, this.rowCount));
+					Files.copy(this.masks[c].file, zip);
+					zip.closeEntry();
+				}
+			}
+
+		} finally {
+
+			if(this.values != null) {
+				for(int c=0; c<this.values.length; c++) {
+					this.values[c].finish();
+					this.masks[c].finish();
+					Files.deleteIfExists(this.values[c].file);
+					Files.deleteIfExists(this.masks[c].file);
+				}
+			}
+			Files.deleteIfExists(this.spoolFolder);
+		}
+	}
+
+	/**
+	 * Get the name of the array of a column inside the archive (characters which are not allowed
+	 * in file names are replaced by "_")
+	 * @param columnName the column name
+	 * @return the array name
+	 */
+	public static String getArrayName(String columnName) {
+		return columnName.replaceAll("[^A-Za-z0-9_.-]", "_");
+	}
+
+	private void open(FeatureMatrix batch) throws IOException {
+
+		this.schema = batch.getColumns();
+
+		int size = this.schema.size();
+
+		this.values = new Spool[size];
+		this.masks = new Spool[size];
+		this.hasEmpty = new boolean[size];
+		this.maxLength = new int[size];
+
+		for(int c=0; c<size; c++) {
+			this.values[c] = new Spool(this.spoolFolder.resolve(c + ".values"));
+			this.masks[c] = new Spool(this.spoolFolder.resolve(c + ".mask"));
+		}
+	}
+
+	/**
+	 * Convert the spooled strings (length followed by the code points) to fixed width UTF-32 cells
+	 */
+	private void writeStrings(ZipOutputStream zip, Spool spool, int width) throws IOException {
+
+		ByteBuffer cell = ByteBuffer.allocate(width * 4).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		try (FileChannel channel = FileChannel.open(spool.file, StandardOpenOption.READ)) {
+
+			input.flip();
+
+			for(long row=0; row<this.rowCount; row++) {
+
+				int length = readInt(channel, input);
+
+				cell.clear();
+
+				for(int i=0; i<length; i++) {
+					cell.putInt(readInt(channel, input));
+				}
+				while(cell.hasRemaining()) {
+					cell.put((byte) 0);
+				}
+				zip.write(cell.array());
+			}
+		}
+	}
+
+	private static int readInt(FileChannel channel, ByteBuffer input) throws IOException {
+
+		if(input.remaining() < 4) {
+
+			input.compact();
+
+			while(input.position() < 4) {
+				if(channel.read(input) < 0) {
+					throw new IOException("Unexpected end of the spooled column");
+				}
+			}
+			input.flip();
+		}
+		return input.getInt();
+	}
+
+	/**
+	 * A buffered little-endian temporary file holding the values of one column
+	 */
+	private static class Spool {
+
+		private final Path file;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		private boolean finished = false;
+
+		Spool(Path file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		void putByte(int value) throws IOException {
+			ensure(1);
+			this.buffer.put((byte) value);
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			this.buffer.putInt(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			this.buffer.putDouble(value);
+		}
+
+		void finish() throws IOException {
+
+			if(this.finished) {
+				return;
+			}
+
+			drain();
+			this.channel.close();
+			this.finished = true;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if(this.buffer.remaining() < bytes) {
+				drain();
+			}
+		}
+
+		private void drain() throws IOException {
+
+			this.buffer.flip();
+
+			while(this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A utility class to create the headers of NumPy .npy files (format version 1.0).
+ *
+ * The header always has the same size (HEADER_SIZE bytes) whatever the shape is, so a file can be written
+ * with a placeholder shape and the header rewritten in place once the number of rows is known.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class NumpyTools {
+
+	public static final int HEADER_SIZE = 128;
+
+	public static final String FLOAT32 = "<f4";
+	public static final String FLOAT64 = "<f8";
+	public static final String INT32 = "<i4";
+	public static final String UINT8 = "|u1";
+	public static final String BOOL = "|b1";
+
+	private static final byte[] MAGIC = { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0 };
+
+	/**
+	 * Get the dtype of a fixed width unicode string array
+	 * @param length the maximum number of characters (code points) of the strings, at least 1
+	 * @return the dtype descriptor (e.g. "&lt;U12")
+	 */
+	public static String unicode(int length) {
+		return "<U" + Math.max(length, 1);
+	}
+
+	/**
+	 * Create the header of a C-ordered .npy array
+	 * @param descr the dtype descriptor (e.g. FLOAT32)
+	 * @param shape the array dimensions
+	 * @return a byte array of HEADER_SIZE bytes
+	 */
+	public static byte[] createHeader(String descr, long... shape) {
+
+		StringBuilder dict = new StringBuilder();
+
+		dict.append("{'descr': '").append(descr).append("', 'fortran_order': False, 'shape': (");
+
+		for (int i = 0; i < shape.length; i++) {
+
+			if(i > 0) {
+				dict.append(", ");
+			}
+			dict.append(shape[i]);
+		}
+
+		dict.append(shape.length == 1 ? ",), }" : "), }");
+
+		int dictLength = HEADER_SIZE - MAGIC.length - 2;
+
+		if(dict.length() + 1 > dictLength) {
+			throw new IllegalArgumentException("The npy header is too long: " + dict);
+		}
+
+		while (dict.length() < dictLength - 1) {
+			dict.append(' ');
+		}
+		dict.append('\n');
+
+		byte[] header = new byte[HEADER_SIZE];
+
+		System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+
+		header[MAGIC.length] = (byte) (dictLength & 0xFF);
+		header[MAGIC.length + 1] = (byte) (dictLength >>> 8);
+
+		byte[] dictBytes = dict.toString().getBytes(StandardCharsets.US_ASCII);
+
+		System.arraycopy(dictBytes, 0, header, MAGIC.length + 2, dictBytes.length);
+
+		return header;
+	}
+}
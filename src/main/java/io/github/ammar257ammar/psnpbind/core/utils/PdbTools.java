@@ -20,15 +20,23 @@
 
 package io.github.ammar257ammar.psnpbind.core.utils;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -58,6 +66,7 @@ import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
 
 import io.github.ammar257ammar.psnpbind.core.model.PDBbindEntry;
+import io.github.ammar257ammar.psnpbind.core.model.PocketResidue;
 
 
 /**
@@ -154,6 +163,122 @@ public class PdbTools {
 		return aaList;
 	}
 	
+	/**
+	 * A method to get the residue keys (residue number and insertion code, as given by BioJava
+	 * ResidueNumber.toString()) of all amino acids in a list
+	 * @param aminoAcids the list of amino acids
+	 * @return an ordered set of residue keys (e.g. "123" or "123A")
+	 */
+	public static Set<String> getResidueKeys(List<AminoAcid> aminoAcids){
+		
+		Set<String> keys = new LinkedHashSet<String>();
+		
+		for(AminoAcid aa: aminoAcids) {
+			keys.add(aa.getResidueNumber().toString());
+		}
+		return keys;
+	}
+	
+	/**
+	 * A method to get the atom coordinates of a set of residues by a single scan of the ATOM records of a PDB file.
+	 * Residues are matched by their residue key only (not the chain), and only the first residue carrying
+	 * a given key is taken, which is the same matching done on BioJava residue numbers of the amino acids.
+	 * Only the first model is read and only the first alternate location of each residue is kept.
+	 * 
+	 * @param path the PDB file path
+	 * @param residueKeys the residue keys (e.g. "123" or "123A") as given by getResidueKeys
+	 * @return a list of [x, y, z] coordinates of the atoms of the matched residues
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static List<double[]> getAtomCoordinatesOfResidues(String path, Set<String> residueKeys) throws IOException{
+		
+		List<double[]> coordinates = new ArrayList<double[]>();
+		
+		scanAtomsOfResidues(path, residueKeys, (key, line) -> coordinates.add(parseCoordinates(line)));
+		
+		return coordinates;
+	}
+	
+	/**
+	 * A method to get the atoms of a set of residues by a single scan of the ATOM records of a PDB file,
+	 * with the same residue matching as getAtomCoordinatesOfResidues
+	 * @param path the PDB file path
+	 * @param residueKeys the residue keys (e.g. "123" or "123A") as given by getResidueKeys
+	 * @return a map of residue keys to the matched residues, in the file order
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static Map<String, PocketResidue> getAtomsOfResidues(String path, Set<String> residueKeys) throws IOException{
+		
+		Map<String, PocketResidue> residues = new LinkedHashMap<String, PocketResidue>();
+		
+		scanAtomsOfResidues(path, residueKeys, (key, line) -> residues
+				.computeIfAbsent(key, k -> new PocketResidue(k, line.substring(17, 20).trim()))
+				.addAtom(line.substring(12, 16).trim(), parseCoordinates(line)));
+		
+		return residues;
+	}
+	
+	/**
+	 * Pass the ATOM records of the selected residues to an action with their residue key
+	 */
+	private static void scanAtomsOfResidues(String path, Set<String> residueKeys, BiConsumer<String, String> action) throws IOException{
+		
+		Set<String> claimedKeys = new HashSet<String>();
+		
+		String currentResidue = null;
+		boolean currentSelected = false;
+		char currentAltLoc = ' ';
+		
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null) {
+				
+				if(line.startsWith("MODEL") && currentResidue != null) {
+					break;
+				}
+				
+				if(!line.startsWith("ATOM  ") || line.length() < 54) {
+					continue;
+				}
+				
+				String key = line.substring(22, 26).trim() + (line.charAt(26) == ' ' ? "" : String.valueOf(line.charAt(26)));
+				String residue = line.charAt(21) + key;
+				
+				if(!residue.equals(currentResidue)) {
+					
+					currentResidue = residue;
+					currentSelected = residueKeys.contains(key) && claimedKeys.add(key);
+					currentAltLoc = ' ';
+				}
+				
+				if(!currentSelected) {
+					continue;
+				}
+				
+				char altLoc = line.charAt(16);
+				
+				if(altLoc != ' ') {
+					
+					if(currentAltLoc == ' ') {
+						currentAltLoc = altLoc;
+					}else if(altLoc != currentAltLoc) {
+						continue;
+					}
+				}
+				
+				action.accept(key, line);
+			}
+		}
+	}
+	
+	private static double[] parseCoordinates(String line) {
+		return new double[]{Double.parseDouble(line.substring(30, 38).trim()),
+							Double.parseDouble(line.substring(38, 46).trim()),
+							Double.parseDouble(line.substring(46, 54).trim())};
+	}
+	
 	/**
 	 * Get a list of Sifts entities from the SIFTS file corresponding to a PdbBind PDB ID
 	 * @param path of the downloaded SIFTS files
@@ -0,0 +1,414 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A streaming reader of the poses of AutoDock Vina output (.pdbqt) files:
+ *
+ * <pre>
+ * MODEL 1
+ * REMARK VINA RESULT:      -8.5      0.000      0.000
+ * ROOT
+ * ATOM      1  C   UNL     1      -1.234   5.678   9.012  0.00  0.00    +0.123 C
+ * ...
+ * ENDMDL
+ * </pre>
+ *
+ * Each MODEL block gives a pose with its mode number, the affinity of its VINA RESULT remark and the coordinates
+ * and AutoDock atom types of its ATOM and HETATM records (a file without MODEL records is read as a single pose
+ * of mode 1). The file is read into a reused buffer and the coordinates are parsed from the fixed PDB columns
+ * without creating strings. A reader is not thread-safe, each thread gets its own reader with {@link #get()}.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class PdbqtPoseReader {
+
+	/**
+	 * The AutoDock atom types, a type not in the list is read as X (index 0)
+	 */
+	public static final String[] ATOM_TYPES = { "X", "C", "A", "N", "NA", "NS", "OA", "OS", "S", "SA", "H", "HD", "HS",
+			"P", "F", "Cl", "CL", "Br", "BR", "I", "B", "Si", "Se", "Fe", "Mg", "Mn", "Zn", "Ca", "Cu", "Na", "K",
+			"G0", "G1", "G2", "G3", "CG0", "CG1", "CG2", "CG3", "W" };
+
+	private static final ThreadLocal<PdbqtPoseReader> READERS = ThreadLocal.withInitial(PdbqtPoseReader::new);
+
+	private static final byte[] MODEL = "MODEL".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ENDMDL = "ENDMDL".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ATOM = "ATOM  ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] HETATM = "HETATM".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VINA_RESULT = "REMARK VINA RESULT:".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[][] TYPE_BYTES = new byte[ATOM_TYPES.length][];
+
+	static {
+		for (int i = 0; i < ATOM_TYPES.length; i++) {
+			TYPE_BYTES[i] = ATOM_TYPES[i].getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private byte[] buffer = new byte[1 << 15];
+
+	private int poseCount;
+	private int[] modes = new int[16];
+	private float[] affinities = new float[16];
+	private int[] atomStarts = new int[17];
+
+	private int atomCount;
+	private float[] coordinates = new float[3 * 1024];
+	private byte[] types = new byte[1024];
+
+	private boolean inPose;
+
+	private PdbqtPoseReader() {
+	}
+
+	/**
+	 * Get the reader of the current thread
+	 * @return a PdbqtPoseReader
+	 */
+	public static PdbqtPoseReader get() {
+		return READERS.get();
+	}
+
+	/**
+	 * Read the poses of a docking output file
+	 * @param pdbqt the docking output path
+	 * @return the poses of the file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public DockingPoses read(Path pdbqt) throws IOException {
+
+		int length = 0;
+
+		try (InputStream in = Files.newInputStream(pdbqt)) {
+
+			int read;
+
+			while ((read = in.read(this.buffer, length, this.buffer.length - length)) >= 0) {
+
+				length += read;
+
+				if(length == this.buffer.length) {
+					this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+				}
+			}
+		}
+		return read(this.buffer, length);
+	}
+
+	/**
+	 * Read the poses of a docking output
+	 * @param data the docking output content
+	 * @param length the number of bytes of the output in data
+	 * @return the poses of the output
+	 */
+	public DockingPoses read(byte[] data, int length) {
+
+		this.poseCount = 0;
+		this.atomCount = 0;
+		this.atomStarts[0] = 0;
+		this.inPose = false;
+
+		int start = 0;
+
+		while (start < length) {
+
+			int end = start;
+
+			while (end < length && data[end] != '\n' && data[end] != '\r') {
+				end++;
+			}
+
+			readLine(data, start, end);
+
+			start = end < length - 1 && data[end] == '\r' && data[end + 1] == '\n' ? end + 2 : end + 1;
+		}
+
+		if(this.inPose) {
+			endPose();
+		}
+
+		return new DockingPoses(Arrays.copyOf(this.modes, this.poseCount), Arrays.copyOf(this.affinities, this.poseCount),
+				Arrays.copyOf(this.atomStarts, this.poseCount + 1), Arrays.copyOf(this.coordinates, 3 * this.atomCount),
+				Arrays.copyOf(this.types, this.atomCount));
+	}
+
+	private void readLine(byte[] data, int start, int end) {
+
+		if(startsWith(data, start, end, ATOM) || startsWith(data, start, end, HETATM)) {
+
+			if(end - start < 54) {
+				return;
+			}
+
+			if(!this.inPose) {
+				startPose(1);
+			}
+
+			if(this.atomCount == this.types.length) {
+				this.types = Arrays.copyOf(this.types, this.types.length * 2);
+				this.coordinates = Arrays.copyOf(this.coordinates, this.coordinates.length * 2);
+			}
+
+			this.coordinates[3 * this.atomCount] = parseNumber(data, start + 30, start + 38);
+			this.coordinates[3 * this.atomCount + 1] = parseNumber(data, start + 38, start + 46);
+			this.coordinates[3 * this.atomCount + 2] = parseNumber(data, start + 46, start + 54);
+			this.types[this.atomCount] = (byte) parseType(data, Math.min(start + 77, end), end);
+
+			this.atomCount++;
+
+		}else if(startsWith(data, start, end, VINA_RESULT)) {
+
+			if(this.inPose) {
+
+				int numberStart = start + VINA_RESULT.length;
+
+				while (numberStart < end && data[numberStart] == ' ') {
+					numberStart++;
+				}
+
+				int numberEnd = numberStart;
+
+				while (numberEnd < end && data[numberEnd] != ' ') {
+					numberEnd++;
+				}
+
+				this.affinities[this.poseCount] = parseNumber(data, numberStart, numberEnd);
+			}
+
+		}else if(startsWith(data, start, end, ENDMDL)) {
+
+			if(this.inPose) {
+				endPose();
+			}
+
+		}else if(startsWith(data, start, end, MODEL)) {
+
+			if(this.inPose) {
+				endPose();
+			}
+
+			float mode = parseNumber(data, start + MODEL.length, end);
+
+			startPose(Float.isNaN(mode) ? this.poseCount + 1 : (int) mode);
+		}
+	}
+
+	private void startPose(int mode) {
+
+		if(this.poseCount == this.modes.length) {
+			this.modes = Arrays.copyOf(this.modes, this.modes.length * 2);
+			this.affinities = Arrays.copyOf(this.affinities, this.affinities.length * 2);
+			this.atomStarts = Arrays.copyOf(this.atomStarts, this.modes.length + 1);
+		}
+
+		this.modes[this.poseCount] = mode;
+		this.affinities[this.poseCount] = Float.NaN;
+		this.atomStarts[this.poseCount] = this.atomCount;
+		this.inPose = true;
+	}
+
+	private void endPose() {
+		this.poseCount++;
+		this.atomStarts[this.poseCount] = this.atomCount;
+		this.inPose = false;
+	}
+
+	private static boolean startsWith(byte[] data, int start, int end, byte[] prefix) {
+
+		if(end - start < prefix.length) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length; i++) {
+			if(data[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse a decimal number surrounded by spaces, e.g. a fixed width PDB column
+	 * @return the number, or NaN if the field is empty or not a plain decimal number
+	 */
+	static float parseNumber(byte[] data, int start, int end) {
+
+		while (start < end && data[start] == ' ') {
+			start++;
+		}
+
+		while (end > start && data[end - 1] == ' ') {
+			end--;
+		}
+
+		if(start == end) {
+			return Float.NaN;
+		}
+
+		boolean negative = data[start] == '-';
+
+		if(negative || data[start] == '+') {
+			start++;
+		}
+
+		long value = 0;
+		int decimals = -1;
+		int digits = 0;
+
+		for (int i = start; i < end; i++) {
+
+			byte ch = data[i];
+
+			if(ch >= '0' && ch <= '9') {
+
+				if(digits == 18) {
+					return Float.parseFloat(new String(data, start, end - start, StandardCharsets.US_ASCII));
+				}
+
+				value = value * 10 + (ch - '0');
+				digits++;
+
+				if(decimals >= 0) {
+					decimals++;
+				}
+
+			}else if(ch == '.' && decimals < 0) {
+				decimals = 0;
+			}else {
+				return Float.NaN;
+			}
+		}
+
+		if(digits == 0) {
+			return Float.NaN;
+		}
+
+		double number = value;
+
+		for (int i = 0; i < decimals; i++) {
+			number /= 10;
+		}
+		return (float) (negative ? -number : number);
+	}
+
+	private static int parseType(byte[] data, int start, int end) {
+
+		while (start < end && data[start] == ' ') {
+			start++;
+		}
+
+		while (end > start && data[end - 1] == ' ') {
+			end--;
+		}
+
+		for (int t = 1; t < TYPE_BYTES.length; t++) {
+
+			byte[] type = TYPE_BYTES[t];
+
+			if(type.length == end - start && startsWith(data, start, end, type)) {
+				return t;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * The poses read from one docking output file
+	 */
+	public static class DockingPoses {
+
+		private final int[] modes;
+		private final float[] affinities;
+		private final int[] atomStarts;
+		private final float[] coordinates;
+		private final byte[] types;
+
+		DockingPoses(int[] modes, float[] affinities, int[] atomStarts, float[] coordinates, byte[] types) {
+			this.modes = modes;
+			this.affinities = affinities;
+			this.atomStarts = atomStarts;
+			this.coordinates = coordinates;
+			this.types = types;
+		}
+
+		/**
+		 * Get the number of poses
+		 * @return the number of MODEL blocks
+		 */
+		public int getPoseCount() {
+			return modes.length;
+		}
+
+		/**
+		 * Get the mode number of a pose
+		 * @param pose the pose index in the file
+		 * @return the MODEL number
+		 */
+		public int getMode(int pose) {
+			return modes[pose];
+		}
+
+		/**
+		 * Get the affinity of a pose
+		 * @param pose the pose index in the file
+		 * @return the affinity in kcal/mol, NaN if the pose has no VINA RESULT remark
+		 */
+		public float getAffinity(int pose) {
+			return affinities[pose];
+		}
+
+		/**
+		 * Get the number of atoms of a pose
+		 * @param pose the pose index in the file
+		 * @return the number of atoms
+		 */
+		public int getAtomCount(int pose) {
+			return atomStarts[pose + 1] - atomStarts[pose];
+		}
+
+		/**
+		 * Get the coordinates of the atoms of a pose
+		 * @param pose the pose index in the file
+		 * @return the x, y and z coordinates of each atom
+		 */
+		public float[] getCoordinates(int pose) {
+			return Arrays.copyOfRange(coordinates, 3 * atomStarts[pose], 3 * atomStarts[pose + 1]);
+		}
+
+		/**
+		 * Get the atom types of a pose
+		 * @param pose the pose index in the file
+		 * @return the index of the type of each atom in ATOM_TYPES
+		 */
+		public byte[] getTypes(int pose) {
+			return Arrays.copyOfRange(types, atomStarts[pose], atomStarts[pose + 1]);
+		}
+	}
+}
@@ -0,0 +1,670 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader.DockingPoses;
+
+/**
+ * A binary store of docking poses indexed by (pdb, variant, ligand, mode), memory-mapped for reading so the pose
+ * analyses read the coordinates in place instead of parsing the .pdbqt files again.
+ *
+ * The store file is made of a 32 bytes header (8 bytes magic "PSNPPS01", int32 number of poses, int32 number
+ * of dockings, int64 offset of the pose table, int64 offset of the docking table), the atoms of each pose
+ * (float32 x, y and z of each atom followed by the atom type index of each atom, padded to 4 bytes), the pose table
+ * (one 32 bytes record per pose: int32 docking index, int32 mode, float32 affinity, int32 number of atoms,
+ * int64 offset of the atoms, 8 reserved bytes) sorted by docking, the docking table (the sorted "pdb/variant/ligand"
+ * keys with the index of their first pose and their number of poses) and the atom type names.
+ * All numbers are little-endian and the strings are UTF-8 with an int16 length.
+ *
+ * The file is mapped in segments of 1 GB and no pose or pose record crosses a segment, so files larger than
+ * the 2 GB limit of a mapping can be read. Only the docking table is loaded in memory. Like the docking results
+ * index, the store is never updated in place: a Writer writes a new file which replaces the store when committed.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class PoseStore implements Closeable {
+
+	private static final byte[] MAGIC = "PSNPPS01".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int HEADER_SIZE = 32;
+	private static final int RECORD_SIZE = 32;
+
+	static final int SEGMENT_BITS = 30;
+
+	private final String path;
+	private final MappedByteBuffer[] segments;
+
+	private final int poseCount;
+	private final long poseTableOffset;
+
+	private final String[] keys;
+	private final int[] firstPoses;
+	private final int[] dockingPoseCounts;
+	private final String[] atomTypes;
+
+	private PoseStore(String path, MappedByteBuffer[] segments, int poseCount, long poseTableOffset, String[] keys,
+			int[] firstPoses, int[] dockingPoseCounts, String[] atomTypes) {
+		this.path = path;
+		this.segments = segments;
+		this.poseCount = poseCount;
+		this.poseTableOffset = poseTableOffset;
+		this.keys = keys;
+		this.firstPoses = firstPoses;
+		this.dockingPoseCounts = dockingPoseCounts;
+		this.atomTypes = atomTypes;
+	}
+
+	/**
+	 * Open a store file and map it in memory
+	 * @param path the store file path
+	 * @return a PoseStore
+	 * @throws IOException in case of error in IO operations or if the file is not a pose store
+	 */
+	public static PoseStore open(String path) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+
+			ByteBuffer header = read(channel, 0, HEADER_SIZE);
+
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+
+			if(!Arrays.equals(magic, MAGIC)) {
+				throw new IOException(path + " is not a pose store");
+			}
+
+			int poseCount = header.getInt();
+			int dockingCount = header.getInt();
+			long poseTableOffset = header.getLong();
+			long dockingTableOffset = header.getLong();
+
+			ByteBuffer tables = read(channel, dockingTableOffset, (int) (channel.size() - dockingTableOffset));
+
+			String[] keys = new String[dockingCount];
+			int[] firstPoses = new int[dockingCount];
+			int[] dockingPoseCounts = new int[dockingCount];
+
+			for (int i = 0; i < dockingCount; i++) {
+				keys[i] = getString(tables);
+				firstPoses[i] = tables.getInt();
+				dockingPoseCounts[i] = tables.getInt();
+			}
+
+			String[] atomTypes = new String[tables.getShort()];
+
+			for (int i = 0; i < atomTypes.length; i++) {
+				atomTypes[i] = getString(tables);
+			}
+
+			long size = channel.size();
+
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+
+			for (int i = 0; i < segments.length; i++) {
+
+				long start = (long) i << SEGMENT_BITS;
+
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_BITS, size - start));
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			return new PoseStore(path, segments, poseCount, poseTableOffset, keys, firstPoses, dockingPoseCounts, atomTypes);
+		}
+	}
+
+	/**
+	 * Create a writer of a new version of a store file
+	 * @param path the store file path
+	 * @return a Writer, the store file is replaced when the writer is committed
+	 * @throws IOException in case of error in IO operations
+	 */
+	public static Writer createWriter(String path) throws IOException {
+		return new Writer(path);
+	}
+
+	/**
+	 * Get the poses of a docking
+	 * @param pdb the PdbBind entry
+	 * @param variant the protein variant folder name
+	 * @param ligand the ligand docking folder name
+	 * @return the poses in the order of the docking output, empty if the docking is not in the store
+	 */
+	public List<Pose> getPoses(String pdb, String variant, String ligand) {
+
+		int docking = Arrays.binarySearch(this.keys, getKey(pdb, variant, ligand));
+
+		if(docking < 0) {
+			return Collections.emptyList();
+		}
+
+		List<Pose> poses = new ArrayList<Pose>(this.dockingPoseCounts[docking]);
+
+		for (int i = 0; i < this.dockingPoseCounts[docking]; i++) {
+			poses.add(new Pose(this.firstPoses[docking] + i));
+		}
+		return poses;
+	}
+
+	/**
+	 * Get a pose of a docking
+	 * @param pdb the PdbBind entry
+	 * @param variant the protein variant folder name
+	 * @param ligand the ligand docking folder name
+	 * @param mode the mode number of the pose
+	 * @return the pose, or null if the docking is not in the store or has no pose with this mode
+	 */
+	public Pose getPose(String pdb, String variant, String ligand, int mode) {
+
+		for (Pose pose : getPoses(pdb, variant, ligand)) {
+			if(pose.getMode() == mode) {
+				return pose;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the ligands docked in a variant
+	 * @param pdb the PdbBind entry
+	 * @param variant the protein variant folder name
+	 * @return the sorted ligand docking folder names of the variant dockings in the store
+	 */
+	public List<String> getLigands(String pdb, String variant) {
+
+		String prefix = pdb + "/" + variant + "/";
+
+		int first = Arrays.binarySearch(this.keys, prefix);
+
+		List<String> ligands = new ArrayList<String>();
+
+		for (int i = first < 0 ? -first - 1 : first; i < this.keys.length && this.keys[i].startsWith(prefix); i++) {
+			ligands.add(this.keys[i].substring(prefix.length()));
+		}
+		return ligands;
+	}
+
+	/**
+	 * Get the keys of the dockings in the store
+	 * @return the sorted "pdb/variant/ligand" keys
+	 */
+	public List<String> getKeys() {
+		return Collections.unmodifiableList(Arrays.asList(this.keys));
+	}
+
+	/**
+	 * Get the number of dockings in the store
+	 * @return the number of dockings
+	 */
+	public int size() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Get the number of poses in the store
+	 * @return the number of poses
+	 */
+	public int getPoseCount() {
+		return this.poseCount;
+	}
+
+	/**
+	 * The mapped segments are released when the store is garbage collected (Java 8 has no unmapping API)
+	 */
+	@Override
+	public void close() throws IOException {
+		Arrays.fill(this.segments, null);
+	}
+
+	@Override
+	public String toString() {
+		return this.path + " (" + this.keys.length + " dockings, " + this.poseCount + " poses)";
+	}
+
+	/**
+	 * Get the key of a docking
+	 * @param pdb the PdbBind entry
+	 * @param variant the protein variant folder name
+	 * @param ligand the ligand docking folder name
+	 * @return the key "pdb/variant/ligand"
+	 */
+	public static String getKey(String pdb, String variant, String ligand) {
+		return pdb + "/" + variant + "/" + ligand;
+	}
+
+	private ByteBuffer segment(long offset) {
+		return this.segments[(int) (offset >>> SEGMENT_BITS)];
+	}
+
+	private static int inSegment(long offset) {
+		return (int) (offset & ((1L << SEGMENT_BITS) - 1));
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the pose store");
+			}
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A pose read in place from the mapped store
+	 */
+	public class Pose {
+
+		private final int mode;
+		private final float affinity;
+		private final int atomCount;
+		private final ByteBuffer atoms;
+		private final int coordinatesStart;
+
+		private Pose(int index) {
+
+			long record = poseTableOffset + (long) index * RECORD_SIZE;
+
+			ByteBuffer table = segment(record);
+			int position = inSegment(record);
+
+			this.mode = table.getInt(position + 4);
+			this.affinity = table.getFloat(position + 8);
+			this.atomCount = table.getInt(position + 12);
+
+			long offset = table.getLong(position + 16);
+
+			this.atoms = segment(offset);
+			this.coordinatesStart = inSegment(offset);
+		}
+
+		public int getMode() {
+			return mode;
+		}
+
+		/**
+		 * Get the affinity of the pose
+		 * @return the affinity in kcal/mol, NaN if the docking output had no VINA RESULT for the pose
+		 */
+		public float getAffinity() {
+			return affinity;
+		}
+
+		public int getAtomCount() {
+			return atomCount;
+		}
+
+		public float getX(int atom) {
+			return atoms.getFloat(coordinatesStart + 12 * atom);
+		}
+
+		public float getY(int atom) {
+			return atoms.getFloat(coordinatesStart + 12 * atom + 4);
+		}
+
+		public float getZ(int atom) {
+			return atoms.getFloat(coordinatesStart + 12 * atom + 8);
+		}
+
+		/**
+		 * Get the AutoDock atom type of an atom
+		 * @param atom the atom index in the pose
+		 * @return the index of the type in PdbqtPoseReader.ATOM_TYPES
+		 */
+		public int getTypeIndex(int atom) {
+			return atoms.get(coordinatesStart + 12 * atomCount + atom);
+		}
+
+		/**
+		 * Get the AutoDock atom type of an atom
+		 * @param atom the atom index in the pose
+		 * @return the type name (e.g. C, A, OA or HD)
+		 */
+		public String getType(int atom) {
+			return atomTypes[getTypeIndex(atom)];
+		}
+
+		/**
+		 * Get the coordinates of the atoms of the pose
+		 * @return a copy of the x, y and z coordinates of each atom
+		 */
+		public float[] getCoordinates() {
+
+			float[] coordinates = new float[3 * atomCount];
+
+			for (int i = 0; i < coordinates.length; i++) {
+				coordinates[i] = atoms.getFloat(coordinatesStart + 4 * i);
+			}
+			return coordinates;
+		}
+	}
+
+	/**
+	 * A writer of a new version of a store file, the atoms of the poses are written as the dockings are added
+	 * to a temporary file which replaces the store file when the writer is committed (and is deleted if the writer
+	 * is closed before)
+	 */
+	public static class Writer implements Closeable {
+
+		private final Path target;
+		private final Path temporary;
+		private final FileChannel channel;
+
+		private final List<String> keys = new ArrayList<String>();
+		private final Map<String, Integer> dockings = new HashMap<String, Integer>();
+
+		private int poseCount = 0;
+		private int[] poseDockings = new int[1024];
+		private int[] modes = new int[1024];
+		private float[] affinities = new float[1024];
+		private int[] atomCounts = new int[1024];
+		private long[] offsets = new long[1024];
+
+		private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		private long position = HEADER_SIZE;
+		private boolean committed = false;
+
+		private Writer(String path) throws IOException {
+
+			this.target = new File(path).getAbsoluteFile().toPath();
+
+			Files.createDirectories(this.target.getParent());
+
+			this.temporary = this.target.resolveSibling(this.target.getFileName() + ".tmp");
+			this.channel = FileChannel.open(this.temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		/**
+		 * Add the poses of a docking
+		 * @param pdb the PdbBind entry
+		 * @param variant the protein variant folder name
+		 * @param ligand the ligand docking folder name
+		 * @param poses the poses read from the docking output
+		 * @throws IOException in case of error in IO operations
+		 * @throws IllegalArgumentException if the docking was already added
+		 */
+		public void write(String pdb, String variant, String ligand, DockingPoses poses) throws IOException {
+
+			String key = getKey(pdb, variant, ligand);
+
+			if(this.dockings.containsKey(key)) {
+				throw new IllegalArgumentException("The poses of " + key + " were already written");
+			}
+
+			int docking = this.keys.size();
+
+			this.keys.add(key);
+			this.dockings.put(key, docking);
+
+			for (int p = 0; p < poses.getPoseCount(); p++) {
+
+				int atomCount = poses.getAtomCount(p);
+				int size = (13 * atomCount + 3) & ~3;
+
+				// a pose never crosses a mapped segment
+				if(size > 0 && (this.position >>> SEGMENT_BITS) != ((this.position + size - 1) >>> SEGMENT_BITS)) {
+					this.position = ((this.position >>> SEGMENT_BITS) + 1) << SEGMENT_BITS;
+				}
+
+				addPose(docking, poses.getMode(p), poses.getAffinity(p), atomCount, this.position);
+
+				this.buffer.clear();
+
+				ensure(size);
+
+				for (float coordinate : poses.getCoordinates(p)) {
+					this.buffer.putFloat(coordinate);
+				}
+
+				this.buffer.put(poses.getTypes(p));
+
+				while (this.buffer.position() < size) {
+					this.buffer.put((byte) 0);
+				}
+
+				writeBuffer();
+			}
+		}
+
+		/**
+		 * Write the pose and docking tables and the header and replace the store file with the new version
+		 * @throws IOException in case of error in IO operations
+		 */
+		public void commit() throws IOException {
+
+			Integer[] order = new Integer[this.keys.size()];
+
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+
+			Arrays.sort(order, (a, b) -> this.keys.get(a).compareTo(this.keys.get(b)));
+
+			int[] sortedIndex = new int[order.length];
+
+			for (int i = 0; i < order.length; i++) {
+				sortedIndex[order[i]] = i;
+			}
+
+			int[] firstPoses = new int[order.length];
+			int[] poseCounts = new int[order.length];
+
+			for (int p = 0; p < this.poseCount; p++) {
+				poseCounts[sortedIndex[this.poseDockings[p]]]++;
+			}
+
+			for (int d = 1; d < order.length; d++) {
+				firstPoses[d] = firstPoses[d - 1] + poseCounts[d - 1];
+			}
+
+			// the poses of a docking are added together, so they are moved to the position of the docking in the sorted table
+			int[] tableIndex = new int[this.poseCount];
+			int[] written = new int[order.length];
+
+			for (int p = 0; p < this.poseCount; p++) {
+				int docking = sortedIndex[this.poseDockings[p]];
+				tableIndex[firstPoses[docking] + written[docking]++] = p;
+			}
+
+			this.position = (this.position + RECORD_SIZE - 1) & ~(long) (RECORD_SIZE - 1);
+
+			long poseTableOffset = this.position;
+
+			this.buffer.clear();
+
+			for (int i = 0; i < this.poseCount; i++) {
+
+				int p = tableIndex[i];
+
+				if(this.buffer.remaining() < RECORD_SIZE) {
+					writeBuffer();
+					this.buffer.clear();
+				}
+
+				this.buffer.putInt(sortedIndex[this.poseDockings[p]]);
+				this.buffer.putInt(this.modes[p]);
+				this.buffer.putFloat(this.affinities[p]);
+				this.buffer.putInt(this.atomCounts[p]);
+				this.buffer.putLong(this.offsets[p]);
+				this.buffer.putLong(0L);
+			}
+
+			writeBuffer();
+
+			long dockingTableOffset = this.position;
+
+			this.buffer.clear();
+
+			for (int d = 0; d < order.length; d++) {
+
+				putString(this.keys.get(order[d]));
+
+				ensure(8);
+				this.buffer.putInt(firstPoses[d]);
+				this.buffer.putInt(poseCounts[d]);
+			}
+
+			ensure(2);
+			this.buffer.putShort((short) PdbqtPoseReader.ATOM_TYPES.length);
+
+			for (String type : PdbqtPoseReader.ATOM_TYPES) {
+				putString(type);
+			}
+
+			writeBuffer();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			header.put(MAGIC);
+			header.putInt(this.poseCount);
+			header.putInt(order.length);
+			header.putLong(poseTableOffset);
+			header.putLong(dockingTableOffset);
+
+			header.clear();
+
+			while (header.hasRemaining()) {
+				this.channel.write(header, header.position());
+			}
+
+			this.channel.force(true);
+			this.channel.close();
+
+			Files.move(this.temporary, this.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			this.committed = true;
+		}
+
+		/**
+		 * Get the number of dockings added
+		 * @return the number of dockings
+		 */
+		public int size() {
+			return this.keys.size();
+		}
+
+		/**
+		 * Get the number of poses added
+		 * @return the number of poses
+		 */
+		public int getPoseCount() {
+			return this.poseCount;
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if(!this.committed) {
+				this.channel.close();
+				Files.deleteIfExists(this.temporary);
+			}
+		}
+
+		private void addPose(int docking, int mode, float affinity, int atomCount, long offset) {
+
+			if(this.poseCount == this.modes.length) {
+
+				int capacity = this.modes.length * 2;
+
+				this.poseDockings = Arrays.copyOf(this.poseDockings, capacity);
+				this.modes = Arrays.copyOf(this.modes, capacity);
+				this.affinities = Arrays.copyOf(this.affinities, capacity);
+				this.atomCounts = Arrays.copyOf(this.atomCounts, capacity);
+				this.offsets = Arrays.copyOf(this.offsets, capacity);
+			}
+
+			this.poseDockings[this.poseCount] = docking;
+			this.modes[this.poseCount] = mode;
+			this.affinities[this.poseCount] = affinity;
+			this.atomCounts[this.poseCount] = atomCount;
+			this.offsets[this.poseCount] = offset;
+
+			this.poseCount++;
+		}
+
+		private void writeBuffer() throws IOException {
+
+			this.buffer.flip();
+
+			while (this.buffer.hasRemaining()) {
+				this.position += this.channel.write(this.buffer, this.position);
+			}
+		}
+
+		private void putString(String value) {
+
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			ensure(2 + bytes.length);
+			this.buffer.putShort((short) bytes.length);
+			this.buffer.put(bytes);
+		}
+
+		private void ensure(int bytes) {
+
+			if(this.buffer.remaining() < bytes) {
+
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes))
+						.order(ByteOrder.LITTLE_ENDIAN);
+
+				this.buffer.flip();
+				larger.put(this.buffer);
+
+				this.buffer = larger;
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.Column;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+
+/**
+ * A writer of a dataset of string rows in one of the output formats, the rows are converted and written
+ * in batches of DataHandler.DATASET_BATCH_SIZE rows as they come, so the dataset does not have to be in memory.
+ *
+ * The TSV format writes the values as they are (with the header row). For the other formats the column types are
+ * given by the caller, or inferred from the first batch of rows (see DataHandler.inferDatasetSchema) when they are
+ * null. A later value which does not match the type of its column is written as an empty cell and counted
+ * in getInvalidValues().
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class RowDatasetWriter implements Closeable {
+
+	private final String path;
+	private final String[] header;
+	private final boolean strings;
+	private final DatasetWriter writer;
+
+	private FeatureMatrix batch;
+	private List<String[]> pending = new ArrayList<String[]>();
+
+	private long invalidValues = 0;
+
+	/**
+	 * Create a writer
+	 * @param path of the file to write the dataset to it (the extension is replaced by the format extension)
+	 * @param header row for the dataset, if null the columns are named column1..N
+	 * @param types the type of each column (STRING, INT or DOUBLE), if null they are inferred from the first batch of rows
+	 * @param format the output format
+	 * @throws IOException in case of error in IO operations
+	 */
+	public RowDatasetWriter(String path, String[] header, ColumnType[] types, OutputFormat format) throws IOException {
+
+		this.path = DataHandler.getOutputPath(path, format);
+		this.header = header;
+		this.strings = format == OutputFormat.TSV;
+
+		if(this.strings && header != null) {
+			types = new ColumnType[header.length];
+		}
+
+		if(types != null) {
+			this.batch = createBatch(header, types, this.strings);
+			this.pending = null;
+		}
+
+		this.writer = DataHandler.createDatasetWriter(path, format, FingerprintEncoding.COLUMNS);
+	}
+
+	/**
+	 * Write a row of the dataset
+	 * @param row the values of the row, missing values at the end are empty cells
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeRow(String[] row) throws IOException {
+
+		if(this.batch == null) {
+
+			this.pending.add(row);
+
+			if(this.pending.size() == DataHandler.DATASET_BATCH_SIZE) {
+				writePending();
+			}
+			return;
+		}
+
+		addRow(row);
+
+		if(this.batch.getRowCount() == DataHandler.DATASET_BATCH_SIZE) {
+			this.writer.writeBatch(this.batch);
+			this.batch.clear();
+		}
+	}
+
+	/**
+	 * Get the number of values written as empty cells because they do not match the type of their column
+	 * @return the number of invalid values
+	 */
+	public long getInvalidValues() {
+		return invalidValues;
+	}
+
+	/**
+	 * Get the number of rows written so far
+	 * @return the number of rows
+	 */
+	public long getRowCount() {
+		return this.writer.getRowCount() + (this.batch != null ? this.batch.getRowCount() : this.pending.size());
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		try {
+
+			if(this.batch == null) {
+				writePending();
+			}
+
+			this.writer.writeBatch(this.batch);
+
+		} finally {
+			this.writer.close();
+		}
+
+		if(this.invalidValues > 0) {
+			System.out.println(this.path + ": " + this.invalidValues + " values do not match the type of their column "
+					+ "and are written as empty cells");
+		}
+	}
+
+	/**
+	 * Infer the schema from the buffered rows and write them
+	 */
+	private void writePending() throws IOException {
+
+		FeatureMatrix inferred = DataHandler.inferDatasetSchema(this.pending, this.header);
+
+		this.batch = this.strings ? createBatch(this.header, new ColumnType[inferred.getColumns().size()], true) : inferred;
+
+		for (String[] row : this.pending) {
+			addRow(row);
+		}
+
+		this.pending = null;
+
+		this.writer.writeBatch(this.batch);
+		this.batch.clear();
+	}
+
+	private void addRow(String[] row) {
+
+		List<Column> columns = this.batch.getColumns();
+
+		this.batch.appendRow();
+
+		for(int c=0; c<columns.size(); c++) {
+
+			String value = c < row.length ? row[c] : null;
+
+			ColumnType type = columns.get(c).getType();
+
+			if(type == ColumnType.STRING) {
+				this.batch.add(value);
+			}else if(DataHandler.isEmptyValue(value)) {
+				this.batch.addEmpty();
+			}else if(type == ColumnType.INT && DataHandler.isInteger(value.trim())) {
+				this.batch.add(Integer.parseInt(value.trim()));
+			}else if(type == ColumnType.DOUBLE && DataHandler.isDouble(value.trim())) {
+				this.batch.add(Double.parseDouble(value.trim()));
+			}else {
+				this.batch.addEmpty();
+				this.invalidValues++;
+			}
+		}
+	}
+
+	private static FeatureMatrix createBatch(String[] header, ColumnType[] types, boolean strings) {
+
+		FeatureMatrix matrix = FeatureMatrix.create();
+
+		for(int c=0; c<types.length; c++) {
+			matrix.addColumn(header != null && c < header.length ? header[c] : "column" + (c + 1),
+					strings || types[c] == null ? ColumnType.STRING : types[c]);
+		}
+		return matrix;
+	}
+}
@@ -0,0 +1,268 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A streaming reader of the data items ("&gt; &lt;tag&gt;" fields) of SDF files which does not build the molecules.
+ *
+ * The atom and bond blocks of a V2000 record are skipped by the counts of its counts line without decoding the lines,
+ * the rest of the connection table is skipped up to "M  END" (this also covers the V3000 records), and only the values
+ * of the requested tags are decoded. Multi-line values are joined with "\n" as CDK does.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class SdfPropertyScanner {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final String[] tags;
+
+	private SdfPropertyScanner(String[] tags) {
+		this.tags = tags;
+	}
+
+	/**
+	 * Create a scanner extracting some data items
+	 * @param tags the names of the data items (e.g. "chembl_id")
+	 * @return a SdfPropertyScanner object, it has no state and can be shared between threads
+	 */
+	public static SdfPropertyScanner create(String... tags) {
+		return new SdfPropertyScanner(Arrays.copyOf(tags, tags.length));
+	}
+
+	/**
+	 * A method to read the requested data items of all the records of a SDF file
+	 * @param file the SDF file
+	 * @return one array per record holding the values in the order of the tags, null for the missing items
+	 * @throws IOException in case of error in IO operations
+	 */
+	public List<String[]> scan(File file) throws IOException {
+
+		try (InputStream in = new FileInputStream(file)) {
+			return scan(in);
+		}
+	}
+
+	/**
+	 * A method to read the requested data items of all the records of a SDF stream
+	 * @param in the SDF stream, it is not closed by this method
+	 * @return one array per record holding the values in the order of the tags, null for the missing items
+	 * @throws IOException in case of error in IO operations
+	 */
+	public List<String[]> scan(InputStream in) throws IOException {
+
+		List<String[]> records = new ArrayList<String[]>();
+
+		LineReader reader = new LineReader(in);
+
+		while (true) {
+
+			// header block: title, program and comment lines
+			if (!reader.skipLine()) {
+				break;
+			}
+
+			reader.skipLine();
+			reader.skipLine();
+
+			String counts = reader.readLine();
+
+			if (counts == null) {
+				break;
+			}
+
+			if (!counts.contains("V3000") && counts.length() >= 6) {
+				reader.skipLines(parseCount(counts, 0) + parseCount(counts, 3));
+			}
+
+			String[] values = new String[this.tags.length];
+
+			String line = reader.readLine();
+
+			// the properties block (or the V3000 connection table) until M  END
+			while (line != null && !line.startsWith("M  END") && !line.startsWith("$$$$")) {
+				line = reader.readLine();
+			}
+
+			while (line != null && !line.startsWith("$$$$")) {
+
+				int tag = line.startsWith(">") ? indexOfTag(line) : -1;
+
+				line = reader.readLine();
+
+				if (tag < 0) {
+					continue;
+				}
+
+				StringBuilder value = new StringBuilder();
+
+				while (line != null && !line.trim().isEmpty() && !line.startsWith("$$$$")) {
+
+					if (value.length() > 0) {
+						value.append('\n');
+					}
+					value.append(line);
+
+					line = reader.readLine();
+				}
+
+				values[tag] = value.toString();
+			}
+
+			records.add(values);
+
+			if (line == null) {
+				break;
+			}
+		}
+
+		return records;
+	}
+
+	private int indexOfTag(String line) {
+
+		int start = line.indexOf('<');
+		int end = line.indexOf('>', start + 1);
+
+		if (start < 0 || end < 0) {
+			return -1;
+		}
+
+		String name = line.substring(start + 1, end);
+
+		for (int i = 0; i < this.tags.length; i++) {
+			if (this.tags[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int parseCount(String counts, int offset) {
+
+		try {
+			return Integer.parseInt(counts.substring(offset, offset + 3).trim());
+		} catch (NumberFormatException e) {
+			// a malformed counts line, the connection table is skipped up to M  END instead
+			return 0;
+		}
+	}
+
+	/**
+	 * A line reader over a byte buffer, lines which are skipped are never decoded
+	 */
+	private static class LineReader {
+
+		private final InputStream in;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private int position = 0;
+		private int limit = 0;
+
+		private byte[] line = new byte[256];
+
+		LineReader(InputStream in) {
+			this.in = in;
+		}
+
+		boolean skipLine() throws IOException {
+
+			while (true) {
+
+				if (this.position == this.limit && !fill()) {
+					return false;
+				}
+
+				for (int i = this.position; i < this.limit; i++) {
+					if (this.buffer[i] == '\n') {
+						this.position = i + 1;
+						return true;
+					}
+				}
+				this.position = this.limit;
+			}
+		}
+
+		void skipLines(int count) throws IOException {
+
+			int skipped = 0;
+
+			while (skipped < count && skipLine()) {
+				skipped++;
+			}
+		}
+
+		String readLine() throws IOException {
+
+			int length = 0;
+
+			while (true) {
+
+				if (this.position == this.limit && !fill()) {
+					return length == 0 ? null : decode(length);
+				}
+
+				byte b = this.buffer[this.position++];
+
+				if (b == '\n') {
+					return decode(length);
+				}
+
+				if (length == this.line.length) {
+					this.line = Arrays.copyOf(this.line, 2 * length);
+				}
+				this.line[length++] = b;
+			}
+		}
+
+		private String decode(int length) {
+
+			if (length > 0 && this.line[length - 1] == '\r') {
+				length--;
+			}
+			return new String(this.line, 0, length, StandardCharsets.ISO_8859_1);
+		}
+
+		private boolean fill() throws IOException {
+
+			int read = this.in.read(this.buffer);
+
+			if (read <= 0) {
+				return false;
+			}
+
+			this.position = 0;
+			this.limit = read;
+
+			return true;
+		}
+	}
+}
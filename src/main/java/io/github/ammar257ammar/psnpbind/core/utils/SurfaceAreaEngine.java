@@ -0,0 +1,469 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.vecmath.Point3d;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.periodictable.PeriodicTable;
+
+/**
+ * A class to compute the solvent accessible surface area of a molecule on primitive coordinate arrays.
+ *
+ * It follows the numerical method of CDK NumericalSurface: every atom is represented by a sphere of its van der Waals
+ * radius plus the probe radius, the sphere is sampled by the vertices of a subdivided icosahedron and the area of the
+ * atom is the fraction of the points which are not inside a neighbour sphere. NumericalSurface walks the 3 vertices of
+ * every triangle, so a vertex shared by k triangles is counted k times; here each unique vertex is tested once and
+ * weighted by k, which gives the same areas with a sixth of the tests. Neighbours are found with a uniform grid
+ * instead of comparing all pairs of atoms.
+ *
+ * An engine keeps reusable work arrays and should be confined to one thread, the sphere point sets are shared.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class SurfaceAreaEngine {
+
+	/**
+	 * The probe radius used by CDK NumericalSurface
+	 */
+	public static final double DEFAULT_PROBE_RADIUS = 1.4;
+
+	/**
+	 * The resolution of the sphere point sets, the level is the icosahedron tessellation level of CDK Tessellate
+	 * (20 * 4^(level - 1) triangles and 10 * 4^(level - 1) + 2 unique points)
+	 */
+	public enum Resolution
+	{
+		COARSE(2), MEDIUM(3), STANDARD(4), FINE(5);
+
+		private final int level;
+
+		private volatile SpherePoints points;
+
+		Resolution(int level) {
+			this.level = level;
+		}
+
+		/**
+		 * Get the tessellation level
+		 * @return the level of the icosahedron subdivision, STANDARD is the NumericalSurface default
+		 */
+		public int getLevel() {
+			return level;
+		}
+
+		private SpherePoints getPoints() {
+
+			SpherePoints result = this.points;
+
+			if(result == null) {
+				synchronized (this) {
+					if(this.points == null) {
+						this.points = SpherePoints.create(this.level);
+					}
+					result = this.points;
+				}
+			}
+			return result;
+		}
+	}
+
+	private final Resolution resolution;
+	private final double probeRadius;
+
+	// work arrays reused between molecules
+	private int[] cellStart = new int[0];
+	private int[] cellAtoms = new int[0];
+	private int[] atomCells = new int[0];
+	private double[] neighbours = new double[0];
+
+	private SurfaceAreaEngine(Resolution resolution, double probeRadius) {
+		this.resolution = resolution;
+		this.probeRadius = probeRadius;
+	}
+
+	/**
+	 * Create an engine with the NumericalSurface defaults (STANDARD resolution and a probe radius of 1.4)
+	 * @return a SurfaceAreaEngine object
+	 */
+	public static SurfaceAreaEngine create() {
+		return new SurfaceAreaEngine(Resolution.STANDARD, DEFAULT_PROBE_RADIUS);
+	}
+
+	/**
+	 * Create an engine
+	 * @param resolution the resolution of the sphere point sets
+	 * @param probeRadius the solvent probe radius
+	 * @return a SurfaceAreaEngine object
+	 */
+	public static SurfaceAreaEngine create(Resolution resolution, double probeRadius) {
+		return new SurfaceAreaEngine(resolution, probeRadius);
+	}
+
+	/**
+	 * A method to compute the total surface area of a molecule with 3D coordinates and CDK van der Waals radii
+	 * @param ac the molecule
+	 * @return the total surface area, the same value as NumericalSurface.getTotalSurfaceArea() within the precision of sums
+	 */
+	public double getTotalSurfaceArea(IAtomContainer ac) {
+
+		int n = ac.getAtomCount();
+
+		double[] coords = new double[3 * n];
+		double[] radii = new double[n];
+
+		for (int i = 0; i < n; i++) {
+
+			IAtom atom = ac.getAtom(i);
+			Point3d point = atom.getPoint3d();
+
+			if(point == null) {
+				throw new IllegalArgumentException("One or more atoms had no 3D coordinate set");
+			}
+
+			Double radius = PeriodicTable.getVdwRadius(atom.getSymbol());
+
+			if(radius == null) {
+				throw new IllegalArgumentException("No van der Waals radius for the element " + atom.getSymbol());
+			}
+
+			coords[3 * i] = point.x;
+			coords[3 * i + 1] = point.y;
+			coords[3 * i + 2] = point.z;
+			radii[i] = radius;
+		}
+
+		return getTotalSurfaceArea(coords, radii);
+	}
+
+	/**
+	 * A method to compute the total surface area of a set of spheres
+	 * @param coords the atom coordinates as x, y, z triples
+	 * @param radii the atom radii (without the probe radius)
+	 * @return the total surface area
+	 */
+	public double getTotalSurfaceArea(double[] coords, double[] radii) {
+
+		double total = 0.0;
+
+		for (double area : getAtomAreas(coords, radii)) {
+			total += area;
+		}
+		return total;
+	}
+
+	/**
+	 * A method to compute the surface area of each atom of a set of spheres
+	 * @param coords the atom coordinates as x, y, z triples
+	 * @param radii the atom radii (without the probe radius)
+	 * @return the surface area of each atom
+	 */
+	public double[] getAtomAreas(double[] coords, double[] radii) {
+
+		int n = radii.length;
+
+		if(coords.length != 3 * n) {
+			throw new IllegalArgumentException("The coordinates array should hold 3 values per atom");
+		}
+
+		double[] areas = new double[n];
+
+		if(n == 0) {
+			return areas;
+		}
+
+		SpherePoints points = this.resolution.getPoints();
+
+		double maxRadius = 0.0;
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+
+		for (int i = 0; i < n; i++) {
+
+			maxRadius = Math.max(maxRadius, radii[i] + this.probeRadius);
+
+			minX = Math.min(minX, coords[3 * i]);
+			minY = Math.min(minY, coords[3 * i + 1]);
+			minZ = Math.min(minZ, coords[3 * i + 2]);
+			maxX = Math.max(maxX, coords[3 * i]);
+			maxY = Math.max(maxY, coords[3 * i + 1]);
+			maxZ = Math.max(maxZ, coords[3 * i + 2]);
+		}
+
+		// two spheres overlap only if their centers are closer than 2 * maxRadius, so only adjacent cells are scanned
+		double cellSize = 2 * maxRadius;
+
+		int nx = (int) ((maxX - minX) / cellSize) + 1;
+		int ny = (int) ((maxY - minY) / cellSize) + 1;
+		int nz = (int) ((maxZ - minZ) / cellSize) + 1;
+
+		buildGrid(coords, n, minX, minY, minZ, cellSize, nx, ny, nz);
+
+		for (int i = 0; i < n; i++) {
+
+			double xi = coords[3 * i];
+			double yi = coords[3 * i + 1];
+			double zi = coords[3 * i + 2];
+
+			double ri = radii[i] + this.probeRadius;
+
+			int cell = this.atomCells[i];
+
+			int cx = cell % nx;
+			int cy = (cell / nx) % ny;
+			int cz = cell / (nx * ny);
+
+			int count = 0;
+
+			for (int z = Math.max(cz - 1, 0); z <= Math.min(cz + 1, nz - 1); z++) {
+				for (int y = Math.max(cy - 1, 0); y <= Math.min(cy + 1, ny - 1); y++) {
+					for (int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, nx - 1); x++) {
+
+						int c = (z * ny + y) * nx + x;
+
+						for (int k = this.cellStart[c]; k < this.cellStart[c + 1]; k++) {
+
+							int j = this.cellAtoms[k];
+
+							if(j == i) {
+								continue;
+							}
+
+							double dx = coords[3 * j] - xi;
+							double dy = coords[3 * j + 1] - yi;
+							double dz = coords[3 * j + 2] - zi;
+
+							double d2 = dx * dx + dy * dy + dz * dz;
+							double rj = radii[j] + this.probeRadius;
+
+							if(d2 >= (ri + rj) * (ri + rj)) {
+								continue;
+							}
+
+							// a unit point p is buried by j when |ri * p - d| < rj, i.e. p.d > (d2 + ri^2 - rj^2) / (2 * ri)
+							if(4 * count + 4 > this.neighbours.length) {
+								this.neighbours = Arrays.copyOf(this.neighbours, Math.max(64, 2 * this.neighbours.length));
+							}
+
+							this.neighbours[4 * count] = dx;
+							this.neighbours[4 * count + 1] = dy;
+							this.neighbours[4 * count + 2] = dz;
+							this.neighbours[4 * count + 3] = (d2 + ri * ri - rj * rj) / (2 * ri);
+
+							count++;
+						}
+					}
+				}
+			}
+
+			areas[i] = 4 * Math.PI * ri * ri * exposedWeight(points, count) / points.totalWeight;
+		}
+
+		return areas;
+	}
+
+	private int exposedWeight(SpherePoints points, int count) {
+
+		double[] nb = this.neighbours;
+
+		int exposed = 0;
+		int last = 0;
+
+		for (int p = 0; p < points.size; p++) {
+
+			double px = points.x[p];
+			double py = points.y[p];
+			double pz = points.z[p];
+
+			// neighbouring points are usually buried by the same atom, so it is tested first
+			boolean buried = count > 0
+					&& nb[4 * last] * px + nb[4 * last + 1] * py + nb[4 * last + 2] * pz > nb[4 * last + 3];
+
+			for (int k = 0; k < count && !buried; k++) {
+
+				if(nb[4 * k] * px + nb[4 * k + 1] * py + nb[4 * k + 2] * pz > nb[4 * k + 3]) {
+					buried = true;
+					last = k;
+				}
+			}
+
+			if(!buried) {
+				exposed += points.weight[p];
+			}
+		}
+		return exposed;
+	}
+
+	private void buildGrid(double[] coords, int n, double minX, double minY, double minZ, double cellSize, int nx,
+			int ny, int nz) {
+
+		int cells = nx * ny * nz;
+
+		if(this.cellStart.length < cells + 1) {
+			this.cellStart = new int[cells + 1];
+		} else {
+			Arrays.fill(this.cellStart, 0, cells + 1, 0);
+		}
+
+		if(this.cellAtoms.length < n) {
+			this.cellAtoms = new int[n];
+			this.atomCells = new int[n];
+		}
+
+		for (int i = 0; i < n; i++) {
+
+			int x = Math.min((int) ((coords[3 * i] - minX) / cellSize), nx - 1);
+			int y = Math.min((int) ((coords[3 * i + 1] - minY) / cellSize), ny - 1);
+			int z = Math.min((int) ((coords[3 * i + 2] - minZ) / cellSize), nz - 1);
+
+			this.atomCells[i] = (z * ny + y) * nx + x;
+			this.cellStart[this.atomCells[i] + 1]++;
+		}
+
+		for (int c = 0; c < cells; c++) {
+			this.cellStart[c + 1] += this.cellStart[c];
+		}
+
+		// counting sort of the atoms by cell, cellStart[c] is restored when all the atoms are placed
+		for (int i = 0; i < n; i++) {
+			this.cellAtoms[this.cellStart[this.atomCells[i]]++] = i;
+		}
+
+		for (int c = cells; c > 0; c--) {
+			this.cellStart[c] = this.cellStart[c - 1];
+		}
+		this.cellStart[0] = 0;
+	}
+
+	/**
+	 * The unique vertices of a subdivided icosahedron on the unit sphere, each weighted by the number of
+	 * triangles sharing it
+	 */
+	private static class SpherePoints {
+
+		private final int size;
+		private final double[] x;
+		private final double[] y;
+		private final double[] z;
+		private final int[] weight;
+		private final int totalWeight;
+
+		private SpherePoints(List<double[]> vertices, int[] weight, int totalWeight) {
+
+			this.size = vertices.size();
+			this.x = new double[this.size];
+			this.y = new double[this.size];
+			this.z = new double[this.size];
+			this.weight = weight;
+			this.totalWeight = totalWeight;
+
+			for (int i = 0; i < this.size; i++) {
+				this.x[i] = vertices.get(i)[0];
+				this.y[i] = vertices.get(i)[1];
+				this.z[i] = vertices.get(i)[2];
+			}
+		}
+
+		private static SpherePoints create(int level) {
+
+			double a = 0.5257311121191336;
+			double b = 0.8506508083520399;
+
+			List<double[]> vertices = new ArrayList<double[]>();
+
+			double[][] icosahedron = { { -a, 0, b }, { a, 0, b }, { -a, 0, -b }, { a, 0, -b }, { 0, b, a }, { 0, b, -a },
+					{ 0, -b, a }, { 0, -b, -a }, { b, a, 0 }, { -b, a, 0 }, { b, -a, 0 }, { -b, -a, 0 } };
+
+			for (double[] vertex : icosahedron) {
+				vertices.add(vertex);
+			}
+
+			int[][] triangles = { { 0, 4, 1 }, { 0, 9, 4 }, { 9, 5, 4 }, { 4, 5, 8 }, { 4, 8, 1 }, { 8, 10, 1 },
+					{ 8, 3, 10 }, { 5, 3, 8 }, { 5, 2, 3 }, { 2, 7, 3 }, { 7, 10, 3 }, { 7, 6, 10 }, { 7, 11, 6 },
+					{ 11, 0, 6 }, { 0, 1, 6 }, { 6, 1, 10 }, { 9, 0, 11 }, { 9, 11, 2 }, { 9, 2, 5 }, { 7, 2, 11 } };
+
+			for (int l = 1; l < level; l++) {
+
+				Map<Long, Integer> midpoints = new HashMap<Long, Integer>();
+				int[][] subdivided = new int[triangles.length * 4][];
+
+				for (int t = 0; t < triangles.length; t++) {
+
+					int v0 = triangles[t][0];
+					int v1 = triangles[t][1];
+					int v2 = triangles[t][2];
+
+					int m01 = midpoint(vertices, midpoints, v0, v1);
+					int m12 = midpoint(vertices, midpoints, v1, v2);
+					int m20 = midpoint(vertices, midpoints, v2, v0);
+
+					subdivided[4 * t] = new int[] { v0, m01, m20 };
+					subdivided[4 * t + 1] = new int[] { m01, v1, m12 };
+					subdivided[4 * t + 2] = new int[] { m20, m12, v2 };
+					subdivided[4 * t + 3] = new int[] { m01, m12, m20 };
+				}
+				triangles = subdivided;
+			}
+
+			int[] weight = new int[vertices.size()];
+
+			for (int[] triangle : triangles) {
+				for (int v : triangle) {
+					weight[v]++;
+				}
+			}
+
+			return new SpherePoints(vertices, weight, 3 * triangles.length);
+		}
+
+		private static int midpoint(List<double[]> vertices, Map<Long, Integer> midpoints, int v0, int v1) {
+
+			long key = ((long) Math.min(v0, v1) << 32) | Math.max(v0, v1);
+
+			Integer index = midpoints.get(key);
+
+			if(index == null) {
+
+				double[] p0 = vertices.get(v0);
+				double[] p1 = vertices.get(v1);
+
+				double mx = p0[0] + p1[0];
+				double my = p0[1] + p1[1];
+				double mz = p0[2] + p1[2];
+
+				double norm = Math.sqrt(mx * mx + my * my + mz * mz);
+
+				index = vertices.size();
+				vertices.add(new double[] { mx / norm, my / norm, mz / norm });
+				midpoints.put(key, index);
+			}
+			return index;
+		}
+	}
+}
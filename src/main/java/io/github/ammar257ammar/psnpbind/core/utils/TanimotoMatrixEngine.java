@@ -0,0 +1,231 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.github.ammar257ammar.psnpbind.core.model.SimilarityMatrix;
+
+/**
+ * A class to compute the all-vs-all Tanimoto similarity matrix of packed fingerprints (see FingerprintTools).
+ *
+ * The upper triangle is split in square tiles of rows and columns (256 fingerprints of 1024 bits are 32 KB, so the two
+ * blocks of a tile stay in the CPU caches) and the tiles are computed in parallel on the current fork-join pool.
+ * Pairs whose popcounts cannot reach the threshold are skipped before their common bits are counted.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class TanimotoMatrixEngine {
+
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private double threshold = 0.0;
+	private int tileSize = DEFAULT_TILE_SIZE;
+
+	private TanimotoMatrixEngine() {
+	}
+
+	/**
+	 * Create an engine keeping all the non-zero similarities
+	 * @return a TanimotoMatrixEngine object
+	 */
+	public static TanimotoMatrixEngine create() {
+		return new TanimotoMatrixEngine();
+	}
+
+	/**
+	 * Set the minimum similarity of the stored values
+	 * @param threshold the similarity threshold, 0 to keep all the non-zero similarities
+	 * @return the current TanimotoMatrixEngine object
+	 */
+	public TanimotoMatrixEngine threshold(double threshold) {
+		this.threshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Set the number of fingerprints of the row and column blocks of a tile
+	 * @param tileSize the tile size
+	 * @return the current TanimotoMatrixEngine object
+	 */
+	public TanimotoMatrixEngine tileSize(int tileSize) {
+
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("The tile size must be positive");
+		}
+		this.tileSize = tileSize;
+		return this;
+	}
+
+	/**
+	 * A method to compute the similarity matrix
+	 * @param fingerprints the packed fingerprints, one row of words after the other
+	 * @param words the number of words of each fingerprint
+	 * @return the sparse similarity matrix (both triangles, without the diagonal)
+	 */
+	public SimilarityMatrix compute(long[] fingerprints, int words) {
+
+		int rows = words == 0 ? 0 : fingerprints.length / words;
+
+		int[] counts = new int[rows];
+
+		for (int row = 0; row < rows; row++) {
+			counts[row] = FingerprintTools.cardinality(fingerprints, row * words, words);
+		}
+
+		int blocks = (rows + this.tileSize - 1) / this.tileSize;
+
+		int[] tileRows = new int[blocks * (blocks + 1) / 2];
+		int[] tileColumns = new int[tileRows.length];
+
+		for (int i = 0, t = 0; i < blocks; i++) {
+			for (int j = i; j < blocks; j++, t++) {
+				tileRows[t] = i;
+				tileColumns[t] = j;
+			}
+		}
+
+		List<Tile> tiles = IntStream.range(0, tileRows.length).parallel()
+				.mapToObj(t -> computeTile(fingerprints, words, counts, tileRows[t], tileColumns[t]))
+				.collect(Collectors.toList());
+
+		// each pair is stored in its two rows, the rows are then sorted by column
+		long[] rowPointers = new long[rows + 1];
+
+		for (Tile tile : tiles) {
+			for (int k = 0; k < tile.size; k++) {
+				rowPointers[tile.rows[k] + 1]++;
+				rowPointers[tile.columns[k] + 1]++;
+			}
+		}
+
+		for (int row = 0; row < rows; row++) {
+			rowPointers[row + 1] += rowPointers[row];
+		}
+
+		if (rowPointers[rows] > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many similarities (" + rowPointers[rows] + "), use a higher threshold");
+		}
+
+		long[] entries = new long[(int) rowPointers[rows]];
+		long[] next = Arrays.copyOf(rowPointers, rows);
+
+		for (Tile tile : tiles) {
+			for (int k = 0; k < tile.size; k++) {
+
+				long value = Float.floatToRawIntBits(tile.values[k]) & 0xFFFFFFFFL;
+
+				entries[(int) next[tile.rows[k]]++] = ((long) tile.columns[k] << 32) | value;
+				entries[(int) next[tile.columns[k]]++] = ((long) tile.rows[k] << 32) | value;
+			}
+		}
+
+		int[] columns = new int[entries.length];
+		float[] values = new float[entries.length];
+
+		IntStream.range(0, rows).parallel().forEach(row -> {
+
+			int from = (int) rowPointers[row];
+			int to = (int) rowPointers[row + 1];
+
+			Arrays.sort(entries, from, to);
+
+			for (int k = from; k < to; k++) {
+				columns[k] = (int) (entries[k] >>> 32);
+				values[k] = Float.intBitsToFloat((int) entries[k]);
+			}
+		});
+
+		return new SimilarityMatrix(rows, (float) this.threshold, rowPointers, columns, values);
+	}
+
+	private Tile computeTile(long[] fingerprints, int words, int[] counts, int rowBlock, int columnBlock) {
+
+		int rows = counts.length;
+
+		int rowStart = rowBlock * this.tileSize;
+		int rowEnd = Math.min(rowStart + this.tileSize, rows);
+		int columnStart = columnBlock * this.tileSize;
+		int columnEnd = Math.min(columnStart + this.tileSize, rows);
+
+		Tile tile = new Tile();
+
+		for (int i = rowStart; i < rowEnd; i++) {
+
+			int a = counts[i];
+			int offsetA = i * words;
+
+			for (int j = Math.max(columnStart, i + 1); j < columnEnd; j++) {
+
+				int b = counts[j];
+
+				// the Tanimoto similarity is at most min(a, b) / max(a, b)
+				if (Math.min(a, b) < this.threshold * Math.max(a, b) || a + b == 0) {
+					continue;
+				}
+
+				int offsetB = j * words;
+				int common = 0;
+
+				for (int w = 0; w < words; w++) {
+					common += Long.bitCount(fingerprints[offsetA + w] & fingerprints[offsetB + w]);
+				}
+
+				double similarity = (double) common / (a + b - common);
+
+				if (common > 0 && similarity >= this.threshold) {
+					tile.add(i, j, (float) similarity);
+				}
+			}
+		}
+		return tile;
+	}
+
+	/**
+	 * The similarities of one tile (upper triangle pairs)
+	 */
+	private static class Tile {
+
+		private int[] rows = new int[16];
+		private int[] columns = new int[16];
+		private float[] values = new float[16];
+
+		private int size = 0;
+
+		private void add(int row, int column, float value) {
+
+			if (this.size == this.rows.length) {
+				this.rows = Arrays.copyOf(this.rows, this.size * 2);
+				this.columns = Arrays.copyOf(this.columns, this.size * 2);
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+
+			this.rows[this.size] = row;
+			this.columns[this.size] = column;
+			this.values[this.size] = value;
+			this.size++;
+		}
+	}
+}
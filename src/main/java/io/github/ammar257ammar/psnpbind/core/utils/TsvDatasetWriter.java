@@ -0,0 +1,259 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.Column;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+
+/**
+ * A DatasetWriter for TSV files with the header as the first line.
+ * Primitive cells are formatted directly into the output buffer without creating String objects,
+ * doubles are rounded to 4 decimals and BITS columns are written with the selected encoding.
+ * With the BINARY encoding, each BITS column is written to its own fingerprint file
+ * (see DataHandler.getFingerprintFilePath) and the TSV holds the row index of each ligand in that file.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class TsvDatasetWriter implements DatasetWriter {
+
+	private final String path;
+	private final FingerprintEncoding encoding;
+	private final TsvFormatter formatter;
+
+	private OutputStream[] fingerprintFiles;
+	private ByteBuffer rowBuffer;
+
+	private long rowCount = 0;
+
+	/**
+	 * Create a TSV writer with fingerprints expanded to one "0"/"1" column per bit
+	 * @param path of the TSV file
+	 * @throws IOException in case of error in IO operations
+	 */
+	public TsvDatasetWriter(String path) throws IOException {
+		this(path, FingerprintEncoding.COLUMNS);
+	}
+
+	/**
+	 * Create a TSV writer
+	 * @param path of the TSV file
+	 * @param encoding the fingerprint encoding of BITS columns
+	 * @throws IOException in case of error in IO operations
+	 */
+	public TsvDatasetWriter(String path, FingerprintEncoding encoding) throws IOException {
+		this.path = path;
+		this.encoding = encoding;
+		this.formatter = new TsvFormatter(new FileWriter(new File(path)));
+	}
+
+	@Override
+	public void writeBatch(FeatureMatrix batch) throws IOException {
+
+		List<Column> columns = batch.getColumns();
+
+		if(this.fingerprintFiles == null) {
+			open(batch);
+		}
+
+		for(int row=0; row<batch.getRowCount(); row++) {
+
+			for(int c=0; c<columns.size(); c++) {
+
+				Column column = columns.get(c);
+
+				if(column.getType() == FeatureMatrix.ColumnType.BITS) {
+
+					writeBitsCell(batch, row, c);
+					continue;
+				}
+
+				if(!batch.isFilled(row, c)) {
+					this.formatter.writeEmpty();
+					continue;
+				}
+
+				switch(column.getType()) {
+				case STRING:
+					this.formatter.writeString(batch.getString(row, c));
+					break;
+				case INT:
+					this.formatter.writeInt(batch.getInt(row, c));
+					break;
+				case DOUBLE:
+					this.formatter.writeDouble(batch.getDouble(row, c));
+					break;
+				default:
+					break;
+				}
+			}
+			this.formatter.endLine();
+			this.rowCount++;
+		}
+	}
+
+	@Override
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		try {
+			this.formatter.close();
+		} finally {
+
+			if(this.fingerprintFiles != null) {
+
+				for(OutputStream out: this.fingerprintFiles) {
+					if(out != null) {
+						out.close();
+					}
+				}
+			}
+		}
+	}
+
+	private void open(FeatureMatrix batch) throws IOException {
+
+		List<Column> columns = batch.getColumns();
+
+		this.fingerprintFiles = new OutputStream[columns.size()];
+
+		this.formatter.writeLine(DataHandler.getFeatureMatrixHeader(batch, this.encoding));
+
+		if(this.encoding != FingerprintEncoding.BINARY) {
+			return;
+		}
+
+		for(int c=0; c<columns.size(); c++) {
+
+			Column column = columns.get(c);
+
+			if(column.getType() == FeatureMatrix.ColumnType.BITS) {
+
+				this.fingerprintFiles[c] = new FingerprintFileStream(DataHandler.getFingerprintFilePath(this.path, column.getName()),
+						column.getWidth());
+
+				if(this.rowBuffer == null || this.rowBuffer.capacity() < column.getWords() * 8) {
+					this.rowBuffer = ByteBuffer.allocate(column.getWords() * 8).order(ByteOrder.LITTLE_ENDIAN);
+				}
+			}
+		}
+	}
+
+	private void writeBitsCell(FeatureMatrix batch, int row, int c) throws IOException {
+
+		Column column = batch.getColumns().get(c);
+		boolean filled = batch.isFilled(row, c);
+
+		long[] words = batch.getBitsWords(c);
+		int offset = row * column.getWords();
+
+		if(this.encoding == FingerprintEncoding.BINARY) {
+
+			FingerprintTools.writeFingerprintRow(this.fingerprintFiles[c], this.rowBuffer, words, filled ? offset : -1,
+					column.getWords());
+
+			if(filled) {
+				this.formatter.writeInt(this.rowCount);
+			}else {
+				this.formatter.writeEmpty();
+			}
+			return;
+		}
+
+		if(!filled) {
+
+			int cells = this.encoding == FingerprintEncoding.COLUMNS ? column.getWidth() : 1;
+
+			for(int i=0; i<cells; i++) {
+				this.formatter.writeEmpty();
+			}
+			return;
+		}
+
+		switch(this.encoding) {
+		case COLUMNS:
+			for(int bit=0; bit<column.getWidth(); bit++) {
+				this.formatter.writeChar(batch.getBit(row, c, bit) ? '1' : '0');
+			}
+			break;
+		case HEX:
+			FingerprintTools.writeHex(this.formatter, words, offset, column.getWidth());
+			break;
+		case BASE64:
+			FingerprintTools.writeBase64(this.formatter, words, offset, column.getWidth());
+			break;
+		case SPARSE:
+			FingerprintTools.writeSparse(this.formatter, words, offset, column.getWords());
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * A fingerprint file stream that counts the written rows and updates the file header when closed
+	 */
+	private static class FingerprintFileStream extends OutputStream {
+
+		private final String path;
+		private final OutputStream out;
+		private final int rowBytes;
+
+		private long bytes = 0;
+
+		FingerprintFileStream(String path, int bits) throws IOException {
+			this.path = path;
+			this.out = FingerprintTools.openFingerprintFile(path, bits, 0);
+			this.rowBytes = ((bits + 63) >>> 6) * 8;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.bytes += len;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+			FingerprintTools.updateFingerprintFileRows(this.path, this.bytes / this.rowBytes);
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A small formatter that writes TSV cells into a reusable char buffer and flushes it to a Writer.
+ * Numbers are formatted digit by digit, so writing primitive values does not allocate any String.
+ *
+ * Doubles are rounded to a fixed number of decimals (4 by default, the same as Featurizer.r())
+ * and written in plain notation with trailing zeros removed (e.g. 12.5, 3.0, -0.0001).
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class TsvFormatter implements Closeable {
+
+	public static final int DEFAULT_DECIMALS = 4;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+			100000000L };
+
+	private final Writer writer;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final char[] digits = new char[20];
+
+	private final int decimals;
+	private final double scale;
+
+	private int position = 0;
+	private boolean lineStart = true;
+
+	/**
+	 * Create a formatter writing doubles with 4 decimals
+	 * @param writer the output writer
+	 */
+	public TsvFormatter(Writer writer) {
+		this(writer, DEFAULT_DECIMALS);
+	}
+
+	/**
+	 * Create a formatter
+	 * @param writer the output writer
+	 * @param decimals the number of decimals kept when writing doubles (0 to 8)
+	 */
+	public TsvFormatter(Writer writer, int decimals) {
+
+		if(decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("decimals must be between 0 and " + (POWERS_OF_TEN.length - 1));
+		}
+
+		this.writer = writer;
+		this.decimals = decimals;
+		this.scale = POWERS_OF_TEN[decimals];
+	}
+
+	/**
+	 * Write a String cell, tabs and line breaks inside the value are replaced by spaces
+	 * @param value the cell value, null is written as an empty cell
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeString(String value) throws IOException {
+
+		separator();
+
+		if(value == null) {
+			return;
+		}
+
+		for (int i = 0; i < value.length(); i++) {
+
+			char ch = value.charAt(i);
+
+			if(ch == '\t' || ch == '\n' || ch == '\r') {
+				ch = ' ';
+			}
+			put(ch);
+		}
+	}
+
+	/**
+	 * Write an integer cell
+	 * @param value the cell value
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeInt(long value) throws IOException {
+
+		separator();
+		putLong(value);
+	}
+
+	/**
+	 * Write a double cell rounded to the configured number of decimals
+	 * @param value the cell value
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeDouble(double value) throws IOException {
+
+		separator();
+
+		if(Double.isNaN(value)) {
+			putAscii("NaN");
+			return;
+		}
+
+		if(Double.isInfinite(value)) {
+			putAscii(value > 0 ? "Infinity" : "-Infinity");
+			return;
+		}
+
+		double scaledValue = value * this.scale;
+
+		if(Math.abs(scaledValue) >= Long.MAX_VALUE / 10) {
+			// far outside the range of descriptor values, not worth a dedicated path
+			putAscii(String.valueOf(value));
+			return;
+		}
+
+		long scaled = Math.round(scaledValue);
+
+		if(scaled < 0) {
+			put('-');
+			scaled = -scaled;
+		}
+
+		long unit = POWERS_OF_TEN[this.decimals];
+
+		putLong(scaled / unit);
+		put('.');
+
+		long fraction = scaled % unit;
+
+		if(fraction == 0 || this.decimals == 0) {
+			put('0');
+			return;
+		}
+
+		int width = this.decimals;
+
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			width--;
+		}
+
+		for (int i = width - 1; i >= 0; i--) {
+			put((char) ('0' + (fraction / POWERS_OF_TEN[i]) % 10));
+		}
+	}
+
+	/**
+	 * Write an empty cell
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeEmpty() throws IOException {
+		separator();
+	}
+
+	/**
+	 * Write a single character cell (e.g. a fingerprint bit "0" or "1")
+	 * @param ch the cell value
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeChar(char ch) throws IOException {
+
+		separator();
+		put(ch);
+	}
+
+	/**
+	 * Append characters to the current cell without starting a new cell
+	 * @param ch the character to append
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void append(char ch) throws IOException {
+		put(ch);
+	}
+
+	/**
+	 * Append an integer to the current cell without starting a new cell
+	 * @param value the integer to append
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void appendInt(long value) throws IOException {
+		putLong(value);
+	}
+
+	/**
+	 * Start a new cell and leave it open for append calls
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void startCell() throws IOException {
+		separator();
+	}
+
+	/**
+	 * End the current line
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void endLine() throws IOException {
+
+		put('\n');
+		this.lineStart = true;
+	}
+
+	/**
+	 * Write a full line of String cells
+	 * @param values the cells of the line
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void writeLine(String[] values) throws IOException {
+
+		for (String value : values) {
+			writeString(value);
+		}
+		endLine();
+	}
+
+	/**
+	 * Flush the buffer to the underlying writer
+	 * @throws IOException in case of error in IO operations
+	 */
+	public void flush() throws IOException {
+
+		this.writer.write(this.buffer, 0, this.position);
+		this.position = 0;
+		this.writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		this.writer.write(this.buffer, 0, this.position);
+		this.position = 0;
+		this.writer.close();
+	}
+
+	private void separator() throws IOException {
+
+		if(!this.lineStart) {
+			put('\t');
+		}
+		this.lineStart = false;
+	}
+
+	private void putLong(long value) throws IOException {
+
+		if(value == Long.MIN_VALUE) {
+			putAscii(String.valueOf(value));
+			return;
+		}
+
+		if(value < 0) {
+			put('-');
+			value = -value;
+		}
+
+		int count = 0;
+
+		do {
+			this.digits[count++] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+
+		while (count > 0) {
+			put(this.digits[--count]);
+		}
+	}
+
+	private void putAscii(String value) throws IOException {
+
+		for (int i = 0; i < value.length(); i++) {
+			put(value.charAt(i));
+		}
+	}
+
+	private void put(char ch) throws IOException {
+
+		if(this.position == this.buffer.length) {
+			this.writer.write(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+		this.buffer[this.position++] = ch;
+	}
+}
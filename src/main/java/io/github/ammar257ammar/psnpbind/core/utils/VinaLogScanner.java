@@ -0,0 +1,252 @@
+/**
+* Binding Pocket SNPs' effect on Binding Affinity Database Project (PSnpBind)
+*
+*Copyright (C) 2019-2021  Ammar Ammar <ammar257ammar@gmail.com> ORCID:0000-0002-8399-8990
+*
+*This program is free software: you can redistribute it and/or modify
+*it under the terms of the GNU Affero General Public License as published by
+*the Free Software Foundation, either version 3 of the License, or
+*(at your option) any later version.
+*
+*This program is distributed in the hope that it will be useful,
+*but WITHOUT ANY WARRANTY; without even the implied warranty of
+*MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*GNU Affero General Public License for more details.
+*
+*You should have received a copy of the GNU Affero General Public License
+*along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*/
+
+package io.github.ammar257ammar.psnpbind.core.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A scanner for the results table of AutoDock Vina docking logs:
+ *
+ * <pre>
+ * mode |   affinity | dist from best mode
+ *      | (kcal/mol) | rmsd l.b.| rmsd u.b.
+ * -----+------------+----------+----------
+ *    1         -8.5      0.000      0.000
+ *    2         -8.1      1.835      2.414
+ * </pre>
+ *
+ * A table row is a line made of an indentation and four fields separated by white spaces, the first one being
+ * a single digit mode number, and its affinity is kept if it is a number (the same rows matched by the regular
+ * expression used before). The log is read into a reused buffer and the scan stops at the first line after the
+ * table, so only the affinity values are allocated. A scanner is not thread-safe, each thread gets its own
+ * scanner with {@link #get()}.
+ *
+ * @author Ammar Ammar
+ *
+ */
+public class VinaLogScanner {
+
+	private static final ThreadLocal<VinaLogScanner> SCANNERS = ThreadLocal.withInitial(VinaLogScanner::new);
+
+	private static final int MAX_MODES = 10;
+
+	private byte[] buffer = new byte[1 << 13];
+
+	private final int[] modes = new int[MAX_MODES];
+	private final String[] affinities = new String[MAX_MODES];
+	private final int[] fields = new int[8];
+
+	private int count;
+	private String bestAffinity;
+
+	private VinaLogScanner() {
+	}
+
+	/**
+	 * Get the scanner of the current thread
+	 * @return a VinaLogScanner
+	 */
+	public static VinaLogScanner get() {
+		return SCANNERS.get();
+	}
+
+	/**
+	 * Scan the results table of a docking log
+	 * @param log the docking log path
+	 * @return the number of conformers found in the table
+	 * @throws IOException in case of error in IO operations
+	 */
+	public int scan(Path log) throws IOException {
+
+		int length = 0;
+
+		try (InputStream in = Files.newInputStream(log)) {
+
+			int read;
+
+			while ((read = in.read(this.buffer, length, this.buffer.length - length)) >= 0) {
+
+				length += read;
+
+				if(length == this.buffer.length) {
+					this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+				}
+			}
+		}
+		return scan(this.buffer, length);
+	}
+
+	/**
+	 * Scan the results table of a docking log
+	 * @param data the log content
+	 * @param length the number of bytes of the log in data
+	 * @return the number of conformers found in the table
+	 */
+	public int scan(byte[] data, int length) {
+
+		this.count = 0;
+		this.bestAffinity = "";
+
+		boolean inTable = false;
+
+		int start = 0;
+
+		while (start < length) {
+
+			int end = start;
+
+			while (end < length && data[end] != '\n' && data[end] != '\r') {
+				end++;
+			}
+
+			if(scanRow(data, start, end)) {
+				inTable = true;
+			}else if(inTable) {
+				break;
+			}
+
+			start = end < length - 1 && data[end] == '\r' && data[end + 1] == '\n' ? end + 2 : end + 1;
+		}
+		return this.count;
+	}
+
+	/**
+	 * Get the number of conformers of the last scanned log
+	 * @return the number of conformers
+	 */
+	public int getConformerCount() {
+		return count;
+	}
+
+	/**
+	 * Get the mode number of a conformer of the last scanned log
+	 * @param index the conformer index in the table
+	 * @return the mode number
+	 */
+	public int getMode(int index) {
+		return modes[index];
+	}
+
+	/**
+	 * Get the affinity of a conformer of the last scanned log
+	 * @param index the conformer index in the table
+	 * @return the affinity as written in the log (kcal/mol)
+	 */
+	public String getAffinity(int index) {
+		return affinities[index];
+	}
+
+	/**
+	 * Get the affinity of the mode 1 conformer of the last scanned log
+	 * @return the affinity as written in the log, or an empty string if the table has no mode 1
+	 */
+	public String getBestAffinity() {
+		return bestAffinity;
+	}
+
+	/**
+	 * Match one line against the table row format and keep its affinity
+	 * @return true if the line is a table row
+	 */
+	private boolean scanRow(byte[] data, int start, int end) {
+
+		int[] fields = this.fields;
+
+		int position = start;
+
+		for (int f = 0; f < 4; f++) {
+
+			int spaces = position;
+
+			while (position < end && isSpace(data[position])) {
+				position++;
+			}
+
+			if(position == spaces || position == end) {
+				return false;
+			}
+
+			fields[2 * f] = position;
+
+			while (position < end && !isSpace(data[position])) {
+				position++;
+			}
+
+			fields[2 * f + 1] = position;
+		}
+
+		if(position != end || fields[1] - fields[0] != 1 || data[fields[0]] < '0' || data[fields[0]] > '9') {
+			return false;
+		}
+
+		if(isNumber(data, fields[2], fields[3]) && this.count < MAX_MODES) {
+
+			String affinity = new String(data, fields[2], fields[3] - fields[2], StandardCharsets.US_ASCII);
+
+			this.modes[this.count] = data[fields[0]] - '0';
+			this.affinities[this.count] = affinity;
+			this.count++;
+
+			if(fields[0] - start == 3 && data[start] == ' ' && data[start + 1] == ' ' && data[start + 2] == ' '
+					&& data[fields[0]] == '1') {
+				this.bestAffinity = affinity;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check a field against [+-]?([0-9]*[.])?[0-9]+
+	 */
+	private static boolean isNumber(byte[] data, int start, int end) {
+
+		int position = start;
+
+		if(data[position] == '+' || data[position] == '-') {
+			position++;
+		}
+
+		int digits = 0;
+		boolean dot = false;
+
+		for (; position < end; position++) {
+
+			if(data[position] >= '0' && data[position] <= '9') {
+				digits++;
+			}else if(data[position] == '.' && !dot) {
+				dot = true;
+				digits = 0;
+			}else {
+				return false;
+			}
+		}
+		return digits > 0;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+	}
+}
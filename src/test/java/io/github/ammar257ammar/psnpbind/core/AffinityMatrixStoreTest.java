@@ -0,0 +1,171 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.AffinityMatrixStore;
+import io.github.ammar257ammar.psnpbind.core.utils.AffinityMatrixStore.AffinityMatrix;
+
+public class AffinityMatrixStoreTest {
+
+	private File root;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("matrix").toFile();
+	}
+
+	@Test
+	public void writeReadTest() throws Exception {
+
+		String path = new File(root, "store/affinities.matrix").getAbsolutePath();
+
+		try (AffinityMatrixStore.Writer writer = AffinityMatrixStore.createWriter(path)) {
+
+			// added out of order, the index is sorted by entry
+			writer.write("1b40", Arrays.asList("1b40_WT", "1b40_V8A"), Arrays.asList("1b40_ligand_1", "1b40_ligand_2", "1b40_ligand_3"),
+					new float[] { -8.5f, Float.NaN, -7.25f, Float.NaN, -9.0f, -6.5f }, new boolean[] { false, false, false, false, false, true });
+			writer.write("1a30", Arrays.asList("1a30_WT"), Arrays.asList("1a30_ligand_1"), new float[] { -10.0f });
+			writer.write("1c50", Collections.<String>emptyList(), Collections.<String>emptyList(), new float[0]);
+
+			try {
+				writer.write("1a30", Arrays.asList("1a30_WT"), Arrays.asList("1a30_ligand_1"), new float[] { -10.0f });
+				fail("an entry can be written once");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("1a30"));
+			}
+
+			try {
+				writer.write("1d60", Arrays.asList("1d60_WT"), Arrays.asList("1d60_ligand_1"), new float[2]);
+				fail("the matrix size must match the names");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("1 x 1"));
+			}
+
+			assertEquals(3, writer.size());
+
+			writer.commit();
+		}
+
+		assertFalse(new File(path + ".tmp").exists());
+
+		try (AffinityMatrixStore store = AffinityMatrixStore.open(path)) {
+
+			assertEquals(3, store.size());
+			assertEquals(Arrays.asList("1a30", "1b40", "1c50"), store.getPdbs());
+			assertTrue(store.contains("1b40"));
+			assertFalse(store.contains("1d60"));
+			assertNull(store.getMatrix("1d60"));
+
+			AffinityMatrix matrix = store.getMatrix("1b40");
+
+			assertEquals("1b40", matrix.getPdb());
+			assertEquals(Arrays.asList("1b40_WT", "1b40_V8A"), matrix.getVariants());
+			assertEquals(Arrays.asList("1b40_ligand_1", "1b40_ligand_2", "1b40_ligand_3"), matrix.getLigands());
+			assertEquals(1, matrix.getVariantIndex("1b40_V8A"));
+			assertEquals(-1, matrix.getLigandIndex("1b40_ligand_4"));
+
+			assertEquals(-7.25f, matrix.get(0, 2), 0.0f);
+			assertEquals(-9.0f, matrix.get("1b40_V8A", "1b40_ligand_2"), 0.0f);
+			assertTrue(Float.isNaN(matrix.get("1b40_V8A", "1b40_ligand_1")));
+			assertTrue(Float.isNaN(matrix.get("1b40_A12G", "1b40_ligand_1")));
+
+			assertTrue(matrix.isMissing(0, 1));
+			assertFalse(matrix.isMissing(1, 1));
+			assertEquals(2, matrix.getMissingCount());
+
+			assertTrue(matrix.isReused(1, 2));
+			assertFalse(matrix.isReused(0, 2));
+			assertEquals(1, matrix.getReusedCount());
+
+			assertArrayEquals(new float[] { Float.NaN, -9.0f, -6.5f }, matrix.getVariantAffinities("1b40_V8A"), 0.0f);
+			assertArrayEquals(new float[] { -7.25f, -6.5f }, matrix.getLigandAffinities("1b40_ligand_3"), 0.0f);
+			assertNull(matrix.getVariantAffinities("1b40_A12G"));
+			assertNull(matrix.getLigandAffinities("1b40_ligand_4"));
+
+			try {
+				matrix.get(2, 0);
+				fail("the variant is out of the matrix");
+			} catch (IndexOutOfBoundsException e) {
+			}
+
+			assertEquals(-10.0f, store.getMatrix("1a30").get(0, 0), 0.0f);
+			assertEquals(0, store.getMatrix("1a30").getReusedCount());
+			assertEquals(0, store.getMatrix("1c50").getVariantCount());
+		}
+	}
+
+	@Test
+	public void largeMatrixTest() throws Exception {
+
+		String path = new File(root, "affinities.matrix").getAbsolutePath();
+
+		List<String> variants = new ArrayList<String>();
+		List<String> ligands = new ArrayList<String>();
+
+		for (int i = 0; i < 70; i++) {
+			variants.add("1a30_V" + i);
+		}
+		for (int i = 0; i < 30; i++) {
+			ligands.add("1a30_ligand_" + i);
+		}
+
+		float[] affinities = new float[variants.size() * ligands.size()];
+
+		for (int cell = 0; cell < affinities.length; cell++) {
+			affinities[cell] = cell % 7 == 0 ? Float.NaN : -cell / 100.0f;
+		}
+
+		try (AffinityMatrixStore.Writer writer = AffinityMatrixStore.createWriter(path)) {
+			writer.write("1a30", variants, ligands, affinities);
+			writer.commit();
+		}
+
+		try (AffinityMatrixStore store = AffinityMatrixStore.open(path)) {
+
+			AffinityMatrix matrix = store.getMatrix("1a30");
+
+			assertEquals(300, matrix.getMissingCount());
+
+			for (int v = 0; v < variants.size(); v++) {
+
+				float[] row = matrix.getVariantAffinities(v);
+
+				for (int l = 0; l < ligands.size(); l++) {
+
+					int cell = v * ligands.size() + l;
+
+					assertEquals(cell % 7 == 0, matrix.isMissing(v, l));
+					assertEquals(affinities[cell], row[l], 0.0f);
+					assertEquals(affinities[cell], matrix.getLigandAffinities(l)[v], 0.0f);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void notAStoreTest() throws Exception {
+
+		File file = new File(root, "corrupted.matrix");
+
+		Files.write(file.toPath(), "corrupted store file with some bytes".getBytes(StandardCharsets.US_ASCII));
+
+		try {
+			AffinityMatrixStore.open(file.getAbsolutePath());
+			fail("the file is not a store");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not an affinity matrix store"));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.ContactGrid;
+
+public class ContactGridTest {
+
+	@Test
+	public void queryTest() throws Exception {
+
+		Random random = new Random(42);
+
+		float[] coordinates = new float[3 * 500];
+
+		for (int i = 0; i < coordinates.length; i++) {
+			coordinates[i] = (float) (random.nextDouble() * 30.0 - 15.0);
+		}
+
+		ContactGrid grid = ContactGrid.build(coordinates, 4.0);
+
+		assertEquals(500, grid.size());
+
+		for (int q = 0; q < 200; q++) {
+
+			// points outside the grid bounds are queried too
+			double x = random.nextDouble() * 40.0 - 20.0;
+			double y = random.nextDouble() * 40.0 - 20.0;
+			double z = random.nextDouble() * 40.0 - 20.0;
+
+			List<Integer> expected = new ArrayList<Integer>();
+
+			for (int i = 0; i < 500; i++) {
+
+				double dx = coordinates[3 * i] - x;
+				double dy = coordinates[3 * i + 1] - y;
+				double dz = coordinates[3 * i + 2] - z;
+
+				if(dx * dx + dy * dy + dz * dz <= 16.0) {
+					expected.add(i);
+				}
+			}
+
+			List<Integer> found = new ArrayList<Integer>();
+
+			grid.query(x, y, z, 4.0, (atom, distanceSquared) -> {
+				found.add(atom);
+				assertTrue(distanceSquared <= 16.0);
+			});
+
+			Collections.sort(found);
+
+			assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void emptyTest() throws Exception {
+
+		ContactGrid grid = ContactGrid.build(new float[0], 4.0);
+
+		assertEquals(0, grid.size());
+
+		grid.query(0.0, 0.0, 0.0, 4.0, (atom, distanceSquared) -> fail("no atoms"));
+	}
+}
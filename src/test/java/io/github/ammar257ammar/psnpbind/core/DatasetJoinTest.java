@@ -0,0 +1,76 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetJoin;
+
+public class DatasetJoinTest {
+
+	private final List<String[]> ids = Arrays.asList(
+			new String[] { "1a30", "lig1", "CHEMBL1" },
+			new String[] { "1a30", "lig2", "CHEMBL2" },
+			new String[] { "2hb1", "lig1", "CHEMBL3" },
+			new String[] { "3jvr", "lig9", "CHEMBL4" });
+
+	private final List<String[]> logs = Arrays.asList(
+			new String[] { "2hb1", "CHEMBL3", "0.8" },
+			new String[] { "1a30", "CHEMBL2", "0.5" },
+			new String[] { "1a30", "CHEMBL1", "0.9" },
+			new String[] { "1a30", "CHEMBL1", "0.7" });
+
+	@Test
+	public void leftJoinTest() {
+
+		List<String[]> joined = DatasetJoin.create(logs, 0, 1)
+				.leftJoin(ids, (t, u) -> new String[] { t[0], t[1], u == null ? null : u[2] }, 0, 2)
+				.collect(Collectors.toList());
+
+		assertEquals(5, joined.size());
+		assertArrayEquals(new String[] { "1a30", "lig1", "0.9" }, joined.get(0));
+		assertArrayEquals(new String[] { "1a30", "lig1", "0.7" }, joined.get(1));
+		assertArrayEquals(new String[] { "1a30", "lig2", "0.5" }, joined.get(2));
+		assertArrayEquals(new String[] { "2hb1", "lig1", "0.8" }, joined.get(3));
+		assertArrayEquals(new String[] { "3jvr", "lig9", null }, joined.get(4));
+	}
+
+	@Test
+	public void innerJoinTest() {
+
+		List<String[]> joined = DatasetJoin.create(logs, 0, 1)
+				.innerJoin(ids, (t, u) -> new String[] { t[1], u[2] }, 0, 2)
+				.collect(Collectors.toList());
+
+		assertEquals(4, joined.size());
+		assertArrayEquals(new String[] { "lig1", "0.8" }, joined.get(3));
+		assertTrue(DatasetJoin.create(logs, 0).get(new String[] { "4abc" }, 0).isEmpty());
+	}
+
+	@Test
+	public void parallelJoinTest() {
+
+		List<String[]> left = new ArrayList<String[]>();
+		List<String[]> right = new ArrayList<String[]>();
+
+		for (int i = 0; i < 10000; i++) {
+			left.add(new String[] { "p" + (i % 50), "l" + i });
+			right.add(new String[] { "p" + (i % 50), "l" + i, String.valueOf(i) });
+		}
+
+		List<String[]> joined = DatasetJoin.create(right, 0, 1).parallel(true)
+				.leftJoin(left, (t, u) -> new String[] { t[1], u[2] }, 0, 1)
+				.collect(Collectors.toList());
+
+		assertEquals(10000, joined.size());
+
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(String.valueOf(i), joined.get(i)[1]);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+import io.github.ammar257ammar.psnpbind.core.utils.DatasetWriter;
+import io.github.ammar257ammar.psnpbind.core.utils.NumpyTools;
+import io.github.ammar257ammar.psnpbind.core.utils.RowDatasetWriter;
+
+public class DatasetWriterTest {
+
+	private FeatureMatrix batch;
+
+	@Before
+	public void setUp() throws Exception {
+
+		batch = FeatureMatrix.create()
+				.addColumn("pdb", ColumnType.STRING)
+				.addColumn("count", ColumnType.INT)
+				.addColumn("value", ColumnType.DOUBLE)
+				.addColumn("fp", ColumnType.BITS, 10);
+	}
+
+	@Test
+	public void npyBatchesTest() throws Exception {
+
+		File file = File.createTempFile("features", ".tsv");
+		file.deleteOnExit();
+
+		String npyPath = DataHandler.getOutputPath(file.getAbsolutePath(), OutputFormat.NPY);
+
+		try (DatasetWriter writer = DataHandler.createDatasetWriter(file.getAbsolutePath(), OutputFormat.NPY, null)) {
+
+			batch.appendRow().add("3jvr").add(7).add(1.5).addBits(new int[] { 0, 9 });
+			writer.writeBatch(batch);
+			batch.clear();
+
+			batch.appendRow().add("2hb1").addEmptyToEnd();
+			writer.writeBatch(batch);
+		}
+
+		byte[] bytes = Files.readAllBytes(new File(npyPath).toPath());
+		new File(npyPath).deleteOnExit();
+
+		String header = new String(bytes, 10, NumpyTools.HEADER_SIZE - 10, StandardCharsets.US_ASCII);
+
+		assertTrue(header.startsWith("{'descr': '<f4', 'fortran_order': False, 'shape': (2, 12), }"));
+		assertEquals(NumpyTools.HEADER_SIZE + 2 * 12 * 4, bytes.length);
+
+		ByteBuffer data = ByteBuffer.wrap(bytes, NumpyTools.HEADER_SIZE, 2 * 12 * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+		assertEquals(7f, data.getFloat(), 0f);
+		assertEquals(1.5f, data.getFloat(), 0f);
+		assertEquals(1f, data.getFloat(), 0f);
+
+		for (int i = 1; i < 9; i++) {
+			assertEquals(0f, data.getFloat(), 0f);
+		}
+		assertEquals(1f, data.getFloat(), 0f);
+		assertTrue(Float.isNaN(data.getFloat()));
+
+		String base = npyPath.substring(0, npyPath.length() - 4);
+		new File(base + "_columns.txt").deleteOnExit();
+		new File(base + "_index.tsv").deleteOnExit();
+
+		assertEquals("fp10", Files.readAllLines(new File(base + "_columns.txt").toPath()).get(11));
+		assertEquals("2hb1", Files.readAllLines(new File(base + "_index.tsv").toPath()).get(2));
+	}
+
+	@Test
+	public void npzDatasetTest() throws Exception {
+
+		File file = File.createTempFile("docking", ".tsv");
+		file.deleteOnExit();
+
+		List<String[]> dataset = new ArrayList<String[]>();
+		dataset.add(new String[] { "3jvr", "12", "-9.1" });
+		dataset.add(new String[] { "2hb1", "-", "-8" });
+
+		DataHandler.writeDataset(dataset, file.getAbsolutePath(), new String[] { "pdb", "ligands", "affinity" },
+				OutputFormat.NPZ);
+
+		File npz = new File(DataHandler.getOutputPath(file.getAbsolutePath(), OutputFormat.NPZ));
+		npz.deleteOnExit();
+
+		Map<String, byte[]> arrays = readZip(npz);
+
+		assertEquals(4, arrays.size());
+
+		assertTrue(new String(arrays.get("pdb.npy"), 10, 40, StandardCharsets.US_ASCII).startsWith("{'descr': '<U4'"));
+		assertTrue(new String(arrays.get("ligands.npy"), 10, 40, StandardCharsets.US_ASCII).startsWith("{'descr': '<i4'"));
+
+		ByteBuffer ligands = ByteBuffer.wrap(arrays.get("ligands.npy")).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(12, ligands.getInt(NumpyTools.HEADER_SIZE));
+
+		ByteBuffer affinity = ByteBuffer.wrap(arrays.get("affinity.npy")).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(-8.0, affinity.getDouble(NumpyTools.HEADER_SIZE + 8), 0.0);
+
+		byte[] mask = arrays.get("ligands_mask.npy");
+		assertEquals(1, mask[NumpyTools.HEADER_SIZE]);
+		assertEquals(0, mask[NumpyTools.HEADER_SIZE + 1]);
+
+		ByteBuffer pdb = ByteBuffer.wrap(arrays.get("pdb.npy")).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals('2', pdb.getInt(NumpyTools.HEADER_SIZE + 16));
+	}
+
+	@Test
+	public void rowDatasetWriterTest() throws Exception {
+
+		File file = File.createTempFile("features", ".tsv");
+		file.deleteOnExit();
+
+		// the types are inferred from the first batch, the value of the next batch which is not an integer is left empty
+		try (RowDatasetWriter writer = new RowDatasetWriter(file.getAbsolutePath(), new String[] { "pdb", "ligands" }, null,
+				OutputFormat.NPZ)) {
+
+			for (int i = 0; i < DataHandler.DATASET_BATCH_SIZE; i++) {
+				writer.writeRow(new String[] { "row" + i, String.valueOf(i) });
+			}
+
+			writer.writeRow(new String[] { "last", "many" });
+
+			assertEquals(DataHandler.DATASET_BATCH_SIZE + 1, writer.getRowCount());
+			assertEquals(1, writer.getInvalidValues());
+		}
+
+		File npz = new File(DataHandler.getOutputPath(file.getAbsolutePath(), OutputFormat.NPZ));
+		npz.deleteOnExit();
+
+		Map<String, byte[]> arrays = readZip(npz);
+
+		assertTrue(new String(arrays.get("ligands.npy"), 10, 40, StandardCharsets.US_ASCII).startsWith("{'descr': '<i4'"));
+
+		ByteBuffer ligands = ByteBuffer.wrap(arrays.get("ligands.npy")).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(7, ligands.getInt(NumpyTools.HEADER_SIZE + 4 * 7));
+
+		byte[] mask = arrays.get("ligands_mask.npy");
+		assertEquals(0, mask[NumpyTools.HEADER_SIZE + DataHandler.DATASET_BATCH_SIZE]);
+
+		// the types given by the caller, the TSV format writes the values as they are
+		try (RowDatasetWriter writer = new RowDatasetWriter(file.getAbsolutePath(), new String[] { "pdb", "affinity" },
+				new ColumnType[] { ColumnType.STRING, ColumnType.DOUBLE }, OutputFormat.TSV)) {
+
+			writer.writeRow(new String[] { "3jvr", "-9.123456" });
+			writer.writeRow(new String[] { "2hb1" });
+		}
+
+		assertEquals(Arrays.asList("pdb\taffinity", "3jvr\t-9.123456", "2hb1\t"),
+				Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+	}
+
+	private static Map<String, byte[]> readZip(File file) throws Exception {
+
+		Map<String, byte[]> entries = new HashMap<String, byte[]>();
+
+		try (ZipInputStream zip = new ZipInputStream(new FileInputStream(file))) {
+
+			ZipEntry entry;
+
+			while ((entry = zip.getNextEntry()) != null) {
+				entries.put(entry.getName(), readAll(zip));
+			}
+		}
+		return entries;
+	}
+
+	private static byte[] readAll(InputStream in) throws Exception {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
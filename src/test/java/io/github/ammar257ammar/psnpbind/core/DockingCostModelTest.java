@@ -0,0 +1,116 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DockingCostModelTest {
+
+	private File root;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("cost").toFile();
+	}
+
+	@Test
+	public void ligandFeaturesTest() throws Exception {
+
+		File pdbqt = new File(root, "ligand_min.pdbqt");
+
+		write(pdbqt, "REMARK  3 active torsions:\n"
+				+ "ROOT\n"
+				+ "ATOM      1  C1  LIG A   1       1.000   2.000   3.000  0.00  0.00     0.010 C \n"
+				+ "ATOM      2  N1  LIG A   1       1.000   2.000   3.000  0.00  0.00    -0.300 NA\n"
+				+ "ATOM      3  H1  LIG A   1       1.000   2.000   3.000  0.00  0.00     0.200 HD\n"
+				+ "ENDROOT\n"
+				+ "HETATM    4  O1  LIG A   1       1.000   2.000   3.000  0.00  0.00    -0.400 OA\n"
+				+ "TORSDOF 3\n");
+
+		assertArrayEquals(new double[] { 3, 3 }, DockingCostModel.getLigandFeatures(pdbqt.toPath()), 0.0);
+
+		File mol2 = new File(root, "ligand_min.mol2");
+
+		write(mol2, "@<TRIPOS>MOLECULE\npentane\n 5 4 0 0 0\nSMALL\nNO_CHARGES\n\n"
+				+ "@<TRIPOS>ATOM\n"
+				+ "      1 C1          0.0000    0.0000    0.0000 C.3     1  LIG1        0.0000\n"
+				+ "      2 C2          1.5400    0.0000    0.0000 C.3     1  LIG1        0.0000\n"
+				+ "      3 C3          2.0500    1.4500    0.0000 C.3     1  LIG1        0.0000\n"
+				+ "      4 C4          3.5900    1.4500    0.0000 C.3     1  LIG1        0.0000\n"
+				+ "      5 C5          4.1000    2.9000    0.0000 C.3     1  LIG1        0.0000\n"
+				+ "@<TRIPOS>BOND\n"
+				+ "     1     1     2    1\n"
+				+ "     2     2     3    1\n"
+				+ "     3     3     4    1\n"
+				+ "     4     4     5    1\n");
+
+		assertArrayEquals(new double[] { 2, 5 }, DockingCostModel.getLigandFeatures(mol2.toPath()), 0.0);
+	}
+
+	@Test
+	public void gridVolumeTest() throws Exception {
+
+		File config = new File(root, "config.txt");
+
+		write(config, VinaPreparationEngine.getConfig(Arrays.asList(new double[3], new double[3],
+				new double[] { 1.5, 2.5, 3.5 }, new double[] { 20.4, 25.0, 30.0 })));
+
+		assertEquals(20 * 25 * 30, DockingCostModel.getGridVolume(config.toPath()), 0.0);
+
+		write(config, "exhaustiveness = 8\n");
+
+		try {
+			DockingCostModel.getGridVolume(config.toPath());
+			fail("a config without grid size has no volume");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("no grid size"));
+		}
+	}
+
+	@Test
+	public void calibrationTest() throws Exception {
+
+		DockingCostModel model = DockingCostModel.create();
+
+		double[] small = { 2, 20, 8000 };
+		double[] large = { 12, 45, 27000 };
+
+		assertTrue(model.estimate(large) > model.estimate(small));
+
+		double[] truth = { -1.0, 0.25, 0.03, 0.4 };
+
+		Random random = new Random(7);
+
+		for (int i = 0; i < 500; i++) {
+
+			double[] features = { random.nextInt(20), 10 + random.nextInt(60), 4000 + random.nextInt(40000) };
+
+			double log = truth[0] + truth[1] * features[0] + truth[2] * features[1] + truth[3] * Math.log(features[2]);
+
+			model.observe(features, Math.exp(log + random.nextGaussian() * 0.05));
+		}
+
+		assertEquals(500, model.getSamples());
+
+		double[] coefficients = model.getCoefficients();
+
+		assertEquals(truth[1], coefficients[1], 0.01);
+		assertEquals(truth[2], coefficients[2], 0.01);
+
+		double expected = Math.exp(truth[0] + truth[1] * 12 + truth[2] * 45 + truth[3] * Math.log(27000));
+
+		assertEquals(expected, model.estimate(large), expected * 0.1);
+	}
+
+	private static void write(File file, String content) throws Exception {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,292 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.DockingScheduler.DockingJob;
+import io.github.ammar257ammar.psnpbind.core.DockingScheduler.EquivalentVariants;
+import io.github.ammar257ammar.psnpbind.core.DockingScheduler.Metrics;
+
+public class DockingSchedulerTest {
+
+	private File root;
+	private String vinaPath;
+	private String stub;
+
+	@Before
+	public void setUp() throws Exception {
+
+		root = Files.createTempDirectory("docking").toFile();
+		vinaPath = new File(root, "vina").getAbsolutePath();
+
+		for (String variant : new String[] { "1a30_WT", "1a30_A12G" }) {
+
+			String folder = vinaPath + "/1a30/proteins/" + variant;
+
+			for (String ligand : new String[] { "1a30_ligand_1", "1a30_flaky", "1a30_bad" }) {
+				new File(folder + "/vina/" + ligand).mkdirs();
+			}
+			write(new File(folder + "/" + variant + "_config.txt"), "size_x = 20\nsize_y = 20\nsize_z = " + (variant.endsWith("WT") ? 20 : 30) + "\n");
+			write(new File(folder + "/" + variant + "_seed.txt"), "42\n");
+			write(new File(folder + "/" + variant + "_final.pdb"), variant);
+		}
+
+		write(new File(vinaPath + "/1a30/proteins/1a30_WT/vina/1a30_ligand_1/1a30_ligand_1_min_docking.pdbqt"), "done");
+
+		new File(vinaPath + "/1a30/proteins/1a30_L14P/vina/1a30_ligand_1").mkdirs();
+
+		new File(vinaPath + "/1a30/ligands").mkdirs();
+
+		write(new File(vinaPath + "/1a30/ligands/1a30_ligand_1_min.pdbqt"), "TORSDOF 10\n");
+		write(new File(vinaPath + "/1a30/ligands/1a30_flaky_min.pdbqt"), "TORSDOF 2\n");
+
+		// the stub records its arguments and the order of the dockings, fails every run for the bad ligand and the first run for the flaky one
+		File script = new File(root, "vina-stub.sh");
+
+		write(script, "#!/bin/sh\n"
+				+ "echo \"$@\" > args.txt\n"
+				+ "basename \"$PWD\" >> \"$(dirname \"$0\")/order.txt\"\n"
+				+ "case \"$PWD\" in *_bad) exit 3 ;; esac\n"
+				+ "case \"$PWD\" in *_flaky) if [ ! -f failed-once ]; then touch failed-once; exit 1; fi ;; esac\n"
+				+ "while [ $# -gt 0 ]; do\n"
+				+ "  case \"$1\" in --out) out=$2 ;; --log) log=$2 ;; esac\n"
+				+ "  shift\n"
+				+ "done\n"
+				+ "echo poses > \"$out\"\n"
+				+ "echo log > \"$log\"\n");
+
+		script.setExecutable(true);
+
+		stub = script.getAbsolutePath();
+	}
+
+	@Test
+	public void discoverJobsTest() throws Exception {
+
+		List<DockingJob> jobs = DockingScheduler.create().discoverJobs(vinaPath);
+
+		assertEquals(5, jobs.size());
+		assertEquals("1a30/1a30_A12G/1a30_bad", jobs.get(0).getKey());
+		assertEquals("1a30/1a30_WT/1a30_flaky", jobs.get(4).getKey());
+		assertEquals("42", jobs.get(0).getSeed());
+		assertTrue(jobs.get(0).getReceptor().toString().endsWith("1a30_A12G_final.pdb"));
+		assertTrue(jobs.get(0).getLigandFile().toString().endsWith("/1a30/ligands/1a30_bad_min.mol2"));
+	}
+
+	@Test
+	public void concurrencyTest() throws Exception {
+
+		assertEquals(4, DockingScheduler.create().cores(48).cpuPerJob(12).getConcurrentJobs());
+		assertEquals(1, DockingScheduler.create().cores(8).cpuPerJob(12).getConcurrentJobs());
+		assertEquals(8, DockingScheduler.create().cores(8).cpuPerJob(12).getCpuPerJob());
+		assertEquals(2, DockingScheduler.create().cores(5).cpuPerJob(2).getConcurrentJobs());
+	}
+
+	@Test
+	public void runTest() throws Exception {
+
+		String journal = new File(root, "journal.tsv").getAbsolutePath();
+
+		DockingScheduler scheduler = DockingScheduler.create().executable(stub).journal(journal).cores(4).cpuPerJob(2)
+				.maxAttempts(2).backoff(10, 100);
+
+		Metrics metrics = scheduler.run(vinaPath);
+
+		assertEquals(3, metrics.getCompleted());
+		assertEquals(2, metrics.getGaveUp());
+		assertEquals(6, metrics.getFailedAttempts());
+		assertEquals(4, metrics.getRetries());
+		assertEquals(0, metrics.getRunning());
+
+		String folder = vinaPath + "/1a30/proteins/1a30_A12G/vina/1a30_flaky/";
+
+		assertEquals("poses", read(new File(folder + "1a30_flaky_min_docking.pdbqt")));
+		assertEquals("log", read(new File(folder + "1a30_flaky_min_log.txt")));
+		assertFalse(new File(folder + "1a30_flaky_min_docking.pdbqt.part").exists());
+		assertFalse(new File(vinaPath + "/1a30/proteins/1a30_A12G/vina/1a30_bad/1a30_bad_min_docking.pdbqt").exists());
+
+		String args = read(new File(folder + "args.txt"));
+
+		assertTrue(args.contains("--seed 42 --cpu 2 --out"));
+		assertTrue(args.contains("--config " + vinaPath + "/1a30/proteins/1a30_A12G/1a30_A12G_config.txt"));
+
+		List<String> lines = Files.readAllLines(new File(journal).toPath());
+
+		assertEquals(18, lines.size());
+		assertEquals(2, lines.stream().filter(l -> l.contains("1a30_A12G/1a30_flaky\tFAILED\t1\t1\t")).count()
+				+ lines.stream().filter(l -> l.contains("1a30_A12G/1a30_flaky\tDONE\t2\t0\t")).count());
+
+		// the resumed run finds only the given up jobs and skips them
+		assertEquals(2, scheduler.discoverJobs(vinaPath).size());
+
+		metrics = scheduler.run(vinaPath);
+
+		assertEquals(0, metrics.getCompleted());
+		assertEquals(2, metrics.getGaveUp());
+		assertEquals(18, Files.readAllLines(new File(journal).toPath()).size());
+
+		// a higher attempt limit gives them another try
+		metrics = scheduler.maxAttempts(3).backoff(10, 10).run(vinaPath);
+
+		assertEquals(2, metrics.getFailedAttempts());
+		assertEquals(0, metrics.getRetries());
+		assertEquals(2, metrics.getGaveUp());
+	}
+
+	@Test
+	public void longestFirstTest() throws Exception {
+
+		DockingScheduler scheduler = DockingScheduler.create().executable(stub).journal(new File(root, "journal.tsv").getAbsolutePath())
+				.cores(1).cpuPerJob(1).maxAttempts(1);
+
+		Metrics metrics = scheduler.run(vinaPath);
+
+		assertEquals(1, metrics.getCompleted());
+		assertEquals(4, metrics.getGaveUp());
+
+		List<String> order = Files.readAllLines(new File(root, "order.txt").toPath());
+
+		// the largest grid and most rotatable ligand first, the jobs without cost estimate (no ligand file) last
+		assertEquals("1a30_ligand_1", order.get(0));
+		assertEquals("1a30_bad", order.get(3));
+		assertEquals("1a30_bad", order.get(4));
+
+		assertEquals(5, order.size());
+		assertEquals(1, scheduler.getCostModel().getSamples());
+	}
+
+	@Test
+	public void unexpectedErrorTest() throws Exception {
+
+		// an unreadable grid size fails the cost estimate of the variant jobs, they are run without estimate
+		write(new File(vinaPath + "/1a30/proteins/1a30_A12G/1a30_A12G_config.txt"), "size_x = 20\nsize_y = 20\nsize_z = twenty\n");
+
+		String journal = new File(root, "journal.tsv").getAbsolutePath();
+
+		Metrics metrics = DockingScheduler.create().executable(stub).journal(journal).cores(2).cpuPerJob(1).maxAttempts(1).run(vinaPath);
+
+		assertEquals(1, metrics.getCompleted());
+		assertEquals(4, metrics.getGaveUp());
+		assertEquals(0, metrics.getRunning());
+
+		// an error thrown while starting the docking fails the attempt instead of blocking the run
+		journal = new File(root, "journal-2.tsv").getAbsolutePath();
+
+		metrics = DockingScheduler.create().executable(null).journal(journal).cores(2).cpuPerJob(1).maxAttempts(1).run(vinaPath);
+
+		assertEquals(0, metrics.getCompleted());
+		assertEquals(4, metrics.getFailedAttempts());
+		assertEquals(4, metrics.getGaveUp());
+		assertEquals(0, metrics.getRunning());
+
+		List<String> lines = Files.readAllLines(new File(journal).toPath());
+
+		assertEquals(4, lines.stream().filter(l -> l.contains("\tFAILED\t1\t-1\t")).count());
+	}
+
+	@Test
+	public void damagedJournalTest() throws Exception {
+
+		File journal = new File(root, "journal.tsv");
+
+		// an invalid duration and a last line cut by a crash while appending
+		write(journal, "1\t1a30_WT/1a30_flaky\tDONE\t1\t0\tabc\n2\t1a30_A12G/1a30_ligand_1\tDONE\t1\t0\t9");
+
+		DockingScheduler scheduler = DockingScheduler.create().executable(stub).journal(journal.getAbsolutePath())
+				.cores(1).cpuPerJob(1).maxAttempts(1);
+
+		Metrics metrics = scheduler.run(vinaPath);
+
+		assertEquals(1, metrics.getCompleted());
+		assertEquals(4, metrics.getGaveUp());
+
+		// only the docking of this run calibrates the cost model
+		assertEquals(1, scheduler.getCostModel().getSamples());
+
+		List<String> lines = Files.readAllLines(journal.toPath());
+
+		assertEquals("2\t1a30_A12G/1a30_ligand_1\tDONE\t1\t0\t9\tINCOMPLETE", lines.get(1));
+
+		for (String line : lines.subList(2, lines.size())) {
+			assertEquals(6, line.split("\t").length);
+		}
+
+		// the journal written after the cut line is read again by the next run, the cut line is still ignored
+		scheduler = DockingScheduler.create().executable(stub).journal(journal.getAbsolutePath()).cores(1).cpuPerJob(1)
+				.maxAttempts(1);
+
+		metrics = scheduler.run(vinaPath);
+
+		assertEquals(0, metrics.getCompleted());
+		assertEquals(4, metrics.getGaveUp());
+		assertEquals(1, scheduler.getCostModel().getSamples());
+	}
+
+	@Test
+	public void reuseEquivalentVariantsTest() throws Exception {
+
+		write(new File(vinaPath + "/1a30/proteins/1a30_A12G/1a30_A12G" + PocketEquivalenceDetector.FLAG_SUFFIX), "1a30_WT\t0.1\n");
+
+		DockingScheduler scheduler = DockingScheduler.create().executable(stub).journal(new File(root, "journal.tsv").getAbsolutePath())
+				.cores(2).cpuPerJob(1).maxAttempts(2).backoff(10, 10).equivalentVariants(EquivalentVariants.REUSE);
+
+		Metrics metrics = scheduler.run(vinaPath);
+
+		assertEquals(2, metrics.getReused());
+		assertEquals(1, metrics.getCompleted());
+		assertEquals(2, metrics.getGaveUp());
+
+		String folder = vinaPath + "/1a30/proteins/1a30_A12G/vina/";
+
+		assertEquals("done", read(new File(folder + "1a30_ligand_1/1a30_ligand_1_min_docking.pdbqt")));
+		assertEquals("poses", read(new File(folder + "1a30_flaky/1a30_flaky_min_docking.pdbqt")));
+		assertEquals("log", read(new File(folder + "1a30_flaky/1a30_flaky_min_log.txt")));
+		assertFalse(new File(folder + "1a30_flaky/args.txt").exists());
+		assertEquals("1a30_WT", read(new File(folder + "1a30_flaky/1a30_flaky" + DockingScheduler.REUSED_SUFFIX)));
+
+		// the bad ligand has no wild-type docking to reuse, so it was docked
+		assertTrue(new File(folder + "1a30_bad/args.txt").exists());
+		assertFalse(new File(folder + "1a30_bad/1a30_bad" + DockingScheduler.REUSED_SUFFIX).exists());
+	}
+
+	@Test
+	public void reduceEquivalentVariantsTest() throws Exception {
+
+		write(new File(vinaPath + "/1a30/proteins/1a30_A12G/1a30_A12G" + PocketEquivalenceDetector.FLAG_SUFFIX), "1a30_WT\t0.1\n");
+
+		DockingScheduler.create().executable(stub).journal(new File(root, "journal.tsv").getAbsolutePath()).cores(2).cpuPerJob(1)
+				.maxAttempts(1).equivalentVariants(EquivalentVariants.REDUCE).reducedExhaustiveness(2).run(vinaPath);
+
+		String folder = vinaPath + "/1a30/proteins/";
+
+		assertTrue(read(new File(folder + "1a30_A12G/vina/1a30_ligand_1/args.txt")).contains("--exhaustiveness 2 --cpu 1"));
+		assertFalse(read(new File(folder + "1a30_WT/vina/1a30_flaky/args.txt")).contains("--exhaustiveness"));
+
+		List<String> lines = Files.readAllLines(new File(root, "journal.tsv").toPath());
+
+		assertEquals(1, lines.stream().filter(l -> l.contains("1a30_A12G/1a30_ligand_1\tDONE_REDUCED\t")).count());
+
+		// the reduced docking is not used to calibrate the cost model of the next run
+		DockingScheduler scheduler = DockingScheduler.create().executable(stub).journal(new File(root, "journal.tsv").getAbsolutePath())
+				.cores(2).cpuPerJob(1).maxAttempts(1);
+
+		scheduler.run(vinaPath);
+
+		assertEquals(0, scheduler.getCostModel().getSamples());
+	}
+
+	private static void write(File file, String content) throws Exception {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+	}
+}
@@ -0,0 +1,141 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix.ColumnType;
+import io.github.ammar257ammar.psnpbind.core.model.FingerprintBlock;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.FingerprintEncoding;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintTools;
+
+public class FeatureMatrixTest {
+
+	private FeatureMatrix matrix;
+
+	@Before
+	public void setUp() throws Exception {
+
+		matrix = FeatureMatrix.create()
+				.addColumn("pdb", ColumnType.STRING)
+				.addColumn("count", ColumnType.INT)
+				.addColumns("value", ColumnType.DOUBLE, 2)
+				.addColumn("fp", ColumnType.BITS, 4);
+
+		matrix.appendRow().add("3jvr").add(7).add(12.345678).add(-0.00004).addBits(new int[] { 1, 3 });
+		matrix.appendRow().add("2hb1").addEmptyToEnd();
+
+		for (int i = 0; i < 100; i++) {
+			matrix.appendRow().add("row" + i).add(i).add(3.0).add(Double.NaN).addBits(new int[] {});
+		}
+	}
+
+	@Test
+	public void getHeaderTest() {
+		assertArrayEquals(new String[] { "pdb", "count", "value1", "value2", "fp1", "fp2", "fp3", "fp4" },
+				matrix.getHeader());
+	}
+
+	@Test
+	public void getValuesTest() {
+		assertEquals(102, matrix.getRowCount());
+		assertEquals(7, matrix.getInt(0, 1));
+		assertTrue(matrix.getBit(0, 4, 3));
+		assertFalse(matrix.getBit(0, 4, 2));
+		assertFalse(matrix.isFilled(1, 2));
+	}
+
+	@Test
+	public void discardRowTest() {
+		matrix.appendRow().add("tmp");
+		matrix.discardRow();
+		assertEquals(102, matrix.getRowCount());
+
+		// the next row reuses the slot of the discarded row, which had bits set
+		matrix.appendRow().add("tmp").add(1).add(1.0).add(2.0).addBits(new int[] { 0, 1, 2, 3 });
+		matrix.discardRow();
+		matrix.appendRow().add("next").add(2).add(1.0).add(2.0).addBits(new long[] {});
+
+		assertEquals(103, matrix.getRowCount());
+		for (int bit = 0; bit < 4; bit++) {
+			assertFalse(matrix.getBit(102, 4, bit));
+		}
+
+		matrix.appendRow().add("tmp").addEmptyToEnd();
+		matrix.discardRow();
+		matrix.appendRow();
+		assertNull(matrix.getString(103, 0));
+	}
+
+	@Test
+	public void writeFeatureMatrixToTSVTest() throws Exception {
+
+		File file = File.createTempFile("features", ".tsv");
+		file.deleteOnExit();
+
+		DataHandler.writeFeatureMatrixToTSV(matrix, file.getAbsolutePath());
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+		assertEquals(103, lines.size());
+		assertEquals("3jvr\t7\t12.3457\t0.0\t0\t1\t0\t1", lines.get(1));
+		assertEquals("2hb1\t\t\t\t\t\t\t", lines.get(2));
+		assertEquals("row99\t99\t3.0\tNaN\t0\t0\t0\t0", lines.get(102));
+	}
+
+	@Test
+	public void writeFeatureMatrixToTSVEncodingsTest() throws Exception {
+
+		File file = File.createTempFile("features", ".tsv");
+		file.deleteOnExit();
+
+		DataHandler.writeFeatureMatrixToTSV(matrix, file.getAbsolutePath(), FingerprintEncoding.HEX);
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+		assertEquals("pdb\tcount\tvalue1\tvalue2\tfp_hex", lines.get(0));
+		assertEquals("3jvr\t7\t12.3457\t0.0\t0a", lines.get(1));
+
+		DataHandler.writeFeatureMatrixToTSV(matrix, file.getAbsolutePath(), FingerprintEncoding.BASE64);
+		lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+		assertEquals("3jvr\t7\t12.3457\t0.0\tCg==", lines.get(1));
+
+		DataHandler.writeFeatureMatrixToTSV(matrix, file.getAbsolutePath(), FingerprintEncoding.SPARSE);
+		lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+		assertEquals("3jvr\t7\t12.3457\t0.0\t1;3", lines.get(1));
+		assertEquals("2hb1\t\t\t\t", lines.get(2));
+		assertEquals("row0\t0\t3.0\tNaN\t" + FingerprintTools.SPARSE_EMPTY_SET, lines.get(3));
+	}
+
+	@Test
+	public void writeFingerprintFileTest() throws Exception {
+
+		File file = File.createTempFile("features", ".tsv");
+		file.deleteOnExit();
+
+		DataHandler.writeFeatureMatrixToTSV(matrix, file.getAbsolutePath(), FingerprintEncoding.BINARY);
+
+		File fpFile = new File(DataHandler.getFingerprintFilePath(file.getAbsolutePath(), "fp"));
+		fpFile.deleteOnExit();
+
+		FingerprintBlock block = FingerprintBlock.map(fpFile.getAbsolutePath());
+
+		assertEquals(102, block.getRows());
+		assertEquals(4, block.getBits());
+		assertArrayEquals(new long[] { 10L }, block.get(0));
+		assertArrayEquals(new long[] { 0L }, block.get(1));
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals("3jvr\t7\t12.3457\t0.0\t0", lines.get(1));
+	}
+
+}
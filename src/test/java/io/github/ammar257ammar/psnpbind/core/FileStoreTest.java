@@ -0,0 +1,139 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.FileStore;
+
+public class FileStoreTest {
+
+	private File root;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("store").toFile();
+	}
+
+	@Test
+	public void stageTest() throws Exception {
+
+		FileStore store = FileStore.open(new File(root, "store").getAbsolutePath());
+
+		File source = write(new File(root, "ligand.mol2"), "@<TRIPOS>MOLECULE");
+		File copy = write(new File(root, "ligand_copy.mol2"), "@<TRIPOS>MOLECULE");
+
+		File first = new File(root, "first.mol2");
+		File second = new File(root, "second.mol2");
+
+		store.stage(source, first);
+		store.stage(copy, second);
+		store.stage(source, first);
+
+		String hash = store.put(source);
+
+		assertEquals(hash, store.put(copy));
+		assertTrue(Files.isSameFile(first.toPath(), store.getObject(hash).toPath()));
+		assertTrue(Files.isSameFile(second.toPath(), store.getObject(hash).toPath()));
+		assertEquals("@<TRIPOS>MOLECULE", new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8).trim());
+		assertEquals(1, store.getObject(hash).getParentFile().list().length);
+		assertSame(store, FileStore.open(new File(root, "store").getAbsolutePath()));
+	}
+
+	@Test
+	public void materializationErrorTest() throws Exception {
+
+		FileStore store = FileStore.open(new File(root, "errors").getAbsolutePath());
+
+		String hash = store.put(write(new File(root, "protein.pdb"), "ATOM"));
+
+		// a missing destination folder is an error of this destination, the store keeps using hard links
+		try {
+			store.materialize(hash, new File(root, "missing/protein.pdb"));
+			fail("the destination folder does not exist");
+		} catch (IOException e) {
+		}
+
+		assertEquals(FileStore.Materialization.HARD_LINK, store.getMaterialization());
+
+		File destination = new File(root, "protein_final.pdb");
+
+		store.materialize(hash, destination);
+
+		assertTrue(Files.isSameFile(destination.toPath(), store.getObject(hash).toPath()));
+	}
+
+	@Test
+	public void stageCopyTest() throws Exception {
+
+		FileStore store = FileStore.open(new File(root, "store").getAbsolutePath());
+
+		File source = write(new File(root, "protein.pdb"), "ATOM");
+		File destination = new File(root, "foldx/protein.pdb");
+
+		destination.getParentFile().mkdirs();
+
+		// a destination linked to the stored object is replaced by a writable copy
+		store.stage(source, destination);
+		store.stageCopy(source, destination);
+
+		assertFalse(Files.isSameFile(destination.toPath(), store.getObject(store.put(source)).toPath()));
+		assertTrue(destination.canWrite());
+
+		write(destination, "HETATM");
+
+		assertEquals("ATOM", new String(Files.readAllBytes(store.getObject(store.put(source)).toPath()), StandardCharsets.UTF_8).trim());
+
+		store.stageCopy(source, destination);
+
+		assertEquals("ATOM", new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void copyStoreTest() throws Exception {
+
+		FileStore store = FileStore.open(null);
+
+		assertEquals(FileStore.Materialization.COPY, store.getMaterialization());
+
+		File source = write(new File(root, "protein.pdb"), "ATOM");
+		File destination = write(new File(root, "protein_final.pdb"), "HETATM");
+
+		store.stage(source, destination);
+
+		assertEquals("ATOM", new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8).trim());
+		assertFalse(Files.isSameFile(source.toPath(), destination.toPath()));
+	}
+
+	@Test
+	public void vinaLigandsStagedOnceTest() throws Exception {
+
+		String vinaPath = new File(root, "vina").getAbsolutePath() + "/";
+		String ligandsPath = new File(root, "ligands").getAbsolutePath() + "/";
+
+		new File(vinaPath + "1a30/proteins/1a30_WT").mkdirs();
+		new File(vinaPath + "1a30/proteins/1a30_A12G").mkdirs();
+		new File(ligandsPath + "1a30/splitted").mkdirs();
+
+		write(new File(ligandsPath + "1a30/splitted/1a30_ligand_1_min.mol2"), "min");
+		write(new File(ligandsPath + "1a30/splitted/1a30_ligand_1.mol2"), "raw");
+
+		Vina.createLigandsStructureAfterVinaFolderSingle(vinaPath, "1a30", ligandsPath, true);
+
+		assertEquals(Arrays.asList("1a30_ligand_1_min.mol2"), Arrays.asList(new File(vinaPath + "1a30/ligands").list()));
+		assertTrue(new File(vinaPath + "1a30/proteins/1a30_WT/vina/1a30_ligand_1").isDirectory());
+		assertTrue(new File(vinaPath + "1a30/proteins/1a30_A12G/vina/1a30_ligand_1").isDirectory());
+	}
+
+	private static File write(File file, String content) throws Exception {
+		Files.write(file.toPath(), Arrays.asList(content), StandardCharsets.UTF_8);
+		return file;
+	}
+}
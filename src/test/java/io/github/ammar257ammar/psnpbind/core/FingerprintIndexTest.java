@@ -0,0 +1,149 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.SDFWriter;
+
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex.FingerprintType;
+import io.github.ammar257ammar.psnpbind.core.utils.FingerprintIndex.Hit;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+
+public class FingerprintIndexTest {
+
+	private static final String[] SMILES = { "CC(=O)Oc1ccccc1C(=O)O", "OC(=O)c1ccccc1O", "CC(=O)Nc1ccc(O)cc1",
+			"CN1C=NC2=C1C(=O)N(C(=O)N2C)C", "CC(C)Cc1ccc(cc1)C(C)C(=O)O", "COc1ccc2cc(ccc2c1)C(C)C(=O)O",
+			"OC[C@H]1OC(O)[C@H](O)[C@@H](O)[C@@H]1O", "c1ccc2c(c1)cccc2", "c1ccccc1", "Cc1ccccc1", "CCO", "CCCCO",
+			"NCCc1ccc(O)c(O)c1", "CNCCC(Oc1ccc(cc1)C(F)(F)F)c1ccccc1", "CC(=O)Oc1ccccc1C(=O)OC", "not a smiles" };
+
+	private static File indexFile;
+
+	private static FingerprintIndex index;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+
+		File dump = File.createTempFile("chembl", ".smi");
+		dump.deleteOnExit();
+
+		List<String> lines = new ArrayList<String>();
+
+		for (int i = 0; i < SMILES.length; i++) {
+			lines.add(SMILES[i] + "\tCHEMBL" + (i + 1));
+		}
+		Files.write(dump.toPath(), lines, StandardCharsets.UTF_8);
+
+		indexFile = File.createTempFile("chembl", ".index");
+		indexFile.deleteOnExit();
+
+		assertEquals(SMILES.length - 1,
+				FingerprintIndex.build(dump.getAbsolutePath(), indexFile.getAbsolutePath(), FingerprintType.ECFP4, 1024));
+
+		index = FingerprintIndex.open(indexFile.getAbsolutePath());
+	}
+
+	@Test
+	public void searchMatchesBruteForceTest() throws Exception {
+
+		for (int q = 0; q < SMILES.length - 1; q++) {
+
+			long[] query = FingerprintType.ECFP4.calculate(FingerprintIndex.parseSmiles(SMILES[q]), 1024);
+
+			List<Double> expected = new ArrayList<Double>();
+
+			for (int i = 0; i < SMILES.length - 1; i++) {
+
+				long[] fp = FingerprintType.ECFP4.calculate(FingerprintIndex.parseSmiles(SMILES[i]), 1024);
+				double similarity = tanimoto(query, fp);
+
+				if (similarity >= 0.2) {
+					expected.add(similarity);
+				}
+			}
+			Collections.sort(expected, Collections.reverseOrder());
+
+			List<Hit> hits = index.search(query, 0.2, 0);
+
+			assertEquals(expected.size(), hits.size());
+			assertEquals("CHEMBL" + (q + 1), hits.get(0).getId());
+
+			for (int i = 0; i < hits.size(); i++) {
+				assertEquals(expected.get(i), hits.get(i).getSimilarity(), 1e-12);
+			}
+
+			List<Hit> top = index.search(query, 0.0, 3);
+
+			assertEquals(3, top.size());
+
+			for (int i = 0; i < 3; i++) {
+				assertEquals(index.search(query, 0.0, 0).get(i).getId(), top.get(i).getId());
+			}
+		}
+	}
+
+	@Test
+	public void sdfQueryWithHydrogensTest() throws Exception {
+
+		IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(SMILES[0], true);
+
+		List<Hit> hits = index.search(ac, 0.9, 0);
+
+		assertEquals(1, hits.size());
+		assertEquals("CHEMBL1", hits.get(0).getId());
+		assertEquals(SMILES[0], hits.get(0).getSmiles());
+		assertEquals(1.0, hits.get(0).getSimilarity(), 1e-12);
+	}
+
+	@Test
+	public void searchSimilarLigandsLayoutTest() throws Exception {
+
+		File ligandsPath = Files.createTempDirectory("ligands").toFile();
+		File molFolder = new File(ligandsPath, "1a30");
+		molFolder.mkdir();
+
+		try (SDFWriter writer = new SDFWriter(new FileWriter(new File(molFolder, "1a30_ligand.sdf")))) {
+			writer.write(LigandTools.readSmilesStringandAddHydrogens(SMILES[0], true));
+		}
+
+		Ligand3D.searchSimilarLigands(ligandsPath.getAbsolutePath(), indexFile.getAbsolutePath(), 0.3, 2);
+
+		List<String[]> ids = Ligand3D.getLigandIDsFromFiles(ligandsPath.getAbsolutePath());
+
+		assertEquals(2, ids.size());
+		assertArrayEquals(new String[] { "1a30", "1a30_ligand_1", "CHEMBL1" }, ids.get(0));
+
+		List<String[]> smiles = Ligand3D.combineIDsWithLogsOfLigands(ligandsPath.getAbsolutePath(), ids, true)
+				.getTanimotoAndSmilesData();
+
+		assertEquals(2, smiles.size());
+
+		for (String[] row : smiles) {
+			if (row[1].equals("1a30_ligand_1")) {
+				assertArrayEquals(new String[] { "1a30", "1a30_ligand_1", "CHEMBL1", "1.0", SMILES[0] }, row);
+			}
+		}
+	}
+
+	private static double tanimoto(long[] a, long[] b) {
+
+		int common = 0;
+		int union = 0;
+
+		for (int w = 0; w < a.length; w++) {
+			common += Long.bitCount(a[w] & b[w]);
+			union += Long.bitCount(a[w] | b[w]);
+		}
+		return (double) common / union;
+	}
+}
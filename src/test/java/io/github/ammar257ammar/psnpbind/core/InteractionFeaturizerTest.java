@@ -0,0 +1,182 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.InteractionFeaturizer.Ligand;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader;
+import io.github.ammar257ammar.psnpbind.core.utils.PoseStore;
+
+public class InteractionFeaturizerTest {
+
+	private static final Set<String> POCKET = new LinkedHashSet<String>(Arrays.asList("10", "11", "12"));
+
+	private File root;
+	private String vinaPath;
+	private String storePath;
+
+	@Before
+	public void setUp() throws Exception {
+
+		root = Files.createTempDirectory("interactions").toFile();
+		vinaPath = new File(root, "vina").getAbsolutePath();
+		storePath = new File(root, "poses.store").getAbsolutePath();
+
+		writeProtein("1a30_protein_Repair_WT", 3.0);
+		writeProtein("1a30_protein_Repair_1", 20.0);
+
+		byte[] data = (model(1, -9.5, 0.0) + model(2, -7.0, 10.0)).getBytes(StandardCharsets.US_ASCII);
+
+		try (PoseStore.Writer writer = PoseStore.createWriter(storePath)) {
+			writer.write("1a30", "1a30_protein_Repair_WT", "1a30_ligand_1", PdbqtPoseReader.get().read(data, data.length));
+			writer.write("1a30", "1a30_protein_Repair_1", "1a30_ligand_1", PdbqtPoseReader.get().read(data, data.length));
+			writer.commit();
+		}
+	}
+
+	@Test
+	public void proteinAtomFlagsTest() throws Exception {
+
+		assertEquals(InteractionFeaturizer.DONOR, InteractionFeaturizer.getProteinAtomFlags("GLY", "N"));
+		assertEquals(0, InteractionFeaturizer.getProteinAtomFlags("PRO", "N"));
+		assertEquals(InteractionFeaturizer.ACCEPTOR, InteractionFeaturizer.getProteinAtomFlags("ALA", "O"));
+		assertEquals(0, InteractionFeaturizer.getProteinAtomFlags("LEU", "CA"));
+		assertEquals(InteractionFeaturizer.HYDROPHOBIC, InteractionFeaturizer.getProteinAtomFlags("LEU", "CD1"));
+		assertEquals(0, InteractionFeaturizer.getProteinAtomFlags("SER", "CB"));
+		assertEquals(InteractionFeaturizer.DONOR | InteractionFeaturizer.POSITIVE, InteractionFeaturizer.getProteinAtomFlags("LYS", "NZ"));
+		assertEquals(InteractionFeaturizer.ACCEPTOR | InteractionFeaturizer.NEGATIVE, InteractionFeaturizer.getProteinAtomFlags("GLU", "OE2"));
+		assertEquals(InteractionFeaturizer.getProteinAtomFlags("HIS", "NE2"), InteractionFeaturizer.getProteinAtomFlags("HIE", "NE2"));
+		assertEquals(InteractionFeaturizer.HYDROPHOBIC, InteractionFeaturizer.getProteinAtomFlags("CYX", "SG"));
+	}
+
+	@Test
+	public void ligandTest() throws Exception {
+
+		try (PoseStore store = PoseStore.open(storePath)) {
+
+			Ligand ligand = Ligand.of(store.getPoses("1a30", "1a30_protein_Repair_WT", "1a30_ligand_1").get(0));
+
+			int[] expected = { InteractionFeaturizer.HYDROPHOBIC, InteractionFeaturizer.HYDROPHOBIC, InteractionFeaturizer.HYDROPHOBIC, 0,
+					InteractionFeaturizer.HYDROPHOBIC, InteractionFeaturizer.HYDROPHOBIC, 0,
+					InteractionFeaturizer.ACCEPTOR | InteractionFeaturizer.NEGATIVE, InteractionFeaturizer.ACCEPTOR | InteractionFeaturizer.NEGATIVE,
+					InteractionFeaturizer.DONOR, 0, 0 };
+
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals("atom " + i, expected[i], ligand.getFlags(i));
+			}
+
+			assertEquals(1, ligand.getRings().length);
+			assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 }, Arrays.stream(ligand.getRings()[0]).sorted().toArray());
+		}
+	}
+
+	@Test
+	public void featurizeEntryTest() throws Exception {
+
+		String output = new File(root, "features/1a30/interactions-1a30").getAbsolutePath();
+
+		try (PoseStore store = PoseStore.open(storePath)) {
+
+			long rows = InteractionFeaturizer.create().threads(2).format(OutputFormat.TSV).featurizeEntry(vinaPath, store, "1a30", POCKET, output);
+
+			assertEquals(4, rows);
+			assertEquals(0, InteractionFeaturizer.create().featurizeEntry(vinaPath, store, "1b40", POCKET, output + "-empty"));
+		}
+
+		List<String> lines = Files.readAllLines(new File(output + ".tsv").toPath(), StandardCharsets.UTF_8);
+
+		assertEquals(5, lines.size());
+
+		List<String> header = Arrays.asList(lines.get(0).split("\t"));
+
+		assertEquals(Arrays.asList("pdb", "variant", "ligand", "mode", "affinity"), header.subList(0, 5));
+		assertEquals(5 + 12, header.size());
+		assertEquals("res10_hbond", header.get(5));
+		assertEquals("res11_pi_stacking", header.get(12));
+
+		// the variants are written in folder order, the moved lysine of variant 1 makes no contacts
+		assertEquals(Arrays.asList("1a30", "1a30_protein_Repair_1", "1a30_ligand_1", "1", "-9.5", "0", "0", "0", "0", "0", "5", "0", "1", "0", "0", "0", "0"),
+				Arrays.asList(lines.get(1).split("\t")));
+		assertEquals(Arrays.asList("0", "0", "0", "0", "0", "0", "0", "0", "0", "0", "0", "0"), Arrays.asList(lines.get(2).split("\t")).subList(5, 17));
+		assertEquals(Arrays.asList("1", "0", "2", "0", "0", "5", "0", "1", "0", "0", "0", "0"),
+				Arrays.asList(lines.get(3).split("\t")).subList(5, 17));
+		assertTrue(lines.get(4).startsWith("1a30\t1a30_protein_Repair_WT\t1a30_ligand_1\t2\t-7.0\t"));
+	}
+
+	private static String model(int mode, double affinity, double shift) {
+
+		double[][] ring = new double[6][];
+
+		for (int k = 0; k < 6; k++) {
+			ring[k] = new double[] { 1.39 * Math.cos(Math.PI * k / 3.0), 1.39 * Math.sin(Math.PI * k / 3.0), 0.0 };
+		}
+
+		StringBuilder pdbqt = new StringBuilder("MODEL " + mode + "\n");
+
+		pdbqt.append(String.format("REMARK VINA RESULT: %9.1f      0.000      0.000\n", affinity));
+
+		// a benzene ring with a carboxylate on atom 0 and an amine on atom 3
+		for (int k = 0; k < 6; k++) {
+			pdbqt.append(ligandAtom(k + 1, "C", ring[k][0] + shift, ring[k][1], ring[k][2], "A"));
+		}
+
+		pdbqt.append(ligandAtom(7, "C", 2.89 + shift, 0.0, 0.0, "C"));
+		pdbqt.append(ligandAtom(8, "O", 3.51 + shift, 1.08, 0.0, "OA"));
+		pdbqt.append(ligandAtom(9, "O", 3.51 + shift, -1.08, 0.0, "OA"));
+		pdbqt.append(ligandAtom(10, "N", -2.89 + shift, 0.0, 0.0, "N"));
+		pdbqt.append(ligandAtom(11, "H", -3.3 + shift, 0.95, 0.0, "HD"));
+		pdbqt.append(ligandAtom(12, "H", -3.3 + shift, -0.95, 0.0, "HD"));
+
+		return pdbqt.append("ENDMDL\n").toString();
+	}
+
+	private static String ligandAtom(int serial, String name, double x, double y, double z, String type) {
+		return String.format("ATOM  %5d  %-3s UNL     1    %8.3f%8.3f%8.3f  0.00  0.00    +0.000 %-2s\n", serial, name, x, y, z, type);
+	}
+
+	private void writeProtein(String variant, double lysineZ) throws Exception {
+
+		List<String> lines = new ArrayList<String>();
+
+		// a lysine above the carboxylate: a hydrogen bond with one oxygen and ionic contacts with both
+		lines.add(atom(1, " CA ", "LYS", 10, 3.5, 1.08, lysineZ + 3.0));
+		lines.add(atom(2, " NZ ", "LYS", 10, 3.51, 1.08, lysineZ));
+		lines.add(atom(3, " HZ1", "LYS", 10, 3.51, 1.08, lysineZ - 1.0));
+
+		// a phenylalanine ring stacked on the ligand ring
+		String[] ring = { " CG ", " CD1", " CE1", " CZ ", " CE2", " CD2" };
+
+		lines.add(atom(4, " CA ", "PHE", 11, 0.0, 0.0, 8.0));
+
+		for (int k = 0; k < 6; k++) {
+			lines.add(atom(5 + k, ring[k], "PHE", 11, 1.39 * Math.cos(Math.PI * k / 3.0), 1.39 * Math.sin(Math.PI * k / 3.0), 3.8));
+		}
+
+		lines.add(atom(11, " N  ", "GLY", 12, 20.0, 20.0, 20.0));
+		lines.add(atom(12, " O  ", "GLY", 12, 21.0, 20.0, 20.0));
+		lines.add(atom(13, " N  ", "TRP", 20, 0.0, 0.0, -3.0));
+		lines.add("END");
+
+		File folder = new File(vinaPath + "/1a30/proteins/" + variant);
+		folder.mkdirs();
+
+		Files.write(new File(folder, variant + "_final.pdb").toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	private static String atom(int serial, String name, String resName, int resSeq, double x, double y, double z) {
+		return String.format("ATOM  %5d %4s %3s A%4d    %8.3f%8.3f%8.3f  1.00  0.00           %c", serial, name, resName,
+				resSeq, x, y, z, name.trim().charAt(0));
+	}
+}
@@ -0,0 +1,108 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.model.SimilarLigandsDataset;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler;
+
+public class Ligand3DTest {
+
+	private File ligandsPath;
+
+	private List<String[]> ids;
+
+	@Before
+	public void setUp() throws Exception {
+
+		ligandsPath = Files.createTempDirectory("ligands").toFile();
+		ligandsPath.deleteOnExit();
+
+		writeFolder("1a30", new String[] { ">1a30_ligand", ">CHEMBL1 Tanimoto from 1a30 = 0.91", ">CHEMBL2 Tanimoto from 1a30 = 0.75" },
+				new String[] { "CCO\tCHEMBL1", "c1ccccc1\tCHEMBL2" });
+		writeFolder("2hb1", new String[] { ">2hb1_ligand", ">CHEMBL3 Tanimoto from 2hb1 = 0.8" },
+				new String[] { "CCN\tCHEMBL3" });
+
+		ids = new ArrayList<String[]>(Arrays.asList(
+				new String[] { "1a30", "1a30_ligand_1", "CHEMBL1" },
+				new String[] { "1a30", "1a30_ligand_2", "CHEMBL2" },
+				new String[] { "2hb1", "2hb1_ligand_1", "CHEMBL3" },
+				new String[] { "2hb1", "2hb1_ligand_2", "CHEMBL9" }));
+	}
+
+	@Test
+	public void combineIDsWithLogsOfLigandsTest() throws Exception {
+
+		SimilarLigandsDataset dataset = Ligand3D.combineIDsWithLogsOfLigands(ligandsPath.getAbsolutePath(), ids, true);
+
+		List<String[]> tanimoto = sorted(dataset.getTanimotoData());
+		List<String[]> smiles = sorted(dataset.getTanimotoAndSmilesData());
+
+		assertEquals(4, tanimoto.size());
+		assertArrayEquals(new String[] { "1a30", "1a30_ligand_1", "CHEMBL1", "0.91" }, tanimoto.get(0));
+		assertArrayEquals(new String[] { "2hb1", "2hb1_ligand_2", "CHEMBL9", null }, tanimoto.get(3));
+
+		assertEquals(4, smiles.size());
+		assertArrayEquals(new String[] { "1a30", "1a30_ligand_2", "CHEMBL2", "0.75", "c1ccccc1" }, smiles.get(1));
+		assertArrayEquals(new String[] { "2hb1", "2hb1_ligand_1", "CHEMBL3", "0.8", "CCN" }, smiles.get(2));
+		assertArrayEquals(new String[] { "2hb1", "2hb1_ligand_2", "CHEMBL9", null, null }, smiles.get(3));
+	}
+
+	@Test
+	public void combineFromIDsFileTest() throws Exception {
+
+		File idsFile = File.createTempFile("chembl_ligands_filtered", ".tsv");
+		idsFile.deleteOnExit();
+
+		DataHandler.writeDatasetToTSV(ids, idsFile.getAbsolutePath());
+
+		List<String[]> tanimoto = Ligand3D.combineIDsAndTanimotoOfLigands(ligandsPath.getAbsolutePath(),
+				idsFile.getAbsolutePath(), true);
+		List<String[]> smiles = Ligand3D.combineIDsAndTanimotoAndSmilesOfLigands(ligandsPath.getAbsolutePath(),
+				idsFile.getAbsolutePath(), true);
+
+		SimilarLigandsDataset dataset = Ligand3D.combineIDsWithLogsOfLigands(ligandsPath.getAbsolutePath(), ids, true);
+
+		assertEquals(toString(sorted(dataset.getTanimotoData())), toString(sorted(tanimoto)));
+		assertEquals(toString(sorted(dataset.getTanimotoAndSmilesData())), toString(sorted(smiles)));
+	}
+
+	private void writeFolder(String pdb, String[] log, String[] smiles) throws Exception {
+
+		File logs = new File(ligandsPath, pdb + "/logs");
+		File smi = new File(ligandsPath, pdb + "/results-smi");
+
+		logs.mkdirs();
+		smi.mkdirs();
+
+		Files.write(new File(logs, pdb + ".log").toPath(), Arrays.asList(log), StandardCharsets.UTF_8);
+		Files.write(new File(smi, pdb + "_ligand.smi").toPath(), Arrays.asList(smiles), StandardCharsets.UTF_8);
+	}
+
+	private static List<String[]> sorted(List<String[]> rows) {
+
+		List<String[]> copy = new ArrayList<String[]>(rows);
+		copy.sort((a, b) -> (a[0] + a[1]).compareTo(b[0] + b[1]));
+
+		return copy;
+	}
+
+	private static String toString(List<String[]> rows) {
+
+		StringBuilder builder = new StringBuilder();
+
+		for (String[] row : rows) {
+			builder.append(Arrays.toString(row)).append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,90 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.LigandDescriptorCache;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+
+public class LigandDescriptorCacheTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("ligands", ".cache");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LigandDescriptorCache.open(file.getAbsolutePath()).close();
+		file.delete();
+	}
+
+	@Test
+	public void persistenceTest() throws Exception {
+
+		LigandDescriptorCache cache = LigandDescriptorCache.open(file.getAbsolutePath());
+
+		cache.put("a", bytes("first"));
+		cache.put("b", bytes("second"));
+		cache.put("a", bytes("ignored"));
+
+		assertSame(cache, LigandDescriptorCache.open(file.getAbsolutePath()));
+		cache.close();
+
+		cache = LigandDescriptorCache.open(file.getAbsolutePath());
+
+		assertEquals(2, cache.size());
+		assertArrayEquals(bytes("first"), cache.get("a"));
+		assertArrayEquals(bytes("second"), cache.get("b"));
+		assertNull(cache.get("c"));
+	}
+
+	@Test
+	public void incompleteRecordTest() throws Exception {
+
+		LigandDescriptorCache cache = LigandDescriptorCache.open(file.getAbsolutePath());
+
+		cache.put("a", bytes("first"));
+		cache.put("b", bytes("second"));
+		cache.close();
+
+		long complete = file.length();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(complete - 3);
+		}
+
+		cache = LigandDescriptorCache.open(file.getAbsolutePath());
+
+		assertEquals(1, cache.size());
+		assertNull(cache.get("b"));
+
+		cache.put("b", bytes("again"));
+		cache.close();
+
+		cache = LigandDescriptorCache.open(file.getAbsolutePath());
+		assertArrayEquals(bytes("again"), cache.get("b"));
+	}
+
+	@Test
+	public void canonicalSmilesTest() throws Exception {
+
+		String a = LigandDescriptorCache.canonicalSmiles(LigandTools.readSmilesStringandAddHydrogens("OC(=O)c1ccccc1", true));
+		String b = LigandDescriptorCache.canonicalSmiles(LigandTools.readSmilesStringandAddHydrogens("c1ccc(cc1)C(O)=O", true));
+
+		assertEquals(a, b);
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
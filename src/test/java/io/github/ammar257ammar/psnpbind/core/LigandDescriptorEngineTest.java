@@ -0,0 +1,205 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+import io.github.ammar257ammar.psnpbind.core.LigandDescriptorEngine.DescriptorFamily;
+import io.github.ammar257ammar.psnpbind.core.model.FeatureMatrix;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+
+public class LigandDescriptorEngineTest {
+
+	private static final String[] SMILES = { "c1ccccc1O", "CCN(CC)CCOC(=O)c1ccc(N)cc1", "OC(=O)CCc1ccccc1" };
+
+	@Test
+	public void engineIsThreadConfinedTest() throws Exception {
+
+		LigandDescriptorEngine engine = LigandDescriptorEngine.get();
+
+		assertSame(engine, LigandDescriptorEngine.get());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			assertNotSame(engine, executor.submit(() -> LigandDescriptorEngine.get()).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelResultsTest() throws Exception {
+
+		FeatureMatrix sequential = calculate(1);
+		FeatureMatrix parallel = calculate(4);
+
+		assertEquals(sequential.getRowCount(), parallel.getRowCount());
+
+		for (int row = 0; row < sequential.getRowCount(); row++) {
+			for (int c = 4; c < sequential.getColumnCount(); c++) {
+
+				switch (sequential.getColumns().get(c).getType()) {
+				case INT:
+					assertEquals(sequential.getInt(row, c), parallel.getInt(row, c));
+					break;
+				case DOUBLE:
+					assertEquals(sequential.getDouble(row, c), parallel.getDouble(row, c), 0.0);
+					break;
+				case STRING:
+					assertEquals(sequential.getString(row, c), parallel.getString(row, c));
+					break;
+				default:
+					break;
+				}
+			}
+		}
+
+		// three atom counters configured once: all atoms, nitrogens and oxygens
+		int row = 1;
+		assertEquals(2, sequential.getInt(row, sequential.indexOf("AtomCountDescriptorN")));
+		assertEquals(2, sequential.getInt(row, sequential.indexOf("AtomCountDescriptorO")));
+	}
+
+	@Test
+	public void encodeDecodeTest() throws Exception {
+
+		LigandDescriptorEngine.LigandDescriptors computed = LigandDescriptorEngine.get().calculate(
+				LigandTools.readSmilesStringandAddHydrogens(SMILES[1], true), withCoordinates(SMILES[1]));
+
+		LigandDescriptorEngine.LigandDescriptors decoded = new LigandDescriptorEngine.LigandDescriptors();
+		for (DescriptorFamily family : DescriptorFamily.values()) {
+			decoded.decode(family, computed.encode(family));
+		}
+
+		FeatureMatrix matrix = Featurizer.createLigandFeatureMatrix();
+
+		matrix.appendRow().add("pdb").add("ligand").add("chembl").add("1.0");
+		computed.appendTo(matrix);
+		matrix.appendRow().add("pdb").add("ligand").add("chembl").add("1.0");
+		decoded.appendTo(matrix);
+
+		for (int c = 4; c < matrix.getColumnCount(); c++) {
+
+			switch (matrix.getColumns().get(c).getType()) {
+			case INT:
+				assertEquals(matrix.getInt(0, c), matrix.getInt(1, c));
+				break;
+			case DOUBLE:
+				assertEquals(matrix.getDouble(0, c), matrix.getDouble(1, c), 0.0);
+				break;
+			case STRING:
+				assertEquals(matrix.getString(0, c), matrix.getString(1, c));
+				break;
+			case BITS:
+				for (int bit = 0; bit < 1024; bit++) {
+					assertEquals(matrix.getBit(0, c, bit), matrix.getBit(1, c, bit));
+				}
+				break;
+			}
+		}
+	}
+
+	@Test
+	public void selectedFamiliesTest() throws Exception {
+
+		Set<DescriptorFamily> families = DescriptorFamily.parseSelection("screening, xlogp");
+
+		assertEquals(EnumSet.of(DescriptorFamily.LIPINSKI, DescriptorFamily.XLOGP, DescriptorFamily.FINGERPRINT), families);
+		assertFalse(DescriptorFamily.needs3D(families));
+		assertTrue(DescriptorFamily.needs3D(DescriptorFamily.parseSelection("cheap,whim")));
+		assertEquals(EnumSet.allOf(DescriptorFamily.class), DescriptorFamily.parseSelection(""));
+
+		FeatureMatrix full = Featurizer.createLigandFeatureMatrix();
+		FeatureMatrix matrix = Featurizer.createLigandFeatureMatrix(families);
+
+		assertArrayEquals(new String[] { "pdb", "ligand_file", "chembl_id", "tanimoto_index", "WeightDescriptor",
+				"RuleOfFiveDescriptor", "RotatableBondsCountDescriptor", "HBondDonorCountDescriptor",
+				"HBondAcceptorCountDescriptor", "XLogPDescriptor", "CircularFingerprinter1" },
+				Arrays.copyOf(matrix.getHeader(), 11));
+		assertEquals(10 + 1024, matrix.getHeader().length);
+
+		LigandDescriptorEngine engine = LigandDescriptorEngine.get();
+		IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(SMILES[1], true);
+
+		LigandDescriptorEngine.LigandDescriptors selected = new LigandDescriptorEngine.LigandDescriptors();
+
+		for (DescriptorFamily family : families) {
+			engine.calculate(family, ac, selected);
+		}
+
+		assertFalse(selected.contains(DescriptorFamily.WHIM));
+
+		matrix.appendRow().add("pdb").add("ligand").add("chembl").add("1.0");
+		selected.appendTo(matrix);
+
+		full.appendRow().add("pdb").add("ligand").add("chembl").add("1.0");
+		engine.calculate(ac, withCoordinates(SMILES[1])).appendTo(full);
+
+		for (int c = 4; c < matrix.getColumnCount() - 1; c++) {
+
+			int fc = full.indexOf(matrix.getColumns().get(c).getName());
+
+			if (matrix.getColumns().get(c).getType() == FeatureMatrix.ColumnType.DOUBLE) {
+				assertEquals(full.getDouble(0, fc), matrix.getDouble(0, c), 0.0);
+			} else if (matrix.getColumns().get(c).getType() == FeatureMatrix.ColumnType.INT) {
+				assertEquals(full.getInt(0, fc), matrix.getInt(0, c));
+			} else {
+				assertEquals(full.getString(0, fc), matrix.getString(0, c));
+			}
+		}
+	}
+
+	private static FeatureMatrix calculate(int threads) throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			List<Future<LigandDescriptorEngine.LigandDescriptors>> futures = new ArrayList<>();
+
+			for (int repeat = 0; repeat < 4; repeat++) {
+				for (String smiles : SMILES) {
+					futures.add(executor.submit(() -> LigandDescriptorEngine.get().calculate(
+							LigandTools.readSmilesStringandAddHydrogens(smiles, true), withCoordinates(smiles))));
+				}
+			}
+
+			FeatureMatrix matrix = Featurizer.createLigandFeatureMatrix();
+
+			for (Future<LigandDescriptorEngine.LigandDescriptors> future : futures) {
+				matrix.appendRow().add("pdb").add("ligand").add("chembl").add("1.0");
+				future.get().appendTo(matrix);
+			}
+			return matrix;
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static IAtomContainer withCoordinates(String smiles) throws Exception {
+
+		IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(smiles, false);
+
+		int i = 0;
+
+		for (IAtom atom : ac.atoms()) {
+			atom.setPoint3d(new Point3d(1.5 * i, (i % 2) * 1.2, (i % 3) * 0.7));
+			i++;
+		}
+		return ac;
+	}
+}
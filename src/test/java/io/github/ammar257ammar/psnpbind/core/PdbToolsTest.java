@@ -0,0 +1,122 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.biojava.nbio.structure.AminoAcid;
+import org.biojava.nbio.structure.Atom;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.model.PocketResidue;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbTools;
+
+public class PdbToolsTest {
+
+	private File pdbFile;
+
+	@Before
+	public void setUp() throws Exception {
+
+		pdbFile = File.createTempFile("protein", "_final.pdb");
+		pdbFile.deleteOnExit();
+
+		List<String> lines = Arrays.asList(
+				"MODEL        1",
+				atom("ATOM  ", 1, " N  ", ' ', "ALA", 'A', 10, ' ', 1.0, 2.0, 3.0),
+				atom("ATOM  ", 2, " CA ", ' ', "ALA", 'A', 10, ' ', 1.5, 2.5, 3.5),
+				atom("ATOM  ", 3, " N  ", ' ', "GLY", 'A', 11, ' ', 4.0, 5.0, 6.0),
+				atom("ATOM  ", 4, " N  ", ' ', "SER", 'A', 11, 'A', 7.0, 8.0, 9.0),
+				atom("ATOM  ", 5, " N  ", 'A', "LEU", 'A', 12, ' ', 10.0, 11.0, 12.0),
+				atom("ATOM  ", 6, " N  ", 'B', "LEU", 'A', 12, ' ', 99.0, 99.0, 99.0),
+				atom("ATOM  ", 7, " CA ", 'A', "LEU", 'A', 12, ' ', 10.5, 11.5, 12.5),
+				"TER",
+				atom("ATOM  ", 8, " N  ", ' ', "ALA", 'B', 10, ' ', 50.0, 50.0, 50.0),
+				atom("ATOM  ", 9, " N  ", ' ', "VAL", 'B', 13, ' ', 13.0, 14.0, 15.0),
+				"ENDMDL",
+				"MODEL        2",
+				atom("ATOM  ", 10, " N  ", ' ', "TRP", 'A', 14, ' ', 70.0, 70.0, 70.0),
+				"ENDMDL",
+				"END");
+
+		Files.write(pdbFile.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void getAtomCoordinatesOfResiduesTest() throws Exception {
+
+		Set<String> keys = new LinkedHashSet<String>(Arrays.asList("10", "11A", "12", "13", "14"));
+
+		List<double[]> coordinates = PdbTools.getAtomCoordinatesOfResidues(pdbFile.getAbsolutePath(), keys);
+
+		assertEquals(6, coordinates.size());
+		assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, coordinates.get(0), 0.0);
+		assertArrayEquals(new double[] { 7.0, 8.0, 9.0 }, coordinates.get(2), 0.0);
+		assertArrayEquals(new double[] { 10.0, 11.0, 12.0 }, coordinates.get(3), 0.0);
+		assertArrayEquals(new double[] { 10.5, 11.5, 12.5 }, coordinates.get(4), 0.0);
+		assertArrayEquals(new double[] { 13.0, 14.0, 15.0 }, coordinates.get(5), 0.0);
+	}
+
+	@Test
+	public void getAtomCoordinatesOfResiduesSameAsStructureTest() throws Exception {
+
+		List<AminoAcid> aminoAcids = PdbTools
+				.getAminoAcidsFromStructure(PdbTools.configureReader(false).getStructure(pdbFile.getAbsolutePath()));
+
+		Set<String> keys = PdbTools.getResidueKeys(aminoAcids);
+
+		Map<String, AminoAcid> firstMatch = new HashMap<String, AminoAcid>();
+
+		for (AminoAcid aa : aminoAcids) {
+			firstMatch.putIfAbsent(aa.getResidueNumber().toString(), aa);
+		}
+
+		List<String> expected = new ArrayList<String>();
+
+		for (AminoAcid aa : firstMatch.values()) {
+			for (Atom atom : aa.getAtoms()) {
+				expected.add(Arrays.toString(atom.getCoords()));
+			}
+		}
+
+		List<String> actual = new ArrayList<String>();
+
+		for (double[] p : PdbTools.getAtomCoordinatesOfResidues(pdbFile.getAbsolutePath(), keys)) {
+			actual.add(Arrays.toString(p));
+		}
+
+		expected.sort(null);
+		actual.sort(null);
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void getAtomsOfResiduesTest() throws Exception {
+
+		Set<String> keys = new LinkedHashSet<String>(Arrays.asList("12", "10", "15"));
+
+		Map<String, PocketResidue> residues = PdbTools.getAtomsOfResidues(pdbFile.getAbsolutePath(), keys);
+
+		assertEquals(Arrays.asList("10", "12"), new ArrayList<String>(residues.keySet()));
+		assertEquals("ALA", residues.get("10").getName());
+		assertEquals(Arrays.asList("N", "CA"), new ArrayList<String>(residues.get("12").getAtoms().keySet()));
+		assertArrayEquals(new double[] { 10.0, 11.0, 12.0 }, residues.get("12").getAtoms().get("N"), 0.0);
+	}
+
+	private static String atom(String record, int serial, String name, char altLoc, String resName, char chain,
+			int resSeq, char iCode, double x, double y, double z) {
+		return String.format("%-6s%5d %4s%c%3s %c%4d%c   %8.3f%8.3f%8.3f  1.00  0.00           %c", record, serial,
+				name, altLoc, resName, chain, resSeq, iCode, x, y, z, name.trim().charAt(0));
+	}
+}
@@ -0,0 +1,101 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader.DockingPoses;
+
+public class PdbqtPoseReaderTest {
+
+	static final String POSES = "MODEL 1\n"
+			+ "REMARK VINA RESULT:      -8.5      0.000      0.000\n"
+			+ "REMARK  2 active torsions:\n"
+			+ "ROOT\n"
+			+ "ATOM      1  C   UNL     1      -1.234   5.678  19.012  0.00  0.00    +0.123 C \n"
+			+ "ATOM      2  N   UNL     1       0.500  -2.250   3.000  0.00  0.00    -0.300 NA\n"
+			+ "ENDROOT\n"
+			+ "BRANCH   1   3\n"
+			+ "HETATM    3  H   UNL     1       1.000   1.000   1.000  0.00  0.00    +0.200 HD\n"
+			+ "ENDBRANCH   1   3\n"
+			+ "TORSDOF 2\n"
+			+ "ENDMDL\r\n"
+			+ "MODEL 2\r\n"
+			+ "REMARK VINA RESULT:     -10.25     1.835      2.414\r\n"
+			+ "ATOM      1  C   UNL     1     100.000 -99.999   0.001  0.00  0.00    +0.123 C\r\n"
+			+ "ATOM      2  CL  UNL     1       1.000   2.000   3.000  0.00  0.00    -0.100 Cl\r\n"
+			+ "ATOM      3  ZZ  UNL     1       1.000   2.000   3.000  0.00  0.00    -0.100 Zz\r\n"
+			+ "ENDMDL\r\n";
+
+	@Test
+	public void readTest() throws Exception {
+
+		byte[] data = POSES.getBytes(StandardCharsets.US_ASCII);
+
+		DockingPoses poses = PdbqtPoseReader.get().read(data, data.length);
+
+		assertEquals(2, poses.getPoseCount());
+
+		assertEquals(1, poses.getMode(0));
+		assertEquals(-8.5f, poses.getAffinity(0), 0.0f);
+		assertEquals(3, poses.getAtomCount(0));
+		assertArrayEquals(new float[] { -1.234f, 5.678f, 19.012f, 0.5f, -2.25f, 3.0f, 1.0f, 1.0f, 1.0f }, poses.getCoordinates(0), 0.0f);
+		assertEquals("C", PdbqtPoseReader.ATOM_TYPES[poses.getTypes(0)[0]]);
+		assertEquals("NA", PdbqtPoseReader.ATOM_TYPES[poses.getTypes(0)[1]]);
+		assertEquals("HD", PdbqtPoseReader.ATOM_TYPES[poses.getTypes(0)[2]]);
+
+		assertEquals(2, poses.getMode(1));
+		assertEquals(-10.25f, poses.getAffinity(1), 0.0f);
+		assertArrayEquals(new float[] { 100.0f, -99.999f, 0.001f }, Arrays.copyOf(poses.getCoordinates(1), 3), 0.0f);
+		assertEquals("Cl", PdbqtPoseReader.ATOM_TYPES[poses.getTypes(1)[1]]);
+		assertEquals("X", PdbqtPoseReader.ATOM_TYPES[poses.getTypes(1)[2]]);
+	}
+
+	@Test
+	public void readWithoutModelTest() throws Exception {
+
+		byte[] data = ("REMARK single pose\n"
+				+ "ATOM      1  C   UNL     1       1.000   2.000   3.000  0.00  0.00    +0.123 C\n"
+				+ "ATOM      2  C   UNL     1       1.000   2.000\n").getBytes(StandardCharsets.US_ASCII);
+
+		DockingPoses poses = PdbqtPoseReader.get().read(data, data.length);
+
+		assertEquals(1, poses.getPoseCount());
+		assertEquals(1, poses.getMode(0));
+		assertTrue(Float.isNaN(poses.getAffinity(0)));
+		assertEquals(1, poses.getAtomCount(0));
+
+		assertEquals(0, PdbqtPoseReader.get().read(new byte[0], 0).getPoseCount());
+	}
+
+	@Test
+	public void manyPosesTest() throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int m = 1; m <= 40; m++) {
+
+			sb.append("MODEL ").append(m).append('\n');
+			sb.append("REMARK VINA RESULT:      -").append(m).append(".0      0.000      0.000\n");
+
+			for (int a = 0; a < 100; a++) {
+				sb.append(String.format("ATOM  %5d  C   UNL     1    %8.3f%8.3f%8.3f  0.00  0.00    +0.000 C\n", a + 1, m * 1.0, a * 0.5, -a * 0.25));
+			}
+			sb.append("ENDMDL\n");
+		}
+
+		byte[] data = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+		DockingPoses poses = PdbqtPoseReader.get().read(data, data.length);
+
+		assertEquals(40, poses.getPoseCount());
+		assertEquals(40, poses.getMode(39));
+		assertEquals(-40.0f, poses.getAffinity(39), 0.0f);
+		assertEquals(100, poses.getAtomCount(39));
+		assertEquals(-24.75f, poses.getCoordinates(39)[3 * 99 + 2], 0.0f);
+	}
+}
@@ -0,0 +1,151 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.PocketEquivalenceDetector.PocketComparison;
+
+public class PocketEquivalenceDetectorTest {
+
+	private static final Set<String> POCKET = new LinkedHashSet<String>(Arrays.asList("10", "11", "12"));
+
+	private File root;
+	private String vinaPath;
+
+	@Before
+	public void setUp() throws Exception {
+
+		root = Files.createTempDirectory("pocket").toFile();
+		vinaPath = new File(root, "vina").getAbsolutePath();
+
+		writeProtein("1a30_protein_Repair_WT", "SER", 0.0, 0.0);
+		writeProtein("1a30_protein_Repair_1", "SER", 0.1, 3.0);
+		writeProtein("1a30_protein_Repair_2", "CYS", 0.0, 0.0);
+		writeProtein("1a30_protein_Repair_3", "SER", 2.0, 0.0);
+		writeProtein("1a30_protein_Repair_4", "ALA", 0.0, 0.0);
+	}
+
+	@Test
+	public void compareTest() throws Exception {
+
+		PocketEquivalenceDetector detector = PocketEquivalenceDetector.create().rmsdThreshold(0.5).minIdentity(0.9).maxAtomChange(1);
+
+		// a small shift of the pocket and a large shift of a residue outside the pocket
+		PocketComparison comparison = detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_1"));
+
+		assertEquals(3, comparison.getResidues());
+		assertEquals(10, comparison.getAtoms());
+		assertEquals(0.1, comparison.getRmsd(), 1e-9);
+		assertEquals(1.0, comparison.getSideChainIdentity(), 0.0);
+		assertTrue(comparison.isEquivalent());
+
+		// SER to CYS keeps the side-chain size, OG and SG are not matched
+		comparison = detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_2"));
+
+		assertEquals(Arrays.asList("SER11CYS"), comparison.getMutatedResidues());
+		assertEquals(0, comparison.getAtomChange());
+		assertEquals(9, comparison.getAtoms());
+		assertEquals(0.0, comparison.getRmsd(), 0.0);
+		assertFalse(comparison.isEquivalent());
+		assertTrue(detector.minIdentity(0.6).compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_2")).isEquivalent());
+
+		comparison = detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_3"));
+
+		assertEquals(2.0, comparison.getRmsd(), 1e-9);
+		assertFalse(comparison.isEquivalent());
+
+		comparison = detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_4"));
+
+		assertEquals(1, comparison.getAtomChange());
+		assertTrue(comparison.isEquivalent());
+		assertFalse(detector.maxAtomChange(0).compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_4")).isEquivalent());
+
+		// the default is an exact equivalence, a mutated pocket residue is never equivalent
+		detector = PocketEquivalenceDetector.create();
+
+		assertTrue(detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_1")).isEquivalent());
+		assertFalse(detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_2")).isEquivalent());
+		assertFalse(detector.compare(POCKET, path("1a30_protein_Repair_WT"), path("1a30_protein_Repair_4")).isEquivalent());
+	}
+
+	@Test
+	public void detectEntryTest() throws Exception {
+
+		PocketEquivalenceDetector detector = PocketEquivalenceDetector.create().rmsdThreshold(0.5).minIdentity(0.9)
+				.maxAtomChange(1).threads(2);
+
+		List<PocketComparison> comparisons = detector.detectEntry(vinaPath, "1a30", POCKET);
+
+		List<String> equivalent = new ArrayList<String>();
+
+		for (PocketComparison comparison : comparisons) {
+			if(comparison.isEquivalent()) {
+				equivalent.add(comparison.getVariant());
+			}
+		}
+
+		assertEquals(4, comparisons.size());
+		assertEquals(Arrays.asList("1a30_protein_Repair_1"), equivalent);
+		assertEquals("1a30_protein_Repair_WT", PocketEquivalenceDetector.getEquivalentWildType(folder("1a30_protein_Repair_1").toPath(),
+				"1a30_protein_Repair_1"));
+		assertNull(PocketEquivalenceDetector.getEquivalentWildType(folder("1a30_protein_Repair_3").toPath(), "1a30_protein_Repair_3"));
+
+		// a stricter threshold removes the flag
+		detector.rmsdThreshold(0.05).detectEntry(vinaPath, "1a30", POCKET);
+
+		assertNull(PocketEquivalenceDetector.getEquivalentWildType(folder("1a30_protein_Repair_1").toPath(), "1a30_protein_Repair_1"));
+	}
+
+	private void writeProtein(String variant, String residue11, double pocketShift, double otherShift) throws Exception {
+
+		List<String> lines = new ArrayList<String>();
+
+		lines.add(atom(1, " N  ", "LEU", 10, 1.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(2, " CA ", "LEU", 10, 2.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(3, " H  ", "LEU", 10, 9.0, 9.0, 9.0));
+		lines.add(atom(4, " N  ", residue11, 11, 3.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(5, " CA ", residue11, 11, 4.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(6, " CB ", residue11, 11, 5.0 + pocketShift, 2.0, 3.0));
+
+		if(residue11.equals("SER")) {
+			lines.add(atom(7, " OG ", residue11, 11, 6.0 + pocketShift, 2.0, 3.0));
+		}else if(residue11.equals("CYS")) {
+			lines.add(atom(7, " SG ", residue11, 11, 6.0 + pocketShift, 2.0, 3.0));
+		}
+
+		lines.add(atom(8, " N  ", "GLY", 12, 7.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(9, " CA ", "GLY", 12, 8.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(10, " C  ", "GLY", 12, 9.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(11, " O  ", "GLY", 12, 10.0 + pocketShift, 2.0, 3.0));
+		lines.add(atom(12, " N  ", "TRP", 20, 20.0 + otherShift, 2.0, 3.0));
+		lines.add("END");
+
+		folder(variant).mkdirs();
+
+		Files.write(new File(path(variant)).toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	private File folder(String variant) {
+		return new File(vinaPath + "/1a30/proteins/" + variant);
+	}
+
+	private String path(String variant) {
+		return vinaPath + "/1a30/proteins/" + variant + "/" + variant + "_final.pdb";
+	}
+
+	private static String atom(int serial, String name, String resName, int resSeq, double x, double y, double z) {
+		return String.format("ATOM  %5d %4s %3s A%4d    %8.3f%8.3f%8.3f  1.00  0.00           %c", serial, name, resName,
+				resSeq, x, y, z, name.trim().charAt(0));
+	}
+}
@@ -0,0 +1,146 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader;
+import io.github.ammar257ammar.psnpbind.core.utils.PdbqtPoseReader.DockingPoses;
+import io.github.ammar257ammar.psnpbind.core.utils.PoseStore;
+import io.github.ammar257ammar.psnpbind.core.utils.PoseStore.Pose;
+
+public class PoseStoreTest {
+
+	private File root;
+	private DockingPoses poses;
+
+	@Before
+	public void setUp() throws Exception {
+
+		root = Files.createTempDirectory("poses").toFile();
+
+		byte[] data = PdbqtPoseReaderTest.POSES.getBytes(StandardCharsets.US_ASCII);
+
+		poses = PdbqtPoseReader.get().read(data, data.length);
+	}
+
+	@Test
+	public void writeReadTest() throws Exception {
+
+		String path = new File(root, "store/poses.store").getAbsolutePath();
+
+		try (PoseStore.Writer writer = PoseStore.createWriter(path)) {
+
+			// added out of order, the store is sorted by docking
+			writer.write("1a30", "1a30_WT", "1a30_ligand_2", poses);
+			writer.write("1a30", "1a30_A12G", "1a30_ligand_1", poses);
+			writer.write("1a30", "1a30_WT", "1a30_ligand_1", PdbqtPoseReader.get().read(new byte[0], 0));
+
+			try {
+				writer.write("1a30", "1a30_WT", "1a30_ligand_2", poses);
+				fail("a docking can be written once");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("1a30/1a30_WT/1a30_ligand_2"));
+			}
+
+			writer.commit();
+		}
+
+		assertFalse(new File(path + ".tmp").exists());
+
+		try (PoseStore store = PoseStore.open(path)) {
+
+			assertEquals(3, store.size());
+			assertEquals(4, store.getPoseCount());
+			assertEquals(Arrays.asList("1a30/1a30_A12G/1a30_ligand_1", "1a30/1a30_WT/1a30_ligand_1", "1a30/1a30_WT/1a30_ligand_2"),
+					store.getKeys());
+
+			assertTrue(store.getPoses("1a30", "1a30_WT", "1a30_ligand_1").isEmpty());
+			assertTrue(store.getPoses("1a30", "1a30_WT", "1a30_ligand_3").isEmpty());
+
+			List<Pose> stored = store.getPoses("1a30", "1a30_WT", "1a30_ligand_2");
+
+			assertEquals(2, stored.size());
+
+			for (int p = 0; p < 2; p++) {
+
+				Pose pose = stored.get(p);
+
+				assertEquals(poses.getMode(p), pose.getMode());
+				assertEquals(poses.getAffinity(p), pose.getAffinity(), 0.0f);
+				assertEquals(poses.getAtomCount(p), pose.getAtomCount());
+				assertArrayEquals(poses.getCoordinates(p), pose.getCoordinates(), 0.0f);
+
+				for (int a = 0; a < pose.getAtomCount(); a++) {
+					assertEquals(PdbqtPoseReader.ATOM_TYPES[poses.getTypes(p)[a]], pose.getType(a));
+				}
+			}
+
+			Pose best = store.getPose("1a30", "1a30_A12G", "1a30_ligand_1", 1);
+
+			assertEquals(-1.234f, best.getX(0), 0.0f);
+			assertEquals(-2.25f, best.getY(1), 0.0f);
+			assertEquals(1.0f, best.getZ(2), 0.0f);
+			assertEquals("HD", best.getType(2));
+			assertNull(store.getPose("1a30", "1a30_A12G", "1a30_ligand_1", 3));
+		}
+	}
+
+	@Test
+	public void uncommittedWriterTest() throws Exception {
+
+		String path = new File(root, "poses.store").getAbsolutePath();
+
+		try (PoseStore.Writer writer = PoseStore.createWriter(path)) {
+			writer.write("1a30", "1a30_WT", "1a30_ligand_1", poses);
+			writer.commit();
+		}
+
+		try (PoseStore.Writer writer = PoseStore.createWriter(path)) {
+			writer.write("1a30", "1a30_WT", "1a30_ligand_2", poses);
+		}
+
+		assertFalse(new File(path + ".tmp").exists());
+
+		try (PoseStore store = PoseStore.open(path)) {
+			assertEquals(Arrays.asList("1a30/1a30_WT/1a30_ligand_1"), store.getKeys());
+		}
+	}
+
+	@Test
+	public void buildTest() throws Exception {
+
+		String vinaPath = new File(root, "vina").getAbsolutePath();
+
+		for (String variant : new String[] { "1a30_WT", "1a30_A12G" }) {
+			for (String ligand : new String[] { "1a30_ligand_1", "1a30_ligand_2" }) {
+
+				File folder = new File(vinaPath + "/1a30/proteins/" + variant + "/vina/" + ligand);
+				folder.mkdirs();
+
+				if(!(variant.equals("1a30_A12G") && ligand.equals("1a30_ligand_2"))) {
+					Files.write(new File(folder, ligand + "_min_docking.pdbqt").toPath(),
+							PdbqtPoseReaderTest.POSES.getBytes(StandardCharsets.US_ASCII));
+				}
+			}
+		}
+
+		String path = new File(root, "built.store").getAbsolutePath();
+
+		assertEquals(3, VinaPoseEngine.create().threads(2).build(vinaPath, path));
+
+		try (PoseStore store = PoseStore.open(path)) {
+
+			assertEquals(6, store.getPoseCount());
+			assertEquals(-10.25f, store.getPose("1a30", "1a30_A12G", "1a30_ligand_1", 2).getAffinity(), 0.0f);
+			assertTrue(store.getPoses("1a30", "1a30_A12G", "1a30_ligand_2").isEmpty());
+		}
+	}
+}
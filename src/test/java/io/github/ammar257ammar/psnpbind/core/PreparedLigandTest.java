@@ -0,0 +1,73 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.model.PreparedLigand;
+import io.github.ammar257ammar.psnpbind.core.utils.LigandDescriptorCache;
+
+public class PreparedLigandTest {
+
+	@Test
+	public void fromFilesTest() throws Exception {
+
+		File smilesFile = File.createTempFile("ligand", ".smi");
+		smilesFile.deleteOnExit();
+
+		Files.write(smilesFile.toPath(), "OCC CHEMBL545\n".getBytes(StandardCharsets.UTF_8));
+
+		PreparedLigand ligand = PreparedLigand.fromFiles(smilesFile, new File(smilesFile.getAbsolutePath() + ".mol2"));
+
+		assertEquals("OCC", ligand.getSmiles());
+		assertEquals(9, ligand.getMolecule2D().getAtomCount());
+
+		// the canonical SMILES is generated once
+		assertEquals(LigandDescriptorCache.canonicalSmiles(ligand.getMolecule2D()), ligand.getCanonicalSmiles());
+		assertSame(ligand.getCanonicalSmiles(), ligand.getCanonicalSmiles());
+
+		assertFalse(ligand.hasMol2File());
+		assertNull(ligand.getMolecule3D());
+		assertNull(ligand.getMol2Hash());
+	}
+
+	@Test
+	public void invalidLigandTest() throws Exception {
+
+		File smilesFile = File.createTempFile("ligand", ".smi");
+		smilesFile.deleteOnExit();
+
+		assertNull(PreparedLigand.fromFiles(smilesFile, null));
+		assertNull(PreparedLigand.fromSmiles("C1CC"));
+		assertNotNull(PreparedLigand.fromSmiles("c1ccccc1O"));
+	}
+
+	@Test
+	public void batchTest() throws Exception {
+
+		List<String> smiles = new ArrayList<String>();
+
+		for (int i = 1; i <= 40; i++) {
+			smiles.add(i == 7 ? "C1CC" : "C" + String.join("", Collections.nCopies(i, "C")) + "O");
+		}
+
+		List<PreparedLigand> ligands = PreparedLigand.fromSmiles(smiles);
+
+		assertEquals(40, ligands.size());
+		assertNull(ligands.get(6));
+
+		for (int i = 0; i < 40; i++) {
+			if (i != 6) {
+				assertEquals(smiles.get(i), ligands.get(i).getSmiles());
+				assertEquals(3 * (i + 3), ligands.get(i).getMolecule2D().getAtomCount());
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.SDFWriter;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+import io.github.ammar257ammar.psnpbind.core.utils.SdfPropertyScanner;
+
+public class SdfPropertyScannerTest {
+
+	private static final String[] SMILES = { "CC(=O)Oc1ccccc1C(=O)O", "[NH4+].[Cl-]", "CN1C=NC2=C1C(=O)N(C(=O)N2C)C",
+			"OC[C@H]1OC(O)[C@H](O)[C@@H](O)[C@@H]1O" };
+
+	@Test
+	public void matchesIteratingSDFReaderTest() throws Exception {
+
+		File file = File.createTempFile("results", ".sdf");
+		file.deleteOnExit();
+
+		try (SDFWriter writer = new SDFWriter(new FileWriter(file))) {
+
+			for (int i = 0; i < SMILES.length; i++) {
+
+				IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(SMILES[i], true);
+
+				if (i != 2) {
+					ac.setProperty("chembl_id", "CHEMBL" + (100 + i));
+				}
+				ac.setProperty("comment", "first line\nsecond line");
+
+				writer.write(ac);
+			}
+		}
+
+		List<String> expected = new ArrayList<String>();
+
+		try (IteratingSDFReader reader = new IteratingSDFReader(new FileInputStream(file),
+				DefaultChemObjectBuilder.getInstance())) {
+
+			while (reader.hasNext()) {
+				expected.add(reader.next().getProperty("chembl_id"));
+			}
+		}
+
+		List<String[]> records = SdfPropertyScanner.create("chembl_id", "comment").scan(file);
+
+		assertEquals(expected.size(), records.size());
+
+		for (int i = 0; i < records.size(); i++) {
+			assertEquals(expected.get(i), records.get(i)[0]);
+			assertEquals("first line\nsecond line", records.get(i)[1]);
+		}
+		assertNull(records.get(2)[0]);
+	}
+
+	@Test
+	public void v3000RecordTest() throws Exception {
+
+		String sdf = "\n  OpenBabel\n\n  0  0  0     0  0  0  0  0  0999 V3000\n"
+				+ "M  V30 BEGIN CTAB\nM  V30 COUNTS 1 0 0 0 0\nM  V30 BEGIN ATOM\nM  V30 1 C 0 0 0 0\n"
+				+ "M  V30 END ATOM\nM  V30 END CTAB\nM  END\n> <chembl_id>\r\nCHEMBL25\r\n\r\n$$$$\n";
+
+		List<String[]> records = SdfPropertyScanner.create("chembl_id")
+				.scan(new ByteArrayInputStream(sdf.getBytes(StandardCharsets.US_ASCII)));
+
+		assertEquals(1, records.size());
+		assertEquals("CHEMBL25", records.get(0)[0]);
+	}
+}
@@ -0,0 +1,67 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Test;
+import org.openscience.cdk.geometry.surface.NumericalSurface;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+import io.github.ammar257ammar.psnpbind.core.utils.LigandTools;
+import io.github.ammar257ammar.psnpbind.core.utils.SurfaceAreaEngine;
+import io.github.ammar257ammar.psnpbind.core.utils.SurfaceAreaEngine.Resolution;
+
+public class SurfaceAreaEngineTest {
+
+	private static final String[] SMILES = { "CC(=O)Oc1ccccc1C(=O)O", "CN1C=NC2=C1C(=O)N(C(=O)N2C)C",
+			"CC(C)Cc1ccc(cc1)C(C)C(=O)O", "OC[C@H]1OC(O)[C@H](O)[C@@H](O)[C@@H]1O" };
+
+	@Test
+	public void matchesNumericalSurfaceTest() throws Exception {
+
+		SurfaceAreaEngine engine = SurfaceAreaEngine.create();
+		Random random = new Random(42);
+
+		for (String smiles : SMILES) {
+
+			IAtomContainer ac = LigandTools.readSmilesStringandAddHydrogens(smiles, true);
+
+			// random compact conformations with overlapping spheres
+			for (IAtom atom : ac.atoms()) {
+				atom.setPoint3d(new Point3d(4 * random.nextDouble(), 4 * random.nextDouble(), 6 * random.nextDouble()));
+			}
+
+			double expected = new NumericalSurface(ac).getTotalSurfaceArea();
+
+			assertEquals(expected, engine.getTotalSurfaceArea(ac), 1e-6 * expected);
+		}
+	}
+
+	@Test
+	public void resolutionTest() {
+
+		double[] coords = { 0, 0, 0, 1.5, 0, 0, 0, 1.5, 0, 30, 30, 30 };
+		double[] radii = { 1.7, 1.52, 1.55, 1.2 };
+
+		double standard = SurfaceAreaEngine.create().getTotalSurfaceArea(coords, radii);
+
+		// an isolated atom is fully exposed at any resolution
+		double[] areas = SurfaceAreaEngine.create(Resolution.COARSE, SurfaceAreaEngine.DEFAULT_PROBE_RADIUS)
+				.getAtomAreas(coords, radii);
+		assertEquals(4 * Math.PI * 2.6 * 2.6, areas[3], 1e-9);
+
+		for (Resolution resolution : Resolution.values()) {
+
+			double area = SurfaceAreaEngine.create(resolution, SurfaceAreaEngine.DEFAULT_PROBE_RADIUS)
+					.getTotalSurfaceArea(coords, radii);
+
+			assertEquals(standard, area, 0.05 * standard);
+		}
+
+		assertEquals(0.0, SurfaceAreaEngine.create().getTotalSurfaceArea(new double[0], new double[0]), 0.0);
+	}
+}
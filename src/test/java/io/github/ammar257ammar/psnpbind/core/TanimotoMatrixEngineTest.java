@@ -0,0 +1,100 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.model.SimilarityMatrix;
+import io.github.ammar257ammar.psnpbind.core.utils.TanimotoMatrixEngine;
+
+public class TanimotoMatrixEngineTest {
+
+	private static final int ROWS = 300;
+
+	private static final int WORDS = 4;
+
+	private static long[] randomFingerprints() {
+
+		Random random = new Random(42);
+
+		long[] fingerprints = new long[ROWS * WORDS];
+
+		for (int i = 0; i < fingerprints.length; i++) {
+			fingerprints[i] = random.nextLong() & random.nextLong();
+		}
+
+		// a few duplicates and an empty fingerprint
+		System.arraycopy(fingerprints, 0, fingerprints, 10 * WORDS, WORDS);
+		System.arraycopy(fingerprints, 0, fingerprints, 250 * WORDS, WORDS);
+		for (int w = 0; w < WORDS; w++) {
+			fingerprints[5 * WORDS + w] = 0L;
+		}
+		return fingerprints;
+	}
+
+	private static double tanimoto(long[] fingerprints, int i, int j) {
+
+		int common = 0;
+		int union = 0;
+
+		for (int w = 0; w < WORDS; w++) {
+			common += Long.bitCount(fingerprints[i * WORDS + w] & fingerprints[j * WORDS + w]);
+			union += Long.bitCount(fingerprints[i * WORDS + w] | fingerprints[j * WORDS + w]);
+		}
+		return union == 0 ? 0.0 : (double) common / union;
+	}
+
+	@Test
+	public void matchesBruteForceTest() {
+
+		long[] fingerprints = randomFingerprints();
+
+		for (double threshold : new double[] { 0.0, 0.35 }) {
+
+			SimilarityMatrix matrix = TanimotoMatrixEngine.create().threshold(threshold).tileSize(64)
+					.compute(fingerprints, WORDS);
+
+			long expectedCount = 0;
+
+			for (int i = 0; i < ROWS; i++) {
+				for (int j = 0; j < ROWS; j++) {
+
+					if (i == j) {
+						continue;
+					}
+
+					double similarity = tanimoto(fingerprints, i, j);
+					boolean stored = similarity > 0 && similarity >= threshold;
+
+					expectedCount += stored ? 1 : 0;
+					assertEquals(stored ? similarity : 0.0, matrix.get(i, j), 1e-6);
+				}
+			}
+
+			assertEquals(expectedCount, matrix.getValuesCount());
+			assertEquals(1.0f, matrix.get(0, 10), 0.0f);
+		}
+	}
+
+	@Test
+	public void writeAndReadTest() throws Exception {
+
+		SimilarityMatrix matrix = TanimotoMatrixEngine.create().threshold(0.3).compute(randomFingerprints(), WORDS);
+
+		File file = File.createTempFile("similarity", ".bin");
+		file.deleteOnExit();
+
+		matrix.write(file.getAbsolutePath());
+
+		SimilarityMatrix read = SimilarityMatrix.read(file.getAbsolutePath());
+
+		assertEquals(ROWS, read.getRows());
+		assertEquals(0.3f, read.getThreshold(), 0.0f);
+		assertArrayEquals(matrix.getRowPointers(), read.getRowPointers());
+		assertArrayEquals(matrix.getColumns(), read.getColumns());
+		assertArrayEquals(matrix.getValues(), read.getValues(), 0.0f);
+	}
+}
@@ -0,0 +1,96 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VinaPreparationEngineTest {
+
+	private File root;
+	private String gromacsPath;
+	private String vinaPath;
+	private String ligandsPath;
+
+	@Before
+	public void setUp() throws Exception {
+
+		root = Files.createTempDirectory("vina").toFile();
+
+		gromacsPath = new File(root, "gromacs").getAbsolutePath();
+		vinaPath = new File(root, "vina").getAbsolutePath();
+		ligandsPath = new File(root, "ligands").getAbsolutePath();
+
+		for (String variant : new String[] { "1a30_WT", "1a30_A12G", "1a30_L14P" }) {
+			new File(gromacsPath + "/1a30/output/" + variant).mkdirs();
+			write(new File(gromacsPath + "/1a30/output/" + variant + "/" + variant + "_final.pdb"), variant);
+		}
+
+		new File(ligandsPath + "/1a30/splitted").mkdirs();
+
+		write(new File(ligandsPath + "/1a30/splitted/1a30_ligand_1_min.mol2"), "min");
+		write(new File(ligandsPath + "/1a30/splitted/1a30_ligand_2_min.mol2"), "min");
+		write(new File(ligandsPath + "/1a30/splitted/1a30_ligand_1.mol2"), "raw");
+	}
+
+	@Test
+	public void runTest() throws Exception {
+
+		new File(vinaPath + "/1a30/proteins/1a30_WT").mkdirs();
+		write(new File(vinaPath + "/1a30/proteins/1a30_WT/1a30_WT_seed.txt"), "42");
+
+		for (String variant : new String[] { "1a30_WT", "1a30_A12G", "1a30_L14P" }) {
+			new File(vinaPath + "/1a30/proteins/" + variant).mkdirs();
+			write(new File(vinaPath + "/1a30/proteins/" + variant + "/" + variant + "_config.txt"), "config");
+		}
+
+		VinaPreparationEngine engine = VinaPreparationEngine.create().threads(2);
+
+		engine.run(gromacsPath, vinaPath, ligandsPath, true, "1264647227");
+
+		assertEquals(Arrays.asList("proteins", "ligands", "seed", "config"), Arrays.asList(engine.getStageTimes().keySet().toArray()));
+
+		assertEquals("1a30_A12G", read(new File(vinaPath + "/1a30/proteins/1a30_A12G/1a30_A12G_final.pdb")));
+		assertEquals(Arrays.asList("1a30_ligand_1_min.mol2", "1a30_ligand_2_min.mol2"),
+				sorted(new File(vinaPath + "/1a30/ligands").list()));
+		assertTrue(new File(vinaPath + "/1a30/proteins/1a30_L14P/vina/1a30_ligand_2").isDirectory());
+
+		assertEquals("42", read(new File(vinaPath + "/1a30/proteins/1a30_WT/1a30_WT_seed.txt")));
+		assertEquals("1264647227", read(new File(vinaPath + "/1a30/proteins/1a30_L14P/1a30_L14P_seed.txt")));
+		assertEquals("config", read(new File(vinaPath + "/1a30/proteins/1a30_L14P/1a30_L14P_config.txt")));
+
+		VinaPreparationEngine.create().replace(true).writeSeedFiles(vinaPath, Arrays.asList("1a30"), "7");
+
+		assertEquals("7", read(new File(vinaPath + "/1a30/proteins/1a30_WT/1a30_WT_seed.txt")));
+	}
+
+	@Test
+	public void getConfigTest() {
+
+		String config = VinaPreparationEngine.getConfig(Arrays.asList(new double[] { 1.0, 2.0, 3.0 },
+				new double[] { 11.5, 12.0, 13.0 }, new double[] { 6.25, 7.0, 8.0 }, new double[] { 11, 10, 10 }));
+
+		assertTrue(config.startsWith("center_x = 6.25\ncenter_y = 7.0\ncenter_z = 8.0\n\nsize_x = 11\n"));
+		assertTrue(config.endsWith("exhaustiveness = 12\n"));
+	}
+
+	private static List<String> sorted(String[] names) {
+		Arrays.sort(names);
+		return Arrays.asList(names);
+	}
+
+	private static File write(File file, String content) throws Exception {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+}
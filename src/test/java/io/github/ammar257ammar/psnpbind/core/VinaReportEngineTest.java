@@ -0,0 +1,196 @@
+package io.github.ammar257ammar.psnpbind.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.ammar257ammar.psnpbind.core.utils.AffinityMatrixStore;
+import io.github.ammar257ammar.psnpbind.core.utils.AffinityMatrixStore.AffinityMatrix;
+import io.github.ammar257ammar.psnpbind.core.utils.DataHandler.OutputFormat;
+import io.github.ammar257ammar.psnpbind.core.utils.DockingResultsIndex;
+import io.github.ammar257ammar.psnpbind.core.utils.DockingResultsIndex.DockingResult;
+import io.github.ammar257ammar.psnpbind.core.utils.VinaLogScanner;
+
+public class VinaReportEngineTest {
+
+	private static final String LOG = "AutoDock Vina\n"
+			+ "mode |   affinity | dist from best mode\n"
+			+ "     | (kcal/mol) | rmsd l.b.| rmsd u.b.\n"
+			+ "-----+------------+----------+----------\n"
+			+ "   1         -8.5      0.000      0.000\n"
+			+ "   2          nan      1.835      2.414\n"
+			+ "   3         -7.9      2.104      3.562\n"
+			+ "Writing output ... done.\n"
+			+ "   4         -1.0      0.000      0.000\n";
+
+	private File root;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("report").toFile();
+	}
+
+	@Test
+	public void scanLogTest() {
+
+		byte[] log = LOG.getBytes(StandardCharsets.US_ASCII);
+
+		VinaLogScanner scanner = VinaLogScanner.get();
+
+		assertEquals(2, scanner.scan(log, log.length));
+		assertEquals("-8.5", scanner.getBestAffinity());
+		assertEquals(3, scanner.getMode(1));
+		assertEquals("Conformer 1: -8.5;Conformer 3: -7.9", DockingResult.of(0, 0, scanner).getConformers());
+
+		log = LOG.replace("\n", "\r\n").replace("   1  ", "  1   ").getBytes(StandardCharsets.US_ASCII);
+
+		assertEquals(2, scanner.scan(log, log.length));
+		assertEquals("", scanner.getBestAffinity());
+
+		log = "mode\n  10  -1.0  0.0  0.0\n   1  -1.0  0.0  0.0 \n".getBytes(StandardCharsets.US_ASCII);
+
+		assertEquals(0, scanner.scan(log, log.length));
+	}
+
+	@Test
+	public void generateReportsTest() throws Exception {
+
+		String entriesPath = new File(root, "vina").getAbsolutePath();
+		String outputPath = new File(root, "results").getAbsolutePath();
+
+		docking(entriesPath, "1a30_WT", "1a30_ligand_1", true, true);
+		docking(entriesPath, "1a30_WT", "1a30_ligand_2", true, false);
+		docking(entriesPath, "1a30_A12G", "1a30_ligand_1", false, true);
+		docking(entriesPath, "1a30_A12G", "1a30_ligand_3", true, true);
+
+		// the docking of ligand 3 was copied from the wild-type by the scheduler
+		Files.write(new File(entriesPath + "/1a30/proteins/1a30_A12G/vina/1a30_ligand_3/1a30_ligand_3" + DockingScheduler.REUSED_SUFFIX).toPath(),
+				Arrays.asList("1a30_WT"), StandardCharsets.UTF_8);
+
+		String indexPath = new File(root, "index/docking-results.index").getAbsolutePath();
+
+		VinaReportEngine.create().threads(2).index(indexPath).generateReports(entriesPath, outputPath);
+
+		assertEquals(Arrays.asList("1a30\t1a30_A12G\t1a30_ligand_3\tConformer 1: -8.5;Conformer 3: -7.9\t1a30_WT",
+				"1a30\t1a30_WT\t1a30_ligand_1\tConformer 1: -8.5;Conformer 3: -7.9\t"),
+				read(outputPath + "/docking-results-all.tsv"));
+
+		assertEquals(Arrays.asList("1a30\t1a30_A12G\t1a30_ligand_3\t-8.5\t1a30_WT", "1a30\t1a30_WT\t1a30_ligand_1\t-8.5\t"),
+				read(outputPath + "/1a30/bindingAffinity-official-1a30.tsv"));
+
+		try (DockingResultsIndex index = DockingResultsIndex.open(indexPath)) {
+			assertEquals("1a30_WT", index.read("1a30").get("1a30_A12G").get("1a30_ligand_3").getReusedFrom());
+			assertFalse(index.read("1a30").get("1a30_WT").get("1a30_ligand_1").isReused());
+		}
+
+		assertEquals(Arrays.asList("Varaint\t1a30_ligand_1\t1a30_ligand_2\t1a30_ligand_3", "1a30_A12G\t-\t-\t-8.5",
+				"1a30_WT\t-8.5\t-\t-"), read(outputPath + "/1a30/bindingAffinity-official-1a30_df.tsv"));
+
+		try (AffinityMatrixStore store = AffinityMatrixStore.open(outputPath + "/docking-affinities.matrix")) {
+
+			AffinityMatrix matrix = store.getMatrix("1a30");
+
+			assertEquals(Arrays.asList("1a30_A12G", "1a30_WT"), matrix.getVariants());
+			assertEquals(Arrays.asList("1a30_ligand_1", "1a30_ligand_2", "1a30_ligand_3"), matrix.getLigands());
+			assertArrayEquals(new float[] { Float.NaN, Float.NaN, -8.5f }, matrix.getVariantAffinities("1a30_A12G"), 0.0f);
+			assertArrayEquals(new float[] { Float.NaN, -8.5f }, matrix.getLigandAffinities("1a30_ligand_1"), 0.0f);
+			assertEquals(4, matrix.getMissingCount());
+			assertEquals(1, matrix.getReusedCount());
+			assertTrue(matrix.isReused(matrix.getVariantIndex("1a30_A12G"), matrix.getLigandIndex("1a30_ligand_3")));
+		}
+	}
+
+	@Test
+	public void incrementalReportsTest() throws Exception {
+
+		String entriesPath = new File(root, "vina").getAbsolutePath();
+		String outputPath = new File(root, "results").getAbsolutePath();
+		String indexPath = new File(root, "index/docking-results.index").getAbsolutePath();
+
+		docking(entriesPath, "1a30_WT", "1a30_ligand_1", true, true);
+		docking(entriesPath, "1a30_WT", "1a30_ligand_2", true, true);
+		docking(entriesPath, "1a30_A12G", "1a30_ligand_1", true, true);
+
+		VinaReportEngine engine = VinaReportEngine.create().index(indexPath);
+		engine.generateReports(entriesPath, outputPath);
+
+		assertEquals(3, engine.getParsedLogs());
+
+		List<String> first = read(outputPath + "/docking-results-all.tsv");
+
+		engine = VinaReportEngine.create().index(indexPath);
+		engine.generateReports(entriesPath, outputPath);
+
+		assertEquals(0, engine.getParsedLogs());
+		assertEquals(3, engine.getReusedLogs());
+		assertEquals(first, read(outputPath + "/docking-results-all.tsv"));
+
+		Files.write(new File(entriesPath + "/1a30/proteins/1a30_WT/vina/1a30_ligand_2/1a30_ligand_2_min_log.txt").toPath(),
+				LOG.replace("-8.5", "-9.25").getBytes(StandardCharsets.US_ASCII));
+		docking(entriesPath, "1a30_A12G", "1a30_ligand_3", true, true);
+
+		engine = VinaReportEngine.create().index(indexPath);
+		engine.generateReports(entriesPath, outputPath);
+
+		assertEquals(2, engine.getParsedLogs());
+		assertEquals(2, engine.getReusedLogs());
+		assertEquals("1a30\t1a30_WT\t1a30_ligand_2\tConformer 1: -9.25;Conformer 3: -7.9\t",
+				read(outputPath + "/docking-results-all.tsv").get(3));
+
+		try (DockingResultsIndex index = DockingResultsIndex.open(indexPath)) {
+			assertEquals(2, index.read("1a30").size());
+			assertEquals("-9.25", index.read("1a30").get("1a30_WT").get("1a30_ligand_2").getBestAffinity());
+		}
+
+		Files.write(new File(indexPath).toPath(), "corrupted".getBytes(StandardCharsets.US_ASCII));
+
+		engine = VinaReportEngine.create().index(indexPath);
+		engine.generateReports(entriesPath, outputPath);
+
+		assertEquals(4, engine.getParsedLogs());
+	}
+
+	@Test
+	public void datasetFormatReportsTest() throws Exception {
+
+		String entriesPath = new File(root, "vina").getAbsolutePath();
+		String outputPath = new File(root, "results").getAbsolutePath();
+
+		docking(entriesPath, "1a30_WT", "1a30_ligand_1", true, true);
+		docking(entriesPath, "1a30_A12G", "1a30_ligand_1", true, true);
+
+		VinaReportEngine.create().format(OutputFormat.NPZ).generateReports(entriesPath, outputPath);
+
+		// the TSV read by DbDataFabricator is still written, the npz table is written next to it
+		assertEquals(Arrays.asList("1a30\t1a30_A12G\t1a30_ligand_1\tConformer 1: -8.5;Conformer 3: -7.9\t",
+				"1a30\t1a30_WT\t1a30_ligand_1\tConformer 1: -8.5;Conformer 3: -7.9\t"),
+				read(outputPath + "/docking-results-all.tsv"));
+
+		assertTrue(new File(outputPath, "docking-results-all.npz").length() > 0);
+	}
+
+	private static void docking(String entriesPath, String variant, String ligand, boolean log, boolean poses)
+			throws Exception {
+
+		File folder = new File(entriesPath + "/1a30/proteins/" + variant + "/vina/" + ligand);
+		folder.mkdirs();
+
+		if(log) {
+			Files.write(new File(folder, ligand + "_min_log.txt").toPath(), LOG.getBytes(StandardCharsets.US_ASCII));
+		}
+		if(poses) {
+			Files.write(new File(folder, ligand + "_min_docking.pdbqt").toPath(), "MODEL 1".getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	private static List<String> read(String path) throws Exception {
+		return Files.readAllLines(new File(path).toPath(), StandardCharsets.UTF_8);
+	}
+}